@@ -6,10 +6,20 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.ViewParent;
+import android.widget.OverScroller;
 
 import com.example.w.eazegraphclone.R;
+import com.example.w.eazegraphclone.layout.BarLayoutConfig;
+import com.example.w.eazegraphclone.metrics.ChartMetrics;
 import com.example.w.eazegraphclone.models.BaseModel;
+import com.example.w.eazegraphclone.utils.ArrayUtils;
+import com.example.w.eazegraphclone.utils.TextMeasurer;
 import com.example.w.eazegraphclone.utils.Utils;
 
 import java.util.List;
@@ -31,6 +41,10 @@ public abstract class BaseBarChart extends BaseChart {
     public static final boolean DEF_FIXED_BAR_WIDTH     = false;
     public static final float   DEF_BAR_MARGIN          = 12.f;
     public static final int     DEF_VISIBLE_BARS        = 6;
+    public static final float   DEF_MAX_ZOOM            = 8.f;
+
+    protected static final int  LAYER_GRAPH             = 0;
+    protected static final int  LAYER_LEGEND            = 1;
 
     /**
      * The current viewport. This rectangle represents the currently visible chart domain
@@ -54,8 +68,33 @@ public abstract class BaseBarChart extends BaseChart {
      */
     protected Rect mContentRect = new Rect();
 
+    /**
+     * Left edges of all bars in content coordinates. The bars are laid out from left to right, so
+     * this array is always sorted ascending and can be binary searched to find the bars which
+     * intersect {@link #mCurrentViewport}. Only the first {@link #mBarCount} entries are valid.
+     */
+    protected float[] mBarLefts = new float[0];
+    protected int     mBarCount;
+
+    /**
+     * The bar width which was used in the last {@link #calculateBounds(float, float)} call.
+     */
+    protected float   mCalculatedBarWidth;
+
+    /**
+     * The bar margin which was used in the last {@link #calculateBounds(float, float)} call.
+     */
+    protected float   mCalculatedBarMargin;
+
+    /**
+     * The widest legend label of the last layout pass. Used to widen the culling range of the
+     * legend, because a centered label can overhang its bar.
+     */
+    protected float   mMaxLegendLabelWidth;
+
     protected Paint           mGraphPaint;
     protected Paint           mLegendPaint;
+    protected TextMeasurer    mLegendMeasurer;
 
     protected float           mBarWidth;
     protected boolean         mFixedBarWidth;
@@ -65,6 +104,38 @@ public abstract class BaseBarChart extends BaseChart {
     protected int             mVisibleBars;
     protected boolean         mShowValues;
 
+    /**
+     * Horizontal zoom factor of the viewport. The layout is always calculated for a zoom of 1, the
+     * child classes multiply the x coordinates with this factor while drawing.
+     */
+    protected float           mZoom = 1.f;
+    protected float           mMaxZoom = DEF_MAX_ZOOM;
+
+    /**
+     * Renders the graph and legend into cached bitmap tiles, null if tile rendering is disabled.
+     */
+    private TileRenderer<TileState> mTileRenderer;
+    private int                     mTileMemoryBudget = TileRenderer.DEF_MEMORY_BUDGET;
+
+    private GestureDetector         mGestureDetector;
+    private ScaleGestureDetector    mScaleGestureDetector;
+    private OverScroller            mScroller;
+
+    /**
+     * Advances a running fling by one frame. Scrolling only moves the viewport, so no relayout
+     * happens and nothing is allocated per frame.
+     */
+    private final Runnable          mFlingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mScroller.computeScrollOffset()) {
+                setViewportLeft(mScroller.getCurrX() / mZoom);
+                invalidateGlobal();
+                ViewCompat.postOnAnimation(BaseBarChart.this, this);
+            }
+        }
+    };
+
     public BaseBarChart(Context context) {
         super(context);
 
@@ -99,7 +170,8 @@ public abstract class BaseBarChart extends BaseChart {
     }
     public void setBarWidth(float _barWidth) {
         mBarWidth = _barWidth;
-        onDataChanged();
+        invalidateLayout();
+        requestRelayout();
     }
 
     /**
@@ -116,7 +188,8 @@ public abstract class BaseBarChart extends BaseChart {
      */
     public void setFixedBarWidth(boolean _fixedBarWidth) {
         mFixedBarWidth = _fixedBarWidth;
-        onDataChanged();
+        invalidateLayout();
+        requestRelayout();
     }
 
     /**
@@ -133,7 +206,8 @@ public abstract class BaseBarChart extends BaseChart {
      */
     public void setBarMargin(float _barMargin) {
         mBarMargin = _barMargin;
-        onDataChanged();
+        invalidateLayout();
+        requestRelayout();
     }
 
     public int getVisibleBars() {
@@ -142,7 +216,45 @@ public abstract class BaseBarChart extends BaseChart {
 
     public void setVisibleBars(int _visibleBars) {
         mVisibleBars = _visibleBars;
-        onDataChanged();
+        invalidateLayout();
+        requestRelayout();
+    }
+
+    /**
+     * Returns the current horizontal zoom factor.
+     * @return Zoom factor, 1 means that the bars have their calculated width.
+     */
+    public float getZoom() {
+        return mZoom;
+    }
+
+    /**
+     * Zooms the viewport around its center. The value is clamped between the zoom which shows all
+     * bars at once and {@link #getMaxZoom()}.
+     * @param _zoom The new zoom factor
+     */
+    public void setZoom(float _zoom) {
+        zoomAround(_zoom, mGraphWidth / 2.f);
+        invalidateGlobal();
+    }
+
+    public float getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    public void setMaxZoom(float _maxZoom) {
+        mMaxZoom = _maxZoom;
+        setZoom(mZoom);
+    }
+
+    /**
+     * Scrolls the viewport so that its left edge is at the given content position.
+     * @param _x Left edge of the viewport in px at a zoom of 1
+     */
+    public void scrollToPosition(float _x) {
+        mScroller.forceFinished(true);
+        setViewportLeft(_x);
+        invalidateGlobal();
     }
 
     /**
@@ -151,6 +263,7 @@ public abstract class BaseBarChart extends BaseChart {
      */
     public void setShowValues(boolean _showValues) {
         mShowValues = _showValues;
+        invalidateTiles();
         invalidateGlobal();
     }
 
@@ -162,11 +275,74 @@ public abstract class BaseBarChart extends BaseChart {
         return mShowValues;
     }
 
+    /**
+     * Returns if the graph and legend are drawn from pre-rendered bitmap tiles.
+     * @return True if tile rendering is enabled.
+     */
+    public boolean isTileRenderingEnabled() {
+        return mTileRenderer != null;
+    }
+
+    /**
+     * Enables rendering the graph and legend into fixed-width bitmap tiles on a background thread.
+     * Scrolling and redraws without a data change then only draw the cached bitmaps, which pays off
+     * for large charts whose data rarely changes, e.g. in a scrolling list.
+     * @param _enabled True to enable tile rendering.
+     */
+    public void setTileRenderingEnabled(boolean _enabled) {
+        if (_enabled == isTileRenderingEnabled()) {
+            return;
+        }
+
+        if (_enabled) {
+            mTileRenderer = new TileRenderer<TileState>(mTilePainter);
+            mTileRenderer.setMemoryBudget(mTileMemoryBudget);
+        } else {
+            mTileRenderer.release();
+            mTileRenderer = null;
+        }
+        invalidateGlobal();
+    }
+
+    public int getTileMemoryBudget() {
+        return mTileMemoryBudget;
+    }
+
+    /**
+     * Sets the amount of memory the cached tiles may use. The least recently drawn tiles are evicted
+     * when the budget is exceeded.
+     * @param _bytes Memory budget in bytes
+     */
+    public void setTileMemoryBudget(int _bytes) {
+        mTileMemoryBudget = _bytes;
+        if (mTileRenderer != null) {
+            mTileRenderer.setMemoryBudget(_bytes);
+        }
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mTileRenderer != null) {
+            // the tiles are rendered again when the chart is attached and drawn the next time
+            mTileRenderer.release();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = mScaleGestureDetector.onTouchEvent(event);
+        if (!mScaleGestureDetector.isInProgress()) {
+            handled |= mGestureDetector.onTouchEvent(event);
+        }
+        return handled || super.onTouchEvent(event);
+    }
+
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
 
@@ -179,11 +355,19 @@ public abstract class BaseBarChart extends BaseChart {
         // availableScreenSize to the chartHeight
         mAvailableScreenSize = mGraphWidth;
 
-        if(getData().size() > 0) {
+        if(getDataSize() > 0) {
             onDataChanged();
         }
     }
 
+    @Override
+    protected void onStyleChanged(ChartStyle _Style) {
+        // the painters keep the paints, so the paints are set up again instead of replaced
+        mLegendPaint.set(_Style.getLegendPaint());
+        mLegendMeasurer = _Style.getLegendMeasurer();
+        mMaxFontHeight = _Style.getMaxLegendFontHeight();
+    }
+
     /**
      * This is the main entry point after the graph has been inflated. Used to initialize the graph
      * and its corresponding members.
@@ -192,16 +376,59 @@ public abstract class BaseBarChart extends BaseChart {
     protected void initializeGraph() {
         super.initializeGraph();
 
-        mGraphPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mGraphPaint.setStyle(Paint.Style.FILL);
+        // the paints are changed while drawing, so the chart draws with copies of the shared prototypes
+        mGraphPaint = new Paint(mStyle.getGraphPaint());
+        mLegendPaint = new Paint(mStyle.getLegendPaint());
+        mLegendMeasurer = mStyle.getLegendMeasurer();
+        mMaxFontHeight = mStyle.getMaxLegendFontHeight();
+
+        mScroller = new OverScroller(getContext());
+        mGestureDetector = new GestureDetector(getContext(), new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                mScroller.forceFinished(true);
+                return true;
+            }
+
+            @Override
+            public boolean onSingleTapUp(MotionEvent e) {
+                // view coordinates to content coordinates of the graph
+                float x = (e.getX() - mLeftPadding) / mZoom + mCurrentViewport.left;
+                float y = e.getY() - mTopPadding + mCurrentViewport.top;
+                onGraphTapped(x, y);
+                return performClick();
+            }
 
-        mLegendPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.LINEAR_TEXT_FLAG);
-        mLegendPaint.setColor(mLegendColor);
-        mLegendPaint.setTextSize(mLegendTextSize);
-        mLegendPaint.setStrokeWidth(2);
-        mLegendPaint.setStyle(Paint.Style.FILL);
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                setViewportLeft(mCurrentViewport.left + distanceX / mZoom);
+                invalidateGlobal();
+
+                // a scrolling parent should not steal the gesture while the chart scrolls
+                ViewParent parent = getParent();
+                if (parent != null) {
+                    parent.requestDisallowInterceptTouchEvent(true);
+                }
+                return true;
+            }
 
-        mMaxFontHeight = Utils.calculateMaxTextHeight(mLegendPaint, null);
+            @Override
+            public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+                int maxScroll = (int) Math.max(0, mContentRect.width() * mZoom - mGraphWidth);
+                mScroller.forceFinished(true);
+                mScroller.fling((int) (mCurrentViewport.left * mZoom), 0, (int) -velocityX, 0, 0, maxScroll, 0, 0);
+                ViewCompat.postOnAnimation(BaseBarChart.this, mFlingRunnable);
+                return true;
+            }
+        });
+        mScaleGestureDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoomAround(mZoom * detector.getScaleFactor(), detector.getFocusX() - mLeftPadding);
+                invalidateGlobal();
+                return true;
+            }
+        });
 
     }
 
@@ -210,39 +437,98 @@ public abstract class BaseBarChart extends BaseChart {
      * @param _DataSize Amount of data sets
      */
     protected void calculateBarPositions(int _DataSize) {
+        if (_DataSize == 0) {
+            // nothing to lay out, a deferred relayout might run after the data was cleared
+            mBarCount = 0;
+            mLegend.invalidate();
+            mGraph.invalidate();
+            return;
+        }
+
         // _DataSize는 StackedBarChart의 갯수를 의미한다.
-        int   dataSize = _DataSize;
-        float barWidth = mBarWidth;
-        float margin   = mBarMargin;
+        float barWidth = BarLayoutConfig.calculateBarWidth(mAvailableScreenSize, _DataSize, mBarWidth, mBarMargin, mFixedBarWidth);
+        float margin   = BarLayoutConfig.calculateBarMargin(mAvailableScreenSize, _DataSize, mBarWidth, mBarMargin, mFixedBarWidth, mVisibleBars);
 
-        if (!mFixedBarWidth) {
-            // calculate the bar width if the bars should be dynamically displayed
-            barWidth = (mAvailableScreenSize / _DataSize) - margin;
-        } else {
+        // barWidth에 _DataSize를 곱한 값과 margin에 _DataSize 곱한 값을 더한다. 따라서 contentWidth는 모든 ???
+        int calculatedSize = (int) ((barWidth * _DataSize) + (margin * _DataSize));
+        int contentWidth   = calculatedSize;
+        int contentHeight  = mGraphHeight;
 
-            if(_DataSize < mVisibleBars) {
-                dataSize = _DataSize;
-            }
+        // the existing rects are updated in place to avoid allocations during relayout
+        mContentRect.set(0, 0, contentWidth, contentHeight);
+        // the scroll position is kept over relayouts, it is only clamped to the new content
+        mZoom = clampZoom(mZoom);
+        setViewportLeft(mCurrentViewport.left);
 
-            // calculate margin between bars if the bars have a fixed width
-            // cumulatedBarWidths는 바의 넓이와 바의 갯수를 곱한 값이다.
-            float cumulatedBarWidths = barWidth * dataSize;
-            // remainingScreenSize는 총 스크린 넓이에서 그려진 바의 총 넓이를 빼고 남은 영역이다.
-            float remainingScreenSize = mAvailableScreenSize - cumulatedBarWidths;
+        // a full pass is only needed if the geometry of every bar changed
+        boolean fullLayout = !isLayoutValid() || barWidth != mCalculatedBarWidth || margin != mCalculatedBarMargin;
 
-            // 남은 영역들을 StackedBar의 갯수만큼 쪼갠다.
-            margin = remainingScreenSize / dataSize;
+        mCalculatedBarWidth  = barWidth;
+        mCalculatedBarMargin = margin;
+        if (fullLayout) {
+            calculateBounds(barWidth, margin);
+            onLayoutValidated();
+        } else {
+            updateBounds(barWidth, margin);
         }
+        invalidateTiles();
+        mLegend.invalidate();
+        mGraph.invalidate();
+    }
 
-        // barWidth에 _DataSize를 곱한 값과 margin에 _DataSize 곱한 값을 더한다. 따라서 contentWidth는 모든 ???
-        int calculatedSize = (int) ((barWidth * _DataSize) + (margin * _DataSize));
-        int contentWidth   = calculatedSize;
-        int contentHeight  = mGraphHeight;
+    @Override
+    protected void invalidateLayout() {
+        super.invalidateLayout();
+        invalidateTiles();
+    }
 
-        mContentRect       = new Rect(0, 0, contentWidth, contentHeight);
-        mCurrentViewport   = new RectF(0, 0, mGraphWidth, mGraphHeight);
+    /**
+     * Drops the pre-rendered tiles. Has to be called whenever something changes what the graph or
+     * the legend draws, without a relayout.
+     */
+    protected void invalidateTiles() {
+        if (mTileRenderer != null) {
+            mTileRenderer.invalidate();
+        }
+    }
 
-        calculateBounds(barWidth, margin);
+    /**
+     * Runs a task after the tiles which are rendered meanwhile, e.g. to release a layout which they
+     * might still draw. Without tile rendering the task runs right away.
+     * @param _Task The task, which may run on the tile thread
+     */
+    protected void runAfterTileRenders(Runnable _Task) {
+        if (mTileRenderer != null) {
+            mTileRenderer.runAfterRenders(_Task);
+        } else {
+            _Task.run();
+        }
+    }
+
+    /**
+     * Applies a layout which was calculated outside of {@link #calculateBarPositions(int)}, e.g. on a
+     * background thread, and redraws the chart.
+     * @param _BarCount             Amount of bars
+     * @param _BarLefts             Left edges of the bars, sorted ascending. The array is kept, so it must
+     *                              not be modified afterwards.
+     * @param _Width                Calculated bar width
+     * @param _Margin               Calculated bar margin
+     * @param _ContentWidth         Width of all bars together
+     * @param _MaxLegendLabelWidth  Width of the widest legend label
+     */
+    protected void applyBarLayout(int _BarCount, float[] _BarLefts, float _Width, float _Margin,
+                                  int _ContentWidth, float _MaxLegendLabelWidth) {
+        mBarLefts            = _BarLefts;
+        mBarCount            = _BarCount;
+        mCalculatedBarWidth  = _Width;
+        mCalculatedBarMargin = _Margin;
+        mMaxLegendLabelWidth = _MaxLegendLabelWidth;
+
+        mContentRect.set(0, 0, _ContentWidth, mGraphHeight);
+        mZoom = clampZoom(mZoom);
+        setViewportLeft(mCurrentViewport.left);
+
+        invalidateTiles();
         mLegend.invalidate();
         mGraph.invalidate();
     }
@@ -255,10 +541,25 @@ public abstract class BaseBarChart extends BaseChart {
     protected abstract void calculateBounds(float _Width, float _Margin);
 
     /**
-     * Callback method for drawing the bars in the child classes.
-     * @param _Canvas The canvas object of the graph view.
+     * Recalculates the bar boundaries after a data change, when the bar width and margin stayed the
+     * same. Child classes which know which bars changed can override this to only update those.
+     * The default implementation runs a full {@link #calculateBounds(float, float)}.
+     * @param _Width    Calculated bar width
+     * @param _Margin   Calculated bar margin
+     */
+    protected void updateBounds(float _Width, float _Margin) {
+        calculateBounds(_Width, _Margin);
+    }
+
+    /**
+     * Callback method for drawing the bars in the child classes. Only the bars within the given
+     * range intersect the current viewport and have to be drawn. The canvas is already translated
+     * to the viewport, the x coordinates of the bars have to be multiplied with {@link #mZoom}.
+     * @param _Canvas       The canvas object of the graph view.
+     * @param _FirstIndex   Index of the first visible bar (inclusive)
+     * @param _LastIndex    Index of the last visible bar (exclusive)
      */
-    protected abstract void drawBars(Canvas _Canvas);
+    protected abstract void drawBars(Canvas _Canvas, int _FirstIndex, int _LastIndex);
 
     /**
      * Returns the list of data sets which hold the information about the legend boundaries and text.
@@ -268,6 +569,90 @@ public abstract class BaseBarChart extends BaseChart {
 
     protected abstract List<RectF> getBarBounds();
 
+    /**
+     * Moves the viewport to the given left edge, clamped to the content area.
+     * @param _Left Left edge of the viewport in content coordinates
+     */
+    protected void setViewportLeft(float _Left) {
+        float width = mGraphWidth / mZoom;
+        float maxLeft = Math.max(0, mContentRect.width() - width);
+        float left = Math.max(0, Math.min(_Left, maxLeft));
+        mCurrentViewport.set(left, 0, left + width, mGraphHeight);
+    }
+
+    /**
+     * Stops a running fling and moves the viewport back to the start at a zoom of 1, e.g. when the
+     * chart is bound to other data.
+     */
+    protected void resetViewport() {
+        mScroller.forceFinished(true);
+        mZoom = clampZoom(1.f);
+        setViewportLeft(0);
+    }
+
+    /**
+     * Changes the zoom factor and keeps the content under the focus point at the same position.
+     * @param _Zoom   The new zoom factor
+     * @param _FocusX Focus point in graph view coordinates
+     */
+    private void zoomAround(float _Zoom, float _FocusX) {
+        float focus = mCurrentViewport.left + _FocusX / mZoom;
+        mZoom = clampZoom(_Zoom);
+        setViewportLeft(focus - _FocusX / mZoom);
+    }
+
+    private float clampZoom(float _Zoom) {
+        // the smallest zoom shows the whole content at once
+        float minZoom = mContentRect.width() > mGraphWidth ? (float) mGraphWidth / mContentRect.width() : 1.f;
+        return Math.max(minZoom, Math.min(_Zoom, Math.max(minZoom, mMaxZoom)));
+    }
+
+    /**
+     * Returns the x position of a label in zoomed coordinates. The label stays centered on the same
+     * content position, but keeps its unzoomed text width.
+     * @param _Position Label position at a zoom of 1
+     * @param _Width    Width of the label text
+     * @return Label position at the current zoom
+     */
+    protected float getZoomedLabelPosition(float _Position, float _Width) {
+        return (_Position + _Width / 2) * mZoom - _Width / 2;
+    }
+
+    /**
+     * Returns the index of the first bar which reaches into the horizontal range starting at _Left.
+     * @param _Left Left edge of the range in content coordinates
+     * @return Index of the first bar whose right edge is at or after _Left
+     */
+    protected int getFirstVisibleBar(float _Left) {
+        return ArrayUtils.lowerBound(mBarLefts, mBarCount, _Left - mCalculatedBarWidth);
+    }
+
+    /**
+     * Called when the user taps the chart, before the click listener is informed.
+     * @param _X Horizontal position in content coordinates, independent of zoom and scroll position
+     * @param _Y Vertical position in the graph
+     */
+    protected void onGraphTapped(float _X, float _Y) {
+    }
+
+    /**
+     * Returns whether the bars are currently animated. The graph is drawn without tiles while an
+     * animation is running.
+     * @return True if an animation is running.
+     */
+    protected boolean isAnimating() {
+        return false;
+    }
+
+    /**
+     * Returns the index after the last bar which reaches into the horizontal range ending at _Right.
+     * @param _Right Right edge of the range in content coordinates
+     * @return Index after the last bar whose left edge is at or before _Right
+     */
+    protected int getLastVisibleBar(float _Right) {
+        return ArrayUtils.upperBound(mBarLefts, mBarCount, _Right);
+    }
+
     // ---------------------------------------------------------------------------------------------
     //                          Override methods from view layers
     // ---------------------------------------------------------------------------------------------
@@ -276,21 +661,178 @@ public abstract class BaseBarChart extends BaseChart {
     @Override
     protected void onGraphDraw(Canvas _Canvas) {
         super.onGraphDraw(_Canvas);
-        _Canvas.translate(-mCurrentViewport.left, -mCurrentViewport.top);
+        // the tiles would be stale after every frame of an animation, so it is drawn directly
+        if (mTileRenderer != null && !isAnimating()) {
+            drawTiles(_Canvas, LAYER_GRAPH, mGraphWidth, mGraphHeight);
+            return;
+        }
+
+        _Canvas.translate(-mCurrentViewport.left * mZoom, -mCurrentViewport.top);
         // 실제로 Bar를 그리는 것은 StackedBarChart이다.
-        drawBars(_Canvas);
+        drawBars(_Canvas, getFirstVisibleBar(mCurrentViewport.left), getLastVisibleBar(mCurrentViewport.right));
     }
 
     @Override
     protected void onLegendDraw(Canvas _Canvas) {
         super.onLegendDraw(_Canvas);
+        if (mTileRenderer != null) {
+            drawTiles(_Canvas, LAYER_LEGEND, (int) mLegendWidth, (int) mLegendHeight);
+            return;
+        }
+
+        _Canvas.translate(-mCurrentViewport.left * mZoom, 0);
+        drawLegendRange(_Canvas, mCurrentViewport.left, mCurrentViewport.right);
+    }
+
+    /**
+     * Draws the visible tiles of a layer and reports the tile cache lookups to the metrics.
+     */
+    private void drawTiles(Canvas _Canvas, int _Layer, int _Width, int _Height) {
+        ChartMetrics metrics = getMetrics();
+        long hits   = metrics != null ? mTileRenderer.getHitCount() : 0;
+        long misses = metrics != null ? mTileRenderer.getMissCount() : 0;
+
+        mTileRenderer.draw(_Canvas, _Layer, mCurrentViewport.left * mZoom, _Width, _Height, mZoom);
+
+        if (metrics != null) {
+            metrics.onCacheAccess(ChartMetrics.CACHE_TILE, mTileRenderer.getHitCount() - hits, mTileRenderer.getMissCount() - misses);
+        }
+    }
+
+    /**
+     * Draws the legend labels which reach into the given range.
+     * @param _Canvas   The canvas object of the legend view, translated to the content origin.
+     * @param _Left     Left edge of the range in content coordinates
+     * @param _Right    Right edge of the range in content coordinates
+     */
+    private void drawLegendRange(Canvas _Canvas, float _Left, float _Right) {
+        // labels are centered on their bar and may overhang it, so the range is widened by half a
+        // label. The labels are not zoomed, so in content coordinates they get wider when zoomed out.
+        float overhang = mMaxLegendLabelWidth / 2 / mZoom;
+        drawLegend(_Canvas, getFirstVisibleBar(_Left - overhang), getLastVisibleBar(_Right + overhang));
+    }
+
+    /**
+     * Everything a tile draws, captured on the UI thread when the tile is requested. The tile thread
+     * only draws from it, so it never reads fields which the UI thread changes meanwhile. Child
+     * classes add their own state in {@link #captureTile(int, float, boolean)}.
+     */
+    protected static class TileState {
+        protected final int     mLayer;
+        protected final float   mZoom;
+        // true if the tile is drawn on the tile thread, which must not use the paints of the UI thread
+        protected final boolean mBackground;
+
+        // the bar geometry of the last applyBarLayout() call, its array is kept until the queued tiles are rendered
+        protected final float[] mBarLefts;
+        protected final int     mBarCount;
+        protected final float   mBarWidth;
+        protected final float   mBarMargin;
+        protected final float   mMaxLegendLabelWidth;
+
+        protected TileState(BaseBarChart _Chart, int _Layer, float _Zoom, boolean _Background) {
+            mLayer               = _Layer;
+            mZoom                = _Zoom;
+            mBackground          = _Background;
+            mBarLefts            = _Chart.mBarLefts;
+            mBarCount            = _Chart.mBarCount;
+            mBarWidth            = _Chart.mCalculatedBarWidth;
+            mBarMargin           = _Chart.mCalculatedBarMargin;
+            mMaxLegendLabelWidth = _Chart.mMaxLegendLabelWidth;
+        }
 
-        _Canvas.translate(-mCurrentViewport.left, 0);
+        /**
+         * @see BaseBarChart#getFirstVisibleBar(float)
+         */
+        protected int getFirstVisibleBar(float _Left) {
+            return ArrayUtils.lowerBound(mBarLefts, mBarCount, _Left - mBarWidth);
+        }
+
+        /**
+         * @see BaseBarChart#getLastVisibleBar(float)
+         */
+        protected int getLastVisibleBar(float _Right) {
+            return ArrayUtils.upperBound(mBarLefts, mBarCount, _Right);
+        }
+    }
+
+    /**
+     * Captures the state which a tile is drawn from. Is called on the UI thread when a tile is
+     * requested or drawn directly. Child classes which draw more than the bar geometry return a
+     * subclass of {@link TileState}.
+     * @param _Layer      {@link #LAYER_GRAPH} or {@link #LAYER_LEGEND}
+     * @param _Zoom       The zoom of the tile
+     * @param _Background True if the tile is drawn on the tile thread
+     * @return The state
+     */
+    protected TileState captureTile(int _Layer, float _Zoom, boolean _Background) {
+        return new TileState(this, _Layer, _Zoom, _Background);
+    }
+
+    /**
+     * Draws the bars or the legend labels of a range of bars into a tile. Must only draw from the
+     * captured state, and with paints of the tile thread if {@link TileState#mBackground} is set.
+     * @param _Canvas       Canvas of the tile, translated to the content origin
+     * @param _State        The state which was captured for the tile
+     * @param _FirstIndex   Index of the first bar (inclusive)
+     * @param _LastIndex    Index of the last bar (exclusive)
+     */
+    protected abstract void drawTile(Canvas _Canvas, TileState _State, int _FirstIndex, int _LastIndex);
+
+    /**
+     * Draws the tiles of the graph and the legend, on the tile thread or for a missing tile on the
+     * UI thread.
+     */
+    private final TileRenderer.Painter<TileState> mTilePainter = new TileRenderer.Painter<TileState>() {
+        @Override
+        public TileState captureTile(int _Layer, float _Zoom, boolean _Background) {
+            return BaseBarChart.this.captureTile(_Layer, _Zoom, _Background);
+        }
+
+        @Override
+        public void paintTile(Canvas _Canvas, TileState _State, float _Left, float _Right) {
+            _Canvas.translate(-_Left, 0);
+
+            float left  = _Left / _State.mZoom;
+            float right = _Right / _State.mZoom;
+            if (_State.mLayer == LAYER_GRAPH) {
+                // the value texts of the neighbour bars may reach into the tile
+                float spacing = _State.mBarWidth + _State.mBarMargin;
+                drawTile(_Canvas, _State, _State.getFirstVisibleBar(left - spacing), _State.getLastVisibleBar(right + spacing));
+            } else {
+                // see drawLegendRange()
+                float overhang = _State.mMaxLegendLabelWidth / 2 / _State.mZoom;
+                drawTile(_Canvas, _State, _State.getFirstVisibleBar(left - overhang), _State.getLastVisibleBar(right + overhang));
+            }
+        }
+
+        @Override
+        public void onTileReady(int _Layer) {
+            if (_Layer == LAYER_GRAPH) {
+                invalidateGraph();
+            } else {
+                invalidateLegend();
+            }
+        }
+    };
+
+    /**
+     * Draws the legend labels of the given range of bars. The default implementation draws the
+     * labels of the {@link #getLegendData()} models.
+     * @param _Canvas       The canvas object of the legend view.
+     * @param _FirstIndex   Index of the first visible bar (inclusive)
+     * @param _LastIndex    Index of the last visible bar (exclusive)
+     */
+    protected void drawLegend(Canvas _Canvas, int _FirstIndex, int _LastIndex) {
+        List<? extends BaseModel> legendData = getLegendData();
+        int last = Math.min(_LastIndex, legendData.size());
 
-        for (BaseModel model : getLegendData()) {
+        for (int i = _FirstIndex; i < last; i++) {
+            BaseModel model = legendData.get(i);
             if(model.canShowLabel()) {
                 RectF bounds = model.getLegendBounds();
-                _Canvas.drawText(model.getLegendLabel(), model.getLegendLabelPosition(), bounds.bottom - mMaxFontHeight, mLegendPaint);
+                float x = getZoomedLabelPosition(model.getLegendLabelPosition(), model.getTextBounds().width());
+                _Canvas.drawText(model.getLegendLabel(), x, bounds.bottom - mMaxFontHeight, mLegendPaint);
 //                _Canvas.drawLine(
 //                        bounds.centerX(),
 //                        bounds.bottom - mMaxFontHeight * 2 - mLegendTopPadding,
@@ -22,6 +22,7 @@ import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.os.Build;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
@@ -29,7 +30,9 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.example.w.eazegraphclone.R;
+import com.example.w.eazegraphclone.metrics.ChartMetrics;
 import com.example.w.eazegraphclone.models.BaseModel;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
 import com.example.w.eazegraphclone.utils.Utils;
 
 import java.text.NumberFormat;
@@ -82,6 +85,35 @@ public abstract class BaseChart extends ViewGroup {
 
     protected boolean           mShowDecimal;
 
+    // shared paints and font metrics of the text sizes and legend color, null until initializeGraph()
+    protected ChartStyle        mStyle;
+
+    /**
+     * Text measurements of the legend and value labels, shared by all layout passes of the chart.
+     */
+    protected final TextMeasureCache mTextMeasureCache = new TextMeasureCache();
+
+    // null if nothing is measured, read by the layout and tile threads
+    private volatile ChartMetrics mMetrics;
+
+    // false if settings or dimensions changed, which makes a full layout pass necessary
+    private boolean             mLayoutValid;
+
+    // nesting depth of beginUpdate() / endUpdate() calls
+    private int                 mUpdateDepth;
+    // true if a relayout was requested while an update was in progress
+    private boolean             mRelayoutPending;
+    // true if a relayout is already posted for the next animation frame
+    private boolean             mRelayoutScheduled;
+
+    private final Runnable      mRelayoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mRelayoutScheduled = false;
+            onDataChanged();
+        }
+    };
+
     protected BaseChart(Context context) {
         super(context);
 
@@ -134,9 +166,10 @@ public abstract class BaseChart extends ViewGroup {
      */
     public void setLegendHeight(float _legendHeight) {
         mLegendHeight = Utils.dpToPx(_legendHeight);
+        invalidateLayout();
 
-        if(getData().size() > 0)
-            onDataChanged();
+        if(getDataSize() > 0)
+            requestRelayout();
     }
 
     /**
@@ -153,6 +186,7 @@ public abstract class BaseChart extends ViewGroup {
      */
     public void setLegendTextSize(float _legendTextSize) {
         mLegendTextSize = Utils.dpToPx(_legendTextSize);
+        updateStyle();
     }
 
     public boolean isShowDecimal() {
@@ -169,6 +203,7 @@ public abstract class BaseChart extends ViewGroup {
     }
     public void setLegendColor(int _legendColor) {
         mLegendColor = _legendColor;
+        updateStyle();
     }
 
     public String getEmptyDataText() {
@@ -178,6 +213,28 @@ public abstract class BaseChart extends ViewGroup {
         mEmptyDataText = _emptyDataText;
     }
 
+    /**
+     * Returns the cache of the text measurements, e.g. to read its hit and miss counters.
+     * @return The text measurement cache of the chart.
+     */
+    public TextMeasureCache getTextMeasureCache() {
+        return mTextMeasureCache;
+    }
+
+    /**
+     * Sets the metrics which receive the layout and draw timings and the cache counters of the chart.
+     * Without metrics, the chart does not measure anything.
+     * @param _Metrics The metrics, e.g. a {@link com.example.w.eazegraphclone.metrics.HistogramChartMetrics},
+     *                 or null to stop measuring.
+     */
+    public void setMetrics(ChartMetrics _Metrics) {
+        mMetrics = _Metrics;
+    }
+
+    public ChartMetrics getMetrics() {
+        return mMetrics;
+    }
+
     /**
      * View를 Reload하며 모든 것이 다시 그려진다.
      */
@@ -191,11 +248,44 @@ public abstract class BaseChart extends ViewGroup {
      */
     public abstract List<? extends BaseModel> getData();
 
+    /**
+     * Returns the amount of data sets in the chart. Charts which keep their data in another form than
+     * the {@link #getData()} list should override this.
+     * @return Amount of data sets
+     */
+    protected int getDataSize() {
+        return getData().size();
+    }
+
     /**
      * Data object를 리셋하고 지운다.
      */
     public abstract void clearChart();
 
+    /**
+     * Starts a batch of data or setting changes. Every relayout which is requested until the matching
+     * {@link #endUpdate()} call is collected and executed only once. Calls can be nested.
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    /**
+     * Ends a batch of changes which was started with {@link #beginUpdate()}. If any change requested
+     * a relayout, a single relayout is scheduled for the next animation frame.
+     */
+    public void endUpdate() {
+        if (mUpdateDepth == 0) {
+            throw new IllegalStateException("endUpdate() called without a matching beginUpdate()");
+        }
+
+        mUpdateDepth--;
+        if (mUpdateDepth == 0 && mRelayoutPending) {
+            mRelayoutPending = false;
+            requestRelayout();
+        }
+    }
+
     /**
      * Should be called when the dataset changed and the graph should update and redraw.
      * Graph implementations might overwrite this method to do more work than just call onDataChanged()
@@ -210,6 +300,7 @@ public abstract class BaseChart extends ViewGroup {
 
         mWidth = w;
         mHeight = h;
+        invalidateLayout();
 
         mLeftPadding    = getPaddingLeft();
         mTopPadding     = getPaddingTop();
@@ -235,12 +326,90 @@ public abstract class BaseChart extends ViewGroup {
 
         mLegend = new Legend(getContext());
         addView(mLegend);
+
+        mStyle = obtainStyle();
+    }
+
+    /**
+     * Returns the shared style of the current text sizes and legend color.
+     * @return The style from the {@link ChartStyle} registry
+     */
+    protected ChartStyle obtainStyle() {
+        return ChartStyle.obtain(mLegendTextSize, mLegendColor, mLegendTextSize);
+    }
+
+    /**
+     * Switches to the style of the current settings after a text size or the legend color changed,
+     * and lays out the chart again.
+     */
+    protected void updateStyle() {
+        if (mStyle == null) {
+            return;
+        }
+        ChartStyle style = obtainStyle();
+        if (style != mStyle) {
+            mStyle = style;
+            onStyleChanged(style);
+            invalidateLayout();
+            requestRelayout();
+        }
+    }
+
+    /**
+     * Called when the chart got a new style. The paints of the chart should be set up from it.
+     * @param _Style The new style
+     */
+    protected void onStyleChanged(ChartStyle _Style) {
+    }
+
+    /**
+     * Requests a relayout of the chart. The relayout is coalesced and executed once on the next
+     * animation frame, or after the outermost {@link #endUpdate()} if an update is in progress.
+     */
+    protected void requestRelayout() {
+        if (mUpdateDepth > 0) {
+            mRelayoutPending = true;
+            return;
+        }
+
+        if (!mRelayoutScheduled) {
+            mRelayoutScheduled = true;
+            ViewCompat.postOnAnimation(this, mRelayoutRunnable);
+        }
+    }
+
+    /**
+     * Marks the current layout as invalid, so the next relayout recalculates everything instead of
+     * only the changed data. Has to be called whenever a setting changes the geometry of all items.
+     */
+    protected void invalidateLayout() {
+        mLayoutValid = false;
+    }
+
+    /**
+     * Returns whether the last layout pass is still valid for the current settings and dimensions.
+     * @return False if a full layout pass is necessary.
+     */
+    protected boolean isLayoutValid() {
+        return mLayoutValid;
+    }
+
+    /**
+     * Should be called by the child classes after a full layout pass.
+     */
+    protected void onLayoutValidated() {
+        mLayoutValid = true;
     }
 
     /**
      * 새로운 데이타가 삽입되었을 때. 그리고 View의 Dimension이 변경되었을 때 자동으로 호출된다.
      */
     protected void onDataChanged() {
+        // a scheduled relayout is obsolete now
+        if (mRelayoutScheduled) {
+            mRelayoutScheduled = false;
+            removeCallbacks(mRelayoutRunnable);
+        }
         invalidateGlobal();
     }
 
@@ -303,7 +472,13 @@ public abstract class BaseChart extends ViewGroup {
                 //mTransform.preRotate(mRotation, mPivot.x, mPivot.y);
                 canvas.setMatrix(mTransform);
             }
+
+            ChartMetrics metrics = mMetrics;
+            long start = metrics != null ? System.nanoTime() : 0;
             onGraphDraw(canvas);
+            if (metrics != null) {
+                metrics.onDraw(ChartMetrics.LAYER_GRAPH, System.nanoTime() - start);
+            }
         }
         @Override
         protected void onSizeChanged(int w, int h, int oldw, int oldh) {
@@ -335,7 +510,13 @@ public abstract class BaseChart extends ViewGroup {
         @Override
         protected void onDraw(Canvas canvas) {
             super.onDraw(canvas);
+
+            ChartMetrics metrics = mMetrics;
+            long start = metrics != null ? System.nanoTime() : 0;
             onLegendDraw(canvas);
+            if (metrics != null) {
+                metrics.onDraw(ChartMetrics.LAYER_LEGEND, System.nanoTime() - start);
+            }
         }
         @Override
         protected void onSizeChanged(int w, int h, int oldw, int oldh) {
@@ -0,0 +1,120 @@
+package com.example.w.eazegraphclone.charts;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Keeps released bitmaps, so rendering many bitmaps of the same size does not allocate a new
+ * bitmap for each of them. The pooled bitmaps are kept under a memory budget; when a released
+ * bitmap exceeds it, the least recently released ones are recycled.
+ * <p>
+ * The pool is thread safe, bitmaps can be acquired on worker threads and released on the UI thread.
+ */
+public class BitmapPool {
+
+    public static final int DEF_MEMORY_BUDGET = 4 * 1024 * 1024;
+
+    // the least recently released bitmap first
+    private final ArrayDeque<Bitmap> mBitmaps = new ArrayDeque<Bitmap>();
+    private final int                mMemoryBudget;
+    private int                      mUsedBytes;
+
+    private long                     mHitCount;
+    private long                     mMissCount;
+
+    public BitmapPool() {
+        this(DEF_MEMORY_BUDGET);
+    }
+
+    /**
+     * @param _MemoryBudget Maximum amount of bytes of the pooled bitmaps, 0 disables the pooling
+     */
+    public BitmapPool(int _MemoryBudget) {
+        mMemoryBudget = _MemoryBudget;
+    }
+
+    /**
+     * Returns a cleared bitmap of the given size, a pooled one if there is one.
+     * @param _Width    Width in px
+     * @param _Height   Height in px
+     * @return A mutable ARGB_8888 bitmap, which is transparent.
+     */
+    public Bitmap acquire(int _Width, int _Height) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            for (Iterator<Bitmap> iterator = mBitmaps.descendingIterator(); iterator.hasNext(); ) {
+                Bitmap pooled = iterator.next();
+                if (pooled.getWidth() == _Width && pooled.getHeight() == _Height) {
+                    iterator.remove();
+                    mUsedBytes -= pooled.getByteCount();
+                    bitmap = pooled;
+                    break;
+                }
+            }
+            if (bitmap != null) {
+                mHitCount++;
+            } else {
+                mMissCount++;
+            }
+        }
+
+        if (bitmap == null) {
+            return Bitmap.createBitmap(_Width, _Height, Bitmap.Config.ARGB_8888);
+        }
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap to the pool. It must not be used by the caller afterwards.
+     * @param _Bitmap A bitmap from {@link #acquire(int, int)}, may be null
+     */
+    public void release(Bitmap _Bitmap) {
+        if (_Bitmap == null || _Bitmap.isRecycled()) {
+            return;
+        }
+        if (!_Bitmap.isMutable() || _Bitmap.getByteCount() > mMemoryBudget) {
+            _Bitmap.recycle();
+            return;
+        }
+
+        synchronized (this) {
+            mBitmaps.addLast(_Bitmap);
+            mUsedBytes += _Bitmap.getByteCount();
+            while (mUsedBytes > mMemoryBudget) {
+                Bitmap eldest = mBitmaps.removeFirst();
+                mUsedBytes -= eldest.getByteCount();
+                eldest.recycle();
+            }
+        }
+    }
+
+    /**
+     * Recycles all pooled bitmaps.
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : mBitmaps) {
+            bitmap.recycle();
+        }
+        mBitmaps.clear();
+        mUsedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return mBitmaps.size();
+    }
+
+    public synchronized int getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.w.eazegraphclone.charts;
+
+import android.graphics.Paint;
+
+import com.example.w.eazegraphclone.utils.PaintTextMeasurer;
+import com.example.w.eazegraphclone.utils.TextMeasurer;
+import com.example.w.eazegraphclone.utils.Utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable text appearance of the charts, with the paints and font metrics which follow from it.
+ * A style is set up once and shared by all charts with the same text sizes and legend color, so a
+ * screen with many charts does not create and measure the same paints for every chart.
+ * <p>
+ * The paints of a style are prototypes: charts change paints while drawing, so they draw with
+ * copies, e.g. {@code new Paint(style.getLegendPaint())}. The measurers are shared, they measure
+ * with private copies of the paints and are thread safe.
+ * <p>
+ * Styles are obtained from a process wide registry with {@link #obtain(float, int, float)}.
+ */
+public final class ChartStyle {
+
+    // amount of styles in the registry, styles of rarely used sizes are set up again when needed
+    static final int MAX_STYLES = 32;
+
+    private static final String MAX_HEIGHT_TEXT = "MgHITasger";
+
+    private static final LinkedHashMap<Key, ChartStyle> sStyles =
+            new LinkedHashMap<Key, ChartStyle>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, ChartStyle> _Eldest) {
+                    return size() > MAX_STYLES;
+                }
+            };
+
+    /**
+     * Key of the registry, the settings which a style is set up from.
+     */
+    private static final class Key {
+        final float mLegendTextSize;
+        final int   mLegendColor;
+        final float mValueTextSize;
+
+        Key(float _LegendTextSize, int _LegendColor, float _ValueTextSize) {
+            mLegendTextSize = _LegendTextSize;
+            mLegendColor    = _LegendColor;
+            mValueTextSize  = _ValueTextSize;
+        }
+
+        @Override
+        public boolean equals(Object _Other) {
+            if (!(_Other instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) _Other;
+            return Float.compare(mLegendTextSize, other.mLegendTextSize) == 0
+                    && mLegendColor == other.mLegendColor
+                    && Float.compare(mValueTextSize, other.mValueTextSize) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Float.floatToIntBits(mLegendTextSize);
+            hash = 31 * hash + mLegendColor;
+            return 31 * hash + Float.floatToIntBits(mValueTextSize);
+        }
+    }
+
+    private final float         mLegendTextSize;
+    private final int           mLegendColor;
+    private final float         mValueTextSize;
+
+    private final Paint         mGraphPaint;
+    private final Paint         mLegendPaint;
+    private final Paint         mValuePaint;
+    private final Paint         mAxisTextPaint;
+
+    private final TextMeasurer  mLegendMeasurer;
+    private final TextMeasurer  mValueMeasurer;
+    private final float         mMaxLegendFontHeight;
+
+    private ChartStyle(float _LegendTextSize, int _LegendColor, float _ValueTextSize) {
+        mLegendTextSize = _LegendTextSize;
+        mLegendColor    = _LegendColor;
+        mValueTextSize  = _ValueTextSize;
+
+        mGraphPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mGraphPaint.setStyle(Paint.Style.FILL);
+
+        mLegendPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.LINEAR_TEXT_FLAG);
+        mLegendPaint.setColor(_LegendColor);
+        mLegendPaint.setTextSize(_LegendTextSize);
+        mLegendPaint.setStrokeWidth(2);
+        mLegendPaint.setStyle(Paint.Style.FILL);
+
+        // the values are drawn centered in white into the segments
+        mValuePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mValuePaint.setTextSize(_ValueTextSize);
+        mValuePaint.setTextAlign(Paint.Align.CENTER);
+        mValuePaint.setColor(0xFFFFFFFF);
+
+        // the axis labels look like the legend labels, in the size of the values
+        mAxisTextPaint = new Paint(mLegendPaint);
+        mAxisTextPaint.setTextSize(_ValueTextSize);
+
+        // the prototypes are handed out, so the measurers get their own copies
+        mLegendMeasurer = new PaintTextMeasurer(new Paint(mLegendPaint));
+        mValueMeasurer  = new PaintTextMeasurer(new Paint(mValuePaint));
+
+        float[] size = new float[2];
+        mLegendMeasurer.measure(MAX_HEIGHT_TEXT, size);
+        mMaxLegendFontHeight = size[1];
+    }
+
+    /**
+     * Returns the shared style for the given settings, it is set up on the first request.
+     * @param _LegendTextSize   Text size of the legend labels in px
+     * @param _LegendColor      Color of the legend labels
+     * @param _ValueTextSize    Text size of the values and axis labels in px
+     * @return The style
+     */
+    public static ChartStyle obtain(float _LegendTextSize, int _LegendColor, float _ValueTextSize) {
+        Key key = new Key(_LegendTextSize, _LegendColor, _ValueTextSize);
+        synchronized (sStyles) {
+            ChartStyle style = sStyles.get(key);
+            if (style == null) {
+                style = new ChartStyle(_LegendTextSize, _LegendColor, _ValueTextSize);
+                sStyles.put(key, style);
+            }
+            return style;
+        }
+    }
+
+    /**
+     * Removes all styles from the registry and forgets the display density which dp values are
+     * converted with, e.g. after the display density changed. Charts keep the styles which they
+     * already use.
+     */
+    public static void clear() {
+        synchronized (sStyles) {
+            sStyles.clear();
+        }
+        Utils.resetDensity();
+    }
+
+    public float getLegendTextSize() {
+        return mLegendTextSize;
+    }
+
+    public int getLegendColor() {
+        return mLegendColor;
+    }
+
+    public float getValueTextSize() {
+        return mValueTextSize;
+    }
+
+    /**
+     * @return Prototype of the paint of the bars, must not be changed.
+     */
+    public Paint getGraphPaint() {
+        return mGraphPaint;
+    }
+
+    /**
+     * @return Prototype of the paint of the legend labels, must not be changed.
+     */
+    public Paint getLegendPaint() {
+        return mLegendPaint;
+    }
+
+    /**
+     * @return Prototype of the paint of the values in the bars, must not be changed.
+     */
+    public Paint getValuePaint() {
+        return mValuePaint;
+    }
+
+    /**
+     * @return Prototype of the paint of the axis labels, must not be changed.
+     */
+    public Paint getAxisTextPaint() {
+        return mAxisTextPaint;
+    }
+
+    public TextMeasurer getLegendMeasurer() {
+        return mLegendMeasurer;
+    }
+
+    public TextMeasurer getValueMeasurer() {
+        return mValueMeasurer;
+    }
+
+    /**
+     * @return Maximum height of a legend label in px.
+     */
+    public float getMaxLegendFontHeight() {
+        return mMaxLegendFontHeight;
+    }
+}
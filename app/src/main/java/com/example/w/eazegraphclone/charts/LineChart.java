@@ -0,0 +1,464 @@
+package com.example.w.eazegraphclone.charts;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.ViewParent;
+
+import com.example.w.eazegraphclone.R;
+import com.example.w.eazegraphclone.layout.LineDownsampler;
+import com.example.w.eazegraphclone.layout.ValueAxis;
+import com.example.w.eazegraphclone.models.BaseModel;
+import com.example.w.eazegraphclone.models.LineSeries;
+import com.example.w.eazegraphclone.models.Point2D;
+import com.example.w.eazegraphclone.utils.ArrayUtils;
+import com.example.w.eazegraphclone.utils.Utils;
+
+import java.text.NumberFormat;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Line chart for time series with up to millions of points. The points are kept in the primitive
+ * arrays of a {@link LineSeries}; a frame samples the visible range down to
+ * {@link #SAMPLES_PER_PIXEL} points per pixel column with a {@link LineDownsampler} and draws them
+ * with a single drawLines() call from a reused buffer. The work of a frame depends on the width of
+ * the graph, not on the amount of points.
+ * <p>
+ * The y range follows the visible points. The x range can be scrolled and zoomed, while it shows the
+ * end of the data it follows newly added points. The legend shows the x values at round steps.
+ */
+public class LineChart extends BaseChart {
+
+    public static final int     DEF_LINE_COLOR      = 0xFF56B7F1;
+    // will be interpreted as dp value
+    public static final float   DEF_LINE_WIDTH      = 2.f;
+    public static final int     SAMPLES_PER_PIXEL   = 2;
+    public static final int     DEF_LEGEND_STEPS    = 4;
+
+    // the smallest visible range covers this many points, so zooming in stops at a visible line
+    private static final int    MIN_VISIBLE_POINTS  = 4;
+
+    private final LineSeries        mSeries       = new LineSeries();
+    private final LineDownsampler   mDownsampler  = new LineDownsampler();
+
+    private Paint                   mLinePaint;
+    private Paint                   mLegendPaint;
+    private int                     mLineColor;
+    private float                   mLineWidth;
+
+    // start and end points of the drawn line segments, 4 floats per segment
+    private float[]                 mLines        = new float[0];
+
+    /**
+     * The visible x range in data units. As long as mFitViewport is set, the range shows all points.
+     * Doubles like the x values, so a viewport of a few seconds can be set on epoch milliseconds.
+     */
+    private double                  mViewportMinX;
+    private double                  mViewportMaxX;
+    private boolean                 mFitViewport  = true;
+    // the last x value at the previous data change, a viewport which ended there follows new points
+    private double                  mLastMaxX;
+
+    private NumberFormat            mValueFormat;
+    private final ValueAxis         mLegendAxis   = ValueAxis.globalMax(DEF_LEGEND_STEPS);
+    // the labels of the last frame, reused while their values don't change
+    private double[]                mLegendValues = new double[0];
+    private String[]                mLegendLabels = new String[0];
+
+    private GestureDetector         mGestureDetector;
+    private ScaleGestureDetector    mScaleGestureDetector;
+
+    public LineChart(Context context) {
+        super(context);
+
+        mLineColor = DEF_LINE_COLOR;
+        mLineWidth = Utils.dpToPx(DEF_LINE_WIDTH);
+
+        initializeGraph();
+    }
+
+    public LineChart(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        TypedArray a = context.getTheme().obtainStyledAttributes(
+                attrs,
+                R.styleable.LineChart,
+                0, 0
+        );
+        try {
+            mLineColor = a.getColor(R.styleable.LineChart_egLineColor,          DEF_LINE_COLOR);
+            mLineWidth = a.getDimension(R.styleable.LineChart_egLineWidth,      Utils.dpToPx(DEF_LINE_WIDTH));
+        } finally {
+            // release the TypedArray so that it can be reused.
+            a.recycle();
+        }
+        initializeGraph();
+    }
+
+    public int getLineColor() {
+        return mLineColor;
+    }
+
+    public void setLineColor(int _LineColor) {
+        mLineColor = _LineColor;
+        mLinePaint.setColor(_LineColor);
+        invalidateGraph();
+    }
+
+    public float getLineWidth() {
+        return mLineWidth;
+    }
+
+    /**
+     * Sets the stroke width of the line.
+     * @param _LineWidth Width in dp
+     */
+    public void setLineWidth(float _LineWidth) {
+        mLineWidth = Utils.dpToPx(_LineWidth);
+        mLinePaint.setStrokeWidth(mLineWidth);
+        invalidateGraph();
+    }
+
+    /**
+     * Sets whether the x values in the legend are shown with their decimal places.
+     * @param _showDecimal True to show the decimal places.
+     */
+    @Override
+    public void setShowDecimal(boolean _showDecimal) {
+        super.setShowDecimal(_showDecimal);
+        mValueFormat = Utils.createValueFormat(mFormatter, _showDecimal);
+        mLegendValues = new double[0];
+        invalidateLegend();
+    }
+
+    /**
+     * Appends a point. The x values have to be ascending.
+     * @param _X X value, e.g. a timestamp in epoch milliseconds
+     * @param _Y Y value
+     */
+    public void addPoint(double _X, float _Y) {
+        mSeries.add(_X, _Y);
+        requestRelayout();
+    }
+
+    /**
+     * Appends a point. The point is copied, so it can be reused by the caller.
+     * @param _Point The point
+     */
+    public void addPoint(Point2D _Point) {
+        addPoint(_Point.getX(), _Point.getY());
+    }
+
+    /**
+     * Appends several points with a single relayout.
+     * @param _Xs Ascending x values
+     * @param _Ys Y values, one per x value
+     */
+    public void addPoints(double[] _Xs, float[] _Ys) {
+        mSeries.addAll(_Xs, _Ys);
+        requestRelayout();
+    }
+
+    /**
+     * Returns the points of the chart. Points which are appended to the series directly are shown
+     * after the next {@link #update()}.
+     * @return The series of the chart.
+     */
+    public LineSeries getSeries() {
+        return mSeries;
+    }
+
+    /**
+     * The points are not kept as models, so the list is always empty.
+     * @return An empty list
+     */
+    @Override
+    public List<? extends BaseModel> getData() {
+        return Collections.<BaseModel>emptyList();
+    }
+
+    @Override
+    protected int getDataSize() {
+        return mSeries.size();
+    }
+
+    @Override
+    public void clearChart() {
+        mSeries.clear();
+        mFitViewport = true;
+        requestRelayout();
+    }
+
+    public double getViewportMinX() {
+        return mViewportMinX;
+    }
+
+    public double getViewportMaxX() {
+        return mViewportMaxX;
+    }
+
+    /**
+     * Shows the given x range. The range is clamped to the x values of the points.
+     * @param _MinX The x value at the left edge of the graph
+     * @param _MaxX The x value at the right edge of the graph
+     */
+    public void setViewport(double _MinX, double _MaxX) {
+        mFitViewport = false;
+        setViewportRange(_MinX, _MaxX);
+        invalidateGlobal();
+    }
+
+    /**
+     * Shows all points again, also the ones which are added later.
+     */
+    public void resetViewport() {
+        mFitViewport = true;
+        onDataChanged();
+    }
+
+    @Override
+    protected void onStyleChanged(ChartStyle _Style) {
+        mLegendPaint.set(_Style.getLegendPaint());
+        mMaxFontHeight = _Style.getMaxLegendFontHeight();
+    }
+
+    /**
+     * Graph가 xml로부터 inflate되고 난 이후에 실행되는 Entry point 메서드. 그래프를 초기화하고 이에 해당하는
+     * 멤버필드를 초기화 하기 위해 사용되었다.
+     */
+    @Override
+    protected void initializeGraph() {
+        super.initializeGraph();
+
+        mLinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLinePaint.setColor(mLineColor);
+        mLinePaint.setStrokeWidth(mLineWidth);
+        mLinePaint.setStrokeCap(Paint.Cap.ROUND);
+        mLinePaint.setStyle(Paint.Style.STROKE);
+
+        mLegendPaint = new Paint(mStyle.getLegendPaint());
+        mMaxFontHeight = mStyle.getMaxLegendFontHeight();
+
+        mValueFormat = Utils.createValueFormat(mFormatter, mShowDecimal);
+
+        mGestureDetector = new GestureDetector(getContext(), new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                double shift = distanceX * getUnitsPerPixel();
+                mFitViewport = false;
+                setViewportRange(mViewportMinX + shift, mViewportMaxX + shift);
+                invalidateGlobal();
+
+                // a scrolling parent should not steal the gesture while the chart scrolls
+                ViewParent parent = getParent();
+                if (parent != null) {
+                    parent.requestDisallowInterceptTouchEvent(true);
+                }
+                return true;
+            }
+        });
+        mScaleGestureDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                // the x value under the focus stays at the same position
+                double focus = mViewportMinX + (detector.getFocusX() - mLeftPadding) * getUnitsPerPixel();
+                double scale = 1 / detector.getScaleFactor();
+                mFitViewport = false;
+                setViewportRange(focus - (focus - mViewportMinX) * scale, focus + (mViewportMaxX - focus) * scale);
+                invalidateGlobal();
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = mScaleGestureDetector.onTouchEvent(event);
+        if (!mScaleGestureDetector.isInProgress()) {
+            handled |= mGestureDetector.onTouchEvent(event);
+        }
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        if (getDataSize() > 0) {
+            onDataChanged();
+        }
+    }
+
+    /**
+     * Updates the viewport for the new points: it shows all points, or it keeps its width and
+     * follows the end of the data if it showed the previous end.
+     */
+    @Override
+    protected void onDataChanged() {
+        LineSeries series = mSeries;
+        if (series.isEmpty()) {
+            mViewportMinX = 0;
+            mViewportMaxX = 0;
+        } else if (mFitViewport) {
+            mViewportMinX = series.getX(0);
+            mViewportMaxX = series.getX(series.size() - 1);
+        } else {
+            double maxX  = series.getX(series.size() - 1);
+            double shift = mViewportMaxX >= mLastMaxX ? maxX - mViewportMaxX : 0;
+            setViewportRange(mViewportMinX + shift, mViewportMaxX + shift);
+        }
+        mLastMaxX = series.isEmpty() ? 0 : series.getX(series.size() - 1);
+        onLayoutValidated();
+        super.onDataChanged();
+    }
+
+    @Override
+    protected void onGraphDraw(Canvas _Canvas) {
+        super.onGraphDraw(_Canvas);
+
+        LineSeries series = mSeries;
+        int        size = series.size();
+        if (size == 0 || mGraphWidth <= 0) {
+            return;
+        }
+
+        // one point beyond each edge, so the line reaches the border of the graph
+        double[] xs = series.getXs();
+        int first = Math.max(0, ArrayUtils.lowerBound(xs, size, mViewportMinX) - 1);
+        int last  = Math.min(size, ArrayUtils.upperBound(xs, size, mViewportMaxX) + 1);
+        int count = mDownsampler.sample(series, first, last, Math.max(3, mGraphWidth * SAMPLES_PER_PIXEL));
+        if (count < 2) {
+            return;
+        }
+
+        // the line is inset by half its width, so it is not cut off at the top and the bottom
+        float inset  = mLineWidth / 2;
+        float minY   = mDownsampler.getMinY();
+        float rangeY = mDownsampler.getMaxY() - minY;
+        float scaleX = (float) (1 / getUnitsPerPixel());
+        // the sampled x values are relative to the origin, which is close to the viewport
+        float offsetX = (float) (mDownsampler.getOriginX() - mViewportMinX);
+        float scaleY = rangeY > 0 ? (mGraphHeight - 2 * inset) / rangeY : 0;
+        float offsetY = rangeY > 0 ? mGraphHeight - inset : mGraphHeight / 2.f;
+
+        if (mLines.length < 4 * (count - 1)) {
+            mLines = new float[4 * (count - 1)];
+        }
+        float[] lines = mLines;
+        float[] sampledXs = mDownsampler.getXs();
+        float[] sampledYs = mDownsampler.getYs();
+        float   lastX = (sampledXs[0] + offsetX) * scaleX;
+        float   lastY = offsetY - (sampledYs[0] - minY) * scaleY;
+        for (int i = 1, offset = 0; i < count; i++, offset += 4) {
+            float x = (sampledXs[i] + offsetX) * scaleX;
+            float y = offsetY - (sampledYs[i] - minY) * scaleY;
+            lines[offset]     = lastX;
+            lines[offset + 1] = lastY;
+            lines[offset + 2] = x;
+            lines[offset + 3] = y;
+            lastX = x;
+            lastY = y;
+        }
+        _Canvas.drawLines(lines, 0, 4 * (count - 1), mLinePaint);
+    }
+
+    /**
+     * Draws the x values at round steps below the graph.
+     */
+    @Override
+    protected void onLegendDraw(Canvas _Canvas) {
+        super.onLegendDraw(_Canvas);
+
+        double range = mViewportMaxX - mViewportMinX;
+        if (mSeries.isEmpty() || !(range > 0)) {
+            return;
+        }
+
+        // the step is a round multiple of the range, a float holds it exactly
+        float step  = mLegendAxis.calculateStep((float) range);
+        if (!(step > 0)) {
+            return;
+        }
+        // in long, the step indices of timestamps don't fit into an int
+        long  steps = (long) Math.floor(mViewportMaxX / step) - (long) Math.ceil(mViewportMinX / step) + 1;
+        if (steps <= 0 || steps > 2 * DEF_LEGEND_STEPS + 2) {
+            return;
+        }
+        int   count = (int) steps;
+        updateLegendLabels(step, count);
+
+        double scaleX = mLegendWidth / range;
+        float y      = mLegendHeight - mMaxFontHeight;
+        for (int i = 0; i < count; i++) {
+            String label = mLegendLabels[i];
+            float  width = mLegendPaint.measureText(label);
+            // centered on its value, but never cut off at the edges
+            float  x = (float) ((mLegendValues[i] - mViewportMinX) * scaleX) - width / 2;
+            x = Math.max(0, Math.min(x, mLegendWidth - width));
+            _Canvas.drawText(label, x, y, mLegendPaint);
+        }
+    }
+
+    /**
+     * Formats the legend values of the current step. Labels of values which were already shown in
+     * the last frame are reused, so scrolling doesn't format every frame.
+     */
+    private void updateLegendLabels(float _Step, int _Count) {
+        double[] values = mLegendValues.length == _Count ? mLegendValues : new double[_Count];
+        String[] labels = mLegendLabels.length == _Count ? mLegendLabels : new String[_Count];
+        double   first  = Math.ceil(mViewportMinX / _Step) * _Step;
+
+        for (int i = 0; i < _Count; i++) {
+            double value = first + (double) i * _Step;
+            if (labels[i] == null || values[i] != value) {
+                labels[i] = mValueFormat.format(value);
+                values[i] = value;
+            }
+        }
+        mLegendValues = values;
+        mLegendLabels = labels;
+    }
+
+    /**
+     * @return The x range which is covered by one pixel of the graph.
+     */
+    private double getUnitsPerPixel() {
+        return mGraphWidth > 0 ? (mViewportMaxX - mViewportMinX) / mGraphWidth : 0;
+    }
+
+    /**
+     * Sets the viewport, clamped to the x values of the points. The range covers at least
+     * {@link #MIN_VISIBLE_POINTS} points on average and at most all points.
+     */
+    private void setViewportRange(double _MinX, double _MaxX) {
+        LineSeries series = mSeries;
+        if (series.isEmpty()) {
+            return;
+        }
+
+        double dataMin = series.getX(0);
+        double dataMax = series.getX(series.size() - 1);
+        double dataRange = dataMax - dataMin;
+        double minRange = series.size() > 1 ? dataRange * MIN_VISIBLE_POINTS / (series.size() - 1) : 0;
+        double range = Math.max(Math.min(_MaxX - _MinX, dataRange), Math.min(minRange, dataRange));
+
+        double min = Math.max(dataMin, Math.min(_MinX, dataMax - range));
+        mViewportMinX = min;
+        mViewportMaxX = min + range;
+    }
+}
@@ -1,28 +1,60 @@
 package com.example.w.eazegraphclone.charts;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
-import android.util.Log;
-import android.view.MotionEvent;
 
 import com.example.w.eazegraphclone.R;
+import com.example.w.eazegraphclone.layout.BarLayoutConfig;
+import com.example.w.eazegraphclone.layout.ColorBatchCache;
+import com.example.w.eazegraphclone.layout.LegendPlacer;
+import com.example.w.eazegraphclone.layout.LodPyramid;
+import com.example.w.eazegraphclone.layout.SegmentAnimation;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCache;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutEngine;
+import com.example.w.eazegraphclone.layout.ValueAxis;
+import com.example.w.eazegraphclone.metrics.ChartMetrics;
 import com.example.w.eazegraphclone.models.BarModel;
 import com.example.w.eazegraphclone.models.BaseModel;
+import com.example.w.eazegraphclone.models.ChartDataSource;
+import com.example.w.eazegraphclone.models.SnapshotList;
 import com.example.w.eazegraphclone.models.StackedBarModel;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.models.StackedBarStore;
+import com.example.w.eazegraphclone.utils.TextMeasurer;
 import com.example.w.eazegraphclone.utils.Utils;
 
+import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
  * A rather simple type of a bar chart, where all the bars have the same height and their inner bars
- * heights are dependent on each other.
+ * heights are dependent on each other. With an absolute {@link ValueAxis}, the stacks are scaled
+ * against a common maximum instead, and the axis is drawn as gridlines with value labels.
+ * <p>
+ * The data is held in a columnar {@link StackedBarStore}. The layout is calculated from snapshots of
+ * the store by a {@link StackedBarLayoutEngine} on a background thread, and the chart draws the latest
+ * published {@link StackedBarLayout}.
+ * The {@link StackedBarModel} based methods are a convenience facade for small charts: the models are
+ * copied into the store when they are added and receive the computed bounds after every layout pass.
  */
 public class StackedBarChart extends BaseBarChart {
 
@@ -32,18 +64,104 @@ public class StackedBarChart extends BaseBarChart {
 
     private static final String LOG_TAG = StackedBarChart.class.getSimpleName();
 
+    /**
+     * Informed when the user taps a stack.
+     */
+    public interface OnSegmentSelectedListener {
+        /**
+         * @param _StackIndex   Index of the tapped stack, which is also the index in {@link #getData()}
+         * @param _SegmentIndex Index of the tapped segment within the stack, which is also the index of
+         *                      its {@link BarModel}, or -1 if the stack was tapped above its segments
+         *                      or in the legend.
+         */
+        void onSegmentSelected(int _StackIndex, int _SegmentIndex);
+    }
+
     public static final float   DEF_TEXT_SIZE       = 12f;
+    public static final float   DEF_MIN_BAR_WIDTH   = 2f;
+    public static final int     DEF_AXIS_COLOR      = 0x33000000;
+
+    /**
+     * Largest data, in estimated bytes, which is written into the parcel of the saved state. The
+     * parcel of a whole activity has to fit into a binder transaction of about 1 MB, so larger data
+     * is not parceled and has to be loaded again after the process was killed.
+     */
+    public static final int     MAX_SAVED_BYTES     = 256 * 1024;
+
+    private static final String[]   NO_LABELS       = new String[0];
+    private static final float[]    NO_BARS         = new float[0];
 
     private Paint                  mTextPaint;
+    private TextMeasurer           mValueMeasurer;
+    private Paint                  mAxisTextPaint;
+    // draws the layers on the UI thread
+    private StackedBarPainter      mPainter;
+    // draws the tiles on the tile thread with its own copies of the paints. It is replaced instead
+    // of changed when the paints or options change, queued tiles keep the painter they captured.
+    private StackedBarPainter      mTilePainter;
+
+    /**
+     * The models, published as immutable snapshots, so they can be added on any thread.
+     */
+    private SnapshotList<StackedBarModel>           mData;
+    // the snapshot which was last copied into the store, only accessed on the UI thread
+    private SnapshotList.Snapshot<StackedBarModel>  mSyncedData;
+    // true if the store has to be rebuilt from the models, e.g. because the models were edited
+    private boolean                                 mResyncModels;
+    // bars whose value was changed on any thread, copied into the store on the next frame
+    private final ConcurrentLinkedQueue<BarModel>   mChangedBars = new ConcurrentLinkedQueue<BarModel>();
+
+    private StackedBarStore        mStore;
 
-    private List<StackedBarModel>  mData;
+    private StackedBarLayoutEngine mLayoutEngine;
+
+    // layouts of bound data sets, so binding one of them again skips the layout pass
+    private StackedBarLayoutCache  mLayoutCache    = new StackedBarLayoutCache();
+    // the data set of the last bind() call while the store still holds it unchanged
+    private StackedBarSnapshot     mBoundData;
+    // published layouts of older generations belong to data which is not bound anymore
+    private int                    mMinGeneration;
+
+    /**
+     * The layout which is currently drawn. Replaced on the UI thread, tiles capture it when they
+     * are requested.
+     */
+    private StackedBarLayout       mLayout;
+
+    private NumberFormat           mValueFormat;
 
     private float                  mTextSize;
 
+    private boolean                mLodEnabled     = true;
+    private float                  mMinBarWidth;
+    private LodPyramid.Aggregation mLodAggregation = LodPyramid.Aggregation.SUM;
+
+    private ValueAxis              mValueAxis      = ValueAxis.STACK;
+    // labels of the gridlines of the current layout from the bottom up, formatted once per layout
+    private String[]               mAxisLabels     = NO_LABELS;
+
+    private boolean                mColorBatching  = true;
+
+    private long                   mAnimationDuration;
+    private final SegmentAnimation mSegmentAnimation = new SegmentAnimation();
+    private ValueAnimator          mAnimator;
+    private boolean                mAnimating;
+
+    // places the legend labels per zoom level, shared with the tile renderer
+    private final LegendPlacer     mLegendPlacer   = new LegendPlacer();
+
+    private OnSegmentSelectedListener mSegmentSelectedListener;
+
+    private ChartDataSource        mDataSource;
+    // true if a data sync is already posted by another thread
+    private final AtomicBoolean    mSyncRequested  = new AtomicBoolean();
+    private final Handler          mMainHandler    = new Handler(Looper.getMainLooper());
+
     public StackedBarChart(Context context) {
         super(context);
 
         mTextSize       = Utils.dpToPx(DEF_TEXT_SIZE);
+        mMinBarWidth    = Utils.dpToPx(DEF_MIN_BAR_WIDTH);
 
         initializeGraph();
     }
@@ -61,6 +179,7 @@ public class StackedBarChart extends BaseBarChart {
             // release the TypedArray so that it can be reused.
             a.recycle();
         }
+        mMinBarWidth    = Utils.dpToPx(DEF_MIN_BAR_WIDTH);
         initializeGraph();
     }
 
@@ -78,7 +197,389 @@ public class StackedBarChart extends BaseBarChart {
      */
     public void setTextSize(float _textSize) {
         mTextSize = Utils.dpToPx(_textSize);
-        onDataChanged();
+        updateStyle();
+    }
+
+    @Override
+    protected ChartStyle obtainStyle() {
+        return ChartStyle.obtain(mLegendTextSize, mLegendColor, mTextSize);
+    }
+
+    @Override
+    protected void onStyleChanged(ChartStyle _Style) {
+        super.onStyleChanged(_Style);
+        mTextPaint.set(_Style.getValuePaint());
+        mAxisTextPaint.set(_Style.getAxisTextPaint());
+        mTilePainter = null;
+        // a running layout still uses the old measurer, the new style has its own one
+        mValueMeasurer = _Style.getValueMeasurer();
+    }
+
+    /**
+     * Sets whether the values should be shown with their decimal places. The value labels are
+     * formatted again with the locale number format.
+     * @param _showDecimal True to show the decimal places.
+     */
+    @Override
+    public void setShowDecimal(boolean _showDecimal) {
+        super.setShowDecimal(_showDecimal);
+        mValueFormat = Utils.createValueFormat(mFormatter, _showDecimal);
+        invalidateLayout();
+        requestRelayout();
+    }
+
+    @Override
+    public void setShowValues(boolean _showValues) {
+        mPainter.setShowValues(_showValues);
+        mTilePainter = null;
+        super.setShowValues(_showValues);
+    }
+
+    public boolean isLodEnabled() {
+        return mLodEnabled;
+    }
+
+    /**
+     * Sets whether adjacent stacks are aggregated when the bars get narrower than the minimum bar
+     * width. Only dynamically sized bars can get that narrow, zooming in shows the single stacks again.
+     * @param _LodEnabled True to aggregate narrow bars.
+     */
+    public void setLodEnabled(boolean _LodEnabled) {
+        mLodEnabled = _LodEnabled;
+        invalidateLayout();
+        requestRelayout();
+    }
+
+    /**
+     * Returns the minimum width of a drawn bar.
+     * @return The width in px
+     */
+    public float getMinBarWidth() {
+        return mMinBarWidth;
+    }
+
+    /**
+     * Sets the minimum width of a drawn bar. Narrower bars are aggregated, if the level of detail
+     * is enabled.
+     * @param _MinBarWidth Width in dp
+     */
+    public void setMinBarWidth(float _MinBarWidth) {
+        mMinBarWidth = Utils.dpToPx(_MinBarWidth);
+        mPainter.setMinBarWidth(mMinBarWidth);
+        mTilePainter = null;
+        invalidateLayout();
+        requestRelayout();
+    }
+
+    public LodPyramid.Aggregation getLodAggregation() {
+        return mLodAggregation;
+    }
+
+    /**
+     * Sets how the segments of aggregated stacks are combined. Segment j of an aggregated bar
+     * shows the sum or the mean of segment j of all stacks in it.
+     * @param _Aggregation The aggregation
+     */
+    public void setLodAggregation(LodPyramid.Aggregation _Aggregation) {
+        mLodAggregation = _Aggregation;
+        invalidateLayout();
+        requestRelayout();
+    }
+
+    public ValueAxis getValueAxis() {
+        return mValueAxis;
+    }
+
+    /**
+     * Sets how the stacks are scaled vertically. {@link ValueAxis#STACK} fills every stack to the
+     * graph height, the absolute scales draw gridlines and make the stacks comparable.
+     * @param _ValueAxis The value axis, e.g. {@code ValueAxis.globalMax(ValueAxis.DEF_STEPS)}
+     */
+    public void setValueAxis(ValueAxis _ValueAxis) {
+        mValueAxis = _ValueAxis;
+        invalidateLayout();
+        requestRelayout();
+    }
+
+    public boolean isColorBatchingEnabled() {
+        return mColorBatching;
+    }
+
+    /**
+     * Sets whether the segments are drawn with one draw call per color instead of one per segment.
+     * The batches are built once per layout and only for the visible stacks.
+     * @param _ColorBatching True to batch the segments by color.
+     */
+    public void setColorBatchingEnabled(boolean _ColorBatching) {
+        mColorBatching = _ColorBatching;
+        mPainter.setColorBatching(_ColorBatching);
+        mTilePainter = null;
+        invalidateTiles();
+        invalidateGraph();
+    }
+
+    /**
+     * Sets the metrics of the chart. The layout passes on the background thread are measured as well.
+     */
+    @Override
+    public void setMetrics(ChartMetrics _Metrics) {
+        super.setMetrics(_Metrics);
+        mLayoutEngine.setMetrics(_Metrics);
+    }
+
+    public void setOnSegmentSelectedListener(OnSegmentSelectedListener _Listener) {
+        mSegmentSelectedListener = _Listener;
+    }
+
+    public int getSelectedStack() {
+        return mLegendPlacer.getSelectedStack();
+    }
+
+    /**
+     * Selects a stack, its legend label is shown in any case. A tap on a stack selects it as well.
+     * @param _Stack Stack index, -1 to clear the selection
+     */
+    public void setSelectedStack(int _Stack) {
+        mLegendPlacer.setSelectedStack(_Stack);
+        invalidateTiles();
+        invalidateLegend();
+    }
+
+    public int getLegendInterval() {
+        return mLegendPlacer.getInterval();
+    }
+
+    /**
+     * Sets which legend labels are preferred: every _Interval-th label is shown before its
+     * neighbours. If these labels overlap at the current zoom, a multiple of the interval is used.
+     * @param _Interval Interval in stacks, at least 1
+     */
+    public void setLegendInterval(int _Interval) {
+        mLegendPlacer.setInterval(_Interval);
+        invalidateTiles();
+        invalidateLegend();
+    }
+
+    public boolean isLegendExtremesShown() {
+        return mLegendPlacer.isShowExtremes();
+    }
+
+    /**
+     * Sets whether the legend labels of the tallest and the lowest stack are preferred over the others.
+     * @param _Shown True to prefer the labels of the extremes.
+     */
+    public void setLegendExtremesShown(boolean _Shown) {
+        mLegendPlacer.setShowExtremes(_Shown);
+        invalidateTiles();
+        invalidateLegend();
+    }
+
+    public long getAnimationDuration() {
+        return mAnimationDuration;
+    }
+
+    /**
+     * Sets the duration of the transition which is shown when the data changes. The segment heights
+     * are animated from the displayed ones to the new layout; the bar positions change at once.
+     * @param _Duration Duration in ms, 0 disables the animation.
+     */
+    public void setAnimationDuration(long _Duration) {
+        mAnimationDuration = _Duration;
+        if (_Duration <= 0) {
+            if (mAnimator != null) {
+                mAnimator.end();
+            }
+            mSegmentAnimation.clear();
+        }
+    }
+
+    public StackedBarLayoutCache getLayoutCache() {
+        return mLayoutCache;
+    }
+
+    /**
+     * Sets the cache for the layouts of bound data sets. The charts of a list should share one
+     * cache, because a data set is rarely bound to the same row again.
+     * @param _Cache The cache
+     */
+    public void setLayoutCache(StackedBarLayoutCache _Cache) {
+        mLayoutCache = _Cache;
+    }
+
+    /**
+     * Binds the chart to a data set, e.g. in onBindViewHolder() of a list adapter. The data set
+     * replaces the models and stacks of the chart, and the viewport, zoom and selection are reset.
+     * The paints, the buffers and the capacity of the store are reused. If the data set was laid out
+     * before with the same dimensions and settings, its layout is taken from the
+     * {@link #getLayoutCache() layout cache} and no layout pass runs. No transition is shown.
+     * <p>
+     * The snapshot is the key of the cached layout, so the same instance should be bound again,
+     * e.g. by keeping it in the item of the adapter. Like {@link #addStack}, it should not be mixed
+     * with the model based methods: a model change after binding rebuilds the store from the models
+     * alone. Has to be called on the UI thread.
+     * @param _Data The data set, e.g. from {@link StackedBarStore#snapshot()}
+     */
+    public void bind(StackedBarSnapshot _Data) {
+        bind(_Data, false);
+    }
+
+    /**
+     * @param _Data         The data set
+     * @param _CreateModels True to create a model per stack, so the data can be changed with the
+     *                      model based methods afterwards
+     */
+    private void bind(StackedBarSnapshot _Data, boolean _CreateModels) {
+        resetState();
+        clearModels();
+        mStore.load(_Data);
+        mStore.markClean();
+        mBoundData = _Data;
+        if (_CreateModels) {
+            createModels(_Data);
+        }
+
+        if (mAvailableScreenSize > 0) {
+            // laid out right away, so the row is not drawn empty for a frame if the layout is cached
+            onDataChanged();
+        }
+    }
+
+    /**
+     * Releases the data of the chart when its row was recycled, e.g. in onViewRecycled() of the list
+     * adapter. Layout passes which are still running are discarded. The paints, the buffers and the
+     * capacity of the store are kept for the next {@link #bind(StackedBarSnapshot)}.
+     */
+    public void onRecycled() {
+        resetState();
+        clearModels();
+        mStore.clear();
+        mStore.markClean();
+        mBoundData = null;
+    }
+
+    /**
+     * Saves the data of the chart, so it does not have to be loaded again after a configuration
+     * change, e.g. a rotation. The data is written as flat arrays. The layouts of the data stay in
+     * memory with the state: if the chart is restored at a size which it was laid out at before, no
+     * layout pass runs. A state which was restored from a parcel, e.g. after the process was killed,
+     * only has the data, and only if it was smaller than {@link #MAX_SAVED_BYTES}. Otherwise the
+     * chart is restored empty and the app has to load the data again.
+     */
+    @Override
+    public Parcelable onSaveInstanceState() {
+        Parcelable superState = super.onSaveInstanceState();
+        if (isInEditMode()) {
+            return superState;
+        }
+        syncModels();
+        if (mDataSource != null) {
+            mDataSource.drainTo(mStore);
+        }
+
+        StackedBarSnapshot data = getSavedData();
+        return new SavedState(superState, data, mLayoutCache.getLayouts(data), mSyncedData.size() > 0);
+    }
+
+    /**
+     * Restores the saved data, unless the chart got new data meanwhile, e.g. in onCreate(). The
+     * restored data is bound to the chart like with {@link #bind(StackedBarSnapshot)}, so its saved
+     * layouts are taken from the layout cache. If the data was added as models, new models are
+     * created from it, so {@link #getData()} and the model based methods work on the restored stacks.
+     */
+    @Override
+    public void onRestoreInstanceState(Parcelable _State) {
+        if (!(_State instanceof SavedState)) {
+            super.onRestoreInstanceState(_State);
+            return;
+        }
+        SavedState state = (SavedState) _State;
+        super.onRestoreInstanceState(state.getSuperState());
+
+        if (state.mData == null || mBoundData != null || !mStore.isEmpty() || mData.get().size() > 0) {
+            // the data was too large to be parceled, or the chart got new data
+            return;
+        }
+        for (int i = 0, size = state.mLayouts.size(); i < size; i++) {
+            mLayoutCache.put(state.mLayouts.get(i));
+        }
+        bind(state.mData, state.mModels);
+    }
+
+    /**
+     * Returns the current data as a snapshot which can be saved. The snapshot of the bound data or
+     * of the drawn layout is taken if the store still holds it, so its layouts can be saved as well.
+     * @return The current data
+     */
+    private StackedBarSnapshot getSavedData() {
+        if (mBoundData != null && !mStore.isDirty()) {
+            return mBoundData;
+        }
+        StackedBarLayout layout = mLayout;
+        if (layout != null && !mStore.isDirty() && layout.getGeneration() == mLayoutEngine.getGeneration()) {
+            // nothing was submitted after the drawn layout, so the store holds its data. It is bound
+            // from now on, so the layouts of other sizes are cached as well
+            mBoundData = layout.getData();
+            mLayoutCache.put(layout);
+            return mBoundData;
+        }
+        return mStore.copy();
+    }
+
+    /**
+     * Ends the transition, discards the pending layouts and clears the selection and the drawn layout.
+     */
+    private void resetState() {
+        if (mAnimator != null) {
+            mAnimator.cancel();
+        }
+        mSegmentAnimation.clear();
+        mAnimating = false;
+
+        mMinGeneration = mLayoutEngine.cancel();
+        removeCallbacks(mApplyLayoutRunnable);
+
+        mLegendPlacer.setSelectedStack(-1);
+        mLayout = null;
+        mAxisLabels = NO_LABELS;
+        resetViewport();
+        applyBarLayout(0, NO_BARS, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates a model for every stack of the data, which the store holds already, and connects
+     * their bars with the segments. The models carry the labels, values and colors of the data.
+     * @param _Data The data which the store was loaded from
+     */
+    private void createModels(StackedBarSnapshot _Data) {
+        int                   stackCount = _Data.getStackCount();
+        float[]               values = _Data.getValues();
+        int[]                 colors = _Data.getColors();
+        List<StackedBarModel> models = new ArrayList<StackedBarModel>(stackCount);
+        for (int i = 0; i < stackCount; i++) {
+            StackedBarModel model = new StackedBarModel(_Data.getLabel(i));
+            for (int j = _Data.getSegmentStart(i), end = _Data.getSegmentEnd(i); j < end; j++) {
+                model.addBar(new BarModel(values[j], colors[j]));
+            }
+            models.add(model);
+        }
+        mSyncedData = mData.replace(models);
+        attachModels(mSyncedData.getModels(), 0);
+    }
+
+    /**
+     * Removes all models without rebuilding the store, which is filled by the caller.
+     */
+    private void clearModels() {
+        if (mSyncedData.size() == 0 && mData.get().size() == 0) {
+            return;
+        }
+
+        List<StackedBarModel> old = mSyncedData.getModels();
+        for (int i = 0, size = old.size(); i < size; i++) {
+            detach(old.get(i));
+        }
+        mSyncedData = mData.clear();
+        mResyncModels = false;
     }
 
     /**
@@ -87,43 +588,112 @@ public class StackedBarChart extends BaseBarChart {
      */
     public void addBar(StackedBarModel _Bar) {
         mData.add(_Bar);
-        onDataChanged();
+        requestDataSync();
     }
 
     /**
-     * Adds a new list of {@link StackedBarModel} to the BarChart.
+     * Adds all {@link StackedBarModel}s of the collection to the BarChart with a single relayout.
+     * @param _Bars The StackedBarModels which will be added to the chart.
+     */
+    public void addBars(Collection<StackedBarModel> _Bars) {
+        mData.addAll(_Bars);
+        requestDataSync();
+    }
+
+    /**
+     * Replaces the data of the BarChart with a new list of {@link StackedBarModel}. The list is
+     * copied, so later changes to it are not picked up.
      * @param _List The StackedBarModel list which will be added to the chart.
      */
     public void addBarList(List<StackedBarModel> _List) {
-        mData = _List;
-        onDataChanged();
+        mData.replace(_List);
+        requestDataSync();
+    }
+
+    /**
+     * Removes the stack at the given index. Only the following stacks are laid out again.
+     * @param _Index Index of the stack which should be removed.
+     */
+    public void removeBar(int _Index) {
+        if (mData.get().size() == 0) {
+            // the stacks were added directly to the store, which is only used on the UI thread
+            mStore.removeStack(_Index);
+        } else {
+            mData.remove(_Index);
+            requestDataSync();
+        }
     }
 
     /**
-     * Returns the data which is currently present in the chart.
+     * Adds a new stack directly to the columnar store, without creating any model objects. This is
+     * the preferred way to fill big charts. It should not be mixed with the model based methods,
+     * because {@link #update()} rebuilds the store from the models.
+     * @param _Label  Legend label of the stack
+     * @param _Values Values of the segments from bottom to top
+     * @param _Colors Colors of the segments
+     */
+    public void addStack(String _Label, float[] _Values, int[] _Colors) {
+        mStore.addStack(_Label, _Values, _Colors);
+    }
+
+    /**
+     * Sets a source which feeds the chart from other threads, e.g. a {@link com.example.w.eazegraphclone.models.RingBufferDataSource}.
+     * The new data is moved into the store once per frame, right before the layout is requested,
+     * so producers never wait for the UI thread. Like {@link #addStack}, it should not be mixed
+     * with the model based methods.
+     * @param _Source The data source, or null to stop listening to the current one.
+     */
+    public void setDataSource(ChartDataSource _Source) {
+        if (mDataSource != null) {
+            mDataSource.setOnDataAvailableListener(null);
+        }
+        mDataSource = _Source;
+        if (_Source != null) {
+            _Source.setOnDataAvailableListener(mDataAvailableListener);
+            requestRelayout();
+        }
+    }
+
+    public ChartDataSource getDataSource() {
+        return mDataSource;
+    }
+
+    /**
+     * Returns the columnar store which holds the data of the chart.
+     * @return The store of the chart.
+     */
+    public StackedBarStore getStore() {
+        return mStore;
+    }
+
+    /**
+     * Returns the data which is currently present in the chart. The list is an immutable snapshot,
+     * so it can be iterated while other threads add data.
      * @return The currently used data.
      */
     @Override
     public List<StackedBarModel> getData() {
-        return mData;
+        return mData.get().getModels();
     }
 
     /**
-     * Resets and clears the data object.
+     * Resets and clears the data object. Stacks which were added directly to the store are removed
+     * as well.
      */
     @Override
     public void clearChart() {
         mData.clear();
+        requestDataSync();
     }
 
+    /**
+     * Copies the models into the store again, so that changes made to already added models are
+     * picked up, and updates the graph. Has to be called on the UI thread.
+     */
     @Override
-    public boolean onTouchEvent(MotionEvent event) {
-        if (event.getAction() == MotionEvent.ACTION_DOWN) {
-            performClick();
-            return true;
-        } else {
-            return false;
-        }
+    public void update() {
+        mResyncModels = true;
+        super.update();
     }
 
     /**
@@ -133,12 +703,31 @@ public class StackedBarChart extends BaseBarChart {
     @Override
     protected void initializeGraph() {
         super.initializeGraph();
-        mData = new ArrayList<>();
+        mData = new SnapshotList<>();
+        mSyncedData = mData.get();
+        mStore = new StackedBarStore();
+        mStore.setOnStoreChangedListener(new StackedBarStore.OnStoreChangedListener() {
+            @Override
+            public void onStoreChanged(StackedBarStore _Store) {
+                requestRelayout();
+            }
+        });
+
+        mValueFormat = Utils.createValueFormat(mFormatter, mShowDecimal);
+
+        mLayoutEngine = new StackedBarLayoutEngine(mTextMeasureCache);
+        mLayoutEngine.setOnLayoutPublishedListener(new StackedBarLayoutEngine.OnLayoutPublishedListener() {
+            @Override
+            public void onLayoutPublished(StackedBarLayout _Layout) {
+                // called on the layout thread
+                post(mApplyLayoutRunnable);
+            }
+        });
 
-        mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mTextPaint.setTextSize(mTextSize);
-        mTextPaint.setTextAlign(Paint.Align.CENTER);
-        mTextPaint.setColor(0xFFFFFFFF);
+        mTextPaint = new Paint(mStyle.getValuePaint());
+        mValueMeasurer = mStyle.getValueMeasurer();
+        mAxisTextPaint = new Paint(mStyle.getAxisTextPaint());
+        mPainter = createPainter(mGraphPaint, mTextPaint, mLegendPaint, mAxisTextPaint);
 
         if(this.isInEditMode()) {
             StackedBarModel s1 = new StackedBarModel();
@@ -157,114 +746,536 @@ public class StackedBarChart extends BaseBarChart {
         }
     }
 
+    /**
+     * Called on the producer threads.
+     */
+    private final ChartDataSource.OnDataAvailableListener mDataAvailableListener = new ChartDataSource.OnDataAvailableListener() {
+        @Override
+        public void onDataAvailable(ChartDataSource _Source) {
+            requestDataSync();
+        }
+    };
+
+    private final Runnable mRequestSyncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // the models and the data source are synced in onDataChanged()
+            requestRelayout();
+        }
+    };
+
+    /**
+     * Requests that the models and the data source are copied into the store on the next frame.
+     * Can be called on any thread. Only the first request after a sync posts to the UI thread, so
+     * fast writers cause at most one relayout per frame.
+     */
+    private void requestDataSync() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            requestRelayout();
+        } else if (mSyncRequested.compareAndSet(false, true)) {
+            mMainHandler.post(mRequestSyncRunnable);
+        }
+    }
+
+    /**
+     * Queues the bars whose value changed, on the thread which changed them.
+     */
+    private final BarModel.OnValueChangedListener mBarValueListener = new BarModel.OnValueChangedListener() {
+        @Override
+        public void onValueChanged(BarModel _bar) {
+            mChangedBars.add(_bar);
+            requestDataSync();
+        }
+    };
+
+    /**
+     * Applies the latest published layout on the UI thread.
+     */
+    private final Runnable mApplyLayoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            StackedBarLayout layout = mLayoutEngine.getLayout();
+            if (layout != null && layout != mLayout && layout.getGeneration() >= mMinGeneration) {
+                applyLayout(layout, true);
+            }
+        }
+    };
+
     /**
      * 새로운 데이타가 삽입되었을 때. 그리고 View의 Dimension이 변경되었을 때 자동으로 호출된다.
+     * The layout is calculated on a background thread and drawn as soon as it is published. The
+     * layout editor preview gets the layout synchronously.
      */
     @Override
     protected void onDataChanged() {
-        calculateBarPositions(mData.size());
+        // reset before syncing, so data which is added meanwhile requests the next frame
+        mSyncRequested.set(false);
+        syncModels();
+        if (mDataSource != null) {
+            mDataSource.drainTo(mStore);
+        }
+
+        if (isInEditMode()) {
+            calculateBarPositions(mStore.getStackCount());
+        } else if (mBoundData != null && !mStore.isDirty()) {
+            layoutBoundData(mBoundData, createLayoutConfig());
+        } else {
+            // the store changed, so its data is not the bound data set anymore
+            mBoundData = null;
+            // the snapshot of a retired layout is refilled, so a live chart does not copy its data into new arrays
+            mLayoutEngine.submit(mStore.snapshot(mLayoutEngine.obtainSnapshot()), createLayoutConfig(),
+                    !isLayoutValid(), true);
+            onLayoutValidated();
+        }
         super.onDataChanged();
     }
 
     /**
-     * Calculates the bar boundaries based on the bar width and bar margin.
+     * Lays out the bound data set, unless its layout is known already: the current layout is kept,
+     * and a cached layout is published without a layout pass.
+     * @param _Data     The bound data set, which the store holds unchanged
+     * @param _Config   The dimensions and settings of the layout
+     */
+    private void layoutBoundData(StackedBarSnapshot _Data, BarLayoutConfig _Config) {
+        StackedBarLayout current = mLayout;
+        if (current != null && current.getData() == _Data && current.getConfig().isSameLayout(_Config)) {
+            onLayoutValidated();
+            return;
+        }
+
+        ChartMetrics metrics = getMetrics();
+        StackedBarLayout cached = mLayoutCache.get(_Data, _Config);
+        if (metrics != null) {
+            metrics.onCacheAccess(ChartMetrics.CACHE_LAYOUT, cached != null ? 1 : 0, cached != null ? 0 : 1);
+        }
+
+        if (cached != null) {
+            applyLayout(mLayoutEngine.adopt(cached), false);
+        } else {
+            // the snapshot is submitted itself, so the published layout is the key of the cache
+            mLayoutEngine.submit(_Data, _Config, true);
+        }
+        onLayoutValidated();
+    }
+
+    @Override
+    protected int getDataSize() {
+        return mStore.getStackCount();
+    }
+
+    /**
+     * Calculates the whole layout synchronously on the calling thread.
      * @param _Width    Calculated bar width
      * @param _Margin   Calculated bar margin
      */
     protected void calculateBounds(float _Width, float _Margin) {
+        applyLayout(StackedBarLayoutCalculator.calculate(mStore.snapshot(), createLayoutConfig(), null, true,
+                0, 0, mTextMeasureCache, mLayoutEngine.getGeneration()), true);
+    }
 
-        int last = 0;
-        // 최상위 Loop문
-        for (StackedBarModel model : mData) {
-            float lastY = 0;
-            // 하나의 StackedBar의 값들을 모두 더한 값
-            float cumulatedValues = 0;
+    /**
+     * Takes a snapshot of the dimensions and settings for the layout.
+     * @return The layout config
+     */
+    private BarLayoutConfig createLayoutConfig() {
+        return new BarLayoutConfig(mAvailableScreenSize, mGraphHeight, mBarWidth, mBarMargin, mFixedBarWidth,
+                mVisibleBars, Utils.dpToPx(10.f), mValueFormat, mValueMeasurer, mLegendMeasurer,
+                mLodEnabled ? mMinBarWidth : 0, mLodAggregation, mValueAxis);
+    }
+
+    /**
+     * Makes a calculated layout the current one and redraws the chart.
+     * @param _Layout  The new layout
+     * @param _Animate True to show the transition from the displayed heights, if it is enabled
+     */
+    private void applyLayout(StackedBarLayout _Layout, boolean _Animate) {
+        StackedBarLayout previous = mLayout;
+        mLayout = _Layout;
+        // the labels are formatted once per layout, not in every frame
+        mAxisLabels = StackedBarPainter.formatAxisLabels(_Layout, mValueFormat);
+        if (_Layout.getData() == mBoundData) {
+            mLayoutCache.put(_Layout);
+        } else if (_Animate && mAnimationDuration > 0 && !isInEditMode()) {
+            // a bound data set is not related to the displayed one, so it is shown at once
+            startAnimation(_Layout);
+        }
+        applyBarLayout(_Layout.getStackCount(), _Layout.getBarLefts(), _Layout.getBarWidth(), _Layout.getBarMargin(),
+                _Layout.getContentWidth(), _Layout.getMaxLabelWidth());
 
-            // used if seperators are enabled, to prevent information loss
-            // StackedBar의 갯수에서 1을 뺀 값(예를 들어 3개일 때는 2개)에서 Separator의 넓이를 곱한 값을 총 그래프 높이에서 뺀 값이 실제 보여지는 그래프의 높이 값임.
-            Log.d(LOG_TAG, "calculateBounds, mGraphHeight: " + mGraphHeight);
+        if (mSyncedData.size() > 0) {
+            updateModels(_Layout);
+        }
+        retireLayout(previous, _Layout);
+    }
 
-            for (BarModel barModel : model.getBars()) {
-                cumulatedValues += barModel.getValue();
+    /**
+     * Hands a layout which is not drawn anymore back to the layout engine, so the next pass fills
+     * its columns instead of allocating new ones. Layouts which are still referenced are kept: the
+     * cached ones, the target of the transition and those whose snapshot is still in use.
+     * @param _Layout   The replaced layout, or null
+     * @param _Current  The layout which is drawn from now on
+     */
+    private void retireLayout(final StackedBarLayout _Layout, StackedBarLayout _Current) {
+        if (_Layout == null || _Layout == _Current || _Layout.isPinned() || isInEditMode()
+                || _Layout.getData() == _Current.getData() || _Layout.getData() == mBoundData
+                || _Layout == mSegmentAnimation.getTarget()) {
+            return;
+        }
+        // a tile which is rendered meanwhile may still draw the layout
+        runAfterTileRenders(new Runnable() {
+            @Override
+            public void run() {
+                mLayoutEngine.recycle(_Layout);
             }
+        });
+    }
 
-            last += _Margin / 2;
-
-            // Loop문
-            for (BarModel barModel : model.getBars()) {
-                // calculate topX for the StackedBarModel part
-                // 가장 높은 그래프의 값을 정해서 그 값을 기준으로 나눠야 함. 아래 코드의 경우 usableGraphHeight 가장 높은 값으로 변경
-                //float newY = ((barModel.getValue() * usableGraphHeight) / cumulatedValues) + lastY;
-                // 하나의 바의 높이를 구한 뒤 거기에 사용가능한 바 그래프의 높이를 곱한다. 거기서 모든 값들을 더한 값으로 나눈다.
-                // 그리고 LastY를 구하는데 LastY는 StackedBar에서 이전 바의 top 값이다.
-                float newY = ((barModel.getValue() * mGraphHeight) / cumulatedValues) + lastY;
-                Log.d(LOG_TAG, "calculateBounds, newY: " + newY);
-                float height = newY - lastY;
-                Rect textBounds = new Rect();
-                // 해당 Bar의 값
-                String value = String.valueOf(barModel.getValue());
-
-                mTextPaint.getTextBounds(value, 0, value.length(), textBounds);
-                //Log.d(LOG_TAG, "calculateBounds, textBounds: " + textBounds);
-
-                if (textBounds.height() * 1.5f < height && textBounds.width() * 1.1f < _Width) {
-                    barModel.setShowValue(true);
-                    // ??
-                    barModel.setValueBounds(textBounds);
+    /**
+     * Starts the transition to the given layout, continuing from the displayed heights if another
+     * transition is still running.
+     * @param _Layout The new layout
+     */
+    private void startAnimation(StackedBarLayout _Layout) {
+        if (mAnimator == null) {
+            mAnimator = ValueAnimator.ofFloat(0.f, 1.f);
+            mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimator _Animation) {
+                    mSegmentAnimation.interpolate(_Animation.getAnimatedFraction());
+                    // only the bars change, the legend stays the same
+                    invalidateGraph();
                 }
+            });
+            mAnimator.addListener(new AnimatorListenerAdapter() {
+                @Override
+                public void onAnimationEnd(Animator _Animation) {
+                    mAnimating = false;
+                    invalidateTiles();
+                    invalidateGraph();
+                }
+            });
+        }
 
-                barModel.setBarBounds(new RectF(last, lastY, last + _Width, newY));
-                Log.d(LOG_TAG, "calculateBounds, barModel.getBarBounds(): " + barModel.getBarBounds());
-                // ??
-                lastY = newY;
-            }
-            model.setLegendBounds(new RectF(last, 0, last + _Width, mLegendHeight));
+        // cancelling ends the running transition, so the flag is set afterwards
+        mAnimator.cancel();
+        mSegmentAnimation.start(_Layout);
+        mAnimating = true;
+        mAnimator.setDuration(mAnimationDuration);
+        mAnimator.start();
+    }
+
+    /**
+     * Hit tests the drawn layout: a binary search over the bar positions finds the stack, a second
+     * one over the segment bounds of the stack finds the segment, so a tap costs O(log n). The
+     * tapped stack is selected, a tap next to the bars clears the selection.
+     */
+    @Override
+    protected void onGraphTapped(float _X, float _Y) {
+        StackedBarLayout layout = mLayout;
+        if (layout == null) {
+            return;
+        }
 
-            last += _Width + (_Margin / 2);
+        int stack = layout.findStack(_X);
+        setSelectedStack(stack);
+        if (mSegmentSelectedListener == null || stack < 0) {
+            return;
         }
 
-        Utils.calculateLegendInformation(mData, 0, mContentRect.width(), mLegendPaint);
+        // the segments are stacked from the bottom of the graph upwards
+        int segment = layout.findSegment(stack, mGraphHeight - _Y);
+        int index   = segment >= 0 ? segment - layout.getData().getSegmentStart(stack) : -1;
+        mSegmentSelectedListener.onSegmentSelected(stack, index);
+    }
+
+    @Override
+    protected boolean isAnimating() {
+        return mAnimating;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mAnimator != null) {
+            mAnimator.end();
+        }
     }
 
     /**
-     * Callback method for drawing the bars in the child classes.
-     * @param _Canvas 그래프 뷰의 Canvas 객체
+     * Draws the gridlines behind the bars and their labels on top. The axis does not scroll, so it is
+     * drawn in view coordinates and is not part of the tiles.
      */
-    protected void drawBars(Canvas _Canvas) {
-        for (StackedBarModel model : mData) {
-            float lastTop;
-            float lastBottom = mGraphHeight;
+    @Override
+    protected void onGraphDraw(Canvas _Canvas) {
+        StackedBarLayout layout = mLayout;
+        ChartMetrics metrics = getMetrics();
+        if (metrics != null && layout != null) {
+            reportVisibleSegments(metrics, layout);
+        }
 
-            for (int index = 0; index < model.getBars().size(); index++) {
-                BarModel barModel = model.getBars().get(index);
+        String[] labels = mAxisLabels;
+        if (!mPainter.drawGridlines(_Canvas, layout, labels, mGraphWidth, mGraphHeight)) {
+            super.onGraphDraw(_Canvas);
+            return;
+        }
 
-                RectF bounds = barModel.getBarBounds();
-                mGraphPaint.setColor(barModel.getColor());
+        int saveCount = _Canvas.save();
+        super.onGraphDraw(_Canvas);
+        _Canvas.restoreToCount(saveCount);
 
-                float height = (bounds.height());
-                lastTop = lastBottom - height;
+        mPainter.drawAxisLabels(_Canvas, layout, labels, mGraphHeight);
+    }
 
-                _Canvas.drawRect(
-                        bounds.left,
-                        lastTop,
-                        bounds.right,
-                        lastBottom,
-                        mGraphPaint
-                );
+    private void reportVisibleSegments(ChartMetrics _Metrics, StackedBarLayout _Layout) {
+        int[] offsets = _Layout.getData().getStackOffsets();
+        int   first   = Math.min(getFirstVisibleBar(mCurrentViewport.left), _Layout.getStackCount());
+        int   last    = Math.min(getLastVisibleBar(mCurrentViewport.right), _Layout.getStackCount());
+        _Metrics.onVisibleSegments(last > first ? offsets[last] - offsets[first] : 0, _Layout.getData().getSegmentCount());
+    }
 
-                // mShowValues가 존재하고, isShowValue가 true일 때
-                if (mShowValues && barModel.isShowValue()) {
-                    _Canvas.drawText(
-                            String.valueOf(barModel.getValue()),
-                            bounds.centerX(),
-                            (lastTop + height / 2) + barModel.getValueBounds().height()/2, // 바 높이의 절반 + ???
-                            mTextPaint
-                    );
-                }
+    /**
+     * Callback method for drawing the bars in the child classes. The bars are drawn by the
+     * {@link StackedBarPainter}, the running transition passes its heights.
+     * @param _Canvas       그래프 뷰의 Canvas 객체
+     * @param _FirstIndex   Index of the first visible bar (inclusive)
+     * @param _LastIndex    Index of the last visible bar (exclusive)
+     */
+    protected void drawBars(Canvas _Canvas, int _FirstIndex, int _LastIndex) {
+        StackedBarLayout layout = mLayout;
+        if (layout == null) {
+            return;
+        }
+
+        float[] heights = mAnimating && mSegmentAnimation.getTarget() == layout ? mSegmentAnimation.getHeights() : null;
+        drawBars(_Canvas, mPainter, layout, mZoom, mGraphHeight, heights, _FirstIndex, _LastIndex);
+    }
+
+    /**
+     * Draws the bars with the given painter and reports the color batch lookups to the metrics.
+     */
+    private void drawBars(Canvas _Canvas, StackedBarPainter _Painter, StackedBarLayout _Layout, float _Zoom,
+                          float _GraphHeight, float[] _Heights, int _FirstIndex, int _LastIndex) {
+        ColorBatchCache batches = _Painter.getColorBatches();
+        ChartMetrics    metrics = getMetrics();
+        long hits   = metrics != null ? batches.getHitCount() : 0;
+        long misses = metrics != null ? batches.getMissCount() : 0;
+
+        _Painter.drawBars(_Canvas, _Layout, _Zoom, _GraphHeight, _Heights, _FirstIndex, _LastIndex);
+
+        // only the batched bars access the cache
+        if (metrics != null && (batches.getHitCount() != hits || batches.getMissCount() != misses)) {
+            metrics.onCacheAccess(ChartMetrics.CACHE_COLOR_BATCH, batches.getHitCount() - hits, batches.getMissCount() - misses);
+        }
+    }
+
+    /**
+     * Draws the legend labels of the given stacks. The labels are placed for the current zoom by the
+     * {@link LegendPlacer}, only the blocks of the visible stacks are placed and they are reused
+     * while scrolling.
+     * @param _Canvas       The canvas object of the legend view.
+     * @param _FirstIndex   Index of the first visible stack (inclusive)
+     * @param _LastIndex    Index of the last visible stack (exclusive)
+     */
+    @Override
+    protected void drawLegend(Canvas _Canvas, int _FirstIndex, int _LastIndex) {
+        StackedBarLayout layout = mLayout;
+        if (layout == null) {
+            return;
+        }
+        drawLegend(_Canvas, mPainter, layout, mZoom, mLegendHeight - mMaxFontHeight, _FirstIndex, _LastIndex);
+    }
+
+    /**
+     * Draws the legend labels with the given painter and reports the placement lookups to the metrics.
+     */
+    private void drawLegend(Canvas _Canvas, StackedBarPainter _Painter, StackedBarLayout _Layout, float _Zoom,
+                            float _Baseline, int _FirstIndex, int _LastIndex) {
+        ChartMetrics metrics = getMetrics();
+        long hits   = metrics != null ? mLegendPlacer.getHitCount() : 0;
+        long misses = metrics != null ? mLegendPlacer.getMissCount() : 0;
+
+        _Painter.drawLegend(_Canvas, _Layout, mLegendPlacer, _Zoom, _Baseline, _FirstIndex, _LastIndex);
+
+        if (metrics != null) {
+            metrics.onCacheAccess(ChartMetrics.CACHE_LEGEND, mLegendPlacer.getHitCount() - hits, mLegendPlacer.getMissCount() - misses);
+        }
+    }
+
+    /**
+     * The layout and the painter which a tile of the chart is drawn with.
+     */
+    private static final class StackedBarTileState extends TileState {
+        final StackedBarLayout  mLayout;
+        final StackedBarPainter mPainter;
+        final float             mGraphHeight;
+        final float             mLegendBaseline;
+
+        StackedBarTileState(StackedBarChart _Chart, int _Layer, float _Zoom, boolean _Background,
+                            StackedBarPainter _Painter) {
+            super(_Chart, _Layer, _Zoom, _Background);
+            mLayout         = _Chart.mLayout;
+            mPainter        = _Painter;
+            mGraphHeight    = _Chart.mGraphHeight;
+            mLegendBaseline = _Chart.mLegendHeight - _Chart.mMaxFontHeight;
+        }
+    }
+
+    @Override
+    protected TileState captureTile(int _Layer, float _Zoom, boolean _Background) {
+        return new StackedBarTileState(this, _Layer, _Zoom, _Background, _Background ? obtainTilePainter() : mPainter);
+    }
 
-                lastBottom = lastTop;
+    /**
+     * Draws a tile from its captured layout. Tiles are not used during a transition, so the bars
+     * are drawn with the heights of the layout.
+     */
+    @Override
+    protected void drawTile(Canvas _Canvas, TileState _State, int _FirstIndex, int _LastIndex) {
+        StackedBarTileState state = (StackedBarTileState) _State;
+        if (state.mLayout == null) {
+            return;
+        }
+
+        if (state.mLayer == LAYER_GRAPH) {
+            drawBars(_Canvas, state.mPainter, state.mLayout, state.mZoom, state.mGraphHeight, null, _FirstIndex, _LastIndex);
+        } else {
+            drawLegend(_Canvas, state.mPainter, state.mLayout, state.mZoom, state.mLegendBaseline, _FirstIndex, _LastIndex);
+        }
+    }
+
+    /**
+     * Returns the painter of the tile thread. It draws with copies of the paints, so the tile thread
+     * never changes a paint which the UI thread draws with at the same time.
+     */
+    private StackedBarPainter obtainTilePainter() {
+        if (mTilePainter == null) {
+            mTilePainter = createPainter(new Paint(mGraphPaint), new Paint(mTextPaint), new Paint(mLegendPaint),
+                    new Paint(mAxisTextPaint));
+        }
+        return mTilePainter;
+    }
+
+    private StackedBarPainter createPainter(Paint _GraphPaint, Paint _ValuePaint, Paint _LegendPaint, Paint _AxisTextPaint) {
+        StackedBarPainter painter = new StackedBarPainter(_GraphPaint, _ValuePaint, _LegendPaint, _AxisTextPaint);
+        painter.setShowValues(mShowValues);
+        painter.setColorBatching(mColorBatching);
+        painter.setMinBarWidth(mMinBarWidth);
+        return painter;
+    }
+
+    /**
+     * Copies a model into the columnar store and connects its bars with their segments.
+     * @param _Model The model which should be appended.
+     */
+    private void appendToStore(StackedBarModel _Model) {
+        List<BarModel> bars = _Model.getBars();
+        mStore.startStack(_Model.getLegendLabel());
+        for (int i = 0, size = bars.size(); i < size; i++) {
+            BarModel bar = bars.get(i);
+            bar.attach(mStore, mStore.getSegmentCount(), mBarValueListener);
+            mStore.addSegment(bar.getValue(), bar.getColor());
+        }
+    }
+
+    /**
+     * Copies the changes of the current model snapshot into the store. Appended and removed models
+     * only change the affected stacks, every other change rebuilds the store.
+     */
+    private void syncModels() {
+        // the changed values are written first, a rebuild of the store reads the current values anyway
+        BarModel changed;
+        while ((changed = mChangedBars.poll()) != null) {
+            changed.syncValue();
+        }
+
+        SnapshotList.Snapshot<StackedBarModel> data = mData.get();
+        SnapshotList.Snapshot<StackedBarModel> synced = mSyncedData;
+        if (data == synced && !mResyncModels) {
+            return;
+        }
+
+        List<StackedBarModel> models = data.getModels();
+        // appending and removing in place needs a store which holds exactly the synced models. If it
+        // holds bound stacks or stacks which were added directly, the models take over the store
+        boolean modelStore = mStore.getStackCount() == synced.size();
+        boolean appended = !mResyncModels && modelStore && data.isAppendOf(synced);
+        int     removed = mResyncModels || !modelStore ? -1 : data.getRemovedIndex(synced);
+
+        if (appended) {
+            for (int i = synced.size(), size = models.size(); i < size; i++) {
+                appendToStore(models.get(i));
+            }
+        } else if (removed >= 0) {
+            detach(synced.getModels().get(removed));
+            mStore.removeStack(removed);
+            // the segments of the following models moved to the front
+            attachModels(models, removed);
+        } else {
+            List<StackedBarModel> old = synced.getModels();
+            for (int i = 0, size = old.size(); i < size; i++) {
+                detach(old.get(i));
+            }
+            mStore.clear();
+            for (int i = 0, size = models.size(); i < size; i++) {
+                appendToStore(models.get(i));
+            }
+        }
+        mSyncedData = data;
+        mResyncModels = false;
+    }
+
+    /**
+     * Connects the bars of all models from the given index on with their current segments.
+     * @param _Models The models of the store
+     * @param _From   Index of the first model
+     */
+    private void attachModels(List<StackedBarModel> _Models, int _From) {
+        int count = Math.min(_Models.size(), mStore.getStackCount());
+        for (int i = _From; i < count; i++) {
+            List<BarModel> bars = _Models.get(i).getBars();
+            int start = mStore.getSegmentStart(i);
+            for (int j = 0, size = bars.size(); j < size; j++) {
+                bars.get(j).attach(mStore, start + j, mBarValueListener);
             }
+        }
+    }
 
+    private static void detach(StackedBarModel _Model) {
+        List<BarModel> bars = _Model.getBars();
+        for (int i = 0, size = bars.size(); i < size; i++) {
+            bars.get(i).attach(null, 0, null);
+        }
+    }
+
+    /**
+     * Writes the computed bounds back into the models, so the facade reflects the last layout pass.
+     * @param _Layout The layout which was applied
+     */
+    private void updateModels(StackedBarLayout _Layout) {
+        StackedBarSnapshot    data = _Layout.getData();
+        List<StackedBarModel> models = mSyncedData.getModels();
+        int                   stackCount = Math.min(models.size(), _Layout.getStackCount());
+        float              width = _Layout.getBarWidth();
+
+        for (int i = 0; i < stackCount; i++) {
+            StackedBarModel model = models.get(i);
+            List<BarModel>  bars = model.getBars();
+            float           left = _Layout.getBarLeft(i);
+            int             start = data.getSegmentStart(i);
+            int             barCount = Math.min(bars.size(), data.getSegmentEnd(i) - start);
+
+            model.getLegendBounds().set(left, 0, left + width, mLegendHeight);
+            model.setShowLabel(_Layout.canShowLabel(i));
+            model.setLegendLabelPosition((int) _Layout.getLabelPosition(i));
+
+            for (int j = 0; j < barCount; j++) {
+                BarModel bar = bars.get(j);
+                int      segment = start + j;
+
+                bar.getBarBounds().set(left, _Layout.getSegmentTop(segment), left + width, _Layout.getSegmentBottom(segment));
+                bar.setShowValue(_Layout.isShowValue(segment));
+                bar.getValueBounds().set(0, 0, (int) _Layout.getValueTextWidth(segment), (int) _Layout.getValueTextHeight(segment));
+            }
         }
     }
 
@@ -274,16 +1285,110 @@ public class StackedBarChart extends BaseBarChart {
      */
     @Override
     protected List<? extends BaseModel> getLegendData() {
-        return mData;
+        return mSyncedData.getModels();
     }
 
     @Override
     protected List<RectF> getBarBounds() {
-        ArrayList<RectF> bounds = new ArrayList<RectF>();
-        for (StackedBarModel model : mData) {
-            bounds.add(model.getBounds());
+        ArrayList<RectF> bounds = new ArrayList<RectF>(mBarCount);
+        for (int i = 0; i < mBarCount; i++) {
+            bounds.add(new RectF(mBarLefts[i], 0, mBarLefts[i] + mCalculatedBarWidth, mGraphHeight));
         }
         return bounds;
     }
 
+    /**
+     * Saved data of the chart. Only the data is written to the parcel, as flat arrays, and only up to
+     * {@link #MAX_SAVED_BYTES}; the layouts and larger data are kept as long as the state is not
+     * parceled.
+     */
+    static class SavedState extends BaseSavedState {
+
+        // null if the data was too large to be parceled
+        final StackedBarSnapshot     mData;
+        final List<StackedBarLayout> mLayouts;
+        // true if the data was added as models, which are created again on restore
+        final boolean                mModels;
+
+        SavedState(Parcelable _SuperState, StackedBarSnapshot _Data, List<StackedBarLayout> _Layouts, boolean _Models) {
+            super(_SuperState);
+            mData    = _Data;
+            mLayouts = _Layouts;
+            mModels  = _Models;
+        }
+
+        private SavedState(Parcel _In) {
+            super(_In);
+            if (_In.readInt() != 0) {
+                float[]  values       = _In.createFloatArray();
+                int[]    colors       = _In.createIntArray();
+                int[]    stackOffsets = _In.createIntArray();
+                String[] labels       = _In.createStringArray();
+                float    maxTotal     = _In.readFloat();
+                int      maxStack     = _In.readInt();
+                int      minStack     = _In.readInt();
+                mData = new StackedBarSnapshot(values, colors, stackOffsets, labels, maxTotal, maxStack, minStack,
+                        0, labels.length);
+            } else {
+                mData = null;
+            }
+            mLayouts = new ArrayList<StackedBarLayout>(0);
+            mModels  = _In.readInt() != 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel _Out, int _Flags) {
+            super.writeToParcel(_Out, _Flags);
+            if (mData == null || estimateSize(mData) > MAX_SAVED_BYTES) {
+                // a too large parcel would fail the whole transaction, the data is loaded again instead
+                _Out.writeInt(0);
+                _Out.writeInt(mModels ? 1 : 0);
+                return;
+            }
+
+            _Out.writeInt(1);
+            int stacks   = mData.getStackCount();
+            int segments = mData.getSegmentCount();
+            // the arrays of a refilled snapshot may be larger than the data
+            _Out.writeFloatArray(Arrays.copyOf(mData.getValues(), segments));
+            _Out.writeIntArray(Arrays.copyOf(mData.getColors(), segments));
+            _Out.writeIntArray(Arrays.copyOf(mData.getStackOffsets(), stacks + 1));
+            String[] labels = new String[stacks];
+            for (int i = 0; i < stacks; i++) {
+                labels[i] = mData.getLabel(i);
+            }
+            _Out.writeStringArray(labels);
+            _Out.writeFloat(mData.getMaxStackTotal());
+            _Out.writeInt(mData.getMaxStack());
+            _Out.writeInt(mData.getMinStack());
+            _Out.writeInt(mModels ? 1 : 0);
+        }
+
+        /**
+         * Estimates the bytes which the data takes in a parcel: a value and a color per segment, an
+         * offset and a label per stack.
+         */
+        private static long estimateSize(StackedBarSnapshot _Data) {
+            long size = 8L * _Data.getSegmentCount() + 4L * (_Data.getStackCount() + 1);
+            for (int i = 0, stacks = _Data.getStackCount(); i < stacks && size <= MAX_SAVED_BYTES; i++) {
+                String label = _Data.getLabel(i);
+                // length and UTF-16 characters, padded to 4 bytes
+                size += label != null ? 8 + 2L * label.length() : 4;
+            }
+            return size;
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel _In) {
+                return new SavedState(_In);
+            }
+
+            @Override
+            public SavedState[] newArray(int _Size) {
+                return new SavedState[_Size];
+            }
+        };
+    }
+
 }
@@ -0,0 +1,392 @@
+package com.example.w.eazegraphclone.charts;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import com.example.w.eazegraphclone.layout.ColorBatch;
+import com.example.w.eazegraphclone.layout.ColorBatchCache;
+import com.example.w.eazegraphclone.layout.LegendPlacer;
+import com.example.w.eazegraphclone.layout.LodPyramid;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.utils.Utils;
+
+import java.text.NumberFormat;
+
+/**
+ * Draws the bars, the value axis and the legend labels of a {@link StackedBarLayout}. The
+ * {@link StackedBarChart} draws its layers with it, and the {@link StackedBarThumbnailRenderer}
+ * draws bitmaps without a view, so a thumbnail looks exactly like the chart.
+ * <p>
+ * The zoom and the dimensions are passed with every call, the options are set once. Not thread
+ * safe, because the colors of the paints are changed while drawing: every thread which draws at
+ * the same time needs its own painter.
+ */
+final class StackedBarPainter {
+
+    private final Paint           mGraphPaint;
+    // draws the segments of a color batch as lines which are as wide as the bars
+    private final Paint           mBatchPaint;
+    private final Paint           mValuePaint;
+    private final Paint           mLegendPaint;
+    private final Paint           mAxisPaint;
+    private final Paint           mAxisTextPaint;
+
+    private final ColorBatchCache mColorBatches = new ColorBatchCache();
+
+    private boolean               mShowValues   = true;
+    private boolean               mColorBatching = true;
+    private float                 mMinBarWidth;
+
+    /**
+     * Creates a painter which draws with copies of the paint prototypes of a style.
+     * @param _Style The style
+     */
+    StackedBarPainter(ChartStyle _Style) {
+        this(new Paint(_Style.getGraphPaint()), new Paint(_Style.getValuePaint()), new Paint(_Style.getLegendPaint()),
+                new Paint(_Style.getAxisTextPaint()));
+    }
+
+    /**
+     * The paints are used as they are, so the owner can change their text sizes later.
+     * @param _GraphPaint    Paint of the segments
+     * @param _ValuePaint    Paint of the value labels, a copy of {@link ChartStyle#getValuePaint()}
+     * @param _LegendPaint   Paint of the legend labels
+     * @param _AxisTextPaint Paint of the axis labels, a copy of {@link ChartStyle#getAxisTextPaint()}
+     */
+    StackedBarPainter(Paint _GraphPaint, Paint _ValuePaint, Paint _LegendPaint, Paint _AxisTextPaint) {
+        mGraphPaint     = _GraphPaint;
+        mValuePaint     = _ValuePaint;
+        mLegendPaint    = _LegendPaint;
+        mAxisTextPaint  = _AxisTextPaint;
+
+        mBatchPaint = new Paint(_GraphPaint);
+        mBatchPaint.setStyle(Paint.Style.STROKE);
+        mBatchPaint.setStrokeCap(Paint.Cap.BUTT);
+
+        mAxisPaint = new Paint();
+        mAxisPaint.setColor(StackedBarChart.DEF_AXIS_COLOR);
+        mAxisPaint.setStrokeWidth(Utils.dpToPx(1.f));
+    }
+
+    /**
+     * Formats the labels of the gridlines of a layout, so they are not formatted in every frame.
+     * @param _Layout The layout
+     * @param _Format Format of the values
+     * @return The labels from the bottom up, empty if the layout has no axis
+     */
+    static String[] formatAxisLabels(StackedBarLayout _Layout, NumberFormat _Format) {
+        float maximum = _Layout.getAxisMaximum();
+        float step    = _Layout.getAxisStep();
+        // the maximum is a whole multiple of the step, except for a fixed axis
+        int   count   = step > 0 ? (int) (maximum / step + 1e-4f) + 1 : 0;
+
+        String[] labels = new String[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = _Format.format(i * step);
+        }
+        return labels;
+    }
+
+    void setShowValues(boolean _ShowValues) {
+        mShowValues = _ShowValues;
+    }
+
+    void setColorBatching(boolean _ColorBatching) {
+        mColorBatching = _ColorBatching;
+        if (!_ColorBatching) {
+            mColorBatches.clear();
+        }
+    }
+
+    /**
+     * @param _MinBarWidth Minimum width of a drawn bar in px, narrower bars are drawn from the
+     *                     level of detail pyramid of the layout
+     */
+    void setMinBarWidth(float _MinBarWidth) {
+        mMinBarWidth = _MinBarWidth;
+    }
+
+    ColorBatchCache getColorBatches() {
+        return mColorBatches;
+    }
+
+    /**
+     * Draws the bars of the given stacks. Narrow bars are drawn from the pyramid, animated heights
+     * segment by segment, and the final heights batched by color if batching is enabled.
+     * @param _Canvas       Canvas in zoomed content coordinates
+     * @param _Layout       The layout which should be drawn
+     * @param _Zoom         Horizontal zoom
+     * @param _GraphHeight  Height of the graph, the bars stand on its bottom
+     * @param _Heights      Animated heights of the segments, or null to use the heights of the layout
+     * @param _FirstIndex   Index of the first visible bar (inclusive)
+     * @param _LastIndex    Index of the last visible bar (exclusive)
+     */
+    void drawBars(Canvas _Canvas, StackedBarLayout _Layout, float _Zoom, float _GraphHeight, float[] _Heights,
+                  int _FirstIndex, int _LastIndex) {
+        LodPyramid pyramid = _Layout.getPyramid();
+        if (pyramid != null) {
+            int level = pyramid.selectLevel(_Layout.getBarWidth(), _Layout.getBarMargin(), _Zoom, mMinBarWidth);
+            if (level > 0) {
+                drawAggregatedBars(_Canvas, _Layout, pyramid, level, _Zoom, _GraphHeight, _FirstIndex, _LastIndex);
+                return;
+            }
+        }
+
+        int last = Math.min(_LastIndex, _Layout.getStackCount());
+        if (_Heights != null) {
+            // the batches and values belong to the final heights, so they are shown after the animation
+            drawSegments(_Canvas, _Layout, _Heights, _Zoom, _GraphHeight, _FirstIndex, last);
+            return;
+        }
+
+        if (mColorBatching && _Layout.getBarWidth() > 0) {
+            drawBatchedBars(_Canvas, _Layout, _Zoom, _GraphHeight, _FirstIndex, last);
+            return;
+        }
+
+        StackedBarSnapshot data = _Layout.getData();
+        int[]              colors = data.getColors();
+        int[]              offsets = data.getStackOffsets();
+        float[]            lefts = _Layout.getBarLefts();
+        float              width = _Layout.getBarWidth();
+
+        for (int i = _FirstIndex; i < last; i++) {
+            float left    = lefts[i] * _Zoom;
+            float right   = (lefts[i] + width) * _Zoom;
+            float centerX = (left + right) / 2;
+            float lastTop;
+            float lastBottom = _GraphHeight;
+
+            for (int segment = offsets[i], end = offsets[i + 1]; segment < end; segment++) {
+                mGraphPaint.setColor(colors[segment]);
+
+                float height = _Layout.getSegmentBottom(segment) - _Layout.getSegmentTop(segment);
+                lastTop = lastBottom - height;
+
+                _Canvas.drawRect(
+                        left,
+                        lastTop,
+                        right,
+                        lastBottom,
+                        mGraphPaint
+                );
+
+                // mShowValues가 존재하고, isShowValue가 true일 때
+                if (mShowValues && _Layout.isShowValue(segment)) {
+                    _Canvas.drawText(
+                            _Layout.getValueLabel(segment),
+                            centerX,
+                            (lastTop + height / 2) + _Layout.getValueTextHeight(segment) / 2, // 바 높이의 절반 + ???
+                            mValuePaint
+                    );
+                }
+
+                lastBottom = lastTop;
+            }
+
+        }
+    }
+
+    /**
+     * Draws the given stacks with one drawLines() call per color and chunk. Chunks with too many
+     * colors are drawn segment by segment. The values are drawn afterwards, so they are on top of
+     * all bars like in the unbatched loop.
+     */
+    private void drawBatchedBars(Canvas _Canvas, StackedBarLayout _Layout, float _Zoom, float _GraphHeight,
+                                 int _FirstIndex, int _LastIndex) {
+        if (_FirstIndex >= _LastIndex) {
+            return;
+        }
+
+        int firstChunk = _FirstIndex / ColorBatchCache.CHUNK_SIZE;
+        int lastChunk  = (_LastIndex - 1) / ColorBatchCache.CHUNK_SIZE + 1;
+
+        // the batches are in content coordinates, the zoom only stretches them horizontally
+        mBatchPaint.setStrokeWidth(_Layout.getBarWidth());
+
+        for (int chunk = firstChunk; chunk < lastChunk; chunk++) {
+            ColorBatch batch = mColorBatches.get(_Layout, chunk);
+            if (batch == null) {
+                drawSegments(_Canvas, _Layout, null, _Zoom, _GraphHeight, Math.max(_FirstIndex, chunk * ColorBatchCache.CHUNK_SIZE),
+                        Math.min(_LastIndex, (chunk + 1) * ColorBatchCache.CHUNK_SIZE));
+                continue;
+            }
+
+            int saveCount = _Canvas.save();
+            _Canvas.scale(_Zoom, 1.f);
+            float[] lines = batch.getLines();
+            for (int i = 0, count = batch.getColorCount(); i < count; i++) {
+                mBatchPaint.setColor(batch.getColor(i));
+                _Canvas.drawLines(lines, batch.getLineOffset(i), batch.getLineLength(i), mBatchPaint);
+            }
+            _Canvas.restoreToCount(saveCount);
+        }
+
+        if (mShowValues) {
+            drawValues(_Canvas, _Layout, _Zoom, _GraphHeight, _FirstIndex, _LastIndex);
+        }
+    }
+
+    /**
+     * Draws the segments of the given stacks one by one, without the values.
+     * @param _Heights Heights of the segments, or null to use the heights of the layout
+     */
+    private void drawSegments(Canvas _Canvas, StackedBarLayout _Layout, float[] _Heights, float _Zoom, float _GraphHeight,
+                              int _FirstIndex, int _LastIndex) {
+        StackedBarSnapshot data = _Layout.getData();
+        int[]              colors = data.getColors();
+        int[]              offsets = data.getStackOffsets();
+        float[]            lefts = _Layout.getBarLefts();
+        float              width = _Layout.getBarWidth();
+
+        for (int i = _FirstIndex; i < _LastIndex; i++) {
+            float left  = lefts[i] * _Zoom;
+            float right = (lefts[i] + width) * _Zoom;
+            float lastBottom = _GraphHeight;
+
+            for (int segment = offsets[i], end = offsets[i + 1]; segment < end; segment++) {
+                mGraphPaint.setColor(colors[segment]);
+                float height  = _Heights != null ? _Heights[segment] : _Layout.getSegmentBottom(segment) - _Layout.getSegmentTop(segment);
+                float lastTop = lastBottom - height;
+                _Canvas.drawRect(left, lastTop, right, lastBottom, mGraphPaint);
+                lastBottom = lastTop;
+            }
+        }
+    }
+
+    /**
+     * Draws the value labels of the given stacks.
+     */
+    private void drawValues(Canvas _Canvas, StackedBarLayout _Layout, float _Zoom, float _GraphHeight,
+                            int _FirstIndex, int _LastIndex) {
+        int[]   offsets = _Layout.getData().getStackOffsets();
+        float[] lefts = _Layout.getBarLefts();
+        float   width = _Layout.getBarWidth();
+
+        for (int i = _FirstIndex; i < _LastIndex; i++) {
+            float centerX = (lefts[i] + width / 2) * _Zoom;
+            float lastBottom = _GraphHeight;
+
+            for (int segment = offsets[i], end = offsets[i + 1]; segment < end; segment++) {
+                float height  = _Layout.getSegmentBottom(segment) - _Layout.getSegmentTop(segment);
+                float lastTop = lastBottom - height;
+                if (_Layout.isShowValue(segment)) {
+                    _Canvas.drawText(
+                            _Layout.getValueLabel(segment),
+                            centerX,
+                            (lastTop + height / 2) + _Layout.getValueTextHeight(segment) / 2,
+                            mValuePaint
+                    );
+                }
+                lastBottom = lastTop;
+            }
+        }
+    }
+
+    /**
+     * Draws the buckets of a level of the pyramid which contain the given stacks. An aggregated bar
+     * spans from the first to the last bar of its bucket; the values are not drawn.
+     */
+    private void drawAggregatedBars(Canvas _Canvas, StackedBarLayout _Layout, LodPyramid _Pyramid, int _Level,
+                                    float _Zoom, float _GraphHeight, int _FirstIndex, int _LastIndex) {
+        float[] lefts = _Layout.getBarLefts();
+        float   width = _Layout.getBarWidth();
+        int     stackCount = _Layout.getStackCount();
+        int     last = Math.min(_LastIndex, stackCount);
+        if (_FirstIndex >= last) {
+            return;
+        }
+
+        int firstBucket = _FirstIndex >> _Level;
+        int lastBucket  = ((last - 1) >> _Level) + 1;
+
+        for (int b = firstBucket; b < lastBucket; b++) {
+            float left  = lefts[b << _Level] * _Zoom;
+            float right = (lefts[Math.min((b + 1) << _Level, stackCount) - 1] + width) * _Zoom;
+            float lastBottom = _GraphHeight;
+
+            for (int series = _Pyramid.getSeriesStart(_Level, b), end = _Pyramid.getSeriesEnd(_Level, b); series < end; series++) {
+                mGraphPaint.setColor(_Pyramid.getColor(_Level, series));
+
+                float height = _Pyramid.getSeriesBottom(_Level, series) - _Pyramid.getSeriesTop(_Level, series);
+                float lastTop = lastBottom - height;
+                _Canvas.drawRect(left, lastTop, right, lastBottom, mGraphPaint);
+                lastBottom = lastTop;
+            }
+        }
+    }
+
+    /**
+     * Draws the gridlines of the value axis. They are drawn behind the bars and don't scroll.
+     * @param _Canvas       Canvas in view coordinates
+     * @param _Layout       The drawn layout, may be null
+     * @param _Labels       Labels of the layout, see {@link #formatAxisLabels}
+     * @param _GraphWidth   Width of the graph
+     * @param _GraphHeight  Height of the graph
+     * @return False if the layout has no axis, so nothing was drawn.
+     */
+    boolean drawGridlines(Canvas _Canvas, StackedBarLayout _Layout, String[] _Labels, float _GraphWidth, float _GraphHeight) {
+        float maximum = _Layout != null ? _Layout.getAxisMaximum() : 0;
+        float step    = _Layout != null ? _Layout.getAxisStep() : 0;
+        if (maximum <= 0 || step <= 0) {
+            return false;
+        }
+
+        for (int i = 0; i < _Labels.length; i++) {
+            float y = _GraphHeight - i * step * _GraphHeight / maximum;
+            _Canvas.drawLine(0, y, _GraphWidth, y, mAxisPaint);
+        }
+        return true;
+    }
+
+    /**
+     * Draws the labels of the gridlines on top of the bars, the label of the bottom line is left out.
+     * @param _Canvas       Canvas in view coordinates
+     * @param _Layout       The drawn layout, which has an axis
+     * @param _Labels       Labels of the layout, see {@link #formatAxisLabels}
+     * @param _GraphHeight  Height of the graph
+     */
+    void drawAxisLabels(Canvas _Canvas, StackedBarLayout _Layout, String[] _Labels, float _GraphHeight) {
+        float maximum  = _Layout.getAxisMaximum();
+        float step     = _Layout.getAxisStep();
+        float margin   = Utils.dpToPx(2.f);
+        float textSize = mAxisTextPaint.getTextSize();
+        for (int i = 1; i < _Labels.length; i++) {
+            float y = _GraphHeight - i * step * _GraphHeight / maximum;
+            // a label at the top of the graph is drawn below its gridline, so it is not cut off
+            float baseline = y - margin < textSize ? y + textSize : y - margin;
+            _Canvas.drawText(_Labels[i], margin, baseline, mAxisTextPaint);
+        }
+    }
+
+    /**
+     * Draws the legend labels of the given stacks, as placed by the {@link LegendPlacer} for the zoom.
+     * @param _Canvas       Canvas of the legend in zoomed content coordinates
+     * @param _Layout       The drawn layout
+     * @param _Placer       Placer of the labels
+     * @param _Zoom         Horizontal zoom
+     * @param _Baseline     Baseline of the labels
+     * @param _FirstIndex   Index of the first visible stack (inclusive)
+     * @param _LastIndex    Index of the last visible stack (exclusive)
+     */
+    void drawLegend(Canvas _Canvas, StackedBarLayout _Layout, LegendPlacer _Placer, float _Zoom, float _Baseline,
+                    int _FirstIndex, int _LastIndex) {
+        StackedBarSnapshot data = _Layout.getData();
+        int                last = Math.min(_LastIndex, _Layout.getStackCount());
+        if (_FirstIndex >= last) {
+            return;
+        }
+
+        int blockSize = _Placer.getBlockSize(_Layout, _Zoom);
+        for (int b = _FirstIndex / blockSize, lastBlock = (last - 1) / blockSize; b <= lastBlock; b++) {
+            LegendPlacer.Block block = _Placer.get(_Layout, _Zoom, b);
+            for (int i = 0, count = block.getLabelCount(); i < count; i++) {
+                int stack = block.getStack(i);
+                if (stack >= _FirstIndex && stack < last) {
+                    _Canvas.drawText(data.getLabel(stack), block.getPosition(i), _Baseline, mLegendPaint);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.w.eazegraphclone.charts;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import com.example.w.eazegraphclone.layout.BarLayoutConfig;
+import com.example.w.eazegraphclone.layout.LegendPlacer;
+import com.example.w.eazegraphclone.layout.LodPyramid;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.layout.ValueAxis;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+import com.example.w.eazegraphclone.utils.TextMeasurer;
+import com.example.w.eazegraphclone.utils.Utils;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders {@link StackedBarSnapshot}s into bitmaps without a view, e.g. for lists of thumbnails or
+ * app widgets. A bitmap shows the whole chart zoomed out, with the legend below the graph, and is
+ * drawn by the same {@link StackedBarPainter} as the {@link StackedBarChart}.
+ * <p>
+ * The bitmaps are rendered on a fixed amount of worker threads, so a batch of hundreds of charts
+ * never renders more than that many at once. Every worker has its own paints and caches, the
+ * measurers and font metrics come from the shared {@link ChartStyle}. The bitmaps
+ * come from a {@link BitmapPool}; handing them back with {@link #release(Bitmap)} once they are not
+ * shown anymore lets the next charts reuse them.
+ * <p>
+ * The methods can be called on any thread.
+ */
+public class StackedBarThumbnailRenderer {
+
+    public static final int DEF_THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * Immutable appearance of the rendered charts. The sizes are given in dp and converted once.
+     */
+    public static final class Style {
+
+        private final float     mBarMargin;
+        private final float     mTextSize;
+        private final float     mLegendTextSize;
+        private final float     mLegendHeight;
+        private final int       mLegendColor;
+        private final boolean   mShowValues;
+        private final boolean   mShowDecimal;
+        private final ValueAxis mValueAxis;
+
+        /**
+         * Creates the default style of the {@link StackedBarChart}.
+         */
+        public Style() {
+            this(BaseBarChart.DEF_BAR_MARGIN, StackedBarChart.DEF_TEXT_SIZE, BaseChart.DEF_LEGEND_TEXT_SIZE,
+                    BaseChart.DEF_LEGEND_HEIGHT, BaseChart.DEF_LEGEND_COLOR, BaseBarChart.DEF_SHOW_VALUES, false,
+                    ValueAxis.STACK);
+        }
+
+        /**
+         * @param _BarMargin        Margin between the bars in dp
+         * @param _TextSize         Text size of the values and the axis labels in sp
+         * @param _LegendTextSize   Text size of the legend labels in sp
+         * @param _LegendHeight     Height of the legend below the graph in dp, 0 to render the graph only
+         * @param _LegendColor      Color of the legend labels
+         * @param _ShowValues       True to draw the values into the segments
+         * @param _ShowDecimal      True to show the decimal places of the values
+         * @param _ValueAxis        How the stacks are scaled vertically
+         */
+        public Style(float _BarMargin, float _TextSize, float _LegendTextSize, float _LegendHeight, int _LegendColor,
+                     boolean _ShowValues, boolean _ShowDecimal, ValueAxis _ValueAxis) {
+            mBarMargin      = Utils.dpToPx(_BarMargin);
+            mTextSize       = Utils.dpToPx(_TextSize);
+            mLegendTextSize = Utils.dpToPx(_LegendTextSize);
+            mLegendHeight   = Utils.dpToPx(_LegendHeight);
+            mLegendColor    = _LegendColor;
+            mShowValues     = _ShowValues;
+            mShowDecimal    = _ShowDecimal;
+            mValueAxis      = _ValueAxis;
+        }
+    }
+
+    /**
+     * The paints and caches of a thread, set up for the style which it rendered last.
+     */
+    private static final class Worker {
+        final Style             mStyle;
+        final TextMeasurer      mValueMeasurer;
+        final TextMeasurer      mLegendMeasurer;
+        final NumberFormat      mValueFormat;
+        final StackedBarPainter mPainter;
+        final float             mMaxFontHeight;
+        final float             mLegendTextMargin = Utils.dpToPx(10.f);
+        final float             mMinBarWidth      = Utils.dpToPx(StackedBarChart.DEF_MIN_BAR_WIDTH);
+        final TextMeasureCache  mTextMeasureCache = new TextMeasureCache();
+        final LegendPlacer      mLegendPlacer     = new LegendPlacer(LegendPlacer.BLOCK_ANCHORS);
+        final Canvas            mCanvas           = new Canvas();
+
+        Worker(Style _Style) {
+            mStyle = _Style;
+
+            // the measurers and font metrics are shared with the charts, the painter draws with copies of the paints
+            ChartStyle style = ChartStyle.obtain(_Style.mLegendTextSize, _Style.mLegendColor, _Style.mTextSize);
+
+            mValueMeasurer  = style.getValueMeasurer();
+            mLegendMeasurer = style.getLegendMeasurer();
+            mValueFormat    = Utils.createValueFormat(NumberFormat.getInstance(Locale.getDefault()), _Style.mShowDecimal);
+            mMaxFontHeight  = style.getMaxLegendFontHeight();
+
+            mPainter = new StackedBarPainter(style);
+            mPainter.setShowValues(_Style.mShowValues);
+            mPainter.setMinBarWidth(mMinBarWidth);
+        }
+    }
+
+    private final ExecutorService       mExecutor;
+    private final BitmapPool            mBitmapPool;
+    private final ThreadLocal<Worker>   mWorkers = new ThreadLocal<Worker>();
+
+    public StackedBarThumbnailRenderer() {
+        this(DEF_THREAD_COUNT, new BitmapPool());
+    }
+
+    /**
+     * @param _ThreadCount  Maximum amount of charts which are rendered at the same time
+     * @param _BitmapPool   Pool of the rendered bitmaps, it can be shared with other renderers
+     */
+    public StackedBarThumbnailRenderer(int _ThreadCount, BitmapPool _BitmapPool) {
+        if (_ThreadCount < 1) {
+            throw new IllegalArgumentException("at least one thread is needed");
+        }
+        mBitmapPool = _BitmapPool;
+        mExecutor = Executors.newFixedThreadPool(_ThreadCount, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable _Runnable) {
+                Thread thread = new Thread(_Runnable, "StackedBarThumbnail-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Queues a chart for rendering on a worker thread.
+     * @param _Data     The data of the chart
+     * @param _Width    Width of the bitmap in px
+     * @param _Height   Height of the bitmap in px, including the legend
+     * @param _Style    The style of the chart
+     * @return The future bitmap, which should be released when it is not shown anymore.
+     */
+    public Future<Bitmap> submit(final StackedBarSnapshot _Data, final int _Width, final int _Height, final Style _Style) {
+        return mExecutor.submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return render(_Data, _Width, _Height, _Style);
+            }
+        });
+    }
+
+    /**
+     * Queues several charts of the same size and style. The charts are rendered in the order of the
+     * list, by at most as many threads as the renderer has.
+     * @param _Data     The data of the charts
+     * @param _Width    Width of the bitmaps in px
+     * @param _Height   Height of the bitmaps in px, including the legend
+     * @param _Style    The style of the charts
+     * @return The future bitmaps in the order of the data.
+     */
+    public List<Future<Bitmap>> submitAll(List<StackedBarSnapshot> _Data, int _Width, int _Height, Style _Style) {
+        List<Future<Bitmap>> futures = new ArrayList<Future<Bitmap>>(_Data.size());
+        for (int i = 0, size = _Data.size(); i < size; i++) {
+            futures.add(submit(_Data.get(i), _Width, _Height, _Style));
+        }
+        return futures;
+    }
+
+    /**
+     * Renders a chart synchronously on the calling thread.
+     * @param _Data     The data of the chart
+     * @param _Width    Width of the bitmap in px
+     * @param _Height   Height of the bitmap in px, including the legend
+     * @param _Style    The style of the chart
+     * @return The bitmap, which should be released when it is not shown anymore.
+     */
+    public Bitmap render(StackedBarSnapshot _Data, int _Width, int _Height, Style _Style) {
+        Worker worker = mWorkers.get();
+        if (worker == null || worker.mStyle != _Style) {
+            worker = new Worker(_Style);
+            mWorkers.set(worker);
+        }
+
+        Bitmap bitmap = mBitmapPool.acquire(_Width, _Height);
+        float  graphHeight = Math.max(0, _Height - _Style.mLegendHeight);
+        if (_Data.getStackCount() == 0 || graphHeight <= 0) {
+            return bitmap;
+        }
+
+        BarLayoutConfig config = new BarLayoutConfig(_Width, graphHeight, 0, _Style.mBarMargin, false,
+                BaseBarChart.DEF_VISIBLE_BARS, worker.mLegendTextMargin, worker.mValueFormat, worker.mValueMeasurer,
+                worker.mLegendMeasurer, worker.mMinBarWidth, LodPyramid.Aggregation.SUM, _Style.mValueAxis);
+        StackedBarLayout layout = StackedBarLayoutCalculator.calculate(_Data, config, null, true, 0, 0,
+                worker.mTextMeasureCache, 0);
+
+        // the whole chart is shown, like the chart at its smallest zoom
+        float contentWidth = layout.getContentWidth();
+        float zoom = contentWidth > _Width ? _Width / contentWidth : 1.f;
+        int   stackCount = layout.getStackCount();
+
+        Canvas            canvas  = worker.mCanvas;
+        StackedBarPainter painter = worker.mPainter;
+        canvas.setBitmap(bitmap);
+
+        String[] labels = StackedBarPainter.formatAxisLabels(layout, worker.mValueFormat);
+        boolean  axis   = painter.drawGridlines(canvas, layout, labels, _Width, graphHeight);
+        painter.drawBars(canvas, layout, zoom, graphHeight, null, 0, stackCount);
+        if (axis) {
+            painter.drawAxisLabels(canvas, layout, labels, graphHeight);
+        }
+
+        if (_Style.mLegendHeight > 0) {
+            int saveCount = canvas.save();
+            canvas.translate(0, graphHeight);
+            painter.drawLegend(canvas, layout, worker.mLegendPlacer, zoom, _Style.mLegendHeight - worker.mMaxFontHeight,
+                    0, stackCount);
+            canvas.restoreToCount(saveCount);
+        }
+
+        // the canvas must not keep the bitmap, it is handed to the caller
+        canvas.setBitmap(null);
+        return bitmap;
+    }
+
+    /**
+     * Hands a rendered bitmap back to the pool, so it can be reused for the next charts.
+     * @param _Bitmap The bitmap, which must not be drawn anymore. May be null.
+     */
+    public void release(Bitmap _Bitmap) {
+        mBitmapPool.release(_Bitmap);
+    }
+
+    /**
+     * Stops the worker threads. Charts which are already queued are still rendered.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+}
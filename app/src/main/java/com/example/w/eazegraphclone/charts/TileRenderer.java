@@ -0,0 +1,304 @@
+package com.example.w.eazegraphclone.charts;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.example.w.eazegraphclone.utils.LongLruMap;
+
+/**
+ * Renders the content of the chart layers into fixed-width bitmap tiles on a background thread.
+ * The layers then only draw the bitmaps of the tiles which intersect the viewport, so scrolling and
+ * invalidations without a data change don't draw any bar.
+ * <p>
+ * Tiles are kept in a LRU cache under a memory budget. A tile is only valid for the generation and
+ * zoom it was rendered with; {@link #invalidate()} drops all tiles and has to be called whenever the
+ * content of a layer changes. Tiles which are not rendered yet are drawn directly.
+ * <p>
+ * Everything a tile draws is captured by the {@link Painter} on the UI thread when the tile is
+ * requested, so the background thread never reads the chart while the UI thread changes it.
+ * <p>
+ * The tiles of all charts are rendered on one shared background thread. All methods except the
+ * rendering itself have to be called from the UI thread.
+ */
+final class TileRenderer<S> {
+
+    public static final int DEF_TILE_WIDTH      = 256;
+    public static final int DEF_MEMORY_BUDGET   = 8 * 1024 * 1024;
+
+    /**
+     * Draws horizontal ranges of the layers from captured states.
+     * @param <S> Type of the captured state
+     */
+    interface Painter<S> {
+        /**
+         * Captures everything which a tile of the layer draws, e.g. the layout and the zoom. Is
+         * called on the UI thread, the state must not change afterwards.
+         * @param _Layer      The layer which should be drawn
+         * @param _Zoom       The zoom of the tile
+         * @param _Background True if the tile is drawn on the background thread, which must not use
+         *                    the paints of the UI thread
+         * @return The state
+         */
+        S captureTile(int _Layer, float _Zoom, boolean _Background);
+
+        /**
+         * Is called on the background thread, or on the UI thread for a tile which is not rendered yet.
+         * @param _Canvas Canvas which is translated so that _Left is at x = 0
+         * @param _State  The state which was captured for the tile
+         * @param _Left   Left edge of the range in zoomed content coordinates
+         * @param _Right  Right edge of the range in zoomed content coordinates
+         */
+        void paintTile(Canvas _Canvas, S _State, float _Left, float _Right);
+
+        /**
+         * Is called on the UI thread when a tile of the layer was rendered and can be drawn.
+         * @param _Layer The layer of the tile
+         */
+        void onTileReady(int _Layer);
+    }
+
+    private static final class Tile {
+        final long      mKey;
+        final int       mGeneration;
+        final float     mZoom;
+        final int       mHeight;
+        Bitmap          mBitmap;
+
+        Tile(long _Key, int _Generation, float _Zoom, int _Height) {
+            mKey        = _Key;
+            mGeneration = _Generation;
+            mZoom       = _Zoom;
+            mHeight     = _Height;
+        }
+    }
+
+    private final Painter<S>            mPainter;
+    private final int                   mTileWidth;
+    private int                         mMemoryBudget;
+
+    // tile key -> tile, in access order, so the first entry is the least recently drawn tile
+    private final LongLruMap<Tile>      mTiles   = new LongLruMap<Tile>();
+    // tile key -> tile which is queued on the background thread
+    private final LongLruMap<Tile>      mPending = new LongLruMap<Tile>();
+    private int                         mUsedBytes;
+
+    // lookups of visible tiles in draw()
+    private long                        mHitCount;
+    private long                        mMissCount;
+
+    // read by the background thread to skip outdated requests
+    private volatile int                mGeneration;
+
+    // started on the first request of any chart and never stopped
+    private static HandlerThread        sRenderThread;
+
+    private final Handler               mMainHandler = new Handler(Looper.getMainLooper());
+    // posts to the shared thread, so the renders of this renderer can be removed on their own
+    private Handler                     mRenderHandler;
+
+    TileRenderer(Painter<S> _Painter) {
+        this(_Painter, DEF_TILE_WIDTH, DEF_MEMORY_BUDGET);
+    }
+
+    TileRenderer(Painter<S> _Painter, int _TileWidth, int _MemoryBudget) {
+        mPainter        = _Painter;
+        mTileWidth      = _TileWidth;
+        mMemoryBudget   = _MemoryBudget;
+    }
+
+    int getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    void setMemoryBudget(int _MemoryBudget) {
+        mMemoryBudget = _MemoryBudget;
+        trimToBudget(mMemoryBudget);
+    }
+
+    int getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    long getHitCount() {
+        return mHitCount;
+    }
+
+    long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Draws the visible part of a layer from the cached tiles and requests the missing ones.
+     * @param _Canvas Canvas of the layer, not translated
+     * @param _Layer  Layer index, used as part of the tile key
+     * @param _Scroll Left edge of the viewport in zoomed content coordinates
+     * @param _Width  Width of the layer
+     * @param _Height Height of the layer
+     * @param _Zoom   Current zoom, tiles of another zoom are not used
+     */
+    void draw(Canvas _Canvas, int _Layer, float _Scroll, int _Width, int _Height, float _Zoom) {
+        if (_Width <= 0 || _Height <= 0) {
+            return;
+        }
+
+        int first = (int) Math.floor(_Scroll / mTileWidth);
+        int last  = (int) Math.floor((_Scroll + _Width - 1) / mTileWidth);
+
+        // if the visible tiles alone don't fit into the budget, the cache would only thrash
+        boolean cacheable = (last - first + 1) * tileBytes(_Height) <= mMemoryBudget;
+
+        for (int i = first; i <= last; i++) {
+            float left = (float) i * mTileWidth;
+            float x    = left - _Scroll;
+            long  key  = key(_Layer, i);
+
+            Tile tile = mTiles.get(key);
+            if (tile != null && (tile.mGeneration != mGeneration || tile.mZoom != _Zoom || tile.mHeight != _Height)) {
+                removeTile(tile);
+                tile = null;
+            }
+
+            if (tile != null) {
+                mHitCount++;
+                _Canvas.drawBitmap(tile.mBitmap, x, 0, null);
+                continue;
+            }
+            mMissCount++;
+
+            if (cacheable) {
+                requestTile(key, _Layer, i, _Height, _Zoom);
+            }
+
+            // draws the missing tile directly, clipped to its area
+            int count = _Canvas.save();
+            _Canvas.clipRect(x, 0, x + mTileWidth, _Height);
+            _Canvas.translate(x, 0);
+            mPainter.paintTile(_Canvas, mPainter.captureTile(_Layer, _Zoom, false), left, left + mTileWidth);
+            _Canvas.restoreToCount(count);
+        }
+    }
+
+    /**
+     * Runs a task on the background thread after the queued renders and the running one, e.g. to
+     * release data which they might still draw. If nothing was ever rendered, the task runs right away.
+     * @param _Task The task
+     */
+    void runAfterRenders(Runnable _Task) {
+        if (mRenderHandler != null) {
+            mRenderHandler.post(_Task);
+        } else {
+            _Task.run();
+        }
+    }
+
+    /**
+     * Drops all tiles, because the content of the layers changed. Running renders are discarded.
+     */
+    void invalidate() {
+        mGeneration++;
+        mPending.clear();
+        trimToBudget(0);
+    }
+
+    /**
+     * Drops all tiles and the queued renders, e.g. when the chart is detached.
+     */
+    void release() {
+        invalidate();
+        if (mRenderHandler != null) {
+            mRenderHandler.removeCallbacksAndMessages(null);
+        }
+    }
+
+    //##############################################################################################
+    // Private
+    //##############################################################################################
+
+    private static synchronized Looper getRenderLooper() {
+        if (sRenderThread == null) {
+            sRenderThread = new HandlerThread("ChartTileRenderer", Process.THREAD_PRIORITY_BACKGROUND);
+            sRenderThread.start();
+        }
+        return sRenderThread.getLooper();
+    }
+
+    private static long key(int _Layer, int _Index) {
+        return ((long) _Layer << 32) | (_Index & 0xFFFFFFFFL);
+    }
+
+    private int tileBytes(int _Height) {
+        // ARGB_8888
+        return mTileWidth * _Height * 4;
+    }
+
+    private void requestTile(final long _Key, final int _Layer, final int _Index, final int _Height, final float _Zoom) {
+        if (mPending.get(_Key) != null) {
+            return;
+        }
+        final Tile tile = new Tile(_Key, mGeneration, _Zoom, _Height);
+        mPending.put(_Key, tile);
+
+        if (mRenderHandler == null) {
+            mRenderHandler = new Handler(getRenderLooper());
+        }
+
+        // captured now, the tile is drawn from the state of the chart at the time of the request
+        final S   state = mPainter.captureTile(_Layer, _Zoom, true);
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (tile.mGeneration != mGeneration) {
+                    return;
+                }
+
+                Bitmap bitmap = Bitmap.createBitmap(mTileWidth, _Height, Bitmap.Config.ARGB_8888);
+                Canvas canvas = new Canvas(bitmap);
+                float  left   = (float) _Index * mTileWidth;
+                mPainter.paintTile(canvas, state, left, left + mTileWidth);
+
+                tile.mBitmap = bitmap;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onTileRendered(tile);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onTileRendered(Tile _Tile) {
+        if (_Tile.mGeneration != mGeneration || mPending.remove(_Tile.mKey) == null) {
+            _Tile.mBitmap.recycle();
+            return;
+        }
+
+        int bytes = tileBytes(_Tile.mHeight);
+        trimToBudget(mMemoryBudget - bytes);
+
+        mTiles.put(_Tile.mKey, _Tile);
+        mUsedBytes += bytes;
+        mPainter.onTileReady((int) (_Tile.mKey >> 32));
+    }
+
+    private void removeTile(Tile _Tile) {
+        mTiles.remove(_Tile.mKey);
+        mUsedBytes -= tileBytes(_Tile.mHeight);
+        _Tile.mBitmap.recycle();
+    }
+
+    /**
+     * Evicts the least recently drawn tiles until at most _MaxBytes are used.
+     */
+    private void trimToBudget(int _MaxBytes) {
+        while (mUsedBytes > _MaxBytes && mTiles.size() > 0) {
+            Tile tile = mTiles.removeEldest();
+            mUsedBytes -= tileBytes(tile.mHeight);
+            tile.mBitmap.recycle();
+        }
+    }
+}
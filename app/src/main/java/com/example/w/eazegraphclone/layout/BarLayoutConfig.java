@@ -0,0 +1,233 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.utils.TextMeasurer;
+
+import java.text.NumberFormat;
+
+/**
+ * Immutable snapshot of the dimensions and settings of a bar chart, which are needed by the layout.
+ * All values are px values.
+ * <p>
+ * The measurers must not be changed after the config was created, because the layout may use them
+ * on another thread. A chart creates new measurers when its text settings change.
+ */
+public final class BarLayoutConfig {
+
+    private final int           mAvailableWidth;
+    private final float         mGraphHeight;
+    private final float         mBarWidth;
+    private final float         mBarMargin;
+    private final boolean       mFixedBarWidth;
+    private final int           mVisibleBars;
+    private final float         mLegendTextMargin;
+
+    private final NumberFormat  mValueFormat;
+    private final TextMeasurer  mValueMeasurer;
+    private final TextMeasurer  mLegendMeasurer;
+
+    private final float                     mMinBarWidth;
+    private final LodPyramid.Aggregation    mLodAggregation;
+
+    private final ValueAxis                 mValueAxis;
+
+    /**
+     * @param _AvailableWidth   Width of the graph which is available for the bars
+     * @param _GraphHeight      Height of the graph
+     * @param _BarWidth         The bar width set by the user
+     * @param _BarMargin        The bar margin set by the user
+     * @param _FixedBarWidth    True if the bars have a fixed width
+     * @param _VisibleBars      Amount of bars which are visible at once with a fixed bar width
+     * @param _LegendTextMargin Minimum space between two legend labels
+     * @param _ValueFormat      Format of the value labels. It is copied, so the caller may keep using it.
+     * @param _ValueMeasurer    Measurer for the value labels
+     * @param _LegendMeasurer   Measurer for the legend labels
+     * @param _MinBarWidth      Minimum width of a drawn bar. Narrower bars are aggregated into a
+     *                          level of detail pyramid, 0 disables the aggregation.
+     * @param _LodAggregation   How the segments of aggregated bars are combined
+     * @param _ValueAxis        How the stacks are scaled vertically
+     */
+    public BarLayoutConfig(int _AvailableWidth, float _GraphHeight, float _BarWidth, float _BarMargin,
+                           boolean _FixedBarWidth, int _VisibleBars, float _LegendTextMargin,
+                           NumberFormat _ValueFormat, TextMeasurer _ValueMeasurer, TextMeasurer _LegendMeasurer,
+                           float _MinBarWidth, LodPyramid.Aggregation _LodAggregation, ValueAxis _ValueAxis) {
+        mAvailableWidth     = _AvailableWidth;
+        mGraphHeight        = _GraphHeight;
+        mBarWidth           = _BarWidth;
+        mBarMargin          = _BarMargin;
+        mFixedBarWidth      = _FixedBarWidth;
+        mVisibleBars        = _VisibleBars;
+        mLegendTextMargin   = _LegendTextMargin;
+        mValueFormat        = (NumberFormat) _ValueFormat.clone();
+        mValueMeasurer      = _ValueMeasurer;
+        mLegendMeasurer     = _LegendMeasurer;
+        mMinBarWidth        = _MinBarWidth;
+        mLodAggregation     = _LodAggregation;
+        mValueAxis          = _ValueAxis;
+    }
+
+    public int getAvailableWidth() {
+        return mAvailableWidth;
+    }
+
+    public float getGraphHeight() {
+        return mGraphHeight;
+    }
+
+    public float getLegendTextMargin() {
+        return mLegendTextMargin;
+    }
+
+    /**
+     * Returns a copy of the value format, which can be used by a single thread.
+     * @return A new format instance
+     */
+    public NumberFormat createValueFormat() {
+        return (NumberFormat) mValueFormat.clone();
+    }
+
+    public TextMeasurer getValueMeasurer() {
+        return mValueMeasurer;
+    }
+
+    public TextMeasurer getLegendMeasurer() {
+        return mLegendMeasurer;
+    }
+
+    /**
+     * @return True if bars narrower than {@link #getMinBarWidth()} are aggregated.
+     */
+    public boolean isLodEnabled() {
+        return mMinBarWidth > 0;
+    }
+
+    public float getMinBarWidth() {
+        return mMinBarWidth;
+    }
+
+    public LodPyramid.Aggregation getLodAggregation() {
+        return mLodAggregation;
+    }
+
+    public ValueAxis getValueAxis() {
+        return mValueAxis;
+    }
+
+    /**
+     * Returns whether the texts are formatted and measured the same way with both configs, so
+     * measurements of unchanged labels can be reused.
+     * @param _Other The other config
+     * @return True if format and measurers are the same.
+     */
+    public boolean hasSameText(BarLayoutConfig _Other) {
+        return mValueMeasurer == _Other.mValueMeasurer
+                && mLegendMeasurer == _Other.mLegendMeasurer
+                && mValueFormat.equals(_Other.mValueFormat);
+    }
+
+    /**
+     * Returns whether both configs lead to the same layout of the same data. Unlike
+     * {@link #hasSameText(BarLayoutConfig)}, the measurers of different charts are the same if they
+     * measure with the same text size and typeface, like the keys of the
+     * {@link com.example.w.eazegraphclone.utils.TextMeasureCache}.
+     * @param _Other The other config
+     * @return True if every dimension and setting is the same.
+     */
+    public boolean isSameLayout(BarLayoutConfig _Other) {
+        return mAvailableWidth == _Other.mAvailableWidth
+                && mGraphHeight == _Other.mGraphHeight
+                && mBarWidth == _Other.mBarWidth
+                && mBarMargin == _Other.mBarMargin
+                && mFixedBarWidth == _Other.mFixedBarWidth
+                && mVisibleBars == _Other.mVisibleBars
+                && mLegendTextMargin == _Other.mLegendTextMargin
+                && mMinBarWidth == _Other.mMinBarWidth
+                && mLodAggregation == _Other.mLodAggregation
+                && mValueAxis.equals(_Other.mValueAxis)
+                && mValueFormat.equals(_Other.mValueFormat)
+                && measuresAlike(mValueMeasurer, _Other.mValueMeasurer)
+                && measuresAlike(mLegendMeasurer, _Other.mLegendMeasurer);
+    }
+
+    private static boolean measuresAlike(TextMeasurer _First, TextMeasurer _Second) {
+        if (_First == _Second) {
+            return true;
+        }
+        Object typeface = _First.getTypeface();
+        return _First.getTextSize() == _Second.getTextSize()
+                && (typeface == null ? _Second.getTypeface() == null : typeface.equals(_Second.getTypeface()));
+    }
+
+    public float calculateBarWidth(int _DataSize) {
+        if (isLodBarGeometry(_DataSize)) {
+            // the bars share the available width like bars of the minimum width and the margin would
+            float pitch = (float) mAvailableWidth / _DataSize;
+            return pitch * mMinBarWidth / (mMinBarWidth + mBarMargin);
+        }
+        return calculateBarWidth(mAvailableWidth, _DataSize, mBarWidth, mBarMargin, mFixedBarWidth);
+    }
+
+    public float calculateBarMargin(int _DataSize) {
+        if (isLodBarGeometry(_DataSize)) {
+            float pitch = (float) mAvailableWidth / _DataSize;
+            return pitch - calculateBarWidth(_DataSize);
+        }
+        return calculateBarMargin(mAvailableWidth, _DataSize, mBarWidth, mBarMargin, mFixedBarWidth, mVisibleBars);
+    }
+
+    /**
+     * Dynamically calculated bars get narrower than a pixel or even a negative width for big data
+     * sets. With the level of detail enabled, they are laid out in proportion instead, and the
+     * aggregation takes care of drawing them at a useful width.
+     */
+    private boolean isLodBarGeometry(int _DataSize) {
+        return isLodEnabled() && !mFixedBarWidth
+                && calculateBarWidth(mAvailableWidth, _DataSize, mBarWidth, mBarMargin, false) < mMinBarWidth;
+    }
+
+    /**
+     * Calculates the width of the bars.
+     * @param _AvailableWidth   Width which is available for the bars
+     * @param _DataSize         Amount of bars, has to be larger than 0
+     * @param _BarWidth         The bar width set by the user
+     * @param _BarMargin        The bar margin set by the user
+     * @param _FixedBarWidth    True if the bars have a fixed width
+     * @return The bar width in px
+     */
+    public static float calculateBarWidth(int _AvailableWidth, int _DataSize, float _BarWidth, float _BarMargin,
+                                          boolean _FixedBarWidth) {
+        if (_FixedBarWidth) {
+            return _BarWidth;
+        }
+        // calculate the bar width if the bars should be dynamically displayed
+        return (_AvailableWidth / _DataSize) - _BarMargin;
+    }
+
+    /**
+     * Calculates the margin between the bars.
+     * @param _AvailableWidth   Width which is available for the bars
+     * @param _DataSize         Amount of bars, has to be larger than 0
+     * @param _BarWidth         The bar width set by the user
+     * @param _BarMargin        The bar margin set by the user
+     * @param _FixedBarWidth    True if the bars have a fixed width
+     * @param _VisibleBars      Amount of bars which are visible at once with a fixed bar width
+     * @return The bar margin in px
+     */
+    public static float calculateBarMargin(int _AvailableWidth, int _DataSize, float _BarWidth, float _BarMargin,
+                                           boolean _FixedBarWidth, int _VisibleBars) {
+        if (!_FixedBarWidth) {
+            return _BarMargin;
+        }
+
+        // the margin is based on the visible bars, so it stays the same when more bars are added
+        int dataSize = Math.min(_DataSize, _VisibleBars);
+
+        // calculate margin between bars if the bars have a fixed width
+        // cumulatedBarWidths는 바의 넓이와 바의 갯수를 곱한 값이다.
+        float cumulatedBarWidths = _BarWidth * dataSize;
+        // remainingScreenSize는 총 스크린 넓이에서 그려진 바의 총 넓이를 빼고 남은 영역이다.
+        float remainingScreenSize = _AvailableWidth - cumulatedBarWidths;
+
+        // 남은 영역들을 StackedBar의 갯수만큼 쪼갠다.
+        return remainingScreenSize / dataSize;
+    }
+}
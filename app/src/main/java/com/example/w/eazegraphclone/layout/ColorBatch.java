@@ -0,0 +1,157 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+
+import java.util.Arrays;
+
+/**
+ * The segments of a range of stacks, grouped by their color. Every segment is stored as a vertical
+ * line from its top to its bottom through the center of its bar, in content coordinates, so all
+ * segments of a color can be drawn with a single drawLines() call and a stroke as wide as the bars.
+ * <p>
+ * A batch is immutable and only valid for the layout it was built from.
+ */
+public final class ColorBatch {
+
+    /**
+     * Maximum amount of distinct colors in a batch. With more colors a single draw call per color
+     * does not save much, so {@link #build} returns null and the segments are drawn one by one.
+     */
+    public static final int MAX_COLORS = 32;
+
+    private final int       mFrom;
+    private final int       mTo;
+    private final int[]     mColors;
+    // start of the lines of each color in mLines, one more entry than colors
+    private final int[]     mOffsets;
+    // x0, y0, x1, y1 of every segment, sorted by color
+    private final float[]   mLines;
+
+    private ColorBatch(int _From, int _To, int[] _Colors, int[] _Offsets, float[] _Lines) {
+        mFrom    = _From;
+        mTo      = _To;
+        mColors  = _Colors;
+        mOffsets = _Offsets;
+        mLines   = _Lines;
+    }
+
+    /**
+     * @return Index of the first stack in this batch (inclusive)
+     */
+    public int getFrom() {
+        return mFrom;
+    }
+
+    /**
+     * @return Index after the last stack in this batch (exclusive)
+     */
+    public int getTo() {
+        return mTo;
+    }
+
+    public int getColorCount() {
+        return mColors.length;
+    }
+
+    public int getColor(int _Index) {
+        return mColors[_Index];
+    }
+
+    /**
+     * Line points of all colors. The lines of a color start at {@link #getLineOffset(int)} and
+     * use {@link #getLineLength(int)} floats. The array must not be modified.
+     */
+    public float[] getLines() {
+        return mLines;
+    }
+
+    public int getLineOffset(int _Index) {
+        return mOffsets[_Index];
+    }
+
+    public int getLineLength(int _Index) {
+        return mOffsets[_Index + 1] - mOffsets[_Index];
+    }
+
+    /**
+     * Groups the segments of the given stacks by color. The segments are stacked from the bottom of
+     * the graph upwards, like in drawBars().
+     * @param _Layout   The layout of the stacks
+     * @param _From     Index of the first stack (inclusive)
+     * @param _To       Index after the last stack (exclusive)
+     * @return The batch, or null if the stacks have more than {@link #MAX_COLORS} colors.
+     */
+    public static ColorBatch build(StackedBarLayout _Layout, int _From, int _To) {
+        StackedBarSnapshot data = _Layout.getData();
+        int[]              colors = data.getColors();
+        int[]              offsets = data.getStackOffsets();
+        int                segmentFrom = offsets[_From];
+        int                segmentTo = offsets[_To];
+
+        // first pass: find the distinct colors and count their segments. The palette is small, so a
+        // linear search which starts with the previous color is faster than hashing.
+        int[] distinct = new int[MAX_COLORS];
+        int[] counts   = new int[MAX_COLORS + 1];
+        int[] indices  = new int[segmentTo - segmentFrom];
+        int   colorCount = 0;
+        int   last = -1;
+
+        for (int segment = segmentFrom; segment < segmentTo; segment++) {
+            int color = colors[segment];
+            if (last < 0 || distinct[last] != color) {
+                last = indexOf(distinct, colorCount, color);
+                if (last < 0) {
+                    if (colorCount == MAX_COLORS) {
+                        return null;
+                    }
+                    last = colorCount++;
+                    distinct[last] = color;
+                }
+            }
+            indices[segment - segmentFrom] = last;
+            counts[last + 1] += 4;
+        }
+
+        // prefix sums are the start of each color
+        for (int i = 0; i < colorCount; i++) {
+            counts[i + 1] += counts[i];
+        }
+        int[]   lineOffsets = Arrays.copyOf(counts, colorCount + 1);
+        float[] lines = new float[counts[colorCount]];
+
+        // second pass: write the lines, counts is reused as write position per color
+        float[] lefts = _Layout.getBarLefts();
+        float   halfWidth = _Layout.getBarWidth() / 2;
+        float   graphHeight = _Layout.getConfig().getGraphHeight();
+
+        for (int i = _From; i < _To; i++) {
+            float x = lefts[i] + halfWidth;
+            float lastBottom = graphHeight;
+
+            for (int segment = offsets[i], end = offsets[i + 1]; segment < end; segment++) {
+                float height  = _Layout.getSegmentBottom(segment) - _Layout.getSegmentTop(segment);
+                float lastTop = lastBottom - height;
+
+                int pos = counts[indices[segment - segmentFrom]];
+                lines[pos]     = x;
+                lines[pos + 1] = lastTop;
+                lines[pos + 2] = x;
+                lines[pos + 3] = lastBottom;
+                counts[indices[segment - segmentFrom]] = pos + 4;
+
+                lastBottom = lastTop;
+            }
+        }
+
+        return new ColorBatch(_From, _To, Arrays.copyOf(distinct, colorCount), lineOffsets, lines);
+    }
+
+    private static int indexOf(int[] _Array, int _Count, int _Value) {
+        for (int i = 0; i < _Count; i++) {
+            if (_Array[i] == _Value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.w.eazegraphclone.layout;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the {@link ColorBatch}es of the current layout. The stacks are split into chunks of
+ * {@link #CHUNK_SIZE}, and a chunk is only batched when it becomes visible. The batches are kept
+ * until a new layout is drawn; scrolling through a large chart evicts the least recently drawn ones.
+ * <p>
+ * The cache is thread safe, so it can be shared by the UI thread and the tile renderer.
+ */
+public class ColorBatchCache {
+
+    public static final int CHUNK_SIZE      = 128;
+    public static final int DEF_MAX_CHUNKS  = 64;
+
+    private final LinkedHashMap<Integer, ColorBatch> mChunks;
+
+    private StackedBarLayout mLayout;
+    // a recycled layout object is drawn again with a new generation
+    private int              mLayoutGeneration;
+
+    private long mHitCount;
+    private long mMissCount;
+
+    public ColorBatchCache() {
+        this(DEF_MAX_CHUNKS);
+    }
+
+    /**
+     * @param _MaxChunks Maximum amount of cached chunks.
+     */
+    public ColorBatchCache(final int _MaxChunks) {
+        mChunks = new LinkedHashMap<Integer, ColorBatch>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ColorBatch> _Eldest) {
+                return size() > _MaxChunks;
+            }
+        };
+    }
+
+    /**
+     * Returns the batch of a chunk of the given layout. All batches of other layouts are dropped.
+     * @param _Layout   The layout which is drawn
+     * @param _Chunk    Index of the chunk, the stack index divided by {@link #CHUNK_SIZE}
+     * @return The batch, or null if the chunk can't be batched.
+     */
+    public synchronized ColorBatch get(StackedBarLayout _Layout, int _Chunk) {
+        if (_Layout != mLayout || _Layout.getGeneration() != mLayoutGeneration) {
+            mChunks.clear();
+            mLayout = _Layout;
+            mLayoutGeneration = _Layout.getGeneration();
+        }
+
+        Integer key = _Chunk;
+        ColorBatch batch = mChunks.get(key);
+        if (batch == null && !mChunks.containsKey(key)) {
+            mMissCount++;
+            int from = _Chunk * CHUNK_SIZE;
+            int to   = Math.min(from + CHUNK_SIZE, _Layout.getStackCount());
+            batch = ColorBatch.build(_Layout, from, to);
+            // chunks with too many colors are stored as null, so they are not built again
+            mChunks.put(key, batch);
+        } else {
+            mHitCount++;
+        }
+        return batch;
+    }
+
+    public synchronized void clear() {
+        mChunks.clear();
+        mLayout = null;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+}
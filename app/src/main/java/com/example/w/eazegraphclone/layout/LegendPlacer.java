@@ -0,0 +1,385 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.utils.LongLruMap;
+
+/**
+ * Places the legend labels of a {@link StackedBarLayout} at a zoom level without overlaps. The labels
+ * are chosen in the order of their priority:
+ * <ol>
+ *     <li>the selected stack, the tallest and the lowest stack,</li>
+ *     <li>anchors: every stride-th stack. The stride is a multiple of the label interval which is
+ *     wide enough for the widest label, so the anchors never overlap each other,</li>
+ *     <li>all other labels which fit into the gaps, from left to right.</li>
+ * </ol>
+ * The anchors only depend on the zoom, so a label never disappears because of a label left of it
+ * which was scrolled out of the view. The stacks are split into blocks of {@link #BLOCK_ANCHORS}
+ * strides, and the labels of one block never cross the centers of its first and last anchor. A
+ * block is placed without looking at the others, only when it becomes visible, and is cached per
+ * zoom level, so scrolling reuses the placed blocks. Changing the zoom places the visible blocks
+ * again in O(visible stacks).
+ * <p>
+ * The placer is thread safe, so it can be shared by the UI thread and the tile renderer.
+ */
+public class LegendPlacer {
+
+    public static final int BLOCK_ANCHORS   = 16;
+    public static final int DEF_MAX_BLOCKS  = 64;
+
+    // with a larger stride the gaps between the anchors are too narrow for labels of a similar width,
+    // so only the anchors are placed and a block costs O(BLOCK_ANCHORS) instead of O(stride)
+    private static final int MAX_FILL_STRIDE = 8;
+
+    private static final int PRIORITY_COUNT = 3;
+
+    /**
+     * The shown labels of a block, ordered by stack index.
+     */
+    public static final class Block {
+        private final int[]   mStacks;
+        private final float[] mPositions;
+
+        private Block(int[] _Stacks, float[] _Positions) {
+            mStacks    = _Stacks;
+            mPositions = _Positions;
+        }
+
+        public int getLabelCount() {
+            return mStacks.length;
+        }
+
+        public int getStack(int _Label) {
+            return mStacks[_Label];
+        }
+
+        /**
+         * @param _Label Index of the label in the block
+         * @return The left edge of the label, in zoomed content coordinates
+         */
+        public float getPosition(int _Label) {
+            return mPositions[_Label];
+        }
+    }
+
+    // (zoom bits, block index) -> block, in access order
+    private final LongLruMap<Block> mBlocks;
+    private final int               mMaxBlocks;
+
+    private StackedBarLayout mLayout;
+    // a recycled layout object is drawn again with a new generation
+    private int              mLayoutGeneration;
+
+    private int     mInterval       = 1;
+    private int     mSelectedStack  = -1;
+    private boolean mShowExtremes   = true;
+
+    // scratch arrays of a block placement: the anchors of the block and the priority labels next to it
+    private final int[]   mBarrierStacks = new int[BLOCK_ANCHORS + 1 + PRIORITY_COUNT];
+    private final float[] mBarrierLefts  = new float[BLOCK_ANCHORS + 1 + PRIORITY_COUNT];
+    private final float[] mBarrierRights = new float[BLOCK_ANCHORS + 1 + PRIORITY_COUNT];
+    private final int[]   mPriorities    = new int[PRIORITY_COUNT];
+
+    private long mHitCount;
+    private long mMissCount;
+
+    public LegendPlacer() {
+        this(DEF_MAX_BLOCKS);
+    }
+
+    /**
+     * @param _MaxBlocks Maximum amount of cached blocks over all zoom levels.
+     */
+    public LegendPlacer(int _MaxBlocks) {
+        mBlocks    = new LongLruMap<Block>(Math.min(_MaxBlocks, DEF_MAX_BLOCKS));
+        mMaxBlocks = _MaxBlocks;
+    }
+
+    public synchronized int getInterval() {
+        return mInterval;
+    }
+
+    /**
+     * Sets the distance of the anchors. Every _Interval-th label is preferred over its neighbours;
+     * if these labels don't fit either, a multiple of the interval is used.
+     * @param _Interval Interval in stacks, at least 1
+     */
+    public synchronized void setInterval(int _Interval) {
+        if (_Interval <= 0) {
+            throw new IllegalArgumentException("interval must be larger than 0");
+        }
+        mInterval = _Interval;
+        mBlocks.clear();
+    }
+
+    public synchronized int getSelectedStack() {
+        return mSelectedStack;
+    }
+
+    /**
+     * Sets the stack whose label is shown in any case.
+     * @param _Stack Stack index, -1 for none
+     */
+    public synchronized void setSelectedStack(int _Stack) {
+        if (_Stack != mSelectedStack) {
+            mSelectedStack = _Stack;
+            mBlocks.clear();
+        }
+    }
+
+    public synchronized boolean isShowExtremes() {
+        return mShowExtremes;
+    }
+
+    /**
+     * Sets whether the labels of the tallest and the lowest stack are preferred over the anchors.
+     * @param _ShowExtremes True to prefer the labels of the extremes.
+     */
+    public synchronized void setShowExtremes(boolean _ShowExtremes) {
+        mShowExtremes = _ShowExtremes;
+        mBlocks.clear();
+    }
+
+    /**
+     * Returns the distance of the anchors at a zoom level: the smallest multiple of the interval
+     * which leaves room for the widest label and the text margin.
+     * @param _Layout The layout which is drawn
+     * @param _Zoom   The zoom level
+     * @return The stride in stacks, between 1 and the stack count
+     */
+    public synchronized int getStride(StackedBarLayout _Layout, float _Zoom) {
+        int   stackCount = Math.max(1, _Layout.getStackCount());
+        float pitch = (_Layout.getBarWidth() + _Layout.getBarMargin()) * _Zoom;
+        float needed = _Layout.getMaxLabelWidth() + _Layout.getConfig().getLegendTextMargin();
+        if (!(pitch > 0)) {
+            return stackCount;
+        }
+
+        double multiple = Math.max(1, Math.ceil(needed / (mInterval * pitch)));
+        return (int) Math.min(multiple * mInterval, stackCount);
+    }
+
+    /**
+     * @param _Layout The layout which is drawn
+     * @param _Zoom   The zoom level
+     * @return Amount of stacks in a block
+     */
+    public int getBlockSize(StackedBarLayout _Layout, float _Zoom) {
+        return getStride(_Layout, _Zoom) * BLOCK_ANCHORS;
+    }
+
+    /**
+     * Returns the placed labels of a block of the given layout. All blocks of other layouts are dropped.
+     * @param _Layout The layout which is drawn
+     * @param _Zoom   The zoom level
+     * @param _Block  Index of the block, the stack index divided by {@link #getBlockSize(StackedBarLayout, float)}
+     * @return The labels of the block
+     */
+    public synchronized Block get(StackedBarLayout _Layout, float _Zoom, int _Block) {
+        if (_Layout != mLayout || _Layout.getGeneration() != mLayoutGeneration) {
+            mBlocks.clear();
+            mLayout = _Layout;
+            mLayoutGeneration = _Layout.getGeneration();
+        }
+
+        long key = ((long) Float.floatToIntBits(_Zoom) << 32) | (_Block & 0xFFFFFFFFL);
+        Block block = mBlocks.get(key);
+        if (block == null) {
+            mMissCount++;
+            block = place(_Layout, _Zoom, _Block);
+            mBlocks.put(key, block);
+            if (mBlocks.size() > mMaxBlocks) {
+                mBlocks.removeEldest();
+            }
+        } else {
+            mHitCount++;
+        }
+        return block;
+    }
+
+    public synchronized void clear() {
+        mBlocks.clear();
+        mLayout = null;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    private Block place(StackedBarLayout _Layout, float _Zoom, int _Block) {
+        int   stackCount = _Layout.getStackCount();
+        int   stride     = getStride(_Layout, _Zoom);
+        int   from       = (int) Math.min((long) _Block * stride * BLOCK_ANCHORS, stackCount);
+        int   to         = (int) Math.min((long) from + stride * BLOCK_ANCHORS, stackCount);
+        float margin     = _Layout.getConfig().getLegendTextMargin();
+        float contentRight = _Layout.getContentWidth() * _Zoom;
+
+        if (from >= to) {
+            return new Block(new int[0], new float[0]);
+        }
+
+        int priorities = collectPriorities(_Layout, _Zoom, margin, contentRight);
+
+        // the anchors of the block and the first one of the next block, which are dropped if they
+        // overlap a priority label
+        int barriers = 0;
+        int lastAnchor = to < stackCount ? to : to - 1;
+        for (int i = from; i <= lastAnchor; i += stride) {
+            float left  = getLabelLeft(_Layout, _Zoom, i);
+            float right = left + _Layout.getLabelWidth(i);
+            if (fits(left, right, contentRight) && !overlapsPriority(_Layout, _Zoom, priorities, i, left, right, margin)) {
+                mBarrierStacks[barriers] = i;
+                mBarrierLefts[barriers]  = left;
+                mBarrierRights[barriers] = right;
+                barriers++;
+            }
+        }
+
+        // the priority labels which reach into the block, sorted in by their stack index
+        float reach      = _Layout.getMaxLabelWidth() + margin;
+        float blockLeft  = getLabelCenter(_Layout, _Zoom, from) - reach;
+        float blockRight = getLabelCenter(_Layout, _Zoom, Math.min(to, stackCount - 1)) + reach;
+        for (int p = 0; p < priorities; p++) {
+            int   stack = mPriorities[p];
+            float left  = getLabelLeft(_Layout, _Zoom, stack);
+            float right = left + _Layout.getLabelWidth(stack);
+            if (right < blockLeft || left > blockRight) {
+                continue;
+            }
+
+            int insert = barriers;
+            while (insert > 0 && mBarrierStacks[insert - 1] > stack) {
+                insert--;
+            }
+            if (insert > 0 && mBarrierStacks[insert - 1] == stack) {
+                // the priority label is an anchor as well
+                continue;
+            }
+            System.arraycopy(mBarrierStacks, insert, mBarrierStacks, insert + 1, barriers - insert);
+            System.arraycopy(mBarrierLefts,  insert, mBarrierLefts,  insert + 1, barriers - insert);
+            System.arraycopy(mBarrierRights, insert, mBarrierRights, insert + 1, barriers - insert);
+            mBarrierStacks[insert] = stack;
+            mBarrierLefts[insert]  = left;
+            mBarrierRights[insert] = right;
+            barriers++;
+        }
+
+        boolean fill  = stride > 1 && stride <= MAX_FILL_STRIDE;
+        int[]   stacks    = new int[fill ? to - from : barriers];
+        float[] positions = new float[stacks.length];
+        int     count = 0;
+
+        // the filled labels stay between the centers of the first anchor of this and the next block
+        float fillLeft  = getLabelCenter(_Layout, _Zoom, from);
+        float fillRight = to < stackCount ? getLabelCenter(_Layout, _Zoom, to) : contentRight;
+        float lastRight = Float.NEGATIVE_INFINITY;
+
+        int barrier = 0;
+        while (barrier < barriers && mBarrierStacks[barrier] < from) {
+            lastRight = Math.max(lastRight, mBarrierRights[barrier]);
+            barrier++;
+        }
+
+        for (int i = from; i < to; i++) {
+            if (barrier < barriers && mBarrierStacks[barrier] == i) {
+                stacks[count]    = i;
+                positions[count] = mBarrierLefts[barrier];
+                count++;
+                lastRight = Math.max(lastRight, mBarrierRights[barrier]);
+                barrier++;
+                continue;
+            }
+            if (!fill) {
+                if (barrier >= barriers || mBarrierStacks[barrier] >= to) {
+                    break;
+                }
+                // only the barriers are shown, so the loop jumps to the next one
+                i = mBarrierStacks[barrier] - 1;
+                continue;
+            }
+
+            float left  = getLabelLeft(_Layout, _Zoom, i);
+            float right = left + _Layout.getLabelWidth(i);
+            float nextLeft = barrier < barriers ? Math.min(mBarrierLefts[barrier], fillRight) : fillRight;
+            if (left >= fillLeft && left - margin >= lastRight && right + margin <= nextLeft
+                    && fits(left, right, contentRight)) {
+                stacks[count]    = i;
+                positions[count] = left;
+                count++;
+                lastRight = right;
+            }
+        }
+
+        if (count < stacks.length) {
+            int[]   shownStacks    = new int[count];
+            float[] shownPositions = new float[count];
+            System.arraycopy(stacks, 0, shownStacks, 0, count);
+            System.arraycopy(positions, 0, shownPositions, 0, count);
+            return new Block(shownStacks, shownPositions);
+        }
+        return new Block(stacks, positions);
+    }
+
+    /**
+     * Collects the shown priority labels into mPriorities: the selected stack, the tallest and the
+     * lowest stack, each one only if it doesn't overlap one of the previous ones.
+     * @return Amount of priority labels
+     */
+    private int collectPriorities(StackedBarLayout _Layout, float _Zoom, float _Margin, float _ContentRight) {
+        StackedBarSnapshot data = _Layout.getData();
+        int stackCount = _Layout.getStackCount();
+        int count = 0;
+
+        for (int p = 0; p < PRIORITY_COUNT; p++) {
+            int stack;
+            if (p == 0) {
+                stack = mSelectedStack;
+            } else if (!mShowExtremes) {
+                break;
+            } else {
+                stack = p == 1 ? data.getMaxStack() : data.getMinStack();
+            }
+            if (stack < 0 || stack >= stackCount) {
+                continue;
+            }
+
+            float left  = getLabelLeft(_Layout, _Zoom, stack);
+            float right = left + _Layout.getLabelWidth(stack);
+            if (fits(left, right, _ContentRight) && !overlapsPriority(_Layout, _Zoom, count, stack, left, right, _Margin)) {
+                mPriorities[count++] = stack;
+            }
+        }
+        return count;
+    }
+
+    private boolean overlapsPriority(StackedBarLayout _Layout, float _Zoom, int _Priorities, int _Stack,
+                                     float _Left, float _Right, float _Margin) {
+        for (int p = 0; p < _Priorities; p++) {
+            int stack = mPriorities[p];
+            if (stack == _Stack) {
+                continue;
+            }
+            float left  = getLabelLeft(_Layout, _Zoom, stack);
+            float right = left + _Layout.getLabelWidth(stack);
+            if (_Left - _Margin < right && left - _Margin < _Right) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean fits(float _Left, float _Right, float _ContentRight) {
+        return _Left >= 0 && _Right <= _ContentRight;
+    }
+
+    private static float getLabelCenter(StackedBarLayout _Layout, float _Zoom, int _Stack) {
+        return (_Layout.getBarLeft(_Stack) + _Layout.getBarWidth() / 2) * _Zoom;
+    }
+
+    private static float getLabelLeft(StackedBarLayout _Layout, float _Zoom, int _Stack) {
+        return getLabelCenter(_Layout, _Zoom, _Stack) - _Layout.getLabelWidth(_Stack) / 2;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.models.LineSeries;
+
+/**
+ * Reduces a range of a {@link LineSeries} to a given amount of points which keep the shape of the
+ * line, in two steps:
+ * <ol>
+ *     <li>The level of the min/max pyramid of the series is chosen whose blocks split the range
+ *     into at most {@link #BLOCKS_PER_POINT} blocks per output point. The lowest and the highest
+ *     point of every block are the candidates, so no peak is lost.</li>
+ *     <li>Largest-Triangle-Three-Buckets picks one candidate per output point: the one which spans
+ *     the largest triangle with the previously picked point and the average of the next bucket.</li>
+ * </ol>
+ * Both steps only visit O(output points) blocks and candidates, so the cost of a frame depends on
+ * the width of the graph and not on the amount of points. Only the partial blocks at both ends of
+ * the range are scanned point by point.
+ * <p>
+ * The sampled x values are float offsets from the x value of the first point of the range, so large
+ * x values like timestamps don't lose their precision.
+ * <p>
+ * The buffers are reused, so sampling does not allocate once they are large enough. Not thread
+ * safe, it is used on the UI thread only.
+ */
+public class LineDownsampler {
+
+    public static final int BLOCKS_PER_POINT = 2;
+
+    private float[] mCandidateXs = new float[0];
+    private float[] mCandidateYs = new float[0];
+    private int     mCandidateCount;
+
+    private double  mOriginX;
+    private float[] mXs = new float[0];
+    private float[] mYs = new float[0];
+
+    private float   mMinY;
+    private float   mMaxY;
+
+    /**
+     * @return The x value which the sampled x values are relative to, the one of the first point of
+     * the sampled range.
+     */
+    public double getOriginX() {
+        return mOriginX;
+    }
+
+    /**
+     * Returns the x values of the last {@link #sample} call, relative to {@link #getOriginX()}. The
+     * array may be longer than the returned count and must not be modified.
+     * @return The sampled x values
+     */
+    public float[] getXs() {
+        return mXs;
+    }
+
+    /**
+     * @return The sampled y values, like {@link #getXs()}
+     */
+    public float[] getYs() {
+        return mYs;
+    }
+
+    /**
+     * @return The lowest y value of the sampled range. Every block extreme is a candidate, so this
+     * is exact even if the point itself was not picked.
+     */
+    public float getMinY() {
+        return mMinY;
+    }
+
+    /**
+     * @return The highest y value of the sampled range, like {@link #getMinY()}
+     */
+    public float getMaxY() {
+        return mMaxY;
+    }
+
+    /**
+     * Samples the points of a range.
+     * @param _Series The points
+     * @param _From   Index of the first point (inclusive)
+     * @param _To     Index after the last point (exclusive)
+     * @param _Target Maximum amount of sampled points, at least 3
+     * @return Amount of sampled points in {@link #getXs()} and {@link #getYs()}
+     */
+    public int sample(LineSeries _Series, int _From, int _To, int _Target) {
+        if (_Target < 3) {
+            throw new IllegalArgumentException("at least 3 points have to be sampled");
+        }
+
+        mMinY = Float.POSITIVE_INFINITY;
+        mMaxY = Float.NEGATIVE_INFINITY;
+        int count = _To - _From;
+        if (count <= 0) {
+            return 0;
+        }
+
+        mOriginX = _Series.getX(_From);
+        collectCandidates(_Series, _From, _To, _Target);
+
+        if (mXs.length < _Target) {
+            mXs = new float[_Target];
+            mYs = new float[_Target];
+        }
+        if (mCandidateCount <= _Target) {
+            System.arraycopy(mCandidateXs, 0, mXs, 0, mCandidateCount);
+            System.arraycopy(mCandidateYs, 0, mYs, 0, mCandidateCount);
+            return mCandidateCount;
+        }
+        return largestTriangleThreeBuckets(_Target);
+    }
+
+    /**
+     * Collects the first and the last point of the range, and the lowest and the highest point of
+     * every block in between, in the order of their index.
+     */
+    private void collectCandidates(LineSeries _Series, int _From, int _To, int _Target) {
+        int count = _To - _From;
+        int level = 0;
+        while (level + 1 < _Series.getLevelCount() && (count >> level) > BLOCKS_PER_POINT * _Target) {
+            level++;
+        }
+
+        // a pair per full block, the first and last point and a pair for each partial block
+        int capacity = level == 0 ? count : 2 * (count >> level) + 6;
+        if (mCandidateXs.length < capacity) {
+            mCandidateXs = new float[capacity];
+            mCandidateYs = new float[capacity];
+        }
+        mCandidateCount = 0;
+
+        if (level == 0) {
+            for (int i = _From; i < _To; i++) {
+                addCandidate(_Series, i);
+            }
+            return;
+        }
+
+        // the partial blocks at both ends are scanned point by point
+        int firstBlock = (_From + (1 << level) - 1) >> level;
+        int lastBlock  = _To >> level;
+        if (firstBlock >= lastBlock) {
+            for (int i = _From; i < _To; i++) {
+                addCandidate(_Series, i);
+            }
+            return;
+        }
+
+        addCandidate(_Series, _From);
+        addExtremes(_Series, _From + 1, firstBlock << level);
+        for (int b = firstBlock; b < lastBlock; b++) {
+            addPair(_Series, _Series.getMinIndex(level, b), _Series.getMaxIndex(level, b));
+        }
+        addExtremes(_Series, lastBlock << level, _To - 1);
+        if (_To - 1 > _From) {
+            addCandidate(_Series, _To - 1);
+        }
+    }
+
+    /**
+     * Adds the lowest and the highest point of a range which is smaller than a block.
+     */
+    private void addExtremes(LineSeries _Series, int _From, int _To) {
+        if (_From >= _To) {
+            return;
+        }
+        int min = _From;
+        int max = _From;
+        for (int i = _From + 1; i < _To; i++) {
+            if (_Series.getY(i) < _Series.getY(min)) {
+                min = i;
+            }
+            if (_Series.getY(i) > _Series.getY(max)) {
+                max = i;
+            }
+        }
+        addPair(_Series, min, max);
+    }
+
+    private void addPair(LineSeries _Series, int _First, int _Second) {
+        if (_First > _Second) {
+            int swap = _First;
+            _First = _Second;
+            _Second = swap;
+        }
+        addCandidate(_Series, _First);
+        if (_Second != _First) {
+            addCandidate(_Series, _Second);
+        }
+    }
+
+    private void addCandidate(LineSeries _Series, int _Index) {
+        float y = _Series.getY(_Index);
+        mCandidateXs[mCandidateCount] = (float) (_Series.getX(_Index) - mOriginX);
+        mCandidateYs[mCandidateCount] = y;
+        mCandidateCount++;
+        mMinY = Math.min(mMinY, y);
+        mMaxY = Math.max(mMaxY, y);
+    }
+
+    /**
+     * Picks _Target of the candidates. The first and the last candidate are always kept, the others
+     * are split into _Target - 2 buckets which contribute one point each.
+     */
+    private int largestTriangleThreeBuckets(int _Target) {
+        float[] xs = mCandidateXs;
+        float[] ys = mCandidateYs;
+        int     count = mCandidateCount;
+        double  bucketSize = (double) (count - 2) / (_Target - 2);
+
+        mXs[0] = xs[0];
+        mYs[0] = ys[0];
+        int picked = 0;
+
+        for (int bucket = 0; bucket < _Target - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end   = (int) ((bucket + 1) * bucketSize) + 1;
+
+            // the average of the next bucket is the third corner, the last candidate for the last bucket
+            int   nextStart = end;
+            int   nextEnd   = Math.min((int) ((bucket + 2) * bucketSize) + 1, count - 1);
+            float averageX;
+            float averageY;
+            if (nextStart < nextEnd) {
+                double sumX = 0;
+                double sumY = 0;
+                for (int i = nextStart; i < nextEnd; i++) {
+                    sumX += xs[i];
+                    sumY += ys[i];
+                }
+                averageX = (float) (sumX / (nextEnd - nextStart));
+                averageY = (float) (sumY / (nextEnd - nextStart));
+            } else {
+                averageX = xs[count - 1];
+                averageY = ys[count - 1];
+            }
+
+            float pickedX = xs[picked];
+            float pickedY = ys[picked];
+            float maxArea = -1;
+            int   next = start;
+            for (int i = start; i < end; i++) {
+                // twice the triangle area, the factor doesn't change which one is the largest
+                float area = Math.abs((pickedX - averageX) * (ys[i] - pickedY) - (pickedX - xs[i]) * (averageY - pickedY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+
+            mXs[bucket + 1] = xs[next];
+            mYs[bucket + 1] = ys[next];
+            picked = next;
+        }
+
+        mXs[_Target - 1] = xs[count - 1];
+        mYs[_Target - 1] = ys[count - 1];
+        return _Target;
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+
+import java.util.Arrays;
+
+/**
+ * Multi-resolution aggregation of the stacks of a {@link StackedBarSnapshot}, used to draw charts
+ * whose bars are narrower than a pixel. Level k combines 2^k adjacent stacks into one bucket; level
+ * 0 are the stacks themselves and is not stored. Every bucket is combined from the two buckets of
+ * the level below, so a level only costs half of the one below it.
+ * <p>
+ * The segments of the stacks are treated as series: segment j of a bucket aggregates segment j of
+ * all stacks in the bucket, either as sum or as mean. The color of a series is the color of the
+ * first stack which has it.
+ * <p>
+ * With a value axis, the buckets are scaled against the axis maximum like single stacks. A summed
+ * bucket would be far taller than the axis, so it is drawn at the height of its average stack.
+ * <p>
+ * A pyramid is not changed after it was built, an update after a data change builds a new one and
+ * copies the unchanged buckets of the previous one. The pyramid of a recycled layout is built again
+ * into its own arrays, so the levels are only allocated when they grow.
+ */
+public final class LodPyramid {
+
+    public enum Aggregation {
+        SUM,
+        MEAN
+    }
+
+    /**
+     * The arrays may be larger than the level, only mBucketCount + 1 offsets and the series up to
+     * the last offset are valid.
+     */
+    private static final class Level {
+        int       mBucketCount;
+        int[]     mOffsets = new int[0];
+        float[]   mSums    = new float[0];
+        int[]     mCounts  = new int[0];
+        int[]     mColors  = new int[0];
+        float[]   mTops    = new float[0];
+        float[]   mBottoms = new float[0];
+
+        void resetBuckets(int _BucketCount) {
+            mBucketCount = _BucketCount;
+            if (mOffsets.length < _BucketCount + 1) {
+                mOffsets = new int[Math.max(_BucketCount + 1, mOffsets.length * 2)];
+            }
+        }
+
+        void ensureSeriesCapacity(int _SeriesCount) {
+            if (mSums.length >= _SeriesCount) {
+                return;
+            }
+            int capacity = Math.max(_SeriesCount, mSums.length * 2);
+            mSums    = new float[capacity];
+            mCounts  = new int[capacity];
+            mColors  = new int[capacity];
+            mTops    = new float[capacity];
+            mBottoms = new float[capacity];
+        }
+
+        int getSeriesCount() {
+            return mOffsets[mBucketCount];
+        }
+    }
+
+    private Level[]       mLevels = new Level[0];
+    private int           mLevelCount;
+    private Aggregation   mAggregation;
+    private float         mGraphHeight;
+    private float         mAxisMaximum;
+
+    private LodPyramid() {
+    }
+
+    /**
+     * @return The coarsest level. Level 0 are the stacks, so a pyramid with only level 0 returns 0.
+     */
+    public int getMaxLevel() {
+        return mLevelCount;
+    }
+
+    public Aggregation getAggregation() {
+        return mAggregation;
+    }
+
+    public int getBucketCount(int _Level) {
+        return mLevels[_Level - 1].mBucketCount;
+    }
+
+    public int getSeriesStart(int _Level, int _Bucket) {
+        return mLevels[_Level - 1].mOffsets[_Bucket];
+    }
+
+    public int getSeriesEnd(int _Level, int _Bucket) {
+        return mLevels[_Level - 1].mOffsets[_Bucket + 1];
+    }
+
+    public int getColor(int _Level, int _Series) {
+        return mLevels[_Level - 1].mColors[_Series];
+    }
+
+    /**
+     * @return The aggregated value of a series, the sum or the mean depending on the aggregation.
+     */
+    public float getValue(int _Level, int _Series) {
+        Level level = mLevels[_Level - 1];
+        return aggregate(level.mSums[_Series], level.mCounts[_Series], mAggregation);
+    }
+
+    public float getSeriesTop(int _Level, int _Series) {
+        return mLevels[_Level - 1].mTops[_Series];
+    }
+
+    public float getSeriesBottom(int _Level, int _Series) {
+        return mLevels[_Level - 1].mBottoms[_Series];
+    }
+
+    /**
+     * Returns the finest level whose buckets are at least _MinWidth wide on the screen.
+     * @param _BarWidth  Width of a single bar in content coordinates
+     * @param _BarMargin Margin between two bars in content coordinates
+     * @param _Zoom      Current zoom factor
+     * @param _MinWidth  Minimum width of a drawn bar in px
+     * @return The level which should be drawn, 0 for the stacks themselves.
+     */
+    public int selectLevel(float _BarWidth, float _BarMargin, float _Zoom, float _MinWidth) {
+        int level = 0;
+        while (level < mLevelCount && ((1 << level) * (_BarWidth + _BarMargin) - _BarMargin) * _Zoom < _MinWidth) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Returns the amount of levels which are needed so that the coarsest level is at least _MinWidth
+     * wide at the given zoom.
+     */
+    static int countLevels(int _StackCount, float _BarWidth, float _BarMargin, float _MinZoom, float _MinWidth) {
+        int levels = 0;
+        while ((1 << levels) < _StackCount && ((1 << levels) * (_BarWidth + _BarMargin) - _BarMargin) * _MinZoom < _MinWidth) {
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * Builds the pyramid for the given data, or updates the previous one.
+     * @param _Data         The stacks
+     * @param _Previous     The pyramid of the previous layout, or null
+     * @param _Recycled     A pyramid which is not used anymore and is built again, or null for a new one
+     * @param _From         Index of the first changed stack (inclusive)
+     * @param _To           Index after the last changed stack (exclusive)
+     * @param _TailSame     True if the stacks after _To are the same as in the previous data
+     * @param _LevelCount   Amount of levels above level 0
+     * @param _Aggregation  How the series are aggregated
+     * @param _GraphHeight  Height of the graph, the series bounds are scaled to it
+     * @param _AxisMaximum  Value at the top of the graph, or 0 if every bucket fills the graph height
+     * @return The new pyramid
+     */
+    static LodPyramid build(StackedBarSnapshot _Data, LodPyramid _Previous, LodPyramid _Recycled, int _From, int _To,
+                            boolean _TailSame, int _LevelCount, Aggregation _Aggregation, float _GraphHeight,
+                            float _AxisMaximum) {
+        LodPyramid previous = _Previous;
+        if (previous != null && (previous.mAggregation != _Aggregation || previous.mGraphHeight != _GraphHeight
+                || previous.mAxisMaximum != _AxisMaximum)) {
+            previous = null;
+        }
+
+        LodPyramid pyramid = _Recycled != null && _Recycled != previous ? _Recycled : new LodPyramid();
+        if (pyramid.mLevels.length < _LevelCount) {
+            pyramid.mLevels = Arrays.copyOf(pyramid.mLevels, _LevelCount);
+        }
+        pyramid.mLevelCount  = _LevelCount;
+        pyramid.mAggregation = _Aggregation;
+        pyramid.mGraphHeight = _GraphHeight;
+        pyramid.mAxisMaximum = _AxisMaximum;
+
+        // level 0 are the stacks of the data, with a count of 1 for every segment
+        int     stackCount   = _Data.getStackCount();
+        int     childCount   = stackCount;
+        int[]   childOffsets = _Data.getStackOffsets();
+        float[] childSums    = _Data.getValues();
+        int[]   childCounts  = null;
+        int[]   childColors  = _Data.getColors();
+        int     from         = _From;
+        int     to           = _To;
+        boolean tailSame     = _TailSame;
+
+        for (int l = 0; l < _LevelCount; l++) {
+            Level old = previous != null && l < previous.mLevelCount ? previous.mLevels[l] : null;
+            int   bucketCount = (childCount + 1) / 2;
+            Level level = pyramid.mLevels[l];
+            if (level == null) {
+                level = new Level();
+                pyramid.mLevels[l] = level;
+            }
+            level.resetBuckets(bucketCount);
+            int[] offsets = level.mOffsets;
+            offsets[0] = 0;
+
+            // the series count of a bucket is the one of its larger child
+            for (int b = 0; b < bucketCount; b++) {
+                int first = 2 * b;
+                int size  = childOffsets[first + 1] - childOffsets[first];
+                if (first + 1 < childCount) {
+                    size = Math.max(size, childOffsets[first + 2] - childOffsets[first + 1]);
+                }
+                offsets[b + 1] = offsets[b] + size;
+            }
+
+            level.ensureSeriesCapacity(offsets[bucketCount]);
+
+            int bucketFrom = old != null ? Math.min(from / 2, bucketCount) : 0;
+            int bucketTo   = old != null ? Math.min((to + 1) / 2, bucketCount) : bucketCount;
+            boolean copyTail = old != null && tailSame && old.mBucketCount == bucketCount
+                    && old.mOffsets[bucketTo] == offsets[bucketTo];
+            if (!copyTail) {
+                bucketTo = bucketCount;
+            }
+
+            if (old != null) {
+                int headSeries = offsets[bucketFrom];
+                copySeries(old, level, 0, headSeries);
+                if (copyTail) {
+                    copySeries(old, level, offsets[bucketTo], level.getSeriesCount() - offsets[bucketTo]);
+                }
+            }
+
+            for (int b = bucketFrom; b < bucketTo; b++) {
+                // level l + 1 has buckets of 2^(l + 1) stacks, the last one may be smaller
+                int stacks = Math.min((b + 1) << (l + 1), stackCount) - (b << (l + 1));
+                combine(level, b, childOffsets, childSums, childCounts, childColors, childCount);
+                calculateBounds(level, b, stacks, _Aggregation, _GraphHeight, _AxisMaximum);
+            }
+
+            childCount   = bucketCount;
+            childOffsets = level.mOffsets;
+            childSums    = level.mSums;
+            childCounts  = level.mCounts;
+            childColors  = level.mColors;
+            from         = bucketFrom;
+            to           = bucketTo;
+            tailSame     = copyTail;
+        }
+
+        return pyramid;
+    }
+
+    private static void copySeries(Level _Src, Level _Dst, int _From, int _Count) {
+        System.arraycopy(_Src.mSums,    _From, _Dst.mSums,    _From, _Count);
+        System.arraycopy(_Src.mCounts,  _From, _Dst.mCounts,  _From, _Count);
+        System.arraycopy(_Src.mColors,  _From, _Dst.mColors,  _From, _Count);
+        System.arraycopy(_Src.mTops,    _From, _Dst.mTops,    _From, _Count);
+        System.arraycopy(_Src.mBottoms, _From, _Dst.mBottoms, _From, _Count);
+    }
+
+    /**
+     * Combines the two children of a bucket.
+     */
+    private static void combine(Level _Level, int _Bucket, int[] _ChildOffsets, float[] _ChildSums, int[] _ChildCounts,
+                                int[] _ChildColors, int _ChildCount) {
+        int start = _Level.mOffsets[_Bucket];
+        int end   = _Level.mOffsets[_Bucket + 1];
+
+        Arrays.fill(_Level.mSums, start, end, 0);
+        Arrays.fill(_Level.mCounts, start, end, 0);
+
+        // the second child is added first, so the colors of the first child win
+        for (int child = Math.min(2 * _Bucket + 1, _ChildCount - 1); child >= 2 * _Bucket; child--) {
+            int childStart = _ChildOffsets[child];
+            int childEnd   = _ChildOffsets[child + 1];
+            for (int s = childStart; s < childEnd; s++) {
+                int series = start + s - childStart;
+                _Level.mSums[series]   += _ChildSums[s];
+                _Level.mCounts[series] += _ChildCounts != null ? _ChildCounts[s] : 1;
+                _Level.mColors[series]  = _ChildColors[s];
+            }
+        }
+    }
+
+    /**
+     * Calculates the bounds of the series of a bucket. The series are stacked like the segments of
+     * a single stack.
+     * @param _Stacks       Amount of stacks in the bucket
+     * @param _AxisMaximum  Value at the top of the graph, or 0 if the bucket fills the graph height
+     */
+    private static void calculateBounds(Level _Level, int _Bucket, int _Stacks, Aggregation _Aggregation,
+                                        float _GraphHeight, float _AxisMaximum) {
+        int start = _Level.mOffsets[_Bucket];
+        int end   = _Level.mOffsets[_Bucket + 1];
+
+        float cumulatedValues = _AxisMaximum;
+        if (_AxisMaximum <= 0) {
+            for (int s = start; s < end; s++) {
+                cumulatedValues += aggregate(_Level.mSums[s], _Level.mCounts[s], _Aggregation);
+            }
+        }
+
+        float lastY = 0;
+        for (int s = start; s < end; s++) {
+            float value = aggregate(_Level.mSums[s], _Level.mCounts[s], _Aggregation);
+            if (_AxisMaximum > 0 && _Aggregation == Aggregation.SUM) {
+                // the axis is in values of a single stack
+                value /= _Stacks;
+            }
+            float newY = Math.min(((value * _GraphHeight) / cumulatedValues) + lastY, _GraphHeight);
+            _Level.mTops[s]    = lastY;
+            _Level.mBottoms[s] = newY;
+            lastY = newY;
+        }
+    }
+
+    private static float aggregate(float _Sum, int _Count, Aggregation _Aggregation) {
+        if (_Aggregation == Aggregation.MEAN) {
+            return _Count > 0 ? _Sum / _Count : 0;
+        }
+        return _Sum;
+    }
+}
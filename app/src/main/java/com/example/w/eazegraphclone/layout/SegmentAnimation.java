@@ -0,0 +1,103 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+
+/**
+ * Interpolates the segment heights between the displayed state and a new layout. The start and end
+ * heights are kept in flat arrays, so a frame only runs one loop over them and never allocates.
+ * <p>
+ * Segment j of stack i is animated from segment j of stack i of the previous target, new segments
+ * grow from a height of 0. A transition which starts while another one is running continues from
+ * the currently displayed heights.
+ * <p>
+ * Not thread safe, it is used on the UI thread only.
+ */
+public final class SegmentAnimation {
+
+    private float[]             mFrom    = new float[0];
+    private float[]             mTo      = new float[0];
+    private float[]             mCurrent = new float[0];
+    private int                 mCount;
+
+    // the layout which is animated to, null before the first transition
+    private StackedBarLayout    mTarget;
+
+    /**
+     * @return The layout of the current or last transition, or null.
+     */
+    public StackedBarLayout getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * Returns the displayed height of every segment of the target. The array may be longer than
+     * the segment count and must not be modified.
+     * @return The heights, indexed by segment
+     */
+    public float[] getHeights() {
+        return mCurrent;
+    }
+
+    /**
+     * Starts a transition from the displayed heights to the given layout. The heights are those of
+     * the start until {@link #interpolate(float)} is called.
+     * @param _Target The new layout
+     */
+    public void start(StackedBarLayout _Target) {
+        StackedBarSnapshot data = _Target.getData();
+        int[]              offsets = data.getStackOffsets();
+        int                stackCount = data.getStackCount();
+        int                count = data.getSegmentCount();
+
+        int[] previousOffsets = mTarget != null ? mTarget.getData().getStackOffsets() : null;
+        int   previousStacks  = mTarget != null ? mTarget.getStackCount() : 0;
+
+        if (mFrom.length < count) {
+            mFrom = new float[count];
+            mTo   = new float[count];
+        }
+
+        // the start heights are mapped from the current ones before mCurrent is replaced
+        for (int i = 0; i < stackCount; i++) {
+            int start = offsets[i];
+            int end   = offsets[i + 1];
+            int previousStart = i < previousStacks ? previousOffsets[i] : 0;
+            int previousEnd   = i < previousStacks ? previousOffsets[i + 1] : 0;
+
+            for (int segment = start; segment < end; segment++) {
+                int previous = previousStart + segment - start;
+                mFrom[segment] = previous < previousEnd ? mCurrent[previous] : 0;
+                mTo[segment]   = _Target.getSegmentBottom(segment) - _Target.getSegmentTop(segment);
+            }
+        }
+
+        if (mCurrent.length < count) {
+            mCurrent = new float[mFrom.length];
+        }
+        System.arraycopy(mFrom, 0, mCurrent, 0, count);
+
+        mCount  = count;
+        mTarget = _Target;
+    }
+
+    /**
+     * Calculates the displayed heights for a point of the transition.
+     * @param _Fraction Progress of the transition, 0 is the start and 1 the target
+     */
+    public void interpolate(float _Fraction) {
+        float[] from = mFrom;
+        float[] to = mTo;
+        float[] current = mCurrent;
+        for (int i = 0, count = mCount; i < count; i++) {
+            current[i] = from[i] + (to[i] - from[i]) * _Fraction;
+        }
+    }
+
+    /**
+     * Forgets the displayed state, so the next transition starts from empty bars.
+     */
+    public void clear() {
+        mTarget = null;
+        mCount  = 0;
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.utils.ArrayUtils;
+
+/**
+ * Result of a layout pass of a stacked bar chart: the bar positions, segment boundaries, value
+ * labels and legend placement for one {@link StackedBarSnapshot}.
+ * <p>
+ * A layout is created by the {@link StackedBarLayoutCalculator} and never changed after it was
+ * returned, so it can be drawn on any thread while the next layout is calculated.
+ * <p>
+ * The columns may be larger than the data, because a layout which is not drawn anymore is handed
+ * back with {@link StackedBarLayoutEngine#recycle(StackedBarLayout)} and filled again by a later
+ * pass. Only the first {@link #getStackCount()} stack entries and the segments of the snapshot are
+ * valid.
+ */
+public final class StackedBarLayout {
+
+    private int                         mGeneration;
+    private StackedBarSnapshot          mData;
+    private BarLayoutConfig             mConfig;
+
+    private float                       mBarWidth;
+    private float                       mBarMargin;
+    private int                         mContentWidth;
+
+    private int                         mStackCount;
+
+    // stack columns
+    float[]             mBarLefts;
+    float[]             mLabelWidths;
+    float[]             mLabelPositions;
+    boolean[]           mShowLabels;
+
+    // segment columns
+    float[]             mSegmentTops;
+    float[]             mSegmentBottoms;
+    String[]            mValueLabels;
+    float[]             mValueTextWidths;
+    float[]             mValueTextHeights;
+    boolean[]           mShowValues;
+
+    float               mMaxLabelWidth;
+
+    // duration of the legend placement of the pass which created this layout
+    long                mLegendNanos;
+
+    // value at the top of the graph and distance of the gridlines, both 0 if every stack fills the graph
+    float               mAxisMaximum;
+    float               mAxisStep;
+
+    // null if the bars are never narrower than the minimum bar width
+    LodPyramid          mPyramid;
+
+    // text size output of the pass which fills this layout, so measuring does not allocate
+    final float[]       mTextSize = new float[2];
+
+    // columns are shared with another layout or kept by a cache, so the layout is never recycled
+    private volatile boolean mPinned;
+
+    // the snapshot was submitted for recycling, so it is recycled together with the layout
+    boolean             mOwnsData;
+
+    StackedBarLayout(int _Generation, StackedBarSnapshot _Data, BarLayoutConfig _Config,
+                     float _BarWidth, float _BarMargin, int _ContentWidth) {
+        int stacks   = _Data.getStackCount();
+        int segments = _Data.getSegmentCount();
+
+        mBarLefts           = new float[stacks];
+        mLabelWidths        = new float[stacks];
+        mLabelPositions     = new float[stacks];
+        mShowLabels         = new boolean[stacks];
+
+        mSegmentTops        = new float[segments];
+        mSegmentBottoms     = new float[segments];
+        mValueLabels        = new String[segments];
+        mValueTextWidths    = new float[segments];
+        mValueTextHeights   = new float[segments];
+        mShowValues         = new boolean[segments];
+
+        reset(_Generation, _Data, _Config, _BarWidth, _BarMargin, _ContentWidth);
+    }
+
+    /**
+     * Shares the columns of another layout, they are never changed after the layout pass.
+     */
+    private StackedBarLayout(StackedBarLayout _Layout, int _Generation) {
+        mGeneration         = _Generation;
+        mData               = _Layout.mData;
+        mConfig             = _Layout.mConfig;
+        mBarWidth           = _Layout.mBarWidth;
+        mBarMargin          = _Layout.mBarMargin;
+        mContentWidth       = _Layout.mContentWidth;
+        mStackCount         = _Layout.mStackCount;
+
+        mBarLefts           = _Layout.mBarLefts;
+        mLabelWidths        = _Layout.mLabelWidths;
+        mLabelPositions     = _Layout.mLabelPositions;
+        mShowLabels         = _Layout.mShowLabels;
+
+        mSegmentTops        = _Layout.mSegmentTops;
+        mSegmentBottoms     = _Layout.mSegmentBottoms;
+        mValueLabels        = _Layout.mValueLabels;
+        mValueTextWidths    = _Layout.mValueTextWidths;
+        mValueTextHeights   = _Layout.mValueTextHeights;
+        mShowValues         = _Layout.mShowValues;
+
+        mMaxLabelWidth      = _Layout.mMaxLabelWidth;
+        mAxisMaximum        = _Layout.mAxisMaximum;
+        mAxisStep           = _Layout.mAxisStep;
+        mPyramid            = _Layout.mPyramid;
+        mPinned             = true;
+    }
+
+    /**
+     * Prepares a recycled layout for a new pass. The columns only grow if they are too small, their
+     * content is overwritten by the pass.
+     */
+    void reset(int _Generation, StackedBarSnapshot _Data, BarLayoutConfig _Config,
+               float _BarWidth, float _BarMargin, int _ContentWidth) {
+        int stacks   = _Data.getStackCount();
+        int segments = _Data.getSegmentCount();
+
+        if (mBarLefts.length < stacks) {
+            int capacity = Math.max(stacks, mBarLefts.length * 2);
+            mBarLefts           = new float[capacity];
+            mLabelWidths        = new float[capacity];
+            mLabelPositions     = new float[capacity];
+            mShowLabels         = new boolean[capacity];
+        }
+        if (mSegmentTops.length < segments) {
+            int capacity = Math.max(segments, mSegmentTops.length * 2);
+            mSegmentTops        = new float[capacity];
+            mSegmentBottoms     = new float[capacity];
+            mValueLabels        = new String[capacity];
+            mValueTextWidths    = new float[capacity];
+            mValueTextHeights   = new float[capacity];
+            mShowValues         = new boolean[capacity];
+        }
+
+        mGeneration     = _Generation;
+        mData           = _Data;
+        mConfig         = _Config;
+        mBarWidth       = _BarWidth;
+        mBarMargin      = _BarMargin;
+        mContentWidth   = _ContentWidth;
+        mStackCount     = stacks;
+
+        mOwnsData       = false;
+        mMaxLabelWidth  = 0;
+        mLegendNanos    = 0;
+        mAxisMaximum    = 0;
+        mAxisStep       = 0;
+    }
+
+    /**
+     * Returns the same layout for another generation, e.g. to publish a cached layout as the result
+     * of a new request. The columns are shared, so no array is copied, and neither layout is
+     * recycled anymore.
+     * @param _Generation The generation of the request
+     * @return The layout with the given generation
+     */
+    public StackedBarLayout withGeneration(int _Generation) {
+        mPinned = true;
+        return new StackedBarLayout(this, _Generation);
+    }
+
+    /**
+     * Keeps the layout from being recycled, e.g. because a cache holds it.
+     */
+    public void pin() {
+        mPinned = true;
+    }
+
+    /**
+     * @return True if the layout is never recycled.
+     */
+    public boolean isPinned() {
+        return mPinned;
+    }
+
+    /**
+     * @return The generation of the layout request this layout was calculated for.
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return The data this layout was calculated for.
+     */
+    public StackedBarSnapshot getData() {
+        return mData;
+    }
+
+    public BarLayoutConfig getConfig() {
+        return mConfig;
+    }
+
+    public int getStackCount() {
+        return mStackCount;
+    }
+
+    public float getBarWidth() {
+        return mBarWidth;
+    }
+
+    public float getBarMargin() {
+        return mBarMargin;
+    }
+
+    public int getContentWidth() {
+        return mContentWidth;
+    }
+
+    /**
+     * Left edges of all bars, sorted ascending. The array must not be modified.
+     * @return The left edges, only the first {@link #getStackCount()} entries are valid
+     */
+    public float[] getBarLefts() {
+        return mBarLefts;
+    }
+
+    public float getBarLeft(int _Stack) {
+        return mBarLefts[_Stack];
+    }
+
+    public float getSegmentTop(int _Segment) {
+        return mSegmentTops[_Segment];
+    }
+
+    public float getSegmentBottom(int _Segment) {
+        return mSegmentBottoms[_Segment];
+    }
+
+    public String getValueLabel(int _Segment) {
+        return mValueLabels[_Segment];
+    }
+
+    public float getValueTextWidth(int _Segment) {
+        return mValueTextWidths[_Segment];
+    }
+
+    public float getValueTextHeight(int _Segment) {
+        return mValueTextHeights[_Segment];
+    }
+
+    public boolean isShowValue(int _Segment) {
+        return mShowValues[_Segment];
+    }
+
+    public boolean canShowLabel(int _Stack) {
+        return mShowLabels[_Stack];
+    }
+
+    public float getLabelPosition(int _Stack) {
+        return mLabelPositions[_Stack];
+    }
+
+    public float getLabelWidth(int _Stack) {
+        return mLabelWidths[_Stack];
+    }
+
+    /**
+     * Finds the bar at a horizontal position with a binary search over the bar positions.
+     * @param _X Position in content coordinates
+     * @return Index of the stack whose bar contains _X, or -1 if _X is in a margin or outside.
+     */
+    public int findStack(float _X) {
+        int stack = ArrayUtils.upperBound(mBarLefts, mStackCount, _X) - 1;
+        return stack >= 0 && _X <= mBarLefts[stack] + mBarWidth ? stack : -1;
+    }
+
+    /**
+     * Finds the segment of a stack at a height above the bottom of the graph. The segment bounds of
+     * a stack are cumulative heights, so they are sorted and can be binary searched as well.
+     * @param _Stack  Index of the stack
+     * @param _Height Distance from the bottom of the graph in px
+     * @return Index of the segment, or -1 if _Height is above the stack.
+     */
+    public int findSegment(int _Stack, float _Height) {
+        int start   = mData.getSegmentStart(_Stack);
+        int end     = mData.getSegmentEnd(_Stack);
+        int segment = ArrayUtils.upperBound(mSegmentBottoms, start, end, _Height);
+        return segment < end && _Height >= mSegmentTops[segment] ? segment : -1;
+    }
+
+    /**
+     * Returns the level of detail pyramid, which is only built if the bars can get narrower than the
+     * minimum bar width of the config at the smallest zoom.
+     * @return The pyramid, or null.
+     */
+    public LodPyramid getPyramid() {
+        return mPyramid;
+    }
+
+    /**
+     * Returns the value at the top of the graph, if the stacks are scaled against a common maximum.
+     * @return The axis maximum, or 0 if every stack fills the graph height.
+     */
+    public float getAxisMaximum() {
+        return mAxisMaximum;
+    }
+
+    /**
+     * @return The value distance between two gridlines, or 0 if there is no value axis.
+     */
+    public float getAxisStep() {
+        return mAxisStep;
+    }
+
+    /**
+     * @return The time the legend placement took in ns.
+     */
+    public long getLegendNanos() {
+        return mLegendNanos;
+    }
+
+    /**
+     * @return The width of the widest legend label.
+     */
+    public float getMaxLabelWidth() {
+        return mMaxLabelWidth;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the layouts of recently bound data sets, keyed by the {@link StackedBarSnapshot} and the
+ * dimensions and settings of the layout. Charts in a scrolling list are bound to the same data sets
+ * again and again; a hit replaces the whole layout pass.
+ * <p>
+ * The snapshots are compared by identity, so the data sets have to be kept by the caller, e.g. in
+ * the items of the adapter. A snapshot is immutable, so its layout can't become outdated by a data
+ * change, only by other {@link BarLayoutConfig}s. A few layouts are kept per data set, so a chart
+ * which is shown in portrait and landscape finds the layouts of both sizes.
+ * <p>
+ * The cache is thread safe and can be shared by all charts of a list.
+ */
+public class StackedBarLayoutCache {
+
+    public static final int DEF_MAX_ENTRIES = 64;
+
+    // layouts of different dimensions or settings per data set, the least recently stored one first
+    static final int MAX_LAYOUTS_PER_DATA = 4;
+
+    // snapshot -> layouts in access order, so the first entry is the least recently used one
+    private final LinkedHashMap<StackedBarSnapshot, StackedBarLayout[]> mLayouts;
+
+    private long mHitCount;
+    private long mMissCount;
+
+    public StackedBarLayoutCache() {
+        this(DEF_MAX_ENTRIES);
+    }
+
+    /**
+     * @param _MaxEntries Maximum amount of data sets whose layouts are cached
+     */
+    public StackedBarLayoutCache(final int _MaxEntries) {
+        mLayouts = new LinkedHashMap<StackedBarSnapshot, StackedBarLayout[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StackedBarSnapshot, StackedBarLayout[]> _Eldest) {
+                return size() > _MaxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached layout of a data set.
+     * @param _Data     The data set
+     * @param _Config   The dimensions and settings of the requested layout
+     * @return The layout, or null if the data set was not laid out with the same config.
+     */
+    public synchronized StackedBarLayout get(StackedBarSnapshot _Data, BarLayoutConfig _Config) {
+        StackedBarLayout[] layouts = mLayouts.get(_Data);
+        if (layouts != null) {
+            for (StackedBarLayout layout : layouts) {
+                if (layout.getConfig().isSameLayout(_Config)) {
+                    mHitCount++;
+                    return layout;
+                }
+            }
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * Returns all cached layouts of a data set, e.g. to keep them in the saved state of a chart.
+     * @param _Data The data set
+     * @return The layouts, the least recently stored one first. Empty if there are none.
+     */
+    public synchronized List<StackedBarLayout> getLayouts(StackedBarSnapshot _Data) {
+        StackedBarLayout[] layouts = mLayouts.get(_Data);
+        List<StackedBarLayout> result = new ArrayList<StackedBarLayout>(layouts != null ? layouts.length : 0);
+        if (layouts != null) {
+            for (StackedBarLayout layout : layouts) {
+                result.add(layout);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores a layout for its data set. An older layout of the data set with the same dimensions and
+     * settings is replaced, and the least recently stored one if the data set has too many layouts.
+     * @param _Layout The layout, which is pinned, so it is never recycled
+     */
+    public synchronized void put(StackedBarLayout _Layout) {
+        _Layout.pin();
+        StackedBarSnapshot data = _Layout.getData();
+        StackedBarLayout[] layouts = mLayouts.get(data);
+        if (layouts == null) {
+            mLayouts.put(data, new StackedBarLayout[] { _Layout });
+            return;
+        }
+
+        // the layouts are kept in the order of storing, the replaced or the eldest one is dropped
+        int drop = layouts.length < MAX_LAYOUTS_PER_DATA ? -1 : 0;
+        for (int i = 0; i < layouts.length; i++) {
+            if (layouts[i].getConfig().isSameLayout(_Layout.getConfig())) {
+                drop = i;
+                break;
+            }
+        }
+
+        StackedBarLayout[] kept = new StackedBarLayout[drop < 0 ? layouts.length + 1 : layouts.length];
+        int count = 0;
+        for (int i = 0; i < layouts.length; i++) {
+            if (i != drop) {
+                kept[count++] = layouts[i];
+            }
+        }
+        kept[count] = _Layout;
+        mLayouts.put(data, kept);
+    }
+
+    public synchronized void clear() {
+        mLayouts.clear();
+    }
+
+    public synchronized int size() {
+        return mLayouts.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+}
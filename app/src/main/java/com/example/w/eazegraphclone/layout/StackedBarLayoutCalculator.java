@@ -0,0 +1,383 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.utils.ArrayUtils;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import java.text.NumberFormat;
+
+/**
+ * The layout pass of the stacked bar chart as a pure function from a {@link StackedBarSnapshot} and
+ * a {@link BarLayoutConfig} to a {@link StackedBarLayout}. It uses no Android classes and no state
+ * of the view, so it can run on any thread and on a plain JVM.
+ * <p>
+ * If the previous layout is given and the bar geometry did not change, only the stacks in the dirty
+ * range are calculated again, everything else is copied from the previous layout. With an absolute
+ * {@link ValueAxis} this also requires that the axis maximum stayed the same; as it is rounded up to
+ * a whole step, most changes of the tallest stack don't move it.
+ * <p>
+ * Stacks which were removed from the front only move the following ones, their texts and segment
+ * boundaries are copied from their old index. Only the bar positions, the legend placement and the
+ * level of detail pyramid, which depend on the index, are calculated again; all of them without
+ * formatting or measuring a text.
+ */
+public final class StackedBarLayoutCalculator {
+
+    private StackedBarLayoutCalculator() {
+    }
+
+    /**
+     * Calculates the layout of the given data.
+     * @param _Data         The data which should be laid out
+     * @param _Config       Dimensions and settings of the chart
+     * @param _Previous     The previous layout, or null
+     * @param _FullLayout   True if everything has to be calculated again, e.g. after settings changed
+     * @param _DirtyFrom    Index of the first stack which changed since the previous layout (inclusive)
+     * @param _DirtyTo      Index after the last stack which changed since the previous layout (exclusive)
+     * @param _Cache        Cache for the text measurements
+     * @param _Generation   Generation which is stored in the new layout
+     * @return The new layout, or _Previous if nothing changed
+     */
+    public static StackedBarLayout calculate(StackedBarSnapshot _Data, BarLayoutConfig _Config, StackedBarLayout _Previous,
+                                             boolean _FullLayout, int _DirtyFrom, int _DirtyTo,
+                                             TextMeasureCache _Cache, int _Generation) {
+        return calculate(_Data, _Config, _Previous, null, _FullLayout, _DirtyFrom, _DirtyTo, _Cache, _Generation);
+    }
+
+    /**
+     * Calculates the layout of the given data into a layout which is not used anymore, so a steady
+     * stream of relayouts does not allocate new columns.
+     * @param _Recycled     A layout which is overwritten, e.g. one which was handed back with
+     *                      {@link StackedBarLayoutEngine#recycle(StackedBarLayout)}, or null
+     * @return The new layout, which is _Recycled if it was given, or _Previous if nothing changed
+     * @see #calculate(StackedBarSnapshot, BarLayoutConfig, StackedBarLayout, boolean, int, int, TextMeasureCache, int)
+     */
+    public static StackedBarLayout calculate(StackedBarSnapshot _Data, BarLayoutConfig _Config, StackedBarLayout _Previous,
+                                             StackedBarLayout _Recycled, boolean _FullLayout, int _DirtyFrom, int _DirtyTo,
+                                             TextMeasureCache _Cache, int _Generation) {
+        return calculate(_Data, _Config, _Previous, _Recycled, _FullLayout, _DirtyFrom, _DirtyTo, 0, _Cache, _Generation);
+    }
+
+    /**
+     * Calculates the layout of data whose oldest stacks were removed since the previous layout, e.g.
+     * a live chart which keeps only the last N stacks.
+     * @param _ShiftedStacks Amount of stacks which were removed from the front since the previous
+     *                       layout. Stack i outside of the dirty range was stack i + _ShiftedStacks.
+     * @see #calculate(StackedBarSnapshot, BarLayoutConfig, StackedBarLayout, StackedBarLayout, boolean, int, int, TextMeasureCache, int)
+     */
+    public static StackedBarLayout calculate(StackedBarSnapshot _Data, BarLayoutConfig _Config, StackedBarLayout _Previous,
+                                             StackedBarLayout _Recycled, boolean _FullLayout, int _DirtyFrom, int _DirtyTo,
+                                             int _ShiftedStacks, TextMeasureCache _Cache, int _Generation) {
+        if (_Recycled != null && (_Recycled == _Previous || _Recycled.isPinned())) {
+            throw new IllegalArgumentException("the recycled layout is still in use");
+        }
+
+        int stackCount = _Data.getStackCount();
+        ValueAxis axis        = _Config.getValueAxis();
+        float     axisMaximum = axis.calculateMaximum(_Data.getMaxStackTotal());
+        if (stackCount == 0) {
+            StackedBarLayout layout = obtainLayout(_Recycled, _Generation, _Data, _Config, 0, 0, 0);
+            layout.mPyramid     = null;
+            layout.mAxisMaximum = axisMaximum;
+            layout.mAxisStep    = axis.calculateStep(axisMaximum);
+            return layout;
+        }
+
+        float barWidth = _Config.calculateBarWidth(stackCount);
+        float margin   = _Config.calculateBarMargin(stackCount);
+        // barWidth에 stackCount를 곱한 값과 margin에 stackCount를 곱한 값을 더한 값이 전체 content의 넓이이다.
+        int contentWidth = (int) ((barWidth * stackCount) + (margin * stackCount));
+
+        StackedBarLayout previous = _Previous;
+        if (previous != null && (previous.getStackCount() == 0 || _ShiftedStacks >= previous.getStackCount())) {
+            // nothing of the previous layout is left
+            previous = null;
+        }
+
+        // measured texts can be reused as long as the labels are formatted and measured the same way
+        boolean reuseText = previous != null && previous.getConfig().hasSameText(_Config);
+        // a full pass is only needed if the geometry of every bar changed
+        boolean fullLayout = _FullLayout || !reuseText
+                || barWidth != previous.getBarWidth() || margin != previous.getBarMargin()
+                || _Config.getGraphHeight() != previous.getConfig().getGraphHeight()
+                || axisMaximum != previous.getAxisMaximum();
+
+        int shift = previous != null ? Math.max(0, _ShiftedStacks) : 0;
+        int from  = Math.max(0, Math.min(_DirtyFrom, stackCount));
+        int to    = Math.max(from, Math.min(_DirtyTo, stackCount));
+        if (previous != null) {
+            // the stacks before the range are copied from behind the removed ones
+            int previousStacks = Math.max(0, previous.getStackCount() - shift);
+            if (from > previousStacks) {
+                from = previousStacks;
+            }
+            StackedBarSnapshot previousData = previous.getData();
+            if (to < stackCount && (previousStacks != stackCount
+                    || previousData.getSegmentStart(to + shift) - previousData.getSegmentStart(shift) != _Data.getSegmentStart(to))) {
+                // the stacks after the range moved, so they can't be copied
+                to = stackCount;
+            }
+        }
+        int dirtyFrom = from;
+        int dirtyTo   = to;
+
+        if (!fullLayout && from == to && shift == 0 && previous.getStackCount() == stackCount) {
+            return previous;
+        }
+
+        StackedBarLayout layout = obtainLayout(_Recycled, _Generation, _Data, _Config, barWidth, margin, contentWidth);
+        // the pyramid of a recycled layout is built again into its arrays below
+        LodPyramid recycledPyramid = layout.mPyramid;
+        layout.mPyramid = null;
+        layout.mAxisMaximum = axisMaximum;
+        layout.mAxisStep    = axis.calculateStep(axisMaximum);
+        if (reuseText) {
+            copyUnchanged(previous, layout, from, to, shift, !fullLayout);
+        }
+
+        int textFrom = reuseText ? from : 0;
+        int textTo   = reuseText ? to : stackCount;
+        if (fullLayout) {
+            from = 0;
+            to   = stackCount;
+        }
+
+        calculateStackBounds(_Data, _Config, layout, from, to, textFrom, textTo, _Cache);
+        if (shift > 0 && !fullLayout) {
+            // the copied stacks keep their segments, but not their positions
+            for (int i = 0; i < from; i++) {
+                layout.mBarLefts[i] = i * (barWidth + margin) + margin / 2;
+            }
+            for (int i = to; i < stackCount; i++) {
+                layout.mBarLefts[i] = i * (barWidth + margin) + margin / 2;
+            }
+        }
+
+        long  legendStart = System.nanoTime();
+        float labelWidth;
+        if (fullLayout || shift > 0) {
+            // the placement of every label depends on the labels before it, which were removed
+            labelWidth = calculateLegend(_Data, _Config, layout, 0, stackCount, _Cache);
+        } else {
+            // the legend labels next to the changed stacks might be affected as well, e.g. a label which did
+            // not fit before the content width grew. So the placement restarts one label width before the
+            // first changed stack and runs until it matches the previous placement again.
+            int legendFrom = ArrayUtils.lowerBound(layout.mBarLefts, from,
+                    from * (barWidth + margin) - previous.getMaxLabelWidth() - barWidth);
+            labelWidth = Math.max(previous.getMaxLabelWidth(), calculateLegend(_Data, _Config, layout, legendFrom, to, _Cache));
+        }
+        layout.mMaxLabelWidth = labelWidth;
+        layout.mLegendNanos   = System.nanoTime() - legendStart;
+
+        if (_Config.isLodEnabled()) {
+            // the smallest zoom shows the whole content at once
+            float minZoom = contentWidth > _Config.getAvailableWidth() ? (float) _Config.getAvailableWidth() / contentWidth : 1.f;
+            int   levels  = LodPyramid.countLevels(stackCount, barWidth, margin, minZoom, _Config.getMinBarWidth());
+            if (levels > 0) {
+                // the pyramid only depends on the values, so a geometry change alone does not rebuild it. Its
+                // buckets start at the first stack, so removed stacks change all of them.
+                LodPyramid previousPyramid = previous != null && !_FullLayout && shift == 0 ? previous.getPyramid() : null;
+                layout.mPyramid = LodPyramid.build(_Data, previousPyramid, recycledPyramid, dirtyFrom, dirtyTo,
+                        dirtyTo < stackCount, levels, _Config.getLodAggregation(), _Config.getGraphHeight(), axisMaximum);
+            }
+        }
+
+        return layout;
+    }
+
+    private static StackedBarLayout obtainLayout(StackedBarLayout _Recycled, int _Generation, StackedBarSnapshot _Data,
+                                                 BarLayoutConfig _Config, float _BarWidth, float _BarMargin, int _ContentWidth) {
+        if (_Recycled == null) {
+            return new StackedBarLayout(_Generation, _Data, _Config, _BarWidth, _BarMargin, _ContentWidth);
+        }
+        _Recycled.reset(_Generation, _Data, _Config, _BarWidth, _BarMargin, _ContentWidth);
+        return _Recycled;
+    }
+
+    /**
+     * Copies the columns of the stacks outside of the range from the previous layout.
+     * @param _Shift    Amount of stacks which were removed from the front, stack i is copied from stack i + _Shift
+     * @param _Geometry True to copy the bar geometry and legend placement as well, not only the texts. The
+     *                  bar positions and the legend placement are only copied if no stack was removed.
+     */
+    private static void copyUnchanged(StackedBarLayout _Previous, StackedBarLayout _Layout, int _From, int _To,
+                                      int _Shift, boolean _Geometry) {
+        StackedBarSnapshot data         = _Layout.getData();
+        StackedBarSnapshot previousData = _Previous.getData();
+        int stackCount      = _Layout.getStackCount();
+        int headStacks      = Math.max(0, Math.min(_From, _Previous.getStackCount() - _Shift));
+        int shiftSegments   = previousData.getSegmentStart(_Shift);
+        int headSegments    = previousData.getSegmentStart(_Shift + headStacks) - shiftSegments;
+        int tailStacks      = _To < stackCount ? stackCount - _To : 0;
+        int tailSegment     = data.getSegmentStart(_To);
+        int tailSegments    = data.getSegmentCount() - tailSegment;
+        boolean placement   = _Geometry && _Shift == 0;
+
+        copyStacks(_Previous, _Layout, _Shift, 0, headStacks, placement);
+        copySegments(_Previous, _Layout, shiftSegments, 0, headSegments, _Geometry);
+        if (tailStacks > 0) {
+            copyStacks(_Previous, _Layout, _To + _Shift, _To, tailStacks, placement);
+            copySegments(_Previous, _Layout, tailSegment + shiftSegments, tailSegment, tailSegments, _Geometry);
+        }
+    }
+
+    private static void copyStacks(StackedBarLayout _Src, StackedBarLayout _Dst, int _SrcFrom, int _DstFrom, int _Count,
+                                   boolean _Geometry) {
+        System.arraycopy(_Src.mLabelWidths, _SrcFrom, _Dst.mLabelWidths, _DstFrom, _Count);
+        if (_Geometry) {
+            System.arraycopy(_Src.mBarLefts,       _SrcFrom, _Dst.mBarLefts,       _DstFrom, _Count);
+            System.arraycopy(_Src.mLabelPositions, _SrcFrom, _Dst.mLabelPositions, _DstFrom, _Count);
+            System.arraycopy(_Src.mShowLabels,     _SrcFrom, _Dst.mShowLabels,     _DstFrom, _Count);
+        }
+    }
+
+    private static void copySegments(StackedBarLayout _Src, StackedBarLayout _Dst, int _SrcFrom, int _DstFrom, int _Count,
+                                     boolean _Geometry) {
+        System.arraycopy(_Src.mValueLabels,      _SrcFrom, _Dst.mValueLabels,      _DstFrom, _Count);
+        System.arraycopy(_Src.mValueTextWidths,  _SrcFrom, _Dst.mValueTextWidths,  _DstFrom, _Count);
+        System.arraycopy(_Src.mValueTextHeights, _SrcFrom, _Dst.mValueTextHeights, _DstFrom, _Count);
+        if (_Geometry) {
+            System.arraycopy(_Src.mSegmentTops,    _SrcFrom, _Dst.mSegmentTops,    _DstFrom, _Count);
+            System.arraycopy(_Src.mSegmentBottoms, _SrcFrom, _Dst.mSegmentBottoms, _DstFrom, _Count);
+            System.arraycopy(_Src.mShowValues,     _SrcFrom, _Dst.mShowValues,     _DstFrom, _Count);
+        }
+    }
+
+    /**
+     * Calculates the bar positions and segment boundaries of a range of stacks.
+     * @param _From     Index of the first stack (inclusive)
+     * @param _To       Index of the last stack (exclusive)
+     * @param _TextFrom Index of the first stack whose labels have to be formatted and measured
+     * @param _TextTo   Index after the last stack whose labels have to be formatted and measured
+     */
+    private static void calculateStackBounds(StackedBarSnapshot _Data, BarLayoutConfig _Config, StackedBarLayout _Layout,
+                                             int _From, int _To, int _TextFrom, int _TextTo, TextMeasureCache _Cache) {
+        float[]      values = _Data.getValues();
+        int[]        offsets = _Data.getStackOffsets();
+        float        width = _Layout.getBarWidth();
+        float        margin = _Layout.getBarMargin();
+        float        graphHeight = _Config.getGraphHeight();
+        float        axisMaximum = _Layout.getAxisMaximum();
+        NumberFormat format = null;
+        float[]      size = _Layout.mTextSize;
+
+        // 최상위 Loop문
+        for (int i = _From; i < _To; i++) {
+            int start = offsets[i];
+            int end   = offsets[i + 1];
+            float lastY = 0;
+            // 하나의 StackedBar의 값들을 모두 더한 값. With a value axis, all stacks are scaled against its maximum instead.
+            float cumulatedValues = axisMaximum;
+
+            if (axisMaximum <= 0) {
+                for (int segment = start; segment < end; segment++) {
+                    cumulatedValues += values[segment];
+                }
+            }
+
+            // every stack takes the same horizontal space, so its position is calculated directly instead of
+            // summed up. This way an incremental pass places a stack exactly where a full pass would.
+            _Layout.mBarLefts[i] = i * (width + margin) + margin / 2;
+
+            boolean measure = i >= _TextFrom && i < _TextTo;
+            if (measure) {
+                _Cache.measure(_Config.getLegendMeasurer(), _Data.getLabel(i), size);
+                _Layout.mLabelWidths[i] = size[0];
+                if (format == null) {
+                    format = _Config.createValueFormat();
+                }
+            }
+
+            // Loop문
+            for (int segment = start; segment < end; segment++) {
+                // 하나의 바의 높이를 구한 뒤 거기에 사용가능한 바 그래프의 높이를 곱한다. 거기서 모든 값들을 더한 값으로 나눈다.
+                // 그리고 LastY를 구하는데 LastY는 StackedBar에서 이전 바의 top 값이다.
+                float newY = ((values[segment] * graphHeight) / cumulatedValues) + lastY;
+                if (newY > graphHeight) {
+                    // only possible with a fixed axis maximum, the stack is cut off at the top
+                    newY = graphHeight;
+                }
+                float height = newY - lastY;
+                // 해당 Bar의 값. The label is only formatted and measured after it changed.
+                if (measure) {
+                    String value = format.format(values[segment]);
+                    _Cache.measure(_Config.getValueMeasurer(), value, size);
+                    _Layout.mValueLabels[segment]      = value;
+                    _Layout.mValueTextWidths[segment]  = size[0];
+                    _Layout.mValueTextHeights[segment] = size[1];
+                }
+
+                _Layout.mShowValues[segment] = _Layout.mValueTextHeights[segment] * 1.5f < height
+                        && _Layout.mValueTextWidths[segment] * 1.1f < width;
+                _Layout.mSegmentTops[segment]    = lastY;
+                _Layout.mSegmentBottoms[segment] = newY;
+                lastY = newY;
+            }
+        }
+    }
+
+    /**
+     * Calculates the legend positions and which legend title should be displayed or not.
+     * <p>
+     * The placement can be restarted at any stack: it continues after the last shown label before
+     * _From and stops as soon as a label after _To is shown at exactly the same position as in the
+     * copied previous placement, because all following labels will then be placed the same way as well.
+     * @return The width of the widest label in the processed range
+     */
+    private static float calculateLegend(StackedBarSnapshot _Data, BarLayoutConfig _Config, StackedBarLayout _Layout,
+                                         int _From, int _To, TextMeasureCache _Cache) {
+        float   textMargin = _Config.getLegendTextMargin();
+        float   endX = _Layout.getContentWidth();
+        float   barWidth = _Layout.getBarWidth();
+        float   lastX = 0;
+        float   maxTextWidth = 0;
+
+        // continue right after the last label which is shown before the range
+        for (int i = _From - 1; i >= 0; i--) {
+            if (_Layout.mShowLabels[i]) {
+                lastX = _Layout.mLabelPositions[i] + _Layout.mLabelWidths[i];
+                break;
+            }
+        }
+
+        for (int i = _From, size = _Data.getStackCount(); i < size; i++) {
+            int     textWidth = (int) _Layout.mLabelWidths[i];
+            float   left = _Layout.mBarLefts[i];
+            float   centerX = left + barWidth / 2;
+            float   centeredTextPos = centerX - (textWidth / 2);
+            float   textStartPos = centeredTextPos - textMargin;
+            boolean show;
+            float   position = 0;
+            maxTextWidth = Math.max(maxTextWidth, textWidth);
+
+            // check if the text is too big to fit on the screen
+            if (centeredTextPos + textWidth > endX - textMargin) {
+                show = false;
+            } else {
+                // check if the current legend label overrides the label before
+                if (textStartPos < lastX) {
+                    if (lastX + textMargin < left) {
+                        show = true;
+                        position = (int) (lastX + textMargin);
+                        lastX = lastX + textMargin + textWidth;
+                    } else {
+                        show = false;
+                    }
+                } else {
+                    show = true;
+                    position = (int) centeredTextPos;
+                    lastX = centerX + (textWidth / 2);
+                }
+            }
+
+            if (i >= _To && show && _Layout.mShowLabels[i] && position == _Layout.mLabelPositions[i]) {
+                // same result as before, the rest of the legend is unchanged
+                break;
+            }
+            _Layout.mShowLabels[i]     = show;
+            _Layout.mLabelPositions[i] = position;
+        }
+
+        return maxTextWidth;
+    }
+}
@@ -0,0 +1,371 @@
+package com.example.w.eazegraphclone.layout;
+
+import com.example.w.eazegraphclone.metrics.ChartMetrics;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the {@link StackedBarLayoutCalculator} off the UI thread. Every {@link #submit} call starts
+ * a new generation; a layout is only published if no newer request was submitted in the meantime.
+ * Requests which are overtaken before they started are skipped, their dirty range is carried over
+ * to the next request.
+ * <p>
+ * The published layout is exchanged atomically and can be read from any thread with {@link #getLayout()}.
+ * <p>
+ * Layouts which are not drawn anymore are handed back with {@link #recycle(StackedBarLayout)}. The
+ * next pass fills their columns again, and their snapshots are refilled by the store through
+ * {@link #obtainSnapshot()}, so a live chart which is laid out after every update does not allocate
+ * the columns and the data copy again each time.
+ */
+public class StackedBarLayoutEngine {
+
+    /**
+     * Informed after a layout was published. Called on the thread of the executor.
+     */
+    public interface OnLayoutPublishedListener {
+        void onLayoutPublished(StackedBarLayout _Layout);
+    }
+
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable _Runnable) {
+            Thread thread = new Thread(_Runnable, "StackedBarLayout");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    // amount of retired layouts and snapshots which are kept for reuse, the drawn layout and the one
+    // which is calculated meanwhile are the only others in use
+    private static final int MAX_RECYCLED = 2;
+
+    private final Executor          mExecutor;
+    private final TextMeasureCache  mCache;
+
+    private final AtomicInteger                     mGeneration = new AtomicInteger();
+    private final AtomicReference<StackedBarLayout> mPublished  = new AtomicReference<StackedBarLayout>();
+
+    private volatile OnLayoutPublishedListener mListener;
+    private volatile ChartMetrics               mMetrics;
+
+    // guarded by themselves
+    private final StackedBarLayout[]   mRecycledLayouts   = new StackedBarLayout[MAX_RECYCLED];
+    private final StackedBarSnapshot[] mRecycledSnapshots = new StackedBarSnapshot[MAX_RECYCLED];
+
+    // only accessed by the executor thread
+    private StackedBarLayout    mBase;
+    // false while the chart has never seen mBase, so the engine can recycle it itself
+    private boolean             mBasePublished;
+    private boolean             mPendingFull;
+    private int                 mPendingFrom = Integer.MAX_VALUE;
+    private int                 mPendingTo;
+    // stacks removed from the front since mBase, the pending range is in indices after the removal
+    private int                 mPendingShift;
+
+    /**
+     * Creates an engine which runs on a shared background thread.
+     * @param _Cache Cache for the text measurements
+     */
+    public StackedBarLayoutEngine(TextMeasureCache _Cache) {
+        this(DEFAULT_EXECUTOR, _Cache);
+    }
+
+    /**
+     * @param _Executor Executor for the layout passes. It has to run the tasks one after another.
+     * @param _Cache    Cache for the text measurements
+     */
+    public StackedBarLayoutEngine(Executor _Executor, TextMeasureCache _Cache) {
+        mExecutor   = _Executor;
+        mCache      = _Cache;
+    }
+
+    public void setOnLayoutPublishedListener(OnLayoutPublishedListener _Listener) {
+        mListener = _Listener;
+    }
+
+    /**
+     * Sets the metrics which receive the duration of every layout pass and the text measurement
+     * cache lookups of it.
+     * @param _Metrics The metrics, or null to stop measuring.
+     */
+    public void setMetrics(ChartMetrics _Metrics) {
+        mMetrics = _Metrics;
+    }
+
+    /**
+     * Returns the latest published layout.
+     * @return The layout, or null if no layout was published yet.
+     */
+    public StackedBarLayout getLayout() {
+        return mPublished.get();
+    }
+
+    /**
+     * Returns the generation of the latest request.
+     */
+    public int getGeneration() {
+        return mGeneration.get();
+    }
+
+    /**
+     * Requests a new layout of the given data. All earlier requests which are still running are
+     * discarded.
+     * @param _Data       Snapshot of the data, with the range which changed since the previous snapshot
+     * @param _Config     Snapshot of the dimensions and settings
+     * @param _FullLayout True if every stack has to be calculated again
+     * @return The generation of the request
+     */
+    public int submit(StackedBarSnapshot _Data, BarLayoutConfig _Config, boolean _FullLayout) {
+        return submit(_Data, _Config, _FullLayout, false);
+    }
+
+    /**
+     * Requests a new layout of the given data, see {@link #submit(StackedBarSnapshot, BarLayoutConfig, boolean)}.
+     * @param _Recycle    True if the snapshot belongs to the engine from now on, e.g. one which was
+     *                    refilled from {@link #obtainSnapshot()}. It is reused as soon as it is
+     *                    overtaken, or once its layout was handed back with {@link #recycle(StackedBarLayout)}.
+     *                    False if the caller keeps the snapshot, e.g. a bound data set.
+     * @return The generation of the request
+     */
+    public int submit(final StackedBarSnapshot _Data, final BarLayoutConfig _Config, final boolean _FullLayout,
+                      final boolean _Recycle) {
+        final int generation = mGeneration.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runLayout(generation, _Data, _Config, _FullLayout, _Recycle);
+            }
+        });
+        return generation;
+    }
+
+    /**
+     * Hands back a layout which is not drawn anymore, neither on the UI thread nor on a tile
+     * thread. A later pass calculates into its columns, and its snapshot is handed out by
+     * {@link #obtainSnapshot()} if it was submitted for recycling. Pinned layouts, e.g. cached ones,
+     * are ignored. Can be called on any thread.
+     * @param _Layout The layout, which must not be used by the caller anymore
+     */
+    public void recycle(StackedBarLayout _Layout) {
+        if (_Layout.isPinned()) {
+            return;
+        }
+        if (_Layout.mOwnsData) {
+            recycleSnapshot(_Layout.getData());
+        }
+        synchronized (mRecycledLayouts) {
+            offer(mRecycledLayouts, _Layout);
+        }
+    }
+
+    /**
+     * Returns a snapshot which is not used anymore, to be refilled with
+     * {@link com.example.w.eazegraphclone.models.StackedBarStore#snapshot(StackedBarSnapshot)} and
+     * submitted for recycling.
+     * @return The snapshot, or null if there is none and the store has to take a new one
+     */
+    public StackedBarSnapshot obtainSnapshot() {
+        synchronized (mRecycledSnapshots) {
+            return poll(mRecycledSnapshots);
+        }
+    }
+
+    private void recycleSnapshot(StackedBarSnapshot _Data) {
+        synchronized (mRecycledSnapshots) {
+            offer(mRecycledSnapshots, _Data);
+        }
+    }
+
+    private StackedBarLayout obtainLayout() {
+        synchronized (mRecycledLayouts) {
+            return poll(mRecycledLayouts);
+        }
+    }
+
+    private static <T> void offer(T[] _Pool, T _Item) {
+        for (int i = 0; i < _Pool.length; i++) {
+            if (_Pool[i] == _Item) {
+                return;
+            }
+        }
+        for (int i = 0; i < _Pool.length; i++) {
+            if (_Pool[i] == null) {
+                _Pool[i] = _Item;
+                return;
+            }
+        }
+    }
+
+    private static <T> T poll(T[] _Pool) {
+        for (int i = _Pool.length - 1; i >= 0; i--) {
+            T item = _Pool[i];
+            if (item != null) {
+                _Pool[i] = null;
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Publishes a layout which was calculated before, e.g. taken from a {@link StackedBarLayoutCache},
+     * instead of calculating it again. All earlier requests are discarded, and the next request
+     * continues from the adopted layout.
+     * @param _Layout The layout
+     * @return The layout with the generation of this request, which is published.
+     */
+    public StackedBarLayout adopt(StackedBarLayout _Layout) {
+        final StackedBarLayout layout = _Layout.withGeneration(mGeneration.incrementAndGet());
+        mPublished.set(layout);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // runs after the discarded requests, which only collected their changes
+                restartFrom(layout, true);
+            }
+        });
+        return layout;
+    }
+
+    /**
+     * Discards all requests, e.g. when the chart is bound to another data set. A pass which is
+     * already running may still publish its layout, so the caller has to ignore layouts of older
+     * generations than the returned one.
+     * <p>
+     * The next request does not continue from the previous layout: its texts and its changed ranges
+     * belong to the discarded data, so the next pass lays out everything again.
+     * @return The generation of the cancellation
+     */
+    public int cancel() {
+        int generation = mGeneration.incrementAndGet();
+        mPublished.set(null);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // runs after the discarded requests and a running pass, before the next request
+                restartFrom(null, false);
+            }
+        });
+        return generation;
+    }
+
+    private void runLayout(int _Generation, StackedBarSnapshot _Data, BarLayoutConfig _Config, boolean _FullLayout,
+                           boolean _Recycle) {
+        int shift = _Data.getShiftedStacks();
+        if (shift > 0) {
+            // the range of the skipped requests moves with their stacks
+            if (mPendingTo <= shift) {
+                mPendingFrom = Integer.MAX_VALUE;
+                mPendingTo   = 0;
+            } else {
+                mPendingFrom = Math.max(0, mPendingFrom - shift);
+                mPendingTo  -= shift;
+            }
+            mPendingShift += shift;
+        }
+        mPendingFull |= _FullLayout;
+        mPendingFrom  = Math.min(mPendingFrom, _Data.getDirtyFrom());
+        mPendingTo    = Math.max(mPendingTo, _Data.getDirtyTo());
+
+        if (_Generation != mGeneration.get()) {
+            // a newer request is already queued and includes the changes of this one
+            if (_Recycle) {
+                recycleSnapshot(_Data);
+            }
+            return;
+        }
+
+        ChartMetrics metrics = mMetrics;
+        long         start = 0;
+        long         hits = 0;
+        long         misses = 0;
+        if (metrics != null) {
+            start  = System.nanoTime();
+            hits   = mCache.getHitCount();
+            misses = mCache.getMissCount();
+        }
+
+        StackedBarLayout recycled = obtainLayout();
+        StackedBarLayout layout = StackedBarLayoutCalculator.calculate(
+                _Data, _Config, mBase, recycled, mPendingFull, mPendingFrom, mPendingTo, mPendingShift, mCache, _Generation);
+        if (layout == recycled) {
+            layout.mOwnsData = _Recycle;
+        } else {
+            // nothing changed, the previous layout is kept
+            if (recycled != null) {
+                synchronized (mRecycledLayouts) {
+                    offer(mRecycledLayouts, recycled);
+                }
+            }
+            if (_Recycle && layout.getData() != _Data) {
+                recycleSnapshot(_Data);
+            }
+        }
+
+        if (metrics != null) {
+            // an unchanged layout is returned as it is, without a legend placement
+            metrics.onLayout(System.nanoTime() - start, layout != mBase ? layout.getLegendNanos() : 0);
+            metrics.onCacheAccess(ChartMetrics.CACHE_TEXT_MEASURE, mCache.getHitCount() - hits, mCache.getMissCount() - misses);
+        }
+
+        // the next request continues from this layout, even if it is not published
+        boolean published = publish(layout, _Generation);
+        restartFrom(layout, published || (layout == mBase && mBasePublished));
+
+        if (published) {
+            OnLayoutPublishedListener listener = mListener;
+            if (listener != null) {
+                listener.onLayoutPublished(layout);
+            }
+        }
+    }
+
+    /**
+     * Makes a layout the base of the next pass, which only lays out the changes after it.
+     * @param _Base      The base, or null to lay out everything in the next pass
+     * @param _Published True if the base was published
+     */
+    private void restartFrom(StackedBarLayout _Base, boolean _Published) {
+        replaceBase(_Base, _Published);
+        mPendingFull  = false;
+        mPendingFrom  = Integer.MAX_VALUE;
+        mPendingTo    = 0;
+        mPendingShift = 0;
+    }
+
+    /**
+     * Makes a layout the base of the next pass. A previous base which was never published is not
+     * known outside of the engine, so it is recycled right away.
+     */
+    private void replaceBase(StackedBarLayout _Layout, boolean _Published) {
+        if (mBase != null && mBase != _Layout && !mBasePublished) {
+            recycle(mBase);
+        }
+        mBase          = _Layout;
+        mBasePublished = _Published;
+    }
+
+    /**
+     * Publishes the layout, unless it is stale or a newer layout is already published.
+     */
+    private boolean publish(StackedBarLayout _Layout, int _Generation) {
+        while (_Generation == mGeneration.get()) {
+            StackedBarLayout current = mPublished.get();
+            if (current != null && current.getGeneration() > _Generation) {
+                return false;
+            }
+            if (mPublished.compareAndSet(current, _Layout)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.w.eazegraphclone.layout;
+
+/**
+ * Immutable setting how the stacks of a bar chart are scaled vertically.
+ * <ul>
+ *     <li>{@link Scale#STACK}: every stack fills the whole graph height, its segments show shares.</li>
+ *     <li>{@link Scale#GLOBAL_MAX}: the values are scaled against the tallest stack, so stacks can be
+ *     compared. The maximum is rounded up to a multiple of the step.</li>
+ *     <li>{@link Scale#FIXED}: the values are scaled against a maximum set by the user, taller stacks
+ *     are cut off at the top of the graph.</li>
+ * </ul>
+ * The absolute scales divide the axis into steps with round values, which are drawn as gridlines.
+ */
+public final class ValueAxis {
+
+    public enum Scale {
+        STACK,
+        GLOBAL_MAX,
+        FIXED
+    }
+
+    public static final int         DEF_STEPS = 5;
+
+    /**
+     * The default, every stack is filled to the graph height.
+     */
+    public static final ValueAxis   STACK = new ValueAxis(Scale.STACK, 0, 0);
+
+    private final Scale mScale;
+    private final float mMaximum;
+    private final int   mSteps;
+
+    private ValueAxis(Scale _Scale, float _Maximum, int _Steps) {
+        mScale   = _Scale;
+        mMaximum = _Maximum;
+        mSteps   = _Steps;
+    }
+
+    /**
+     * Creates an axis which is scaled against the tallest stack.
+     * @param _Steps Maximum amount of steps between 0 and the maximum
+     * @return The axis
+     */
+    public static ValueAxis globalMax(int _Steps) {
+        if (_Steps <= 0) {
+            throw new IllegalArgumentException("steps must be larger than 0");
+        }
+        return new ValueAxis(Scale.GLOBAL_MAX, 0, _Steps);
+    }
+
+    /**
+     * Creates an axis with a fixed range from 0 to _Maximum.
+     * @param _Maximum The value at the top of the graph, larger than 0
+     * @param _Steps   Maximum amount of steps between 0 and the maximum
+     * @return The axis
+     */
+    public static ValueAxis fixed(float _Maximum, int _Steps) {
+        if (!(_Maximum > 0) || _Steps <= 0) {
+            throw new IllegalArgumentException("maximum and steps must be larger than 0");
+        }
+        return new ValueAxis(Scale.FIXED, _Maximum, _Steps);
+    }
+
+    public Scale getScale() {
+        return mScale;
+    }
+
+    /**
+     * @return The fixed maximum, 0 for the other scales.
+     */
+    public float getMaximum() {
+        return mMaximum;
+    }
+
+    public int getSteps() {
+        return mSteps;
+    }
+
+    /**
+     * @return True if the stacks are scaled against a common maximum.
+     */
+    public boolean isAbsolute() {
+        return mScale != Scale.STACK;
+    }
+
+    /**
+     * Returns the value at the top of the graph.
+     * @param _MaxStackTotal Total of the tallest stack
+     * @return The axis maximum, or 0 if every stack is scaled on its own.
+     */
+    public float calculateMaximum(float _MaxStackTotal) {
+        switch (mScale) {
+            case FIXED:
+                return mMaximum;
+            case GLOBAL_MAX:
+                float max  = _MaxStackTotal > 0 ? _MaxStackTotal : 1;
+                float step = calculateStep(max);
+                // the epsilon keeps a maximum which already is a multiple from getting one step more
+                return (float) Math.ceil(max / step - 1e-4) * step;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the distance between two gridlines: a value of 1, 2, 2.5 or 5 times a power of ten, so
+     * the labels are round numbers, and which divides the range into at most {@link #getSteps()} parts.
+     * @param _Maximum The axis maximum
+     * @return The step, or 0 if every stack is scaled on its own.
+     */
+    public float calculateStep(float _Maximum) {
+        if (!isAbsolute() || !(_Maximum > 0)) {
+            return 0;
+        }
+
+        double raw      = (double) _Maximum / mSteps;
+        double exponent = Math.pow(10, Math.floor(Math.log10(raw)));
+        // a float maximum like 0.2 is slightly above the round value, so the fraction is rounded down a bit
+        double fraction = raw / exponent - 1e-6;
+        double nice;
+        if (fraction <= 1) {
+            nice = 1;
+        } else if (fraction <= 2) {
+            nice = 2;
+        } else if (fraction <= 2.5) {
+            nice = 2.5;
+        } else if (fraction <= 5) {
+            nice = 5;
+        } else {
+            nice = 10;
+        }
+        return (float) (nice * exponent);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ValueAxis)) {
+            return false;
+        }
+        ValueAxis other = (ValueAxis) o;
+        return mScale == other.mScale && mMaximum == other.mMaximum && mSteps == other.mSteps;
+    }
+
+    @Override
+    public int hashCode() {
+        return (mScale.hashCode() * 31 + Float.floatToIntBits(mMaximum)) * 31 + mSteps;
+    }
+}
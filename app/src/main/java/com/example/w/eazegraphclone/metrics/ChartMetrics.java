@@ -0,0 +1,50 @@
+package com.example.w.eazegraphclone.metrics;
+
+/**
+ * Receives timings and counters of the layout and drawing of a chart, e.g. to find out where the
+ * time goes on a production device. The callbacks run on the hot paths, so they must not block or
+ * allocate; {@link HistogramChartMetrics} records them into histograms.
+ * <p>
+ * A chart without metrics skips the measurements, so disabling them costs next to nothing.
+ */
+public interface ChartMetrics {
+
+    int LAYER_GRAPH         = 0;
+    int LAYER_LEGEND        = 1;
+
+    int CACHE_TEXT_MEASURE  = 0;
+    int CACHE_COLOR_BATCH   = 1;
+    int CACHE_TILE          = 2;
+    int CACHE_LEGEND        = 3;
+    int CACHE_LAYOUT        = 4;
+
+    /**
+     * Called on the layout thread after every layout pass.
+     * @param _LayoutNanos Duration of the whole pass in ns
+     * @param _LegendNanos Duration of the legend placement in ns, which is part of the pass
+     */
+    void onLayout(long _LayoutNanos, long _LegendNanos);
+
+    /**
+     * Called on the UI thread after a layer was drawn.
+     * @param _Layer Either {@link #LAYER_GRAPH} or {@link #LAYER_LEGEND}
+     * @param _Nanos Duration in ns
+     */
+    void onDraw(int _Layer, long _Nanos);
+
+    /**
+     * Called on the UI thread when the graph is drawn.
+     * @param _Visible Amount of segments which intersect the viewport
+     * @param _Total   Amount of all segments
+     */
+    void onVisibleSegments(int _Visible, int _Total);
+
+    /**
+     * Reports the lookups of a cache since the last call for the same cache. Called on the thread
+     * which used the cache, e.g. the layout thread for the text measurements.
+     * @param _Cache  One of the CACHE constants
+     * @param _Hits   Lookups which were answered from the cache
+     * @param _Misses Lookups which had to compute the value
+     */
+    void onCacheAccess(int _Cache, long _Hits, long _Misses);
+}
@@ -0,0 +1,112 @@
+package com.example.w.eazegraphclone.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative long values, e.g. durations in ns. Every power of two is divided into
+ * {@link #SUB_BUCKETS} buckets, so a percentile is accurate to 25% over the whole long range, with
+ * a fixed amount of memory.
+ * <p>
+ * Recording only increments counters, it never allocates or locks, and it is safe to record and
+ * read on several threads at once.
+ */
+public final class Histogram {
+
+    public static final int     SUB_BUCKETS     = 4;
+
+    private static final int    SUB_BITS        = 2;
+    private static final int    BUCKET_COUNT    = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray   mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong        mCount  = new AtomicLong();
+    private final AtomicLong        mSum    = new AtomicLong();
+    private final AtomicLong        mMax    = new AtomicLong();
+
+    /**
+     * Adds a value. Negative values are recorded as 0.
+     * @param _Value The value
+     */
+    public void record(long _Value) {
+        long value = Math.max(0, _Value);
+        mCounts.incrementAndGet(bucketOf(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * @return The mean of all values, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : (double) mSum.get() / count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile: the largest value of the bucket which holds it.
+     * @param _Percentile The percentile between 0 and 100, e.g. 99 for the 99th percentile
+     * @return The value, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double _Percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        // the rank of the value, counted from 1
+        long rank = Math.max(1, (long) Math.ceil(count * _Percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Values below {@link #SUB_BUCKETS} get a bucket each. Above, the highest set bit selects the
+     * power of two and the next {@link #SUB_BITS} bits the bucket within it.
+     */
+    static int bucketOf(long _Value) {
+        if (_Value < SUB_BUCKETS) {
+            return (int) _Value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(_Value);
+        int sub      = (int) (_Value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int _Bucket) {
+        if (_Bucket < SUB_BUCKETS) {
+            return _Bucket;
+        }
+        int  exponent = _Bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub      = _Bucket % SUB_BUCKETS;
+        long lower    = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.w.eazegraphclone.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link ChartMetrics} which records the timings into {@link Histogram}s and sums up the counters.
+ * It can be shared by several charts and read on any thread, e.g. to send a summary to an
+ * analytics backend from time to time.
+ */
+public class HistogramChartMetrics implements ChartMetrics {
+
+    private static final int CACHE_COUNT = 5;
+
+    private final Histogram         mLayout     = new Histogram();
+    private final Histogram         mLegend     = new Histogram();
+    private final Histogram[]       mDraw       = {new Histogram(), new Histogram()};
+
+    private final AtomicLong        mVisibleSegments = new AtomicLong();
+    private final AtomicLong        mTotalSegments   = new AtomicLong();
+
+    // hits at 2 * cache, misses at 2 * cache + 1
+    private final AtomicLongArray   mCacheCounts = new AtomicLongArray(2 * CACHE_COUNT);
+
+    @Override
+    public void onLayout(long _LayoutNanos, long _LegendNanos) {
+        mLayout.record(_LayoutNanos);
+        mLegend.record(_LegendNanos);
+    }
+
+    @Override
+    public void onDraw(int _Layer, long _Nanos) {
+        mDraw[_Layer].record(_Nanos);
+    }
+
+    @Override
+    public void onVisibleSegments(int _Visible, int _Total) {
+        mVisibleSegments.addAndGet(_Visible);
+        mTotalSegments.addAndGet(_Total);
+    }
+
+    @Override
+    public void onCacheAccess(int _Cache, long _Hits, long _Misses) {
+        mCacheCounts.addAndGet(2 * _Cache, _Hits);
+        mCacheCounts.addAndGet(2 * _Cache + 1, _Misses);
+    }
+
+    /**
+     * @return Durations of the layout passes in ns
+     */
+    public Histogram getLayoutHistogram() {
+        return mLayout;
+    }
+
+    /**
+     * @return Durations of the legend placements in ns
+     */
+    public Histogram getLegendPlacementHistogram() {
+        return mLegend;
+    }
+
+    /**
+     * @param _Layer Either {@link #LAYER_GRAPH} or {@link #LAYER_LEGEND}
+     * @return Durations of the draws of the layer in ns
+     */
+    public Histogram getDrawHistogram(int _Layer) {
+        return mDraw[_Layer];
+    }
+
+    /**
+     * Returns the share of the segments which were inside the viewport, over all drawn frames. A
+     * small share means that the culling saves most of the work.
+     * @return The share between 0 and 1, or 0 if nothing was drawn.
+     */
+    public float getVisibleSegmentRate() {
+        long total = mTotalSegments.get();
+        return total == 0 ? 0 : (float) mVisibleSegments.get() / total;
+    }
+
+    public long getCacheHitCount(int _Cache) {
+        return mCacheCounts.get(2 * _Cache);
+    }
+
+    public long getCacheMissCount(int _Cache) {
+        return mCacheCounts.get(2 * _Cache + 1);
+    }
+
+    /**
+     * @param _Cache One of the CACHE constants
+     * @return The share of lookups which were answered from the cache, between 0 and 1.
+     */
+    public float getCacheHitRate(int _Cache) {
+        long hits  = getCacheHitCount(_Cache);
+        long total = hits + getCacheMissCount(_Cache);
+        return total == 0 ? 0 : (float) hits / total;
+    }
+
+    public void reset() {
+        mLayout.reset();
+        mLegend.reset();
+        for (Histogram histogram : mDraw) {
+            histogram.reset();
+        }
+        mVisibleSegments.set(0);
+        mTotalSegments.set(0);
+        for (int i = 0; i < mCacheCounts.length(); i++) {
+            mCacheCounts.set(i, 0);
+        }
+    }
+}
@@ -20,15 +20,24 @@ package com.example.w.eazegraphclone.models;
 import android.graphics.Rect;
 import android.graphics.RectF;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Model for the BarChart}
  */
 public class BarModel extends BaseModel {
 
     /**
-     * 해당 Bar의 값
+     * Is informed when the value of an attached bar changes, on the thread which changed it.
+     */
+    public interface OnValueChangedListener {
+        void onValueChanged(BarModel _bar);
+    }
+
+    /**
+     * 해당 Bar의 값. Can be changed on any thread.
      */
-    private float mValue;
+    private volatile float mValue;
 
     /**
      * 해당 Bar의 색깔
@@ -38,12 +47,23 @@ public class BarModel extends BaseModel {
     /**
      * Bar 경계영역
      */
-    private RectF mBarBounds;
+    private RectF mBarBounds = new RectF();
 
     private boolean mShowValue = false;
 
     private Rect mValueBounds = new Rect();
 
+    /**
+     * The columnar store this bar was copied into by the chart, and the segment index in it. Only
+     * accessed on the UI thread: a changed value is reported to the listener, and the chart copies
+     * it into the store with {@link #syncValue()}, so it can relayout only this stack.
+     */
+    private StackedBarStore mStore;
+    private int mSegment;
+    private volatile OnValueChangedListener mListener;
+    // true while a change was reported but not synced, so a burst of changes is reported once
+    private final AtomicBoolean mValueChanged = new AtomicBoolean();
+
     public BarModel(String _legendLabel, float _value, int _color) {
         super(_legendLabel);
         mValue = _value;
@@ -51,13 +71,13 @@ public class BarModel extends BaseModel {
     }
 
     public BarModel(float _value, int _color) {
-        super("" + _value);
+        super(String.valueOf(_value));
         mValue = _value;
         mColor = _color;
     }
 
     public BarModel(float _value) {
-        super("" + _value);
+        super(String.valueOf(_value));
         mValue = _value;
         mColor = 0xFFFF0000;
     }
@@ -66,8 +86,18 @@ public class BarModel extends BaseModel {
         return mValue;
     }
 
+    /**
+     * Changes the value. Can be called on any thread; the chart which shows the bar picks up the
+     * value on its next frame.
+     * @param _value The new value
+     */
     public void setValue(float _value) {
         mValue = _value;
+
+        OnValueChangedListener listener = mListener;
+        if (listener != null && mValueChanged.compareAndSet(false, true)) {
+            listener.onValueChanged(this);
+        }
     }
 
     public int getColor() {
@@ -102,4 +132,29 @@ public class BarModel extends BaseModel {
         mValueBounds = _valueBounds;
     }
 
+    /**
+     * Connects the bar with the segment of a store which holds its value. Called by the chart on
+     * the UI thread.
+     * @param _store    The store which holds the bar, or null to disconnect it.
+     * @param _segment  Segment index of the bar in the store
+     * @param _listener Is informed about value changes, null to disconnect it.
+     */
+    public void attach(StackedBarStore _store, int _segment, OnValueChangedListener _listener) {
+        mStore = _store;
+        mSegment = _segment;
+        mListener = _listener;
+    }
+
+    /**
+     * Copies the value into the segment of the store which the bar is attached to. Called by the
+     * chart on the UI thread after the listener was informed.
+     */
+    public void syncValue() {
+        // reset before reading the value, so a change which happens meanwhile is reported again
+        mValueChanged.set(false);
+        if (mStore != null) {
+            mStore.setValue(mSegment, mValue);
+        }
+    }
+
 }
\ No newline at end of file
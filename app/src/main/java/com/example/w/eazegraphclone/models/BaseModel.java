@@ -27,12 +27,12 @@ public abstract class BaseModel {
     /**
      * Label의 경계영역
      */
-    private RectF mLegendBounds;
+    private RectF mLegendBounds = new RectF();
 
     /**
      * Legend Label들의 경계영역
      */
-    private Rect mTextBounds;
+    private Rect mTextBounds = new Rect();
 
 
     protected BaseModel(String _legendLabel) {
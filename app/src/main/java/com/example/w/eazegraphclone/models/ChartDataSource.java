@@ -0,0 +1,25 @@
+package com.example.w.eazegraphclone.models;
+
+/**
+ * Source of stacks which are produced outside of the chart, e.g. by a metrics stream. Producers may
+ * add data on any thread; the chart moves the new data into its {@link StackedBarStore} on the UI
+ * thread, at most once per frame.
+ */
+public interface ChartDataSource {
+
+    /**
+     * Informed when new data can be drained. Called on the producer thread, so it must not block.
+     */
+    interface OnDataAvailableListener {
+        void onDataAvailable(ChartDataSource _Source);
+    }
+
+    void setOnDataAvailableListener(OnDataAvailableListener _Listener);
+
+    /**
+     * Moves all data which was added since the last call into the store. Called on the UI thread.
+     * @param _Store The store of the chart
+     * @return True if the store changed.
+     */
+    boolean drainTo(StackedBarStore _Store);
+}
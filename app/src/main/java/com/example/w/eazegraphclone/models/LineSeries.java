@@ -0,0 +1,193 @@
+package com.example.w.eazegraphclone.models;
+
+import java.util.Arrays;
+
+/**
+ * Points of a line chart in two growable primitive arrays, without an object per point. The x values
+ * have to be ascending, so the visible points are found with a binary search. They are doubles, so
+ * timestamps in epoch milliseconds keep their precision; a float resolves them only to about two
+ * minutes.
+ * <p>
+ * For every level k >= 1 the points are split into blocks of 2^k, and the index of the lowest and
+ * the highest point of every block is kept. Appending a point updates one block per level, so it
+ * costs O(log n), and the extremes of a range can be read from a few blocks instead of visiting
+ * every point.
+ * <p>
+ * Not thread safe, it is used on the UI thread only.
+ */
+public class LineSeries {
+
+    private static final int DEF_CAPACITY = 64;
+
+    private double[] mXs = new double[DEF_CAPACITY];
+    private float[]  mYs = new float[DEF_CAPACITY];
+    private int      mSize;
+
+    // mMinIndices[k][b] is the index of the lowest point in block b of level k. Level 0 are the
+    // points themselves, so its entries stay null.
+    private int[][]  mMinIndices = new int[1][];
+    private int[][]  mMaxIndices = new int[1][];
+    private int      mLevelCount = 1;
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public double getX(int _Index) {
+        return mXs[_Index];
+    }
+
+    public float getY(int _Index) {
+        return mYs[_Index];
+    }
+
+    /**
+     * Returns the x values. The array may be longer than {@link #size()} and must not be modified.
+     * @return The ascending x values
+     */
+    public double[] getXs() {
+        return mXs;
+    }
+
+    /**
+     * Returns the y values. The array may be longer than {@link #size()} and must not be modified.
+     * @return The y values
+     */
+    public float[] getYs() {
+        return mYs;
+    }
+
+    /**
+     * Appends a point.
+     * @param _X X value, not less than the x value of the last point
+     * @param _Y Y value
+     */
+    public void add(double _X, float _Y) {
+        if (mSize > 0 && _X < mXs[mSize - 1]) {
+            throw new IllegalArgumentException("x values must be ascending, " + _X + " after " + mXs[mSize - 1]);
+        }
+
+        if (mSize == mXs.length) {
+            mXs = Arrays.copyOf(mXs, mSize * 2);
+            mYs = Arrays.copyOf(mYs, mSize * 2);
+        }
+        mXs[mSize] = _X;
+        mYs[mSize] = _Y;
+        addToLevels(mSize);
+        mSize++;
+    }
+
+    /**
+     * Appends several points.
+     * @param _Xs Ascending x values
+     * @param _Ys Y values, one per x value
+     */
+    public void addAll(double[] _Xs, float[] _Ys) {
+        if (_Xs.length != _Ys.length) {
+            throw new IllegalArgumentException("x and y values must have the same length");
+        }
+        for (int i = 0; i < _Xs.length; i++) {
+            add(_Xs[i], _Ys[i]);
+        }
+    }
+
+    /**
+     * Removes all points. The arrays are kept, so the series can be refilled without allocations.
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @return Amount of levels, level k has blocks of 2^k points. Level 0 are the points themselves.
+     */
+    public int getLevelCount() {
+        return mLevelCount;
+    }
+
+    /**
+     * @param _Level Level, at least 1
+     * @param _Block Block index, the point index shifted right by _Level
+     * @return Index of the lowest point of the block
+     */
+    public int getMinIndex(int _Level, int _Block) {
+        return mMinIndices[_Level][_Block];
+    }
+
+    /**
+     * @param _Level Level, at least 1
+     * @param _Block Block index, the point index shifted right by _Level
+     * @return Index of the highest point of the block
+     */
+    public int getMaxIndex(int _Level, int _Block) {
+        return mMaxIndices[_Level][_Block];
+    }
+
+    /**
+     * Adds the point at _Index to its block on every level. A new top level is built from the level
+     * below when the points don't fit into a single block of the current top level anymore.
+     */
+    private void addToLevels(int _Index) {
+        while ((1 << (mLevelCount - 1)) < _Index + 1) {
+            addLevel(_Index);
+        }
+
+        float y = mYs[_Index];
+        for (int level = 1; level < mLevelCount; level++) {
+            int   block = _Index >> level;
+            int[] mins = mMinIndices[level];
+            if (block == mins.length) {
+                mins = mMinIndices[level] = Arrays.copyOf(mins, block * 2);
+                mMaxIndices[level] = Arrays.copyOf(mMaxIndices[level], block * 2);
+            }
+            int[] maxs = mMaxIndices[level];
+
+            if ((_Index & ((1 << level) - 1)) == 0) {
+                // the first point of a new block
+                mins[block] = _Index;
+                maxs[block] = _Index;
+            } else {
+                if (y < mYs[mins[block]]) {
+                    mins[block] = _Index;
+                }
+                if (y > mYs[maxs[block]]) {
+                    maxs[block] = _Index;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the next level from the first _Size points.
+     */
+    private void addLevel(int _Size) {
+        int level = mLevelCount;
+        if (level == mMinIndices.length) {
+            mMinIndices = Arrays.copyOf(mMinIndices, level * 2);
+            mMaxIndices = Arrays.copyOf(mMaxIndices, level * 2);
+        }
+
+        int   blocks = (_Size + (1 << level) - 1) >> level;
+        int[] mins = new int[Math.max(1, blocks)];
+        int[] maxs = new int[Math.max(1, blocks)];
+        for (int b = 0; b < blocks; b++) {
+            int left  = 2 * b;
+            int right = Math.min(2 * b + 1, ((_Size + (1 << (level - 1)) - 1) >> (level - 1)) - 1);
+            // the children are the points themselves on level 1
+            int leftMin  = level == 1 ? left  : mMinIndices[level - 1][left];
+            int leftMax  = level == 1 ? left  : mMaxIndices[level - 1][left];
+            int rightMin = level == 1 ? right : mMinIndices[level - 1][right];
+            int rightMax = level == 1 ? right : mMaxIndices[level - 1][right];
+            mins[b] = mYs[rightMin] < mYs[leftMin] ? rightMin : leftMin;
+            maxs[b] = mYs[rightMax] > mYs[leftMax] ? rightMax : leftMax;
+        }
+
+        mMinIndices[level] = mins;
+        mMaxIndices[level] = maxs;
+        mLevelCount++;
+    }
+}
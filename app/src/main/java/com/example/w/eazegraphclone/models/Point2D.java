@@ -35,4 +35,14 @@ public class Point2D {
     public float[] getFloatArray() {
         return new float[]{mX, mY};
     }
+
+    /**
+     * getFloatArray()와 같지만 새 배열을 만들지 않고 주어진 배열에 쓴다.
+     * @param _Out    Array which receives x and y
+     * @param _Offset Index of x in _Out, y is written after it
+     */
+    public void copyTo(float[] _Out, int _Offset) {
+        _Out[_Offset]     = mX;
+        _Out[_Offset + 1] = mY;
+    }
 }
@@ -0,0 +1,172 @@
+package com.example.w.eazegraphclone.models;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link ChartDataSource} which keeps only the last N stacks. Any number of producer threads can
+ * {@link #push} stacks without locking: a producer claims a sequence number and writes its stack into
+ * the slot of that number. If the chart does not drain fast enough, the oldest stacks are
+ * overwritten, so neither the buffer nor the chart ever holds more than N stacks.
+ */
+public class RingBufferDataSource implements ChartDataSource {
+
+    /**
+     * A pushed stack. The arrays are copies, so the entry never changes.
+     */
+    private static final class Entry {
+        final long      mSequence;
+        final String    mLabel;
+        final float[]   mValues;
+        final int[]     mColors;
+
+        Entry(long _Sequence, String _Label, float[] _Values, int[] _Colors) {
+            mSequence = _Sequence;
+            mLabel    = _Label;
+            mValues   = _Values;
+            mColors   = _Colors;
+        }
+    }
+
+    private final int                           mCapacity;
+    private final AtomicReferenceArray<Entry>   mSlots;
+    // sequence number of the next pushed stack
+    private final AtomicLong                    mHead = new AtomicLong();
+
+    private volatile OnDataAvailableListener    mListener;
+
+    // only accessed by the consumer thread
+    private long                                mReadSequence;
+    private long                                mDroppedCount;
+    // the entries of a drain, so the store is trimmed once. Set up on the first drain and reused.
+    private Entry[]                             mDrained;
+
+    /**
+     * @param _Capacity Maximum amount of stacks which are kept, in the buffer and in the chart.
+     */
+    public RingBufferDataSource(int _Capacity) {
+        if (_Capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be larger than 0");
+        }
+        mCapacity = _Capacity;
+        mSlots    = new AtomicReferenceArray<Entry>(_Capacity);
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    @Override
+    public void setOnDataAvailableListener(OnDataAvailableListener _Listener) {
+        mListener = _Listener;
+    }
+
+    /**
+     * Adds a stack. Can be called on any thread and never blocks.
+     * @param _Label  Legend label of the stack
+     * @param _Values Values of the segments from bottom to top
+     * @param _Colors Colors of the segments, must have the same length as _Values
+     */
+    public void push(String _Label, float[] _Values, int[] _Colors) {
+        if (_Values.length != _Colors.length) {
+            throw new IllegalArgumentException("values and colors must have the same length");
+        }
+        publish(claim(), _Label, _Values, _Colors);
+    }
+
+    /**
+     * Claims the sequence number of the next stack, the first half of {@link #push}.
+     */
+    long claim() {
+        return mHead.getAndIncrement();
+    }
+
+    /**
+     * Writes a stack into the slot of a claimed sequence number, the second half of {@link #push}.
+     * Until then, the stack and all following ones are not drained.
+     */
+    void publish(long _Sequence, String _Label, float[] _Values, int[] _Colors) {
+        Entry entry = new Entry(_Sequence, _Label, _Values.clone(), _Colors.clone());
+        int   slot = (int) (_Sequence % mCapacity);
+
+        // a producer which was preempted after claiming its number must not overwrite a newer stack
+        while (true) {
+            Entry current = mSlots.get(slot);
+            if (current != null && current.mSequence > _Sequence) {
+                break;
+            }
+            if (mSlots.compareAndSet(slot, current, entry)) {
+                break;
+            }
+        }
+
+        OnDataAvailableListener listener = mListener;
+        if (listener != null) {
+            listener.onDataAvailable(this);
+        }
+    }
+
+    /**
+     * Returns the amount of stacks which were overwritten before they were drained. Should be called
+     * on the thread which drains the source.
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * Moves the new stacks into the store and removes the oldest stacks of the store, so it holds
+     * at most {@link #getCapacity()} stacks. The stacks are removed from the front of the store, so
+     * only the new stacks are laid out again. Has to be called on a single consumer thread.
+     * @param _Store The store of the chart
+     * @return True if the store changed.
+     */
+    @Override
+    public boolean drainTo(StackedBarStore _Store) {
+        long head  = mHead.get();
+        long start = Math.max(mReadSequence, head - mCapacity);
+        mDroppedCount += start - mReadSequence;
+
+        if (start == head) {
+            return false;
+        }
+        if (mDrained == null) {
+            mDrained = new Entry[mCapacity];
+        }
+
+        // collect the published entries first, so the store is trimmed once
+        Entry[] entries = mDrained;
+        int     count = 0;
+        long    sequence = start;
+        for (; sequence < head; sequence++) {
+            Entry entry = mSlots.get((int) (sequence % mCapacity));
+            if (entry == null || entry.mSequence < sequence) {
+                // claimed but not written yet, the producer informs the listener when it is done
+                break;
+            }
+            if (entry.mSequence > sequence) {
+                // already overwritten by a newer stack
+                mDroppedCount++;
+                continue;
+            }
+            entries[count++] = entry;
+        }
+        mReadSequence = sequence;
+
+        if (count == 0) {
+            return false;
+        }
+
+        int evict = _Store.getStackCount() + count - mCapacity;
+        if (evict > 0) {
+            _Store.removeStacks(0, Math.min(evict, _Store.getStackCount()));
+        }
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries[i];
+            _Store.addStack(entry.mLabel, entry.mValues, entry.mColors);
+            // the stack was copied into the store, the buffer must not keep its arrays alive
+            entries[i] = null;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.w.eazegraphclone.models;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copy-on-write list of models, which can be changed on any thread without locks. Every change
+ * creates a new immutable {@link Snapshot} and publishes it with a compare-and-set; a writer which
+ * loses the race retries on the newer snapshot. Readers always see one consistent snapshot, no
+ * matter how many writers are active.
+ * <p>
+ * Appends don't copy the models: the snapshots share a growable array and only differ in their
+ * size. An appending writer claims the free slots behind the current snapshot, so the slots of a
+ * published snapshot are never written again, and only copies the array if it is full or another
+ * writer claimed the slots first. Appending n models one by one costs O(n) amortized. Removing and
+ * replacing models copies them.
+ * <p>
+ * The snapshots are versioned, so a reader which remembers the last snapshot it processed can tell
+ * whether the models were only appended since then, or whether it has to start over.
+ * @param <T> Type of the models
+ */
+public class SnapshotList<T> {
+
+    /**
+     * Immutable state of the list.
+     * @param <T> Type of the models
+     */
+    public static final class Snapshot<T> {
+        private final Buffer    mBuffer;
+        private final int       mSize;
+        private final List<T>   mModels;
+        private final long      mVersion;
+        // version of the last change which was not an append
+        private final long      mStructureVersion;
+        // index of the removed model if this version was created by remove(), -1 otherwise
+        private final int       mRemovedIndex;
+
+        Snapshot(Buffer _Buffer, int _Size, long _Version, long _StructureVersion, int _RemovedIndex) {
+            mBuffer             = _Buffer;
+            mSize               = _Size;
+            mModels             = new ModelList<T>(_Buffer.mModels, _Size);
+            mVersion            = _Version;
+            mStructureVersion   = _StructureVersion;
+            mRemovedIndex       = _RemovedIndex;
+        }
+
+        /**
+         * @return The models of this snapshot, the list can't be modified.
+         */
+        public List<T> getModels() {
+            return mModels;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public long getVersion() {
+            return mVersion;
+        }
+
+        /**
+         * Returns whether this snapshot only appended models to the given older snapshot.
+         * @param _Older A snapshot of the same list, or null
+         * @return True if the first _Older.size() models of both snapshots are the same.
+         */
+        public boolean isAppendOf(Snapshot<T> _Older) {
+            return _Older != null && _Older.mStructureVersion == mStructureVersion && _Older.mVersion <= mVersion;
+        }
+
+        /**
+         * Returns the index of the model which was removed from the given older snapshot, if that
+         * was the only change.
+         * @param _Older A snapshot of the same list, or null
+         * @return The index of the removed model, or -1.
+         */
+        public int getRemovedIndex(Snapshot<T> _Older) {
+            return _Older != null && _Older.mVersion + 1 == mVersion ? mRemovedIndex : -1;
+        }
+    }
+
+    /**
+     * Array of models which is shared by the snapshots of appends. A snapshot owns the slots below
+     * its size; the slots from {@link #mClaimed} on are free.
+     */
+    private static final class Buffer {
+        final Object[]      mModels;
+        // slots which were handed out to writers, only grows
+        final AtomicInteger mClaimed;
+
+        Buffer(Object[] _Models, int _Claimed) {
+            mModels  = _Models;
+            mClaimed = new AtomicInteger(_Claimed);
+        }
+    }
+
+    /**
+     * Read only view of the first models of a buffer.
+     */
+    private static final class ModelList<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] mModels;
+        private final int      mSize;
+
+        ModelList(Object[] _Models, int _Size) {
+            mModels = _Models;
+            mSize   = _Size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int _Index) {
+            if (_Index < 0 || _Index >= mSize) {
+                throw new IndexOutOfBoundsException("index " + _Index + ", size " + mSize);
+            }
+            return (T) mModels[_Index];
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+    }
+
+    private static final int DEF_CAPACITY = 16;
+
+    private final AtomicReference<Snapshot<T>> mSnapshot =
+            new AtomicReference<Snapshot<T>>(new Snapshot<T>(new Buffer(new Object[DEF_CAPACITY], 0), 0, 0, 0, -1));
+
+    /**
+     * @return The current snapshot.
+     */
+    public Snapshot<T> get() {
+        return mSnapshot.get();
+    }
+
+    /**
+     * Appends the models.
+     * @return The published snapshot
+     */
+    public Snapshot<T> addAll(Collection<? extends T> _Models) {
+        Object[] added = _Models.toArray();
+        while (true) {
+            Snapshot<T> current = mSnapshot.get();
+            int    size   = current.mSize;
+            int    next   = size + added.length;
+            Buffer buffer = current.mBuffer;
+            if (next > buffer.mModels.length || !buffer.mClaimed.compareAndSet(size, next)) {
+                // full, or the slots were claimed by another writer which may still publish them
+                Object[] models = new Object[Math.max(DEF_CAPACITY, 2 * next)];
+                System.arraycopy(buffer.mModels, 0, models, 0, size);
+                buffer = new Buffer(models, next);
+            }
+            // the claimed slots are not part of any published snapshot, so no reader sees them yet
+            System.arraycopy(added, 0, buffer.mModels, size, added.length);
+
+            Snapshot<T> snapshot = new Snapshot<T>(buffer, next, current.mVersion + 1, current.mStructureVersion, -1);
+            if (mSnapshot.compareAndSet(current, snapshot)) {
+                return snapshot;
+            }
+        }
+    }
+
+    public Snapshot<T> add(T _Model) {
+        return addAll(Collections.singletonList(_Model));
+    }
+
+    /**
+     * Removes the model at the given index.
+     * @return The published snapshot
+     * @throws IndexOutOfBoundsException if the current snapshot has no model at the index.
+     */
+    public Snapshot<T> remove(int _Index) {
+        while (true) {
+            Snapshot<T> current = mSnapshot.get();
+            int size = current.mSize;
+            if (_Index < 0 || _Index >= size) {
+                throw new IndexOutOfBoundsException("index " + _Index + ", size " + size);
+            }
+            Object[] models = new Object[Math.max(DEF_CAPACITY, size)];
+            System.arraycopy(current.mBuffer.mModels, 0, models, 0, _Index);
+            System.arraycopy(current.mBuffer.mModels, _Index + 1, models, _Index, size - _Index - 1);
+            long version = current.mVersion + 1;
+            Snapshot<T> next = new Snapshot<T>(new Buffer(models, size - 1), size - 1, version, version, _Index);
+            if (mSnapshot.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Replaces all models. The given list is copied.
+     * @return The published snapshot
+     */
+    public Snapshot<T> replace(Collection<? extends T> _Models) {
+        Object[] models = _Models.toArray();
+        int      size   = models.length;
+        // toArray() may return an array of a subtype, which later appends of other models don't fit into
+        Buffer   buffer = new Buffer(Arrays.copyOf(models, Math.max(DEF_CAPACITY, size), Object[].class), size);
+        while (true) {
+            Snapshot<T> current = mSnapshot.get();
+            long version = current.mVersion + 1;
+            Snapshot<T> next = new Snapshot<T>(buffer, size, version, version, -1);
+            if (mSnapshot.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    public Snapshot<T> clear() {
+        return replace(Collections.<T>emptyList());
+    }
+}
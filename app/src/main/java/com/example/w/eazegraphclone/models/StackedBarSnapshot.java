@@ -0,0 +1,201 @@
+package com.example.w.eazegraphclone.models;
+
+/**
+ * Immutable copy of the data of a {@link StackedBarStore}, together with the range of stacks which
+ * changed since the previous snapshot and the amount of stacks which were removed from its front.
+ * Can be shared between threads.
+ * <p>
+ * The arrays may be larger than the data, only the first {@link #getSegmentCount()} values and
+ * colors, {@link #getStackCount()} labels and {@link #getStackCount()} + 1 stack offsets are valid.
+ * They must not be modified.
+ * <p>
+ * A snapshot does not change while it is used. Once its layout is handed back to the
+ * {@link com.example.w.eazegraphclone.layout.StackedBarLayoutEngine}, the store refills it with
+ * {@link StackedBarStore#snapshot(StackedBarSnapshot)}, so a live chart does not copy its data into
+ * new arrays on every update.
+ */
+public final class StackedBarSnapshot {
+
+    private float[]  mValues;
+    private int[]    mColors;
+    private int[]    mStackOffsets;
+    private String[] mLabels;
+    private int      mStackCount;
+    private int      mSegmentCount;
+    private float    mMaxStackTotal;
+    private int      mMaxStack;
+    private int      mMinStack;
+
+    private int      mDirtyFrom;
+    private int      mDirtyTo;
+    private int      mShiftedStacks;
+
+    /**
+     * @param _Values        Values of all segments
+     * @param _Colors        Colors of all segments
+     * @param _StackOffsets  Index of the first segment of every stack, with one more entry than there are stacks
+     * @param _Labels        Legend label of every stack
+     * @param _MaxStackTotal Total of the tallest stack
+     * @param _MaxStack      Index of the tallest stack, -1 if there are no stacks
+     * @param _MinStack      Index of the lowest stack, -1 if there are no stacks
+     * @param _DirtyFrom     Index of the first changed stack (inclusive)
+     * @param _DirtyTo       Index after the last changed stack (exclusive)
+     */
+    public StackedBarSnapshot(float[] _Values, int[] _Colors, int[] _StackOffsets, String[] _Labels,
+                              float _MaxStackTotal, int _MaxStack, int _MinStack, int _DirtyFrom, int _DirtyTo) {
+        this(_Values, _Colors, _StackOffsets, _Labels, _MaxStackTotal, _MaxStack, _MinStack, _DirtyFrom, _DirtyTo, 0);
+    }
+
+    /**
+     * @param _ShiftedStacks Amount of stacks which were removed from the front since the previous snapshot
+     * @see #StackedBarSnapshot(float[], int[], int[], String[], float, int, int, int, int)
+     */
+    public StackedBarSnapshot(float[] _Values, int[] _Colors, int[] _StackOffsets, String[] _Labels,
+                              float _MaxStackTotal, int _MaxStack, int _MinStack, int _DirtyFrom, int _DirtyTo,
+                              int _ShiftedStacks) {
+        if (_StackOffsets.length != _Labels.length + 1) {
+            throw new IllegalArgumentException("stack offsets must have one more entry than labels");
+        }
+        mValues         = _Values;
+        mColors         = _Colors;
+        mStackOffsets   = _StackOffsets;
+        mLabels         = _Labels;
+        mStackCount     = _Labels.length;
+        mSegmentCount   = _Values.length;
+        mMaxStackTotal  = _MaxStackTotal;
+        mMaxStack       = _MaxStack;
+        mMinStack       = _MinStack;
+        mDirtyFrom      = _DirtyFrom;
+        mDirtyTo        = _DirtyTo;
+        mShiftedStacks  = _ShiftedStacks;
+    }
+
+    /**
+     * Overwrites the snapshot with the data of a store. The arrays only grow if they are too small.
+     * Must only be called on a snapshot which is not used anymore.
+     */
+    void refill(float[] _Values, int[] _Colors, int[] _StackOffsets, String[] _Labels,
+                int _StackCount, int _SegmentCount, float _MaxStackTotal, int _MaxStack, int _MinStack,
+                int _DirtyFrom, int _DirtyTo, int _ShiftedStacks) {
+        if (mValues.length < _SegmentCount) {
+            int capacity = Math.max(_SegmentCount, mValues.length * 2);
+            mValues = new float[capacity];
+            mColors = new int[capacity];
+        }
+        if (mLabels.length < _StackCount) {
+            int capacity = Math.max(_StackCount, mLabels.length * 2);
+            mLabels       = new String[capacity];
+            mStackOffsets = new int[capacity + 1];
+        }
+
+        System.arraycopy(_Values, 0, mValues, 0, _SegmentCount);
+        System.arraycopy(_Colors, 0, mColors, 0, _SegmentCount);
+        System.arraycopy(_StackOffsets, 0, mStackOffsets, 0, _StackCount + 1);
+        System.arraycopy(_Labels, 0, mLabels, 0, _StackCount);
+        // labels of removed stacks are not kept alive by the recycled snapshot
+        for (int i = _StackCount; i < mStackCount && i < mLabels.length; i++) {
+            mLabels[i] = null;
+        }
+
+        mStackCount     = _StackCount;
+        mSegmentCount   = _SegmentCount;
+        mMaxStackTotal  = _MaxStackTotal;
+        mMaxStack       = _MaxStack;
+        mMinStack       = _MinStack;
+        mDirtyFrom      = _DirtyFrom;
+        mDirtyTo        = _DirtyTo;
+        mShiftedStacks  = _ShiftedStacks;
+    }
+
+    public int getStackCount() {
+        return mStackCount;
+    }
+
+    public int getSegmentCount() {
+        return mSegmentCount;
+    }
+
+    public int getSegmentStart(int _Stack) {
+        return mStackOffsets[_Stack];
+    }
+
+    public int getSegmentEnd(int _Stack) {
+        return mStackOffsets[_Stack + 1];
+    }
+
+    public float getValue(int _Segment) {
+        return mValues[_Segment];
+    }
+
+    public int getColor(int _Segment) {
+        return mColors[_Segment];
+    }
+
+    public String getLabel(int _Stack) {
+        return mLabels[_Stack];
+    }
+
+    /**
+     * @return Raw value column, only the first {@link #getSegmentCount()} entries are valid.
+     */
+    public float[] getValues() {
+        return mValues;
+    }
+
+    /**
+     * @return Raw color column, only the first {@link #getSegmentCount()} entries are valid.
+     */
+    public int[] getColors() {
+        return mColors;
+    }
+
+    /**
+     * @return Raw stack offset column, only the first {@link #getStackCount()} + 1 entries are valid.
+     */
+    public int[] getStackOffsets() {
+        return mStackOffsets;
+    }
+
+    /**
+     * @return The sum of the values of the tallest stack, never less than 0.
+     */
+    public float getMaxStackTotal() {
+        return mMaxStackTotal;
+    }
+
+    /**
+     * @return Index of the tallest stack, -1 if there are no stacks.
+     */
+    public int getMaxStack() {
+        return mMaxStack;
+    }
+
+    /**
+     * @return Index of the lowest stack, -1 if there are no stacks.
+     */
+    public int getMinStack() {
+        return mMinStack;
+    }
+
+    /**
+     * @return Index of the first stack which changed since the previous snapshot (inclusive)
+     */
+    public int getDirtyFrom() {
+        return mDirtyFrom;
+    }
+
+    /**
+     * @return Index after the last stack which changed since the previous snapshot (exclusive)
+     */
+    public int getDirtyTo() {
+        return mDirtyTo;
+    }
+
+    /**
+     * @return Amount of stacks which were removed from the front since the previous snapshot. Stack i
+     *         outside of the dirty range was stack i + getShiftedStacks() of the previous snapshot.
+     */
+    public int getShiftedStacks() {
+        return mShiftedStacks;
+    }
+}
@@ -0,0 +1,572 @@
+package com.example.w.eazegraphclone.models;
+
+import com.example.w.eazegraphclone.utils.MaxSegmentTree;
+
+import java.util.Arrays;
+
+/**
+ * Columnar data store for the {@link com.example.w.eazegraphclone.charts.StackedBarChart}.
+ * Instead of one {@link StackedBarModel} and several {@link BarModel} objects per stack, all values
+ * and colors are kept in flat primitive arrays. The segments of stack i are the entries from
+ * {@code getStackOffsets()[i]} (inclusive) to {@code getStackOffsets()[i + 1]} (exclusive).
+ * <p>
+ * The store only holds the data. The layout runs on an immutable {@link StackedBarSnapshot} of it,
+ * which is taken with {@link #snapshot()}, so it can be computed on another thread while the store
+ * keeps changing. Snapshots of retired layouts are refilled with {@link #snapshot(StackedBarSnapshot)},
+ * so a live chart does not allocate a copy of its data on every update.
+ * <p>
+ * Every mutation marks the affected stacks as dirty, so the layout pass can recompute only the
+ * range between {@link #getDirtyFrom()} and {@link #getDirtyTo()} instead of the whole store.
+ * Stacks removed from the front, e.g. the oldest stacks of a live chart, are not marked: the
+ * remaining stacks only moved by {@link #getShiftedStacks()} indices and are copied from the
+ * previous layout.
+ * <p>
+ * The sum of every stack is kept in a {@link MaxSegmentTree}, so the tallest stack, which scales a
+ * chart with an absolute value axis, is known after every mutation without a rescan of all stacks.
+ * <p>
+ * The store is not thread safe and should only be used from the UI thread.
+ */
+public class StackedBarStore {
+
+    private static final int DEF_STACK_CAPACITY   = 16;
+    private static final int DEF_SEGMENT_CAPACITY = 64;
+
+    //##############################################################################################
+    // Data columns
+    //##############################################################################################
+
+    /**
+     * 모든 Segment(Bar)의 값
+     */
+    private float[]  mValues        = new float[DEF_SEGMENT_CAPACITY];
+
+    /**
+     * 모든 Segment(Bar)의 색깔
+     */
+    private int[]    mColors        = new int[DEF_SEGMENT_CAPACITY];
+
+    /**
+     * Stack 별 첫 Segment의 index. Has always one more entry than there are stacks.
+     */
+    private int[]    mStackOffsets  = new int[DEF_STACK_CAPACITY + 1];
+
+    /**
+     * Stack 별 Legend label
+     */
+    private String[] mLabels        = new String[DEF_STACK_CAPACITY];
+
+    private int      mStackCount;
+    private int      mSegmentCount;
+
+    /**
+     * Stack 별 모든 Segment 값의 합
+     */
+    private final MaxSegmentTree mStackTotals = new MaxSegmentTree(DEF_STACK_CAPACITY);
+
+    /**
+     * Stack 별 합계의 음수. 최대값이 가장 작은 Stack 이다
+     */
+    private final MaxSegmentTree mNegatedTotals = new MaxSegmentTree(DEF_STACK_CAPACITY);
+
+    /**
+     * Range of stacks which changed since the last {@link #markClean()} call. mDirtyFrom is larger
+     * than mDirtyTo if nothing changed.
+     */
+    private int      mDirtyFrom     = Integer.MAX_VALUE;
+    private int      mDirtyTo       = 0;
+
+    /**
+     * Amount of stacks which were removed from the front since the last {@link #markClean()} call.
+     * Stack i outside of the dirty range was stack i + mShiftedStacks before.
+     */
+    private int      mShiftedStacks = 0;
+
+    private OnStoreChangedListener mListener;
+
+    /**
+     * Listener which is informed about every data mutation of the store.
+     */
+    public interface OnStoreChangedListener {
+        void onStoreChanged(StackedBarStore _Store);
+    }
+
+    public StackedBarStore() {
+    }
+
+    public void setOnStoreChangedListener(OnStoreChangedListener _Listener) {
+        mListener = _Listener;
+    }
+
+    //##############################################################################################
+    // Data access
+    //##############################################################################################
+
+    public int getStackCount() {
+        return mStackCount;
+    }
+
+    public int getSegmentCount() {
+        return mSegmentCount;
+    }
+
+    public boolean isEmpty() {
+        return mStackCount == 0;
+    }
+
+    /**
+     * Returns the index of the first segment of a stack.
+     * @param _Stack Stack index
+     * @return Segment index
+     */
+    public int getSegmentStart(int _Stack) {
+        return mStackOffsets[_Stack];
+    }
+
+    /**
+     * Returns the index after the last segment of a stack.
+     * @param _Stack Stack index
+     * @return Segment index
+     */
+    public int getSegmentEnd(int _Stack) {
+        return mStackOffsets[_Stack + 1];
+    }
+
+    public float getValue(int _Segment) {
+        return mValues[_Segment];
+    }
+
+    public int getColor(int _Segment) {
+        return mColors[_Segment];
+    }
+
+    public String getLabel(int _Stack) {
+        return mLabels[_Stack];
+    }
+
+    /**
+     * Returns the sum of the values of a stack.
+     * @param _Stack Stack index
+     * @return The total of the stack
+     */
+    public float getStackTotal(int _Stack) {
+        return mStackTotals.get(_Stack);
+    }
+
+    /**
+     * Returns the total of the tallest stack in O(1).
+     * @return The largest stack total, never less than 0.
+     */
+    public float getMaxStackTotal() {
+        return Math.max(0, mStackTotals.max());
+    }
+
+    /**
+     * Returns the tallest stack in O(log n).
+     * @return Index of the first stack with the largest total, or -1 if the store is empty.
+     */
+    public int getMaxStack() {
+        return mStackTotals.indexOfMax();
+    }
+
+    /**
+     * Returns the lowest stack in O(log n).
+     * @return Index of the first stack with the smallest total, or -1 if the store is empty.
+     */
+    public int getMinStack() {
+        return mNegatedTotals.indexOfMax();
+    }
+
+    /**
+     * Returns the index of the stack which contains the given segment.
+     * @param _Segment Segment index
+     * @return Stack index
+     */
+    public int findStack(int _Segment) {
+        // binary search for the last stack which starts at or before the segment
+        int low = 0;
+        int high = mStackCount + 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mStackOffsets[mid] <= _Segment) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Raw value column. Only the first {@link #getSegmentCount()} entries are valid.
+     * @return The backing array, which must not be modified.
+     */
+    public float[] getValues() {
+        return mValues;
+    }
+
+    /**
+     * Raw color column. Only the first {@link #getSegmentCount()} entries are valid.
+     * @return The backing array, which must not be modified.
+     */
+    public int[] getColors() {
+        return mColors;
+    }
+
+    /**
+     * Raw stack offset column. Only the first {@link #getStackCount()} + 1 entries are valid.
+     * @return The backing array, which must not be modified.
+     */
+    public int[] getStackOffsets() {
+        return mStackOffsets;
+    }
+
+    //##############################################################################################
+    // Data mutation
+    //##############################################################################################
+
+    /**
+     * Adds a new stack with all its segments.
+     * @param _Label  Legend label of the stack
+     * @param _Values Values of the segments from bottom to top
+     * @param _Colors Colors of the segments, must have the same length as _Values
+     * @return Index of the new stack
+     */
+    public int addStack(String _Label, float[] _Values, int[] _Colors) {
+        if (_Values.length != _Colors.length) {
+            throw new IllegalArgumentException("values and colors must have the same length");
+        }
+
+        int stack = startStack(_Label);
+        for (int i = 0; i < _Values.length; i++) {
+            addSegment(_Values[i], _Colors[i]);
+        }
+        return stack;
+    }
+
+    /**
+     * Starts a new, empty stack. Following {@link #addSegment(float, int)} calls add segments to it.
+     * @param _Label Legend label of the stack
+     * @return Index of the new stack
+     */
+    public int startStack(String _Label) {
+        ensureStackCapacity(mStackCount + 1);
+        mLabels[mStackCount] = _Label;
+        mStackTotals.add(0);
+        mNegatedTotals.add(0);
+        mStackCount++;
+        mStackOffsets[mStackCount] = mSegmentCount;
+        markDirty(mStackCount - 1, mStackCount);
+        return mStackCount - 1;
+    }
+
+    /**
+     * Adds a segment on top of the last stack.
+     * @param _Value Value of the segment
+     * @param _Color Color of the segment
+     */
+    public void addSegment(float _Value, int _Color) {
+        if (mStackCount == 0) {
+            throw new IllegalStateException("startStack() has to be called before addSegment()");
+        }
+
+        ensureSegmentCapacity(mSegmentCount + 1);
+        mValues[mSegmentCount] = _Value;
+        mColors[mSegmentCount] = _Color;
+        mSegmentCount++;
+        mStackOffsets[mStackCount] = mSegmentCount;
+        float total = mStackTotals.get(mStackCount - 1) + _Value;
+        mStackTotals.set(mStackCount - 1, total);
+        mNegatedTotals.set(mStackCount - 1, -total);
+        markDirty(mStackCount - 1, mStackCount);
+    }
+
+    /**
+     * Changes the value of a single segment in place.
+     * @param _Segment Segment index
+     * @param _Value   The new value
+     */
+    public void setValue(int _Segment, float _Value) {
+        mValues[_Segment] = _Value;
+
+        int stack = findStack(_Segment);
+        // summed up again instead of adding the difference, so no rounding error accumulates
+        float total = 0;
+        for (int i = mStackOffsets[stack], end = mStackOffsets[stack + 1]; i < end; i++) {
+            total += mValues[i];
+        }
+        mStackTotals.set(stack, total);
+        mNegatedTotals.set(stack, -total);
+        markDirty(stack, stack + 1);
+    }
+
+    /**
+     * Removes a stack and all its segments. All following stacks move one index to the front.
+     * @param _Stack Index of the stack which should be removed
+     */
+    public void removeStack(int _Stack) {
+        removeStacks(_Stack, 1);
+    }
+
+    /**
+     * Removes a range of stacks with a single move of the following stacks, e.g. the oldest stacks
+     * of a live chart. Removing from the front only shifts the dirty range, the following stacks
+     * are not marked as changed.
+     * @param _Stack Index of the first stack which should be removed
+     * @param _Count Amount of stacks which should be removed
+     */
+    public void removeStacks(int _Stack, int _Count) {
+        if (_Stack < 0 || _Count < 0 || _Stack + _Count > mStackCount) {
+            throw new IndexOutOfBoundsException("Stacks " + _Stack + " to " + (_Stack + _Count) + " of " + mStackCount);
+        }
+        if (_Count == 0) {
+            return;
+        }
+
+        int start = mStackOffsets[_Stack];
+        int end   = mStackOffsets[_Stack + _Count];
+        int count = end - start;
+        int tail  = mSegmentCount - end;
+
+        System.arraycopy(mValues, end, mValues, start, tail);
+        System.arraycopy(mColors, end, mColors, start, tail);
+
+        int stackTail = mStackCount - _Stack - _Count;
+        System.arraycopy(mLabels, _Stack + _Count, mLabels, _Stack, stackTail);
+        for (int i = _Stack; i <= _Stack + stackTail; i++) {
+            mStackOffsets[i] = mStackOffsets[i + _Count] - count;
+        }
+
+        mStackTotals.remove(_Stack, _Count);
+        mNegatedTotals.remove(_Stack, _Count);
+        mStackCount -= _Count;
+        mSegmentCount -= count;
+        Arrays.fill(mLabels, mStackCount, mStackCount + _Count, null);
+
+        if (_Stack == 0) {
+            // the remaining stacks are unchanged, the layout pass copies them from their old index
+            markShifted(_Count);
+        } else {
+            // every following stack moved, so its position has to be recalculated
+            markDirty(_Stack, mStackCount);
+        }
+    }
+
+    /**
+     * Removes all stacks. The arrays are kept, so the store can be refilled without allocations.
+     */
+    public void clear() {
+        for (int i = 0; i < mStackCount; i++) {
+            mLabels[i] = null;
+        }
+        mStackCount = 0;
+        mSegmentCount = 0;
+        mStackOffsets[0] = 0;
+        mStackTotals.clear();
+        mNegatedTotals.clear();
+        markDirty(0, 0);
+    }
+
+    /**
+     * Replaces all stacks with the data of a snapshot, e.g. when a recycled chart is bound to another
+     * data set. The arrays are kept if they are large enough, so binding does not allocate.
+     * @param _Data The new data
+     */
+    public void load(StackedBarSnapshot _Data) {
+        int stacks   = _Data.getStackCount();
+        int segments = _Data.getSegmentCount();
+        ensureCapacity(stacks, segments);
+
+        System.arraycopy(_Data.getValues(), 0, mValues, 0, segments);
+        System.arraycopy(_Data.getColors(), 0, mColors, 0, segments);
+        System.arraycopy(_Data.getStackOffsets(), 0, mStackOffsets, 0, stacks + 1);
+        for (int i = 0; i < stacks; i++) {
+            mLabels[i] = _Data.getLabel(i);
+        }
+        if (mStackCount > stacks) {
+            Arrays.fill(mLabels, stacks, mStackCount, null);
+        }
+        mStackCount   = stacks;
+        mSegmentCount = segments;
+
+        mStackTotals.clear();
+        mNegatedTotals.clear();
+        for (int i = 0; i < stacks; i++) {
+            float total = 0;
+            for (int segment = mStackOffsets[i], end = mStackOffsets[i + 1]; segment < end; segment++) {
+                total += mValues[segment];
+            }
+            mStackTotals.add(total);
+            mNegatedTotals.add(-total);
+        }
+        markDirty(0, stacks);
+    }
+
+    /**
+     * Makes sure the store can hold the given amount of stacks and segments without growing.
+     * @param _Stacks   Amount of stacks
+     * @param _Segments Amount of segments
+     */
+    public void ensureCapacity(int _Stacks, int _Segments) {
+        ensureStackCapacity(_Stacks);
+        ensureSegmentCapacity(_Segments);
+    }
+
+    //##############################################################################################
+    // Dirty tracking
+    //##############################################################################################
+
+    /**
+     * Returns whether any data changed since the last {@link #markClean()} call.
+     * @return True if the store has to be laid out again.
+     */
+    public boolean isDirty() {
+        return mDirtyFrom <= mDirtyTo || mShiftedStacks > 0;
+    }
+
+    /**
+     * @return Index of the first changed stack (inclusive)
+     */
+    public int getDirtyFrom() {
+        return mDirtyFrom;
+    }
+
+    /**
+     * @return Index after the last changed stack (exclusive), never larger than the stack count.
+     */
+    public int getDirtyTo() {
+        return Math.min(mDirtyTo, mStackCount);
+    }
+
+    /**
+     * @return Amount of stacks which were removed from the front since the last {@link #markClean()} call
+     */
+    public int getShiftedStacks() {
+        return mShiftedStacks;
+    }
+
+    /**
+     * Marks the whole store as changed, e.g. after settings changed which affect every stack.
+     */
+    public void markAllDirty() {
+        markDirty(0, mStackCount);
+    }
+
+    /**
+     * Takes an immutable copy of the data and the dirty range, and resets the dirty range. The
+     * snapshot can be handed to a layout pass on another thread.
+     * @return Snapshot of the current data
+     */
+    public StackedBarSnapshot snapshot() {
+        return snapshot(null);
+    }
+
+    /**
+     * Like {@link #snapshot()}, but refills a snapshot which is not used anymore instead of copying
+     * the data into new arrays, e.g. one from
+     * {@link com.example.w.eazegraphclone.layout.StackedBarLayoutEngine#obtainSnapshot()}.
+     * @param _Recycled Snapshot which is overwritten, or null to take a new one
+     * @return Snapshot of the current data
+     */
+    public StackedBarSnapshot snapshot(StackedBarSnapshot _Recycled) {
+        int from = isDirty() ? Math.min(mDirtyFrom, mStackCount) : mStackCount;
+        int to   = Math.max(from, isDirty() ? getDirtyTo() : mStackCount);
+        // a snapshot of an unchanged store marks everything dirty, so it has nothing to shift
+        int shifted = isDirty() ? mShiftedStacks : 0;
+
+        StackedBarSnapshot snapshot;
+        if (_Recycled != null) {
+            _Recycled.refill(mValues, mColors, mStackOffsets, mLabels, mStackCount, mSegmentCount,
+                    getMaxStackTotal(), getMaxStack(), getMinStack(), from, to, shifted);
+            snapshot = _Recycled;
+        } else {
+            snapshot = copy(from, to, shifted);
+        }
+        markClean();
+        return snapshot;
+    }
+
+    /**
+     * Takes an immutable copy of the data without touching the dirty range, e.g. to save it. The
+     * whole data is marked as changed in the copy.
+     * @return Copy of the current data
+     */
+    public StackedBarSnapshot copy() {
+        return copy(0, mStackCount, 0);
+    }
+
+    private StackedBarSnapshot copy(int _DirtyFrom, int _DirtyTo, int _ShiftedStacks) {
+        return new StackedBarSnapshot(
+                Arrays.copyOf(mValues, mSegmentCount),
+                Arrays.copyOf(mColors, mSegmentCount),
+                Arrays.copyOf(mStackOffsets, mStackCount + 1),
+                Arrays.copyOf(mLabels, mStackCount),
+                getMaxStackTotal(),
+                getMaxStack(),
+                getMinStack(),
+                _DirtyFrom, _DirtyTo, _ShiftedStacks
+        );
+    }
+
+    /**
+     * Resets the dirty range. Should be called after the layout pass has processed the changes.
+     */
+    public void markClean() {
+        mDirtyFrom     = Integer.MAX_VALUE;
+        mDirtyTo       = 0;
+        mShiftedStacks = 0;
+    }
+
+    private void markDirty(int _From, int _To) {
+        mDirtyFrom = Math.min(mDirtyFrom, _From);
+        mDirtyTo   = Math.max(mDirtyTo, _To);
+
+        if (mListener != null) {
+            mListener.onStoreChanged(this);
+        }
+    }
+
+    /**
+     * Records that stacks were removed from the front. The dirty range moves with the remaining
+     * stacks, and is dropped if all of its stacks were removed.
+     */
+    private void markShifted(int _Count) {
+        if (mDirtyFrom <= mDirtyTo) {
+            if (mDirtyTo <= _Count) {
+                mDirtyFrom = Integer.MAX_VALUE;
+                mDirtyTo   = 0;
+            } else {
+                mDirtyFrom = Math.max(0, mDirtyFrom - _Count);
+                mDirtyTo  -= _Count;
+            }
+        }
+        mShiftedStacks += _Count;
+
+        if (mListener != null) {
+            mListener.onStoreChanged(this);
+        }
+    }
+
+    //##############################################################################################
+    // Capacity
+    //##############################################################################################
+
+    private void ensureStackCapacity(int _Stacks) {
+        if (_Stacks <= mLabels.length) {
+            return;
+        }
+
+        int capacity = Math.max(_Stacks, mLabels.length * 2);
+        mLabels         = Arrays.copyOf(mLabels, capacity);
+        mStackOffsets   = Arrays.copyOf(mStackOffsets, capacity + 1);
+    }
+
+    private void ensureSegmentCapacity(int _Segments) {
+        if (_Segments <= mValues.length) {
+            return;
+        }
+
+        int capacity = Math.max(_Segments, mValues.length * 2);
+        mValues         = Arrays.copyOf(mValues, capacity);
+        mColors         = Arrays.copyOf(mColors, capacity);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.w.eazegraphclone.utils;
+
+/**
+ * Helper methods for sorted primitive arrays. Free of Android classes, so they can be used by the
+ * layout code on any thread and on a plain JVM.
+ */
+public final class ArrayUtils {
+
+    private ArrayUtils() {
+    }
+
+    /**
+     * Binary search for the first index in a sorted array whose value is greater than or equal to _Value.
+     * @param _Array Ascending sorted array
+     * @param _Size  Amount of valid entries in _Array
+     * @param _Value The value to search for
+     * @return Index of the first entry >= _Value, or _Size if there is none
+     */
+    public static int lowerBound(float[] _Array, int _Size, float _Value) {
+        return lowerBound(_Array, 0, _Size, _Value);
+    }
+
+    /**
+     * Binary search for the first index in a sorted range whose value is greater than or equal to _Value.
+     * @param _Array Array which is sorted ascending between _From and _To
+     * @param _From  First index of the range (inclusive)
+     * @param _To    Last index of the range (exclusive)
+     * @param _Value The value to search for
+     * @return Index of the first entry >= _Value, or _To if there is none
+     */
+    public static int lowerBound(float[] _Array, int _From, int _To, float _Value) {
+        int low = _From;
+        int high = _To;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (_Array[mid] < _Value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary search for the first index in a sorted array whose value is greater than _Value.
+     * @param _Array Ascending sorted array
+     * @param _Size  Amount of valid entries in _Array
+     * @param _Value The value to search for
+     * @return Index of the first entry > _Value, or _Size if there is none
+     */
+    public static int upperBound(float[] _Array, int _Size, float _Value) {
+        return upperBound(_Array, 0, _Size, _Value);
+    }
+
+    /**
+     * Binary search for the first index in a sorted range whose value is greater than _Value.
+     * @param _Array Array which is sorted ascending between _From and _To
+     * @param _From  First index of the range (inclusive)
+     * @param _To    Last index of the range (exclusive)
+     * @param _Value The value to search for
+     * @return Index of the first entry > _Value, or _To if there is none
+     */
+    public static int upperBound(float[] _Array, int _From, int _To, float _Value) {
+        int low = _From;
+        int high = _To;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (_Array[mid] <= _Value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary search for the first index in a sorted array whose value is greater than or equal to _Value.
+     * @param _Array Ascending sorted array
+     * @param _Size  Amount of valid entries in _Array
+     * @param _Value The value to search for
+     * @return Index of the first entry >= _Value, or _Size if there is none
+     */
+    public static int lowerBound(double[] _Array, int _Size, double _Value) {
+        int low = 0;
+        int high = _Size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (_Array[mid] < _Value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary search for the first index in a sorted array whose value is greater than _Value.
+     * @param _Array Ascending sorted array
+     * @param _Size  Amount of valid entries in _Array
+     * @param _Value The value to search for
+     * @return Index of the first entry > _Value, or _Size if there is none
+     */
+    public static int upperBound(double[] _Array, int _Size, double _Value) {
+        int low = 0;
+        int high = _Size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (_Array[mid] <= _Value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.w.eazegraphclone.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash map with primitive long keys which keeps its entries in access order, like a
+ * {@link java.util.LinkedHashMap} with access order, but without boxing the keys. The entries are
+ * kept in parallel arrays and chained by index, so lookups, updates and removals don't allocate;
+ * only growing the arrays does.
+ * <p>
+ * The map does not evict on its own, callers drop the least recently used entries with
+ * {@link #removeEldest()}.
+ * <p>
+ * Not thread safe.
+ * @param <V> Type of the values
+ */
+public class LongLruMap<V> {
+
+    private static final int DEF_CAPACITY = 16;
+    private static final int NONE         = -1;
+
+    // hash -> first entry of the chain, the length is a power of two
+    private int[]    mBuckets;
+
+    // entries, indexed by their slot
+    private long[]   mKeys;
+    private Object[] mValues;
+    // next entry of the chain, or of the free list for a removed entry
+    private int[]    mNext;
+    // neighbours in the access order: the less and the more recently used entry
+    private int[]    mBefore;
+    private int[]    mAfter;
+
+    private int      mEldest = NONE;
+    private int      mNewest = NONE;
+    // removed slots, which are reused before the unused ones
+    private int      mFree   = NONE;
+    // slots which were ever used, the ones above are unused
+    private int      mUsed;
+    private int      mSize;
+
+    public LongLruMap() {
+        this(DEF_CAPACITY);
+    }
+
+    /**
+     * @param _Capacity Amount of entries which can be held without growing
+     */
+    public LongLruMap(int _Capacity) {
+        int capacity = Integer.highestOneBit(Math.max(1, _Capacity - 1)) << 1;
+        mBuckets = new int[capacity];
+        Arrays.fill(mBuckets, NONE);
+        mKeys    = new long[capacity];
+        mValues  = new Object[capacity];
+        mNext    = new int[capacity];
+        mBefore  = new int[capacity];
+        mAfter   = new int[capacity];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the value of a key and marks the entry as the most recently used one.
+     * @param _Key The key
+     * @return The value, null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long _Key) {
+        int entry = find(_Key);
+        if (entry == NONE) {
+            return null;
+        }
+        moveToNewest(entry);
+        return (V) mValues[entry];
+    }
+
+    /**
+     * Sets the value of a key and marks the entry as the most recently used one.
+     * @param _Key   The key
+     * @param _Value The value, not null
+     * @return The previous value, null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long _Key, V _Value) {
+        if (_Value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+
+        int entry = find(_Key);
+        if (entry != NONE) {
+            V previous = (V) mValues[entry];
+            mValues[entry] = _Value;
+            moveToNewest(entry);
+            return previous;
+        }
+
+        entry = obtainEntry();
+        int bucket = bucket(_Key);
+        mKeys[entry]    = _Key;
+        mValues[entry]  = _Value;
+        mNext[entry]    = mBuckets[bucket];
+        mBuckets[bucket] = entry;
+        linkNewest(entry);
+        mSize++;
+        return null;
+    }
+
+    /**
+     * @param _Key The key
+     * @return The removed value, null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long _Key) {
+        int bucket   = bucket(_Key);
+        int previous = NONE;
+        for (int entry = mBuckets[bucket]; entry != NONE; entry = mNext[entry]) {
+            if (mKeys[entry] != _Key) {
+                previous = entry;
+                continue;
+            }
+
+            if (previous == NONE) {
+                mBuckets[bucket] = mNext[entry];
+            } else {
+                mNext[previous] = mNext[entry];
+            }
+            unlink(entry);
+
+            V value = (V) mValues[entry];
+            mValues[entry] = null;
+            mNext[entry]   = mFree;
+            mFree          = entry;
+            mSize--;
+            return value;
+        }
+        return null;
+    }
+
+    /**
+     * Removes the least recently used entry.
+     * @return Its value, null if the map is empty
+     */
+    public V removeEldest() {
+        return mEldest != NONE ? remove(mKeys[mEldest]) : null;
+    }
+
+    public void clear() {
+        Arrays.fill(mBuckets, NONE);
+        Arrays.fill(mValues, 0, mUsed, null);
+        mEldest = NONE;
+        mNewest = NONE;
+        mFree   = NONE;
+        mUsed   = 0;
+        mSize   = 0;
+    }
+
+    //##############################################################################################
+    // Private
+    //##############################################################################################
+
+    private int bucket(long _Key) {
+        int hash = (int) (_Key ^ (_Key >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (mBuckets.length - 1);
+    }
+
+    private int find(long _Key) {
+        for (int entry = mBuckets[bucket(_Key)]; entry != NONE; entry = mNext[entry]) {
+            if (mKeys[entry] == _Key) {
+                return entry;
+            }
+        }
+        return NONE;
+    }
+
+    private int obtainEntry() {
+        if (mFree != NONE) {
+            int entry = mFree;
+            mFree = mNext[entry];
+            return entry;
+        }
+        if (mUsed == mKeys.length) {
+            grow();
+        }
+        return mUsed++;
+    }
+
+    /**
+     * Doubles the capacity. The entries keep their slots, only the chains are rebuilt.
+     */
+    private void grow() {
+        int capacity = mKeys.length * 2;
+        mKeys    = Arrays.copyOf(mKeys, capacity);
+        mValues  = Arrays.copyOf(mValues, capacity);
+        mNext    = Arrays.copyOf(mNext, capacity);
+        mBefore  = Arrays.copyOf(mBefore, capacity);
+        mAfter   = Arrays.copyOf(mAfter, capacity);
+        mBuckets = new int[capacity];
+        Arrays.fill(mBuckets, NONE);
+
+        // grows only without free slots, so all used slots hold an entry
+        for (int entry = 0; entry < mUsed; entry++) {
+            int bucket = bucket(mKeys[entry]);
+            mNext[entry]     = mBuckets[bucket];
+            mBuckets[bucket] = entry;
+        }
+    }
+
+    private void linkNewest(int _Entry) {
+        mBefore[_Entry] = mNewest;
+        mAfter[_Entry]  = NONE;
+        if (mNewest != NONE) {
+            mAfter[mNewest] = _Entry;
+        } else {
+            mEldest = _Entry;
+        }
+        mNewest = _Entry;
+    }
+
+    private void unlink(int _Entry) {
+        int before = mBefore[_Entry];
+        int after  = mAfter[_Entry];
+        if (before != NONE) {
+            mAfter[before] = after;
+        } else {
+            mEldest = after;
+        }
+        if (after != NONE) {
+            mBefore[after] = before;
+        } else {
+            mNewest = before;
+        }
+    }
+
+    private void moveToNewest(int _Entry) {
+        if (_Entry != mNewest) {
+            unlink(_Entry);
+            linkNewest(_Entry);
+        }
+    }
+}
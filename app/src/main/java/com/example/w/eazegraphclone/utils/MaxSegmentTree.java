@@ -0,0 +1,166 @@
+package com.example.w.eazegraphclone.utils;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of floats which knows its maximum. The values are the leaves of a complete binary
+ * tree whose inner nodes hold the maximum of their children, so changing or appending a value costs
+ * O(log n) instead of a rescan of all values, and the maximum of the whole list is read in O(1).
+ * <p>
+ * Not thread safe.
+ */
+public class MaxSegmentTree {
+
+    private static final int DEF_CAPACITY = 16;
+
+    // node i has the children 2i and 2i + 1, the leaves start at mCapacity. Node 0 is unused.
+    private float[] mNodes;
+    private int     mCapacity;
+    private int     mSize;
+
+    public MaxSegmentTree() {
+        this(DEF_CAPACITY);
+    }
+
+    /**
+     * @param _Capacity Amount of values which can be held without growing
+     */
+    public MaxSegmentTree(int _Capacity) {
+        mCapacity = Integer.highestOneBit(Math.max(1, _Capacity - 1)) << 1;
+        mNodes    = new float[2 * mCapacity];
+        Arrays.fill(mNodes, Float.NEGATIVE_INFINITY);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public float get(int _Index) {
+        checkIndex(_Index);
+        return mNodes[mCapacity + _Index];
+    }
+
+    /**
+     * @return The largest value, or {@link Float#NEGATIVE_INFINITY} if the list is empty.
+     */
+    public float max() {
+        return mNodes[1];
+    }
+
+    /**
+     * Returns the index of the largest value in O(log n), by descending from the root into the child
+     * which holds the maximum.
+     * @return The first index of the largest value, or -1 if the list is empty.
+     */
+    public int indexOfMax() {
+        if (mSize == 0) {
+            return -1;
+        }
+
+        int node = 1;
+        while (node < mCapacity) {
+            // on equal values the left child wins, so the first index is returned
+            node = mNodes[2 * node] >= mNodes[2 * node + 1] ? 2 * node : 2 * node + 1;
+        }
+        return node - mCapacity;
+    }
+
+    /**
+     * Returns the largest value of a range in O(log n).
+     * @param _From Index of the first value (inclusive)
+     * @param _To   Index after the last value (exclusive)
+     * @return The largest value, or {@link Float#NEGATIVE_INFINITY} if the range is empty.
+     */
+    public float max(int _From, int _To) {
+        if (_From < 0 || _To > mSize || _From > _To) {
+            throw new IndexOutOfBoundsException("Range " + _From + " to " + _To + " of " + mSize);
+        }
+
+        float max = Float.NEGATIVE_INFINITY;
+        // walk up from both ends of the range, collecting the nodes which are completely inside
+        for (int low = _From + mCapacity, high = _To + mCapacity; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) != 0) {
+                max = Math.max(max, mNodes[low++]);
+            }
+            if ((high & 1) != 0) {
+                max = Math.max(max, mNodes[--high]);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Appends a value.
+     * @param _Value The new value
+     */
+    public void add(float _Value) {
+        if (mSize == mCapacity) {
+            grow();
+        }
+        mSize++;
+        set(mSize - 1, _Value);
+    }
+
+    /**
+     * Replaces a value and updates its ancestors.
+     * @param _Index Index of the value
+     * @param _Value The new value
+     */
+    public void set(int _Index, float _Value) {
+        checkIndex(_Index);
+
+        int node = mCapacity + _Index;
+        mNodes[node] = _Value;
+        for (node >>= 1; node > 0; node >>= 1) {
+            float max = Math.max(mNodes[2 * node], mNodes[2 * node + 1]);
+            if (mNodes[node] == max) {
+                // the ancestors already hold this maximum
+                break;
+            }
+            mNodes[node] = max;
+        }
+    }
+
+    /**
+     * Removes a range of values. The following values move to the front, so the tree is rebuilt in O(n).
+     * @param _From  Index of the first value which should be removed
+     * @param _Count Amount of values which should be removed
+     */
+    public void remove(int _From, int _Count) {
+        if (_From < 0 || _Count < 0 || _From + _Count > mSize) {
+            throw new IndexOutOfBoundsException("Range " + _From + " to " + (_From + _Count) + " of " + mSize);
+        }
+
+        int leaves = mCapacity;
+        System.arraycopy(mNodes, leaves + _From + _Count, mNodes, leaves + _From, mSize - _From - _Count);
+        Arrays.fill(mNodes, leaves + mSize - _Count, leaves + mSize, Float.NEGATIVE_INFINITY);
+        mSize -= _Count;
+        rebuild();
+    }
+
+    public void clear() {
+        Arrays.fill(mNodes, Float.NEGATIVE_INFINITY);
+        mSize = 0;
+    }
+
+    private void grow() {
+        float[] nodes = new float[4 * mCapacity];
+        Arrays.fill(nodes, Float.NEGATIVE_INFINITY);
+        System.arraycopy(mNodes, mCapacity, nodes, 2 * mCapacity, mSize);
+        mNodes = nodes;
+        mCapacity *= 2;
+        rebuild();
+    }
+
+    private void rebuild() {
+        for (int node = mCapacity - 1; node > 0; node--) {
+            mNodes[node] = Math.max(mNodes[2 * node], mNodes[2 * node + 1]);
+        }
+    }
+
+    private void checkIndex(int _Index) {
+        if (_Index < 0 || _Index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + _Index + " of " + mSize);
+        }
+    }
+}
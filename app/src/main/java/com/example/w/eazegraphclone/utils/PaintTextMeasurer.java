@@ -0,0 +1,36 @@
+package com.example.w.eazegraphclone.utils;
+
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * {@link TextMeasurer} which measures with the text bounds of a {@link Paint}. The measurements are
+ * synchronized, so a measurer can be shared by several charts and threads as long as nobody changes
+ * the paint.
+ */
+public class PaintTextMeasurer implements TextMeasurer {
+
+    private final Paint mPaint;
+    private final Rect  mBounds = new Rect();
+
+    public PaintTextMeasurer(Paint _Paint) {
+        mPaint = _Paint;
+    }
+
+    @Override
+    public float getTextSize() {
+        return mPaint.getTextSize();
+    }
+
+    @Override
+    public Object getTypeface() {
+        return mPaint.getTypeface();
+    }
+
+    @Override
+    public synchronized void measure(String _Text, float[] _Out) {
+        mPaint.getTextBounds(_Text, 0, _Text.length(), mBounds);
+        _Out[0] = mBounds.width();
+        _Out[1] = mBounds.height();
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.w.eazegraphclone.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache for text measurements, keyed by text, text size and typeface. Chart data often
+ * repeats the same labels (e.g. the same values in many bars), so most measurements are hits.
+ * <p>
+ * A lookup does not allocate, only a miss creates a new entry. The cache is thread safe, so the
+ * layout thread and the UI thread can share it. The measurer is called while the cache is locked.
+ */
+public class TextMeasureCache {
+
+    public static final int DEF_MAX_ENTRIES = 512;
+
+    /**
+     * Cache key, which also holds the measured size as value.
+     */
+    private static final class Measurement {
+        String  mText;
+        float   mTextSize;
+        Object  mTypeface;
+        int     mHash;
+
+        float   mWidth;
+        float   mHeight;
+
+        void set(String _Text, float _TextSize, Object _Typeface) {
+            mText     = _Text;
+            mTextSize = _TextSize;
+            mTypeface = _Typeface;
+            mHash     = (_Text.hashCode() * 31 + Float.floatToIntBits(_TextSize)) * 31
+                    + (_Typeface != null ? _Typeface.hashCode() : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Measurement)) {
+                return false;
+            }
+            Measurement other = (Measurement) o;
+            return mHash == other.mHash
+                    && mTextSize == other.mTextSize
+                    && mText.equals(other.mText)
+                    && (mTypeface == null ? other.mTypeface == null : mTypeface.equals(other.mTypeface));
+        }
+    }
+
+    private final LinkedHashMap<Measurement, Measurement> mEntries;
+
+    // reused for lookups, so a hit does not allocate a key
+    private final Measurement mProbe = new Measurement();
+
+    private long mHitCount;
+    private long mMissCount;
+
+    public TextMeasureCache() {
+        this(DEF_MAX_ENTRIES);
+    }
+
+    /**
+     * @param _MaxEntries Maximum amount of cached measurements. The least recently used one is
+     *                    evicted if the cache is full.
+     */
+    public TextMeasureCache(final int _MaxEntries) {
+        mEntries = new LinkedHashMap<Measurement, Measurement>(Math.min(_MaxEntries, 64), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Measurement, Measurement> _Eldest) {
+                return size() > _MaxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the size of a text, measured with the given measurer or taken from the cache.
+     * @param _Measurer Measurer which is used on a cache miss. Its text size and typeface are part of the key.
+     * @param _Text     The text which should be measured
+     * @param _Out      Receives the width at index 0 and the height at index 1
+     */
+    public synchronized void measure(TextMeasurer _Measurer, String _Text, float[] _Out) {
+        float  textSize = _Measurer.getTextSize();
+        Object typeface = _Measurer.getTypeface();
+
+        mProbe.set(_Text, textSize, typeface);
+        Measurement entry = mEntries.get(mProbe);
+        // the probe must not keep the text alive
+        mProbe.mText = null;
+        mProbe.mTypeface = null;
+
+        if (entry != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+            _Measurer.measure(_Text, _Out);
+
+            entry = new Measurement();
+            entry.set(_Text, textSize, typeface);
+            entry.mWidth  = _Out[0];
+            entry.mHeight = _Out[1];
+            mEntries.put(entry, entry);
+        }
+
+        _Out[0] = entry.mWidth;
+        _Out[1] = entry.mHeight;
+    }
+
+    /**
+     * Removes all cached measurements. The hit and miss counters are kept.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return The share of lookups which were answered from the cache, between 0 and 1.
+     */
+    public synchronized float getHitRate() {
+        long total = mHitCount + mMissCount;
+        return total == 0 ? 0 : (float) mHitCount / total;
+    }
+
+    public synchronized void resetCounters() {
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.w.eazegraphclone.utils;
+
+/**
+ * Measures the size of a text. This abstraction keeps the layout code free of the Android
+ * {@link android.graphics.Paint}, so it can also be used with fake metrics on a plain JVM.
+ */
+public interface TextMeasurer {
+
+    /**
+     * @return The text size which is used for the measurement. Part of the cache key.
+     */
+    float getTextSize();
+
+    /**
+     * @return The typeface which is used for the measurement, or null for the default one.
+     *         Part of the cache key.
+     */
+    Object getTypeface();
+
+    /**
+     * Measures the bounds of a text.
+     * @param _Text The text which should be measured
+     * @param _Out  Receives the width at index 0 and the height at index 1
+     */
+    void measure(String _Text, float[] _Out);
+}
@@ -19,17 +19,14 @@ package com.example.w.eazegraphclone.utils;
 
 import android.annotation.SuppressLint;
 import android.content.res.Resources;
-import android.graphics.Paint;
-import android.graphics.Rect;
-import android.graphics.RectF;
 import android.os.Build;
 import android.util.Log;
 import android.view.View;
 
-import com.example.w.eazegraphclone.models.BaseModel;
 import com.example.w.eazegraphclone.models.Point2D;
 
-import java.util.List;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
 
 /**
  * static helper method들로 구성된 Helper class
@@ -38,6 +35,9 @@ public class Utils {
 
     private static final String LOG_TAG = Utils.class.getSimpleName();
 
+    // display density, read on the first conversion after a reset. A racing first read only reads it twice
+    private static volatile float sDensity;
+
     /**
      * DP를 PX로 변환하기
      *
@@ -45,60 +45,20 @@ public class Utils {
      * @return the converted value in pixels
      */
     public static float dpToPx(float _Dp) {
-        return _Dp * Resources.getSystem().getDisplayMetrics().density;
+        float density = sDensity;
+        if (density == 0) {
+            density = Resources.getSystem().getDisplayMetrics().density;
+            sDensity = density;
+        }
+        return _Dp * density;
     }
 
     /**
-     * Calculates the legend positions and which legend title should be displayed or not.
-     *
-     * Important: the LegendBounds in the _Models should be set and correctly calculated before this
-     * function is called!
-     * @param _Models The graph data which should have the BaseModel class as parent class.
-     * @param _StartX Left starting point on the screen. Should be the absolute pixel value!
-     * @param _Paint  The correctly set Paint which will be used for the text painting in the later process
+     * Forgets the cached display density, so the next conversion reads it again. Has to be called
+     * when the density changed, e.g. by {@link com.example.w.eazegraphclone.charts.ChartStyle#clear()}.
      */
-    public static void calculateLegendInformation(List<? extends BaseModel> _Models, float _StartX, float _EndX, Paint _Paint) {
-        float textMargin = Utils.dpToPx(10.f);
-        float lastX = _StartX;
-
-        // calculate the legend label positions and check if there is enough space to display the label,
-        // if not the label will not be shown
-        for (BaseModel model : _Models) {
-
-            Rect textBounds = new Rect();
-            RectF legendBounds = model.getLegendBounds();
-
-            _Paint.getTextBounds(model.getLegendLabel(), 0, model.getLegendLabel().length(), textBounds);
-            model.setTextBounds(textBounds);
-
-            float centerX = legendBounds.centerX();
-            float centeredTextPos = centerX - (textBounds.width() / 2);
-            float textStartPos = centeredTextPos - textMargin;
-
-            // check if the text is too big to fit on the screen
-            if (centeredTextPos + textBounds.width() > _EndX - textMargin) {
-                model.setShowLabel(false);
-            } else {
-                // check if the current legend label overrides the label before
-                // if the label overrides the label before, the current label will not be shown.
-                // If not the label will be shown and the label position is calculated
-                if (textStartPos < lastX) {
-                    if (lastX + textMargin < legendBounds.left) {
-                        model.setLegendLabelPosition((int) (lastX + textMargin));
-                        model.setShowLabel(true);
-                        lastX = lastX + textMargin + textBounds.width();
-                    } else {
-                        model.setShowLabel(false);
-                    }
-                } else {
-                    model.setShowLabel(true);
-                    model.setLegendLabelPosition((int) centeredTextPos);
-                    lastX = centerX + (textBounds.width() / 2);
-                }
-            }
-
-        }
-
+    public static void resetDensity() {
+        sDensity = 0;
     }
 
     /**
@@ -109,26 +69,27 @@ public class Utils {
      */
     public static String getFloatString(float _value, boolean _showDecimal) {
         if (_showDecimal) {
-            return _value+"";
+            return String.valueOf(_value);
         }
         else {
-            return ((int) _value) + "";
+            return String.valueOf((int) _value);
         }
     }
 
     /**
-     * 사용되어진 Paint와 그 Paint의 설정을 기반으로 가능한 특정 텍스트의 가능한 최대값의 높이를 반환한다.
-     *
-     * @param _Paint Paint object which will be used to display a text.
-     * @param _Text  The text which should be measured. If null, a default text is chosen, which
-     *               has a maximum possible height
-     * @return Maximum text height in px.
+     * Creates a number format for value labels based on the given locale format.
+     * @param _Format       The locale format which should be used as template. It is not modified.
+     * @param _showDecimal  Indicates whether the decimal numbers should be shown or not
+     * @return              A new format which can be used by a single thread.
      */
-    public static float calculateMaxTextHeight(Paint _Paint, String _Text) {
-        Rect height = new Rect();
-        String text = _Text == null ? "MgHITasger" : _Text;
-        _Paint.getTextBounds(text, 0, text.length(), height);
-        return height.height();
+    public static NumberFormat createValueFormat(NumberFormat _Format, boolean _showDecimal) {
+        NumberFormat format = (NumberFormat) _Format.clone();
+        if (!_showDecimal) {
+            // cut the decimal places off like getFloatString does
+            format.setMaximumFractionDigits(0);
+            format.setRoundingMode(RoundingMode.DOWN);
+        }
+        return format;
     }
 
     @SuppressLint("NewApi")
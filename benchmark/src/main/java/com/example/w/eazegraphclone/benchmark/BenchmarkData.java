@@ -0,0 +1,86 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.BarLayoutConfig;
+import com.example.w.eazegraphclone.layout.LodPyramid;
+import com.example.w.eazegraphclone.layout.ValueAxis;
+import com.example.w.eazegraphclone.models.StackedBarStore;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Creates the data sets and settings for the benchmarks.
+ */
+final class BenchmarkData {
+
+    // px values of a phone with a density of 3
+    static final int   AVAILABLE_WIDTH      = 1080;
+    static final float GRAPH_HEIGHT         = 1200;
+    static final float BAR_WIDTH            = 96;
+    static final float BAR_MARGIN           = 36;
+    static final int   VISIBLE_BARS         = 6;
+    static final float LEGEND_TEXT_MARGIN   = 30;
+    static final float MIN_BAR_WIDTH        = 6;
+
+    private BenchmarkData() {
+    }
+
+    static int parseStacks(String _Shape) {
+        return Integer.parseInt(_Shape.substring(0, _Shape.indexOf('x')));
+    }
+
+    static int parseSegments(String _Shape) {
+        return Integer.parseInt(_Shape.substring(_Shape.indexOf('x') + 1));
+    }
+
+    /**
+     * Fills a store with random values. The same seed always creates the same data.
+     */
+    static StackedBarStore createStore(int _Stacks, int _Segments) {
+        return createStore(_Stacks, _Segments, 0);
+    }
+
+    /**
+     * Fills a store with random values. Segment j of every stack gets color j of a palette, like the
+     * series of the sample app.
+     * @param _PaletteSize Amount of colors, 0 for a random color per segment
+     */
+    static StackedBarStore createStore(int _Stacks, int _Segments, int _PaletteSize) {
+        return createStore(_Stacks, _Segments, _PaletteSize, 42);
+    }
+
+    /**
+     * Fills a store with random values, like {@link #createStore(int, int, int)}, from the given seed.
+     */
+    static StackedBarStore createStore(int _Stacks, int _Segments, int _PaletteSize, long _Seed) {
+        StackedBarStore store = new StackedBarStore();
+        Random random = new Random(_Seed);
+
+        int[] palette = new int[_PaletteSize];
+        for (int i = 0; i < _PaletteSize; i++) {
+            palette[i] = 0xFF000000 | random.nextInt(0xFFFFFF);
+        }
+
+        store.ensureCapacity(_Stacks + 1, (_Stacks + 1) * _Segments);
+        for (int i = 0; i < _Stacks; i++) {
+            store.startStack("Stack " + i);
+            for (int j = 0; j < _Segments; j++) {
+                float value = random.nextInt(10000) / 10.f;
+                int   color = _PaletteSize > 0 ? palette[j % _PaletteSize] : 0xFF000000 | random.nextInt(0xFFFFFF);
+                store.addSegment(value, color);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Config of a chart with fixed bar widths, where adding bars does not change the bar geometry.
+     */
+    static BarLayoutConfig createConfig() {
+        return new BarLayoutConfig(AVAILABLE_WIDTH, GRAPH_HEIGHT, BAR_WIDTH, BAR_MARGIN, true, VISIBLE_BARS,
+                LEGEND_TEXT_MARGIN, NumberFormat.getInstance(Locale.US),
+                new FakeTextMeasurer(36), new FakeTextMeasurer(36), MIN_BAR_WIDTH, LodPyramid.Aggregation.SUM,
+                ValueAxis.STACK);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.ColorBatch;
+import com.example.w.eazegraphclone.layout.ColorBatchCache;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.utils.ArrayUtils;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per segment draw loop of drawBars() with the color batches. A frame draws the visible
+ * stacks of a viewport which is 8 times as wide as the screen, e.g. a zoomed out chart. The Canvas
+ * calls go to a Blackhole and are counted: drawOps are the draw calls, colorChanges the setColor()
+ * calls per frame. The frame time on a device also depends on the GPU, which is not measured here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ColorBatchBenchmark {
+
+    @Param({"1000x2", "1000x8", "100000x2", "100000x8", "1000000x4"})
+    public String shape;
+
+    // 0 is a random color per segment, so nothing can be batched
+    @Param({"2", "8", "0"})
+    public int palette;
+
+    /**
+     * Draw calls of the frames in an iteration, reported next to the time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class DrawOps {
+        public long drawOps;
+        public long colorChanges;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            drawOps      = 0;
+            colorChanges = 0;
+        }
+    }
+
+    private StackedBarLayout    mLayout;
+    private ColorBatchCache     mCache;
+    private int                 mFirst;
+    private int                 mLast;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int stacks   = BenchmarkData.parseStacks(shape);
+        int segments = BenchmarkData.parseSegments(shape);
+
+        StackedBarSnapshot data = BenchmarkData.createStore(stacks, segments, palette).snapshot();
+        mLayout = StackedBarLayoutCalculator.calculate(data, BenchmarkData.createConfig(), null, true, 0, 0,
+                new TextMeasureCache(), 0);
+        mCache = new ColorBatchCache();
+
+        float left  = mLayout.getContentWidth() / 2.f;
+        float right = left + 8 * BenchmarkData.AVAILABLE_WIDTH;
+        mFirst = ArrayUtils.lowerBound(mLayout.getBarLefts(), stacks, left - mLayout.getBarWidth());
+        mLast  = ArrayUtils.upperBound(mLayout.getBarLefts(), stacks, right);
+    }
+
+    @Benchmark
+    public void perSegment(DrawOps _Ops, Blackhole _Blackhole) {
+        StackedBarLayout layout = mLayout;
+        int[]            colors = layout.getData().getColors();
+        int[]            offsets = layout.getData().getStackOffsets();
+        float[]          lefts = layout.getBarLefts();
+        float            width = layout.getBarWidth();
+
+        for (int i = mFirst; i < mLast; i++) {
+            float lastBottom = BenchmarkData.GRAPH_HEIGHT;
+            for (int segment = offsets[i], end = offsets[i + 1]; segment < end; segment++) {
+                float lastTop = lastBottom - (layout.getSegmentBottom(segment) - layout.getSegmentTop(segment));
+                _Blackhole.consume(colors[segment]);
+                _Blackhole.consume(lefts[i] + lastTop + lefts[i] + width + lastBottom);
+                lastBottom = lastTop;
+            }
+            int segments = offsets[i + 1] - offsets[i];
+            _Ops.drawOps      += segments;
+            _Ops.colorChanges += segments;
+        }
+    }
+
+    /**
+     * A frame after the first one, all batches are cached.
+     */
+    @Benchmark
+    public void batched(DrawOps _Ops, Blackhole _Blackhole) {
+        drawBatched(mCache, _Ops, _Blackhole);
+    }
+
+    /**
+     * The first frame after a relayout, which builds the batches of the visible chunks.
+     */
+    @Benchmark
+    public void batchedAfterRelayout(DrawOps _Ops, Blackhole _Blackhole) {
+        drawBatched(new ColorBatchCache(), _Ops, _Blackhole);
+    }
+
+    private void drawBatched(ColorBatchCache _Cache, DrawOps _Ops, Blackhole _Blackhole) {
+        int firstChunk = mFirst / ColorBatchCache.CHUNK_SIZE;
+        int lastChunk  = (mLast - 1) / ColorBatchCache.CHUNK_SIZE + 1;
+
+        for (int chunk = firstChunk; chunk < lastChunk; chunk++) {
+            ColorBatch batch = _Cache.get(mLayout, chunk);
+            if (batch == null) {
+                // too many colors, the chart falls back to the per segment loop
+                int[] offsets = mLayout.getData().getStackOffsets();
+                int   from = Math.max(mFirst, chunk * ColorBatchCache.CHUNK_SIZE);
+                int   to   = Math.min(mLast, (chunk + 1) * ColorBatchCache.CHUNK_SIZE);
+                int   segments = offsets[to] - offsets[from];
+                _Blackhole.consume(segments);
+                _Ops.drawOps      += segments;
+                _Ops.colorChanges += segments;
+                continue;
+            }
+            for (int i = 0, count = batch.getColorCount(); i < count; i++) {
+                _Blackhole.consume(batch.getColor(i));
+                _Blackhole.consume(batch.getLines());
+                _Blackhole.consume(batch.getLineOffset(i) + batch.getLineLength(i));
+            }
+            _Ops.drawOps      += batch.getColorCount();
+            _Ops.colorChanges += batch.getColorCount();
+        }
+    }
+}
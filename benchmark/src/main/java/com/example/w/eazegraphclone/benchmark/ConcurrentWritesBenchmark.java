@@ -0,0 +1,184 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.models.RingBufferDataSource;
+import com.example.w.eazegraphclone.models.SnapshotList;
+import com.example.w.eazegraphclone.models.StackedBarStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test for the lock-free data paths: several writer threads change the data while a reader
+ * consumes it like the UI thread does. Every read checks that the snapshot is consistent, and the
+ * teardown checks that no write was lost. A violation throws an IllegalStateException, which fails
+ * the run; the score is the throughput of each thread.
+ * <p>
+ * A token is the id of the writer in the upper bits and a running counter in the lower bits, so
+ * the tokens of one writer have to appear in increasing order.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentWritesBenchmark {
+
+    private static final int MAX_MODELS     = 512;
+    private static final int RING_CAPACITY  = 256;
+    private static final int WRITER_SHIFT   = 28;
+
+    @State(Scope.Group)
+    public static class Shared {
+        final AtomicInteger                 mWriterIds = new AtomicInteger();
+
+        SnapshotList<Integer>               mList;
+        final AtomicLong                    mAdded   = new AtomicLong();
+        final AtomicLong                    mRemoved = new AtomicLong();
+
+        RingBufferDataSource                mSource;
+        StackedBarStore                     mStore;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            mList = new SnapshotList<Integer>();
+            mAdded.set(0);
+            mRemoved.set(0);
+            mSource = new RingBufferDataSource(RING_CAPACITY);
+            mStore  = new StackedBarStore();
+        }
+
+        @TearDown(Level.Iteration)
+        public void verify() {
+            long expected = mAdded.get() - mRemoved.get();
+            if (mList.get().size() != expected) {
+                throw new IllegalStateException("lost update: " + mList.get().size() + " models, expected " + expected);
+            }
+            mSource.drainTo(mStore);
+            checkStore(mStore);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        int mId = -1;
+        int mCounter;
+
+        int nextToken(Shared _Shared) {
+            if (mId < 0) {
+                mId = _Shared.mWriterIds.getAndIncrement();
+            }
+            mCounter = (mCounter + 1) & ((1 << WRITER_SHIFT) - 1);
+            return (mId << WRITER_SHIFT) | mCounter;
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            mCounter = 0;
+        }
+    }
+
+    //##############################################################################################
+    // SnapshotList
+    //##############################################################################################
+
+    @Benchmark
+    @Group("snapshotList")
+    @GroupThreads(3)
+    public SnapshotList.Snapshot<Integer> addModel(Shared _Shared, Writer _Writer) {
+        Integer token = _Writer.nextToken(_Shared);
+        SnapshotList.Snapshot<Integer> snapshot = _Shared.mList.add(token);
+        _Shared.mAdded.incrementAndGet();
+
+        List<Integer> models = snapshot.getModels();
+        if (!token.equals(models.get(models.size() - 1))) {
+            throw new IllegalStateException("the published snapshot does not end with the added model");
+        }
+
+        // the list is bounded, so a copy stays cheap
+        if (snapshot.size() > MAX_MODELS) {
+            try {
+                _Shared.mList.remove(0);
+                _Shared.mRemoved.incrementAndGet();
+            } catch (IndexOutOfBoundsException e) {
+                // another writer emptied the list meanwhile, nothing was removed
+            }
+        }
+        return snapshot;
+    }
+
+    @Benchmark
+    @Group("snapshotList")
+    @GroupThreads(1)
+    public int readModels(Shared _Shared) {
+        List<Integer> models = _Shared.mList.get().getModels();
+        int[] last = new int[1 << (32 - WRITER_SHIFT)];
+        for (int i = 0, size = models.size(); i < size; i++) {
+            int token   = models.get(i);
+            int writer  = token >>> WRITER_SHIFT;
+            int counter = token & ((1 << WRITER_SHIFT) - 1);
+            if (counter <= last[writer]) {
+                throw new IllegalStateException("models of writer " + writer + " out of order");
+            }
+            last[writer] = counter;
+        }
+        return models.size();
+    }
+
+    //##############################################################################################
+    // RingBufferDataSource
+    //##############################################################################################
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(3)
+    public void pushStack(Shared _Shared, Writer _Writer) {
+        int token = _Writer.nextToken(_Shared);
+        _Shared.mSource.push(Integer.toString(token), new float[]{1, 2}, new int[]{token, token});
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public int drainStacks(Shared _Shared) {
+        _Shared.mSource.drainTo(_Shared.mStore);
+        checkStore(_Shared.mStore);
+        return _Shared.mStore.getStackCount();
+    }
+
+    /**
+     * The store must not hold more stacks than the ring buffer, and the stacks of every writer
+     * must be in the order they were pushed.
+     */
+    private static void checkStore(StackedBarStore _Store) {
+        if (_Store.getStackCount() > RING_CAPACITY) {
+            throw new IllegalStateException(_Store.getStackCount() + " stacks in the store");
+        }
+        int[] last = new int[1 << (32 - WRITER_SHIFT)];
+        for (int i = 0; i < _Store.getStackCount(); i++) {
+            int token   = _Store.getColor(_Store.getSegmentStart(i));
+            int writer  = token >>> WRITER_SHIFT;
+            int counter = token & ((1 << WRITER_SHIFT) - 1);
+            if (counter <= last[writer] || _Store.getSegmentEnd(i) - _Store.getSegmentStart(i) != 2) {
+                throw new IllegalStateException("stacks of writer " + writer + " out of order or torn");
+            }
+            last[writer] = counter;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.utils.TextMeasurer;
+
+/**
+ * {@link TextMeasurer} with fixed font metrics, which stands in for the Paint on a plain JVM.
+ * Every character has the same advance, so the widths depend on the text length like with a real font.
+ */
+public class FakeTextMeasurer implements TextMeasurer {
+
+    private final float mTextSize;
+
+    public FakeTextMeasurer(float _TextSize) {
+        mTextSize = _TextSize;
+    }
+
+    @Override
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    @Override
+    public Object getTypeface() {
+        return null;
+    }
+
+    @Override
+    public void measure(String _Text, float[] _Out) {
+        _Out[0] = _Text.length() * mTextSize * 0.55f;
+        _Out[1] = mTextSize * 0.75f;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.BarLayoutConfig;
+import com.example.w.eazegraphclone.layout.LodPyramid;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCache;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.layout.ValueAxis;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.models.StackedBarStore;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the layout work of binding a row of a feed of 500 charts, while the feed is scrolled to
+ * the end and back. Every call binds the next row to one of the recycled charts. rebind lays out
+ * every bound data set again, rebindCached takes the layouts of data sets which were bound before
+ * from a shared {@link StackedBarLayoutCache}, like {@code StackedBarChart.bind()}.
+ * <p>
+ * The sample time shows the distribution per bind, a bind which takes a large part of the 16ms of
+ * a frame is a dropped frame while scrolling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class FeedRebindBenchmark {
+
+    static final int ROWS           = 500;
+    // charts which are on screen or in the recycled view pool at once
+    static final int RECYCLED_VIEWS = 12;
+    static final int ROW_WIDTH      = 1080;
+    static final float ROW_HEIGHT   = 360;
+
+    @Param({"12x3", "60x4"})
+    public String shape;
+
+    @Param({"64", "512"})
+    public int cacheEntries;
+
+    /**
+     * What a recycled chart keeps between two binds.
+     */
+    private static final class RecycledView {
+        final StackedBarStore   mStore  = new StackedBarStore();
+        final TextMeasureCache  mCache  = new TextMeasureCache();
+        // every chart has its own measurers, like the charts of a list
+        final BarLayoutConfig   mConfig = new BarLayoutConfig(ROW_WIDTH, ROW_HEIGHT, BenchmarkData.BAR_WIDTH,
+                BenchmarkData.BAR_MARGIN, false, BenchmarkData.VISIBLE_BARS, BenchmarkData.LEGEND_TEXT_MARGIN,
+                NumberFormat.getInstance(Locale.US), new FakeTextMeasurer(36), new FakeTextMeasurer(36),
+                BenchmarkData.MIN_BAR_WIDTH, LodPyramid.Aggregation.SUM, ValueAxis.STACK);
+        StackedBarLayout        mLayout;
+    }
+
+    private StackedBarSnapshot[]    mRows;
+    private RecycledView[]          mViews;
+    private StackedBarLayoutCache   mLayoutCache;
+    private int                     mStep;
+    private int                     mGeneration;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int stacks   = BenchmarkData.parseStacks(shape);
+        int segments = BenchmarkData.parseSegments(shape);
+
+        mRows = new StackedBarSnapshot[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            mRows[i] = BenchmarkData.createStore(stacks, segments, 4, i).snapshot();
+        }
+        mViews = new RecycledView[RECYCLED_VIEWS];
+        for (int i = 0; i < RECYCLED_VIEWS; i++) {
+            mViews[i] = new RecycledView();
+        }
+        mLayoutCache = new StackedBarLayoutCache(cacheEntries);
+    }
+
+    @Benchmark
+    public StackedBarLayout rebind() {
+        RecycledView view = nextView();
+        StackedBarSnapshot data = mRows[nextRow()];
+        view.mStore.load(data);
+        view.mStore.markClean();
+        view.mLayout = StackedBarLayoutCalculator.calculate(data, view.mConfig, null, true, 0, 0, view.mCache, ++mGeneration);
+        return view.mLayout;
+    }
+
+    @Benchmark
+    public StackedBarLayout rebindCached() {
+        RecycledView view = nextView();
+        StackedBarSnapshot data = mRows[nextRow()];
+        view.mStore.load(data);
+        view.mStore.markClean();
+
+        StackedBarLayout cached = mLayoutCache.get(data, view.mConfig);
+        if (cached != null) {
+            view.mLayout = cached.withGeneration(++mGeneration);
+        } else {
+            view.mLayout = StackedBarLayoutCalculator.calculate(data, view.mConfig, null, true, 0, 0, view.mCache, ++mGeneration);
+            mLayoutCache.put(view.mLayout);
+        }
+        return view.mLayout;
+    }
+
+    private RecycledView nextView() {
+        return mViews[mStep % RECYCLED_VIEWS];
+    }
+
+    /**
+     * The rows from the top to the end of the feed and back up again.
+     */
+    private int nextRow() {
+        int step = mStep;
+        mStep = (mStep + 1) % (2 * ROWS);
+        return step < ROWS ? step : 2 * ROWS - 1 - step;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.LegendPlacer;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.utils.ArrayUtils;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the legend placement of a frame. greedyAllStacks is the former greedy pass over every
+ * stack, placeAfterZoom the first frame at a new zoom level, which places the visible blocks, and
+ * scroll a frame of a scrolling chart, which reuses the cached blocks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LegendPlacerBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int stacks;
+
+    @Param({"1", "0.1", "0.01"})
+    public float zoom;
+
+    private StackedBarLayout    mLayout;
+    private LegendPlacer        mPlacer;
+    private float               mLeft;
+    private float               mWidth;
+    private int                 mFrame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StackedBarSnapshot data = BenchmarkData.createStore(stacks, 2).snapshot();
+        mLayout = StackedBarLayoutCalculator.calculate(data, BenchmarkData.createConfig(), null, true, 0, 0,
+                new TextMeasureCache(), 0);
+        mPlacer = new LegendPlacer();
+        mPlacer.setSelectedStack(stacks / 2);
+
+        // the viewport is one screen wide, in content coordinates
+        mWidth = Math.min(BenchmarkData.AVAILABLE_WIDTH / zoom, mLayout.getContentWidth());
+        mLeft  = (mLayout.getContentWidth() - mWidth) / 2;
+    }
+
+    @Benchmark
+    public float greedyAllStacks() {
+        StackedBarLayout layout = mLayout;
+        float margin = layout.getConfig().getLegendTextMargin();
+        float lastRight = Float.NEGATIVE_INFINITY;
+        int   shown = 0;
+        for (int i = 0, count = layout.getStackCount(); i < count; i++) {
+            float width = layout.getLabelWidth(i);
+            float left  = (layout.getBarLeft(i) + layout.getBarWidth() / 2) * zoom - width / 2;
+            if (left - margin >= lastRight) {
+                lastRight = left + width;
+                shown++;
+            }
+        }
+        return shown + lastRight;
+    }
+
+    @Benchmark
+    public void placeAfterZoom(Blackhole _Blackhole) {
+        // a new zoom level misses the cache
+        mPlacer.clear();
+        drawFrame(mLeft, _Blackhole);
+    }
+
+    @Benchmark
+    public void scroll(Blackhole _Blackhole) {
+        // the viewport moves back and forth by up to half a screen
+        mFrame = (mFrame + 1) & 63;
+        float offset = (mFrame < 32 ? mFrame : 64 - mFrame) * mWidth / 64;
+        drawFrame(Math.min(mLeft + offset, mLayout.getContentWidth() - mWidth), _Blackhole);
+    }
+
+    private void drawFrame(float _Left, Blackhole _Blackhole) {
+        StackedBarLayout layout = mLayout;
+        float overhang = layout.getMaxLabelWidth() / 2 / zoom;
+        int   first = ArrayUtils.lowerBound(layout.getBarLefts(), stacks, _Left - overhang - layout.getBarWidth());
+        int   last  = ArrayUtils.upperBound(layout.getBarLefts(), stacks, _Left + mWidth + overhang);
+        if (first >= last) {
+            return;
+        }
+
+        int blockSize = mPlacer.getBlockSize(layout, zoom);
+        for (int b = first / blockSize, lastBlock = (last - 1) / blockSize; b <= lastBlock; b++) {
+            LegendPlacer.Block block = mPlacer.get(layout, zoom, b);
+            for (int i = 0, count = block.getLabelCount(); i < count; i++) {
+                int stack = block.getStack(i);
+                if (stack >= first && stack < last) {
+                    _Blackhole.consume(block.getPosition(i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.LineDownsampler;
+import com.example.w.eazegraphclone.models.LineSeries;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the line buffer of a LineChart frame which shows all points: allPoints writes a segment
+ * per point, downsampled samples the points to 2 per pixel column first. The time of downsampled
+ * should stay the same for every amount of points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LineDownsamplerBenchmark {
+
+    private static final int SAMPLES = 2 * BenchmarkData.AVAILABLE_WIDTH;
+
+    @Param({"10000", "100000", "1000000"})
+    public int points;
+
+    private LineSeries      mSeries;
+    private LineDownsampler mDownsampler;
+    private float[]         mLines;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        mSeries = new LineSeries();
+        float y = 0;
+        for (int i = 0; i < points; i++) {
+            // a random walk, so the line has peaks on every scale
+            y += random.nextGaussian();
+            mSeries.add(i, y);
+        }
+        mDownsampler = new LineDownsampler();
+        mLines = new float[4 * points];
+    }
+
+    @Benchmark
+    public float[] allPoints() {
+        double[] xs = mSeries.getXs();
+        float[]  ys = mSeries.getYs();
+        float    scaleX = (float) BenchmarkData.AVAILABLE_WIDTH / points;
+        float[]  lines = mLines;
+        for (int i = 1, offset = 0, count = mSeries.size(); i < count; i++, offset += 4) {
+            lines[offset]     = (float) xs[i - 1] * scaleX;
+            lines[offset + 1] = ys[i - 1];
+            lines[offset + 2] = (float) xs[i] * scaleX;
+            lines[offset + 3] = ys[i];
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public float[] downsampled() {
+        int count = mDownsampler.sample(mSeries, 0, mSeries.size(), SAMPLES);
+        return writeLines(mDownsampler.getXs(), mDownsampler.getYs(), count);
+    }
+
+    private float[] writeLines(float[] _Xs, float[] _Ys, int _Count) {
+        float   scaleX = (float) BenchmarkData.AVAILABLE_WIDTH / points;
+        float[] lines = mLines;
+        for (int i = 1, offset = 0; i < _Count; i++, offset += 4) {
+            lines[offset]     = _Xs[i - 1] * scaleX;
+            lines[offset + 1] = _Ys[i - 1];
+            lines[offset + 2] = _Xs[i] * scaleX;
+            lines[offset + 3] = _Ys[i];
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.models.StackedBarStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the tallest stack is known after a value changed, which scales a chart with an
+ * absolute value axis: the segment tree of the store against a rescan of all stack totals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaxStackTotalBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int stacks;
+
+    private StackedBarStore mStore;
+    private int             mSegment;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mStore = BenchmarkData.createStore(stacks, 4);
+    }
+
+    @Benchmark
+    public float segmentTree() {
+        mStore.setValue(nextSegment(), mSegment % 1000);
+        return mStore.getMaxStackTotal();
+    }
+
+    @Benchmark
+    public float rescan() {
+        mStore.setValue(nextSegment(), mSegment % 1000);
+        float max = 0;
+        for (int i = 0, count = mStore.getStackCount(); i < count; i++) {
+            max = Math.max(max, mStore.getStackTotal(i));
+        }
+        return max;
+    }
+
+    private int nextSegment() {
+        // a fixed stride visits the segments in a cache unfriendly order, like random updates would
+        mSegment = (mSegment + 7919) % mStore.getSegmentCount();
+        return mSegment;
+    }
+}
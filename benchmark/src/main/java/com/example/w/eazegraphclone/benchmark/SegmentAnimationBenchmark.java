@@ -0,0 +1,86 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.SegmentAnimation;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.models.StackedBarStore;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU time of an animated transition: interpolating all segment heights for one
+ * frame, and starting a transition between two layouts. A frame at 60 fps has 16ms, of which the
+ * interpolation should only take a small part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SegmentAnimationBenchmark {
+
+    // 10k segments is the target size, the others show how the frame time scales
+    @Param({"1000x1", "1000x10", "10000x1", "2500x4", "100000x4"})
+    public String shape;
+
+    private StackedBarLayout    mFrom;
+    private StackedBarLayout    mTo;
+    private SegmentAnimation    mAnimation;
+    private float               mFraction;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int stacks   = BenchmarkData.parseStacks(shape);
+        int segments = BenchmarkData.parseSegments(shape);
+
+        StackedBarStore store = BenchmarkData.createStore(stacks, segments);
+        TextMeasureCache cache = new TextMeasureCache();
+        mFrom = StackedBarLayoutCalculator.calculate(store.snapshot(), BenchmarkData.createConfig(), null, true, 0, 0, cache, 0);
+
+        // every segment gets a new value, like a new data set
+        Random random = new Random(7);
+        for (int i = 0; i < store.getSegmentCount(); i++) {
+            store.setValue(i, random.nextInt(10000) / 10.f);
+        }
+        mTo = StackedBarLayoutCalculator.calculate(store.snapshot(), BenchmarkData.createConfig(), null, true, 0, 0, cache, 1);
+
+        mAnimation = new SegmentAnimation();
+        mAnimation.start(mFrom);
+        mAnimation.interpolate(1.f);
+        mAnimation.start(mTo);
+    }
+
+    @Benchmark
+    public float[] interpolateFrame() {
+        // a different fraction per call, so the loop can't be hoisted
+        mFraction += 0.01f;
+        if (mFraction > 1.f) {
+            mFraction = 0.f;
+        }
+        mAnimation.interpolate(mFraction);
+        return mAnimation.getHeights();
+    }
+
+    @Benchmark
+    public SegmentAnimation startTransition() {
+        // alternates the direction, so every call maps a full data set
+        mAnimation.start(mAnimation.getTarget() == mTo ? mFrom : mTo);
+        return mAnimation;
+    }
+}
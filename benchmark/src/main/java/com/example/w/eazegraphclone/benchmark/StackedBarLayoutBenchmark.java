@@ -0,0 +1,111 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.BarLayoutConfig;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.models.StackedBarStore;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the layout pass of the stacked bar chart: a full pass, which runs after settings or the
+ * size changed, and the incremental passes after a stack was appended or a single value changed.
+ * Legend placement and value label formatting are part of every pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StackedBarLayoutBenchmark {
+
+    // stacks x segments per stack. The shapes cover 10 to 1M stacks and 1 to 64 segments, but not
+    // every combination: 1M stacks with 64 segments would need several GB of heap.
+    @Param({
+            "10x1", "10x64",
+            "1000x1", "1000x8", "1000x64",
+            "100000x1", "100000x8", "100000x64",
+            "1000000x1", "1000000x4"
+    })
+    public String shape;
+
+    private BarLayoutConfig     mConfig;
+    private TextMeasureCache    mCache;
+
+    private StackedBarSnapshot  mData;
+    private StackedBarLayout    mLayout;
+
+    // the data after one stack was appended, and the layout before it
+    private StackedBarSnapshot  mAppendedData;
+    private StackedBarLayout    mAppendBase;
+
+    // the data after one value in the middle changed
+    private StackedBarSnapshot  mUpdatedData;
+
+    private StackedBarStore     mStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int stacks   = BenchmarkData.parseStacks(shape);
+        int segments = BenchmarkData.parseSegments(shape);
+
+        mConfig = BenchmarkData.createConfig();
+        mCache  = new TextMeasureCache();
+
+        mStore = BenchmarkData.createStore(stacks, segments);
+        mData   = mStore.snapshot();
+        mLayout = StackedBarLayoutCalculator.calculate(mData, mConfig, null, true, 0, 0, mCache, 0);
+
+        mStore.setValue(mStore.getSegmentStart(stacks / 2), 12.3f);
+        mUpdatedData = mStore.snapshot();
+
+        mAppendBase = StackedBarLayoutCalculator.calculate(mUpdatedData, mConfig, mLayout, false,
+                mUpdatedData.getDirtyFrom(), mUpdatedData.getDirtyTo(), mCache, 1);
+        mStore.startStack("Appended");
+        for (int j = 0; j < segments; j++) {
+            mStore.addSegment(j + 1, 0xFF336699);
+        }
+        mAppendedData = mStore.snapshot();
+    }
+
+    @Benchmark
+    public StackedBarLayout fullLayout() {
+        return StackedBarLayoutCalculator.calculate(mData, mConfig, null, true, 0, 0, mCache, 0);
+    }
+
+    @Benchmark
+    public StackedBarLayout appendStack() {
+        return StackedBarLayoutCalculator.calculate(mAppendedData, mConfig, mAppendBase, false,
+                mAppendedData.getDirtyFrom(), mAppendedData.getDirtyTo(), mCache, 2);
+    }
+
+    @Benchmark
+    public StackedBarLayout updateValue() {
+        return StackedBarLayoutCalculator.calculate(mUpdatedData, mConfig, mLayout, false,
+                mUpdatedData.getDirtyFrom(), mUpdatedData.getDirtyTo(), mCache, 1);
+    }
+
+    /**
+     * The copy of the store which the UI thread takes before every layout pass.
+     */
+    @Benchmark
+    public StackedBarSnapshot snapshot() {
+        return mStore.snapshot();
+    }
+}
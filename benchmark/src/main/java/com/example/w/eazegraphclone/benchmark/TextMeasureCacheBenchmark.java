@@ -0,0 +1,59 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+import com.example.w.eazegraphclone.utils.TextMeasurer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a lookup of the text measurement cache. A hit should not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextMeasureCacheBenchmark {
+
+    private final TextMeasurer  mMeasurer = new FakeTextMeasurer(36);
+    private final float[]       mSize = new float[2];
+    private TextMeasureCache    mCache;
+    private String[]            mLabels;
+    private int                 mIndex;
+
+    @Setup
+    public void setUp() {
+        mCache  = new TextMeasureCache();
+        mLabels = new String[256];
+        for (int i = 0; i < mLabels.length; i++) {
+            mLabels[i] = "Label " + i;
+            mCache.measure(mMeasurer, mLabels[i], mSize);
+        }
+    }
+
+    @Benchmark
+    public float hit() {
+        mIndex = (mIndex + 1) & (mLabels.length - 1);
+        mCache.measure(mMeasurer, mLabels[mIndex], mSize);
+        return mSize[0];
+    }
+
+    @Benchmark
+    public float measureWithoutCache() {
+        mIndex = (mIndex + 1) & (mLabels.length - 1);
+        mMeasurer.measure(mLabels[mIndex], mSize);
+        return mSize[0];
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.utils.ArrayUtils;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the draw path of a frame without a Canvas: finding the visible bars of the viewport and
+ * walking over their segments like drawBars() does. The draw calls are replaced by a Blackhole.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ViewportCullingBenchmark {
+
+    // stacks x segments per stack. The shapes cover 10 to 1M stacks and 1 to 64 segments, but not
+    // every combination: 1M stacks with 64 segments would need several GB of heap.
+    @Param({
+            "10x1", "10x64",
+            "1000x1", "1000x8", "1000x64",
+            "100000x1", "100000x8", "100000x64",
+            "1000000x1", "1000000x4"
+    })
+    public String shape;
+
+    private StackedBarLayout    mLayout;
+    private float               mViewportLeft;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int stacks   = BenchmarkData.parseStacks(shape);
+        int segments = BenchmarkData.parseSegments(shape);
+
+        StackedBarSnapshot data = BenchmarkData.createStore(stacks, segments).snapshot();
+        mLayout = StackedBarLayoutCalculator.calculate(data, BenchmarkData.createConfig(), null, true, 0, 0,
+                new TextMeasureCache(), 0);
+        // the viewport is scrolled to the middle of the content
+        mViewportLeft = mLayout.getContentWidth() / 2.f;
+    }
+
+    @Benchmark
+    public void drawVisibleBars(Blackhole _Blackhole) {
+        StackedBarLayout layout = mLayout;
+        float[]          lefts = layout.getBarLefts();
+        int[]            offsets = layout.getData().getStackOffsets();
+        int[]            colors = layout.getData().getColors();
+        int              count = layout.getStackCount();
+        float            left = mViewportLeft;
+        float            right = left + BenchmarkData.AVAILABLE_WIDTH;
+
+        int first = ArrayUtils.lowerBound(lefts, count, left - layout.getBarWidth());
+        int last  = ArrayUtils.upperBound(lefts, count, right);
+
+        for (int i = first; i < last; i++) {
+            for (int segment = offsets[i], end = offsets[i + 1]; segment < end; segment++) {
+                _Blackhole.consume(colors[segment]);
+                _Blackhole.consume(layout.getSegmentBottom(segment) - layout.getSegmentTop(segment));
+                if (layout.isShowValue(segment)) {
+                    _Blackhole.consume(layout.getValueLabel(segment));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.BarLayoutConfig;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutEngine;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.models.StackedBarStore;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Binds a chart row to another data set of the same shape, like a recycled row of a list: the layout
+ * of the new data set must not keep texts of the previous one.
+ */
+public class RebindLayoutTest {
+
+    @Test
+    public void rebindAfterCancelLaysOutTheNewTexts() {
+        TextMeasureCache       cache  = new TextMeasureCache();
+        StackedBarLayoutEngine engine = new StackedBarLayoutEngine(new Executor() {
+            @Override
+            public void execute(Runnable _Command) {
+                _Command.run();
+            }
+        }, cache);
+        BarLayoutConfig config = BenchmarkData.createConfig();
+
+        StackedBarSnapshot first  = createBoundData(1);
+        StackedBarSnapshot second = createBoundData(10);
+
+        engine.submit(first, config, true);
+        assertLabels(first, engine.getLayout());
+
+        // bind() cancels the requests of the previous row, then submits the new data set
+        engine.cancel();
+        engine.submit(second, config, true);
+        assertLabels(second, engine.getLayout());
+
+        StackedBarLayout full = StackedBarLayoutCalculator.calculate(second, config, null, true, 0, 0, cache, 0);
+        for (int i = 0; i < second.getStackCount(); i++) {
+            assertEquals("label width " + i, full.getLabelWidth(i), engine.getLayout().getLabelWidth(i), 0);
+        }
+    }
+
+    /**
+     * Creates a data set like one that is bound: loaded into a store which is marked clean, so the
+     * snapshot has no changed range.
+     * @param _Scale Factor of the values 1, 2 and 3
+     */
+    private static StackedBarSnapshot createBoundData(int _Scale) {
+        StackedBarStore store = new StackedBarStore();
+        for (int i = 1; i <= 3; i++) {
+            store.addStack("Stack " + i * _Scale, new float[] { i * _Scale }, new int[] { 0xFF000000 });
+        }
+        store.markClean();
+        return store.snapshot();
+    }
+
+    private static void assertLabels(StackedBarSnapshot _Data, StackedBarLayout _Layout) {
+        assertEquals(_Data, _Layout.getData());
+        for (int i = 0; i < _Data.getSegmentCount(); i++) {
+            assertEquals("value " + i, String.valueOf((int) _Data.getValues()[i]), _Layout.getValueLabel(i));
+        }
+    }
+}
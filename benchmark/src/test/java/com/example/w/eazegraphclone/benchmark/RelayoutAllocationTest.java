@@ -0,0 +1,266 @@
+package com.example.w.eazegraphclone.benchmark;
+
+import com.example.w.eazegraphclone.layout.BarLayoutConfig;
+import com.example.w.eazegraphclone.layout.LodPyramid;
+import com.example.w.eazegraphclone.layout.StackedBarLayout;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutCalculator;
+import com.example.w.eazegraphclone.layout.StackedBarLayoutEngine;
+import com.example.w.eazegraphclone.layout.ValueAxis;
+import com.example.w.eazegraphclone.models.RingBufferDataSource;
+import com.example.w.eazegraphclone.models.StackedBarSnapshot;
+import com.example.w.eazegraphclone.models.StackedBarStore;
+import com.example.w.eazegraphclone.utils.TextMeasureCache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Counts the bytes which a steady-state relayout allocates on the calling thread. Once the snapshot
+ * and the layout of the previous relayout are recycled, a relayout must not allocate anything that
+ * grows with the amount of stacks.
+ */
+public class RelayoutAllocationTest {
+
+    private static final int WARMUP_RELAYOUTS   = 2000;
+    private static final int MEASURED_RELAYOUTS = 100;
+    private static final int ROUNDS             = 5;
+
+    private com.sun.management.ThreadMXBean mThreadBean;
+
+    private BarLayoutConfig mConfig;
+    // the same texts at another graph height, so every bar is laid out again without measuring
+    private BarLayoutConfig mOtherConfig;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        mThreadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mThreadBean.isThreadAllocatedMemorySupported());
+        mThreadBean.setThreadAllocatedMemoryEnabled(true);
+
+        mConfig = BenchmarkData.createConfig();
+        mOtherConfig = new BarLayoutConfig(BenchmarkData.AVAILABLE_WIDTH, BenchmarkData.GRAPH_HEIGHT - 100,
+                BenchmarkData.BAR_WIDTH, BenchmarkData.BAR_MARGIN, true, BenchmarkData.VISIBLE_BARS,
+                BenchmarkData.LEGEND_TEXT_MARGIN, NumberFormat.getInstance(Locale.US),
+                mConfig.getValueMeasurer(), mConfig.getLegendMeasurer(), BenchmarkData.MIN_BAR_WIDTH,
+                LodPyramid.Aggregation.SUM, ValueAxis.STACK);
+    }
+
+    /**
+     * A full pass over 10k stacks with unchanged texts, including the level of detail pyramid,
+     * calculated into the layout and snapshot of the relayout before the previous one.
+     */
+    @Test
+    public void recycledRelayoutAllocatesNothing() {
+        final StackedBarStore  store = BenchmarkData.createStore(10000, 4);
+        final TextMeasureCache cache = new TextMeasureCache();
+
+        Relayout relayout = new Relayout() {
+            private StackedBarLayout mPrevious = StackedBarLayoutCalculator.calculate(
+                    store.snapshot(), mConfig, null, true, 0, 0, cache, 0);
+            private StackedBarLayout mRecycled;
+            private int              mGeneration;
+
+            @Override
+            public void run() {
+                StackedBarSnapshot data = store.snapshot(mRecycled != null ? mRecycled.getData() : null);
+                mGeneration++;
+                BarLayoutConfig config = (mGeneration & 1) == 0 ? mConfig : mOtherConfig;
+                StackedBarLayout layout = StackedBarLayoutCalculator.calculate(data, config, mPrevious, mRecycled,
+                        false, data.getDirtyFrom(), data.getDirtyTo(), cache, mGeneration);
+                mRecycled = mPrevious;
+                mPrevious = layout;
+            }
+        };
+
+        assertEquals(0, measure(relayout));
+    }
+
+    /**
+     * A live chart: one value changes, and the layout engine lays out a recycled snapshot into a
+     * recycled layout. Only the label of the changed value and the request itself are allocated,
+     * so 20 times as many stacks must not allocate more.
+     */
+    @Test
+    public void engineRelayoutAllocationDoesNotGrowWithStacks() {
+        long small = measureEngine(1000);
+        long large = measureEngine(20000);
+
+        assertTrue("bytes per relayout: " + small, small < 4096);
+        assertTrue("bytes per relayout with 1k stacks: " + small + ", with 20k stacks: " + large, large <= small + 64);
+    }
+
+    /**
+     * Layouts which were calculated into recycled layouts must be the same as a fresh full layout.
+     */
+    @Test
+    public void recycledLayoutMatchesFullLayout() {
+        StackedBarStore        store = BenchmarkData.createStore(3000, 3);
+        TextMeasureCache       cache = new TextMeasureCache();
+        StackedBarLayoutEngine engine = createEngine(cache);
+        StackedBarLayout       drawn = null;
+
+        for (int i = 0; i < 200; i++) {
+            switch (i % 3) {
+                case 0:
+                    store.setValue((i * 7919) % store.getSegmentCount(), i);
+                    break;
+                case 1:
+                    store.addStack("Added " + i, new float[] { i, 2 * i }, new int[] { 1, 2 });
+                    break;
+                default:
+                    store.removeStacks(0, 2);
+                    break;
+            }
+            engine.submit(store.snapshot(engine.obtainSnapshot()), (i & 4) == 0 ? mConfig : mOtherConfig, false, true);
+            if (drawn != null) {
+                engine.recycle(drawn);
+            }
+            drawn = engine.getLayout();
+
+            StackedBarLayout full = StackedBarLayoutCalculator.calculate(drawn.getData(), drawn.getConfig(), null, true,
+                    0, 0, cache, 0);
+            assertLayoutEquals(full, drawn);
+        }
+    }
+
+    /**
+     * A live chart at the capacity of its ring buffer: the oldest stacks are evicted on every drain,
+     * but only the texts of the appended stacks are measured, and the result matches a full layout.
+     */
+    @Test
+    public void evictionLaysOutOnlyTheAppendedStacks() {
+        RingBufferDataSource   source = new RingBufferDataSource(2000);
+        StackedBarStore        store = new StackedBarStore();
+        TextMeasureCache       cache = new TextMeasureCache();
+        StackedBarLayoutEngine engine = createEngine(cache);
+
+        for (int i = 0; i < 2000; i++) {
+            source.push("Stack " + i, new float[] { i, i + 1 }, new int[] { 1, 2 });
+        }
+        source.drainTo(store);
+        engine.submit(store.snapshot(), mConfig, true);
+
+        for (int i = 2000; i < 2100; i += 5) {
+            for (int j = i; j < i + 5; j++) {
+                source.push("Stack " + j, new float[] { j, j + 1 }, new int[] { 1, 2 });
+            }
+            source.drainTo(store);
+
+            long lookups = cache.getHitCount() + cache.getMissCount();
+            engine.submit(store.snapshot(), mConfig, false);
+            // a label and two values for each of the five new stacks
+            assertEquals(15, cache.getHitCount() + cache.getMissCount() - lookups);
+
+            StackedBarLayout layout = engine.getLayout();
+            assertLayoutEquals(StackedBarLayoutCalculator.calculate(layout.getData(), mConfig, null, true,
+                    0, 0, cache, 0), layout);
+        }
+    }
+
+    //##############################################################################################
+    // Helper
+    //##############################################################################################
+
+    private interface Relayout {
+        void run();
+    }
+
+    private long measureEngine(int _Stacks) {
+        final StackedBarStore        store = BenchmarkData.createStore(_Stacks, 4);
+        final StackedBarLayoutEngine engine = createEngine(new TextMeasureCache());
+
+        return measure(new Relayout() {
+            private StackedBarLayout mDrawn;
+            private int              mCount;
+
+            @Override
+            public void run() {
+                mCount++;
+                store.setValue(store.getSegmentStart(store.getStackCount() / 2), mCount % 100);
+                engine.submit(store.snapshot(engine.obtainSnapshot()), mConfig, false, true);
+                if (mDrawn != null) {
+                    engine.recycle(mDrawn);
+                }
+                mDrawn = engine.getLayout();
+            }
+        });
+    }
+
+    /**
+     * Runs the relayout until the allocations are stable.
+     * @return The fewest bytes per relayout of all rounds
+     */
+    private long measure(Relayout _Relayout) {
+        for (int i = 0; i < WARMUP_RELAYOUTS; i++) {
+            _Relayout.run();
+        }
+
+        long thread = Thread.currentThread().getId();
+        // the bytes which reading the counter itself allocates
+        long overhead = -mThreadBean.getThreadAllocatedBytes(thread) + mThreadBean.getThreadAllocatedBytes(thread);
+
+        long min = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = mThreadBean.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < MEASURED_RELAYOUTS; i++) {
+                _Relayout.run();
+            }
+            long bytes = mThreadBean.getThreadAllocatedBytes(thread) - before - overhead;
+            min = Math.min(min, Math.max(0, bytes) / MEASURED_RELAYOUTS);
+        }
+        return min;
+    }
+
+    /**
+     * Creates an engine which lays out on the calling thread, so its allocations are counted.
+     */
+    private static StackedBarLayoutEngine createEngine(TextMeasureCache _Cache) {
+        return new StackedBarLayoutEngine(new Executor() {
+            @Override
+            public void execute(Runnable _Command) {
+                _Command.run();
+            }
+        }, _Cache);
+    }
+
+    private static void assertLayoutEquals(StackedBarLayout _Expected, StackedBarLayout _Actual) {
+        StackedBarSnapshot data = _Expected.getData();
+        assertEquals(_Expected.getStackCount(), _Actual.getStackCount());
+        for (int i = 0; i < _Expected.getStackCount(); i++) {
+            assertEquals("bar " + i, _Expected.getBarLeft(i), _Actual.getBarLeft(i), 0);
+            assertEquals("label " + i, _Expected.canShowLabel(i), _Actual.canShowLabel(i));
+            assertEquals("label position " + i, _Expected.getLabelPosition(i), _Actual.getLabelPosition(i), 0);
+        }
+        for (int i = 0; i < data.getSegmentCount(); i++) {
+            assertEquals("segment " + i, _Expected.getSegmentTop(i), _Actual.getSegmentTop(i), 0);
+            assertEquals("segment " + i, _Expected.getSegmentBottom(i), _Actual.getSegmentBottom(i), 0);
+            assertEquals("value " + i, _Expected.getValueLabel(i), _Actual.getValueLabel(i));
+        }
+
+        LodPyramid expected = _Expected.getPyramid();
+        LodPyramid actual   = _Actual.getPyramid();
+        assertEquals(expected != null, actual != null);
+        if (expected == null) {
+            return;
+        }
+        assertEquals(expected.getMaxLevel(), actual.getMaxLevel());
+        for (int level = 1; level <= expected.getMaxLevel(); level++) {
+            int buckets = expected.getBucketCount(level);
+            assertEquals(buckets, actual.getBucketCount(level));
+            for (int series = 0, end = expected.getSeriesEnd(level, buckets - 1); series < end; series++) {
+                assertEquals("series " + series, expected.getValue(level, series), actual.getValue(level, series), 0);
+                assertEquals("series " + series, expected.getSeriesBottom(level, series), actual.getSeriesBottom(level, series), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.w.eazegraphclone.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drains a {@link RingBufferDataSource} into a store after the producers overwrote stacks, or while
+ * a producer did not write the stack of its claimed sequence number yet.
+ */
+public class RingBufferDataSourceTest {
+
+    private static final int CAPACITY = 4;
+
+    @Test
+    public void countsTheOverwrittenStacks() {
+        RingBufferDataSource source = new RingBufferDataSource(CAPACITY);
+        StackedBarStore      store = new StackedBarStore();
+
+        push(source, 0, 10);
+        assertTrue(source.drainTo(store));
+        assertLabels(store, 6, 7, 8, 9);
+        assertEquals(6, source.getDroppedCount());
+
+        // nothing new, nothing dropped
+        assertFalse(source.drainTo(store));
+        assertEquals(6, source.getDroppedCount());
+
+        push(source, 10, 12);
+        assertTrue(source.drainTo(store));
+        assertLabels(store, 8, 9, 10, 11);
+        assertEquals(6, source.getDroppedCount());
+    }
+
+    @Test
+    public void evictsFromTheFrontWithoutMarkingTheKeptStacks() {
+        RingBufferDataSource source = new RingBufferDataSource(CAPACITY);
+        StackedBarStore      store = new StackedBarStore();
+        push(source, 0, CAPACITY);
+        source.drainTo(store);
+        store.markClean();
+
+        push(source, CAPACITY, CAPACITY + 3);
+        source.drainTo(store);
+        StackedBarSnapshot snapshot = store.snapshot();
+
+        // only the three new stacks changed, the kept one moved to the front
+        assertEquals(3, snapshot.getShiftedStacks());
+        assertEquals(1, snapshot.getDirtyFrom());
+        assertEquals(CAPACITY, snapshot.getDirtyTo());
+        assertLabels(store, 3, 4, 5, 6);
+    }
+
+    @Test
+    public void waitsForAPreemptedProducer() {
+        RingBufferDataSource source = new RingBufferDataSource(CAPACITY);
+        StackedBarStore      store = new StackedBarStore();
+
+        // the producer of stack 0 is preempted after it claimed its number, later producers finish first
+        long preempted = source.claim();
+        push(source, 1, 3);
+        assertFalse(source.drainTo(store));
+        assertEquals(0, store.getStackCount());
+
+        publish(source, preempted, 0);
+        assertTrue(source.drainTo(store));
+        assertLabels(store, 0, 1, 2);
+        assertEquals(0, source.getDroppedCount());
+    }
+
+    @Test
+    public void preemptedProducerDoesNotOverwriteANewerStack() {
+        RingBufferDataSource source = new RingBufferDataSource(CAPACITY);
+        StackedBarStore      store = new StackedBarStore();
+
+        // stack 4 takes the slot of the preempted stack 0 and stack 5 overwrites stack 1
+        long preempted = source.claim();
+        push(source, 1, 6);
+        publish(source, preempted, 0);
+
+        assertTrue(source.drainTo(store));
+        assertLabels(store, 2, 3, 4, 5);
+        assertEquals(2, source.getDroppedCount());
+    }
+
+    private static void push(RingBufferDataSource _Source, int _From, int _To) {
+        for (int i = _From; i < _To; i++) {
+            _Source.push(String.valueOf(i), new float[] { i }, new int[] { 0 });
+        }
+    }
+
+    private static void publish(RingBufferDataSource _Source, long _Sequence, int _Stack) {
+        _Source.publish(_Sequence, String.valueOf(_Stack), new float[] { _Stack }, new int[] { 0 });
+    }
+
+    private static void assertLabels(StackedBarStore _Store, int... _Stacks) {
+        assertEquals(_Stacks.length, _Store.getStackCount());
+        for (int i = 0; i < _Stacks.length; i++) {
+            assertEquals(String.valueOf(_Stacks[i]), _Store.getLabel(i));
+            assertEquals(_Stacks[i], _Store.getValue(_Store.getSegmentStart(i)), 0);
+        }
+    }
+}
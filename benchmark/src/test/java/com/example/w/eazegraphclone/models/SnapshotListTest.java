@@ -0,0 +1,184 @@
+package com.example.w.eazegraphclone.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs concurrent writers against a {@link SnapshotList} while a reader checks that the published
+ * snapshots never change.
+ */
+public class SnapshotListTest {
+
+    private static final int WRITERS        = 8;
+    private static final int MODELS         = 20000;
+    // every n-th append of a writer adds a batch instead of a single model
+    private static final int BATCH_INTERVAL = 7;
+    private static final int BATCH_SIZE     = 3;
+
+    /**
+     * A model which knows its writer and its position in the sequence of the writer.
+     */
+    private static final class Model {
+        final int mWriter;
+        final int mIndex;
+
+        Model(int _Writer, int _Index) {
+            mWriter = _Writer;
+            mIndex  = _Index;
+        }
+    }
+
+    @Test
+    public void concurrentAppendsKeepEveryModelInOrder() throws Throwable {
+        final SnapshotList<Model> list = new SnapshotList<Model>();
+        List<SnapshotList.Snapshot<Model>> observed = runWriters(list, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        SnapshotList.Snapshot<Model> last = list.get();
+        assertEquals(WRITERS * MODELS, last.size());
+
+        // every model once, and the models of a writer in the order it appended them
+        int[] next = new int[WRITERS];
+        for (Model model : last.getModels()) {
+            assertEquals(next[model.mWriter]++, model.mIndex);
+        }
+        for (int writer = 0; writer < WRITERS; writer++) {
+            assertEquals(MODELS, next[writer]);
+        }
+
+        // the snapshots seen by the reader are prefixes of the last one
+        for (SnapshotList.Snapshot<Model> snapshot : observed) {
+            assertTrue(last.isAppendOf(snapshot));
+            List<Model> models = snapshot.getModels();
+            for (int i = 0, size = models.size(); i < size; i++) {
+                assertSame(last.getModels().get(i), models.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void removalsDuringAppendsLoseNoModel() throws Throwable {
+        final SnapshotList<Model> list = new SnapshotList<Model>();
+        final List<Model> removed = new ArrayList<Model>();
+        runWriters(list, new Runnable() {
+            @Override
+            public void run() {
+                // the reader removes the first model now and then, so appends race with copies
+                SnapshotList.Snapshot<Model> snapshot = list.get();
+                if (snapshot.size() > 0 && snapshot.getVersion() % 16 == 0) {
+                    // only this thread removes, so the first model is still the same
+                    removed.add(snapshot.getModels().get(0));
+                    list.remove(0);
+                }
+            }
+        });
+
+        // the removed and the remaining models are every model once, each writer's in its order
+        List<Model> models = new ArrayList<Model>(removed);
+        models.addAll(list.get().getModels());
+        int[] next = new int[WRITERS];
+        for (Model model : models) {
+            assertEquals(next[model.mWriter]++, model.mIndex);
+        }
+        for (int writer = 0; writer < WRITERS; writer++) {
+            assertEquals(MODELS, next[writer]);
+        }
+    }
+
+    @Test
+    public void snapshotsAreNotChangedByLaterWrites() {
+        SnapshotList<Model> list = new SnapshotList<Model>();
+        list.addAll(Arrays.asList(new Model(0, 0), new Model(0, 1)));
+        SnapshotList.Snapshot<Model> before = list.get();
+
+        // appended to the shared array of the snapshot, which must not see the new model
+        list.add(new Model(0, 2));
+        assertEquals(2, before.size());
+        assertEquals(2, before.getModels().size());
+
+        // the list after a removal appends to a copy, so the older snapshot keeps the removed model
+        SnapshotList.Snapshot<Model> appended = list.get();
+        list.remove(2);
+        list.add(new Model(1, 0));
+        assertEquals(2, appended.getModels().get(2).mIndex);
+        assertEquals(1, list.get().getModels().get(2).mWriter);
+    }
+
+    /**
+     * Appends {@link #MODELS} models on each of {@link #WRITERS} threads while the calling thread
+     * reads the snapshots and runs the given task between two reads.
+     * @return Snapshots which the reader saw, each one checked against its contents at the time
+     */
+    private static List<SnapshotList.Snapshot<Model>> runWriters(final SnapshotList<Model> _List, Runnable _Task)
+            throws Throwable {
+        final CountDownLatch                start   = new CountDownLatch(1);
+        final CountDownLatch                done    = new CountDownLatch(WRITERS);
+        final AtomicReference<Throwable>    failure = new AtomicReference<Throwable>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        int index = 0;
+                        while (index < MODELS) {
+                            if (index % BATCH_INTERVAL == 0 && index + BATCH_SIZE <= MODELS) {
+                                List<Model> batch = new ArrayList<Model>(BATCH_SIZE);
+                                for (int i = 0; i < BATCH_SIZE; i++) {
+                                    batch.add(new Model(writer, index++));
+                                }
+                                _List.addAll(batch);
+                            } else {
+                                _List.add(new Model(writer, index++));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.start();
+        }
+
+        List<SnapshotList.Snapshot<Model>> observed = new ArrayList<SnapshotList.Snapshot<Model>>();
+        List<Model[]>                      contents = new ArrayList<Model[]>();
+        start.countDown();
+        boolean finished = false;
+        while (!finished) {
+            // one more pass after the writers are done, so the task runs on the complete list as well
+            finished = done.getCount() == 0;
+
+            SnapshotList.Snapshot<Model> snapshot = _List.get();
+            if (observed.size() < 200) {
+                observed.add(snapshot);
+                contents.add(snapshot.getModels().toArray(new Model[0]));
+            }
+            _Task.run();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        for (int i = 0; i < observed.size(); i++) {
+            List<Model> models = observed.get(i).getModels();
+            assertEquals(Arrays.asList(contents.get(i)), models);
+        }
+        return observed;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.w.eazegraphclone.utils;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks {@link LongLruMap} against a {@link LinkedHashMap} in access order.
+ */
+public class LongLruMapTest {
+
+    @Test
+    public void removesTheLeastRecentlyUsedEntry() {
+        LongLruMap<String> map = new LongLruMap<String>(2);
+        map.put(1, "a");
+        map.put(2, "b");
+        map.put(3, "c");
+        map.get(1);
+
+        assertEquals("b", map.removeEldest());
+        assertEquals("c", map.removeEldest());
+        assertEquals("a", map.removeEldest());
+        assertNull(map.removeEldest());
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void matchesLinkedHashMap() {
+        LongLruMap<Long>          map      = new LongLruMap<Long>(4);
+        LinkedHashMap<Long, Long> expected = new LinkedHashMap<Long, Long>(16, 0.75f, true);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            // keys which differ only in the upper half collide in a weak hash
+            long key = ((long) random.nextInt(64) << 32) | random.nextInt(8);
+            switch (random.nextInt(5)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+                    break;
+                case 2:
+                    assertEquals(expected.get(key), map.get(key));
+                    break;
+                case 3:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    Long eldest = expected.isEmpty() ? null : expected.remove(expected.keySet().iterator().next());
+                    assertEquals(eldest, map.removeEldest());
+                    break;
+            }
+            if (i % 10000 == 0) {
+                map.clear();
+                expected.clear();
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.removeEldest());
+        }
+        assertEquals(0, map.size());
+    }
+}